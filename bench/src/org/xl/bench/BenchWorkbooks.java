@@ -0,0 +1,97 @@
+package org.xl.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import org.xl.excel.generator.WorkbookGenerator;
+
+/**
+ * Writes the workbooks the benchmarks parse with a WorkbookGenerator.
+ * <p>
+ * Every workbook has one Sheet. STRINGS workbooks hold shared strings drawn
+ * from DISTINCT_STRINGS values, NUMBERS workbooks hold numbers with a
+ * quarter of the Columns dates. Formatted workbooks give the numbers a
+ * #,##0.00 format. The XLSX and XLS variants hold the same data.
+ * <p>
+ * Files are created once in the temp directory and reused by later runs.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public final class BenchWorkbooks {
+    static final int DISTINCT_STRINGS = 1000;
+
+    /**
+     * Public, the harness JMH generates in org.xl.bench.jmh_generated reads
+     * the @Param values with Content.valueOf().
+     */
+    public enum Content {
+        STRINGS, NUMBERS
+    }
+
+    private BenchWorkbooks() {
+    }
+
+    /**
+     * Returns the generator of the workbooks with the given shape.
+     */
+    static WorkbookGenerator generator(int rows, int columns, Content content,
+                                       boolean formatted) {
+        WorkbookGenerator generator = new WorkbookGenerator();
+        generator.setRows(rows);
+        generator.setColumns(columns);
+        generator.setStringCardinality(DISTINCT_STRINGS);
+        if (content == Content.STRINGS) {
+            generator.setSharedStringRatio(1);
+            generator.setDateRatio(0);
+        } else {
+            generator.setSharedStringRatio(0);
+            generator.setDateRatio(0.25);
+        }
+        if (formatted)
+            generator.setNumberFormats("#,##0.00");
+        return generator;
+    }
+
+    /**
+     * Returns the XLSX workbook with the given shape, writing it on first
+     * use.
+     */
+    static synchronized File xlsx(int rows, int columns, Content content,
+                                  boolean formatted) {
+        File file = fixture(rows, columns, content, formatted, ".xlsx");
+        if (!file.exists()) {
+            try {
+                generator(rows, columns, content, formatted).writeXLSX(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Returns the XLS workbook with the given shape, writing it on first
+     * use.
+     */
+    static synchronized File xls(int rows, int columns, Content content,
+                                 boolean formatted) {
+        File file = fixture(rows, columns, content, formatted, ".xls");
+        if (!file.exists()) {
+            try {
+                generator(rows, columns, content, formatted).writeXLS(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return file;
+    }
+
+    private static File fixture(int rows, int columns, Content content,
+                                boolean formatted, String extension) {
+        String name = "xl-bench-" + rows + "x" + columns + "-" +
+                content.name().toLowerCase() + (formatted ? "-fmt" : "") +
+                extension;
+        return new File(System.getProperty("java.io.tmpdir"), name);
+    }
+}
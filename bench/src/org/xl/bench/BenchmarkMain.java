@@ -0,0 +1,34 @@
+package org.xl.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler so allocation per operation is
+ * reported next to the throughput.
+ * <p>
+ * Takes the regular JMH command line, for example
+ * <pre>
+ * java -cp ... org.xl.bench.BenchmarkMain XLSXParserBenchmark -p columns=100
+ * </pre>
+ * Without a benchmark pattern every benchmark in org.xl.bench is run.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine).addProfiler(GCProfiler.class);
+        if (commandLine.getIncludes().isEmpty())
+            builder.include("org\\.xl\\.bench\\..*");
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+}
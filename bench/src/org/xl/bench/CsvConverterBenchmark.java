@@ -0,0 +1,66 @@
+package org.xl.bench;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xl.excel.parser.ExcelParser;
+
+/**
+ * Converts generated XLSX workbooks to CSV, plain and gzip compressed. The
+ * output is discarded so only the conversion is measured.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CsvConverterBenchmark {
+    private static final int ROWS = 10000;
+
+    @Param({"5", "100"})
+    public int columns;
+
+    @Param({"STRINGS", "NUMBERS"})
+    public BenchWorkbooks.Content content;
+
+    @Param({"false", "true"})
+    public boolean formatted;
+
+    private File file;
+    private PrintStream output;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        file = BenchWorkbooks.xlsx(ROWS, columns, content, formatted);
+        output = new PrintStream(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void convert() throws Exception {
+        ExcelParser.createXLSXtoCSVConverter(file, output)
+                .process(true, formatted);
+    }
+
+    @Benchmark
+    public void convertGzip() throws Exception {
+        ExcelParser.createXLSXtoGzipCSVConverter(file, OutputStream.nullOutputStream())
+                .process(true, formatted);
+    }
+}
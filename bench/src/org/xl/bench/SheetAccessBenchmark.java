@@ -0,0 +1,80 @@
+package org.xl.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xl.excel.components.Sheet;
+
+/**
+ * Reads cells and resolves headers of an in memory Sheet, the expected
+ * Sheet of a generated STRINGS workbook.
+ * <p>
+ * The rows and headers to look up are chosen up front with a fixed seed
+ * so every invocation does the same work.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SheetAccessBenchmark {
+    private static final int ROWS = 10000;
+    private static final int LOOKUPS = 1024;
+
+    @Param({"5", "100"})
+    public int columns;
+
+    private Sheet sheet;
+    private int[] rowNumbers;
+    private String[] lookupHeaders;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sheet = BenchWorkbooks.generator(ROWS, columns,
+                BenchWorkbooks.Content.STRINGS, false)
+                .getExpectedSheets(false).get(0);
+        List<String> headers = sheet.getHeaderList();
+
+        rowNumbers = new int[LOOKUPS];
+        lookupHeaders = new String[LOOKUPS];
+        long seed = 42;
+        for (int i = 0; i < LOOKUPS; i++) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            int next = (int) (seed >>> 33);
+            rowNumbers[i] = next % ROWS;
+            String header = headers.get(next % columns);
+            lookupHeaders[i] = (i & 1) == 0 ? header : header.toUpperCase();
+        }
+    }
+
+    @Benchmark
+    public int getCellValues() {
+        int length = 0;
+        for (int i = 0; i < LOOKUPS; i++)
+            length += sheet.getCellValues(rowNumbers[i], false).length;
+        return length;
+    }
+
+    @Benchmark
+    public int getColumnIndex() {
+        int sum = 0;
+        for (int i = 0; i < LOOKUPS; i++)
+            sum += sheet.getColumnIndex(lookupHeaders[i], false);
+        return sum;
+    }
+}
@@ -0,0 +1,153 @@
+package org.xl.bench;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xl.excel.parser.ExcelParser;
+import org.xl.excel.parser.ExcelWorkSheetHandler_CSV;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Drives ExcelWorkSheetHandler_CSV with recorded SAX events, measuring the
+ * cell handling without the unzipping and XML parsing in front of it.
+ * <p>
+ * The events of the Sheet of the matching XLSX fixture are recorded once in
+ * the setup, the shared strings and styles are read from the same file.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SheetHandlerBenchmark {
+    private static final int ROWS = 10000;
+    private static final byte START = 0;
+    private static final byte END = 1;
+    private static final byte CHARACTERS = 2;
+
+    @Param({"5", "100"})
+    public int columns;
+
+    @Param({"STRINGS", "NUMBERS"})
+    public BenchWorkbooks.Content content;
+
+    @Param({"false", "true"})
+    public boolean formatted;
+
+    private OPCPackage pkg;
+    private StylesTable styles;
+    private ReadOnlySharedStringsTable strings;
+    private byte[] types;
+    private String[] names;
+    private Attributes[] attributes;
+    private char[][] characters;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        File file = BenchWorkbooks.xlsx(ROWS, columns, content, formatted);
+        pkg = OPCPackage.open(file.getPath(), PackageAccess.READ);
+        styles = new XSSFReader(pkg).getStylesTable();
+        strings = new ReadOnlySharedStringsTable(pkg);
+
+        final List<Object[]> events = new ArrayList<Object[]>();
+        try (ZipFile zip = new ZipFile(file);
+             InputStream sheet = zip.getInputStream(
+                     zip.getEntry("xl/worksheets/sheet1.xml"))) {
+            SAXParserFactory.newInstance().newSAXParser().parse(sheet,
+                    new DefaultHandler() {
+                        @Override
+                        public void startElement(String uri, String localName,
+                                                 String name, Attributes atts) {
+                            events.add(new Object[]{START, name,
+                                    new AttributesImpl(atts)});
+                        }
+
+                        @Override
+                        public void endElement(String uri, String localName,
+                                               String name) {
+                            events.add(new Object[]{END, name});
+                        }
+
+                        @Override
+                        public void characters(char[] ch, int start, int length) {
+                            char[] text = new char[length];
+                            System.arraycopy(ch, start, text, 0, length);
+                            events.add(new Object[]{CHARACTERS, text});
+                        }
+                    });
+        }
+        int count = events.size();
+        types = new byte[count];
+        names = new String[count];
+        attributes = new Attributes[count];
+        characters = new char[count][];
+        for (int i = 0; i < count; i++) {
+            Object[] event = events.get(i);
+            types[i] = (Byte) event[0];
+            if (types[i] == CHARACTERS) {
+                characters[i] = (char[]) event[1];
+            } else {
+                names[i] = (String) event[1];
+                if (types[i] == START)
+                    attributes[i] = (Attributes) event[2];
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pkg.revert();
+    }
+
+    @Benchmark
+    public int rowList() throws Exception {
+        ExcelWorkSheetHandler_CSV handler = new ExcelWorkSheetHandler_CSV(
+                styles, strings, ExcelParser.READ_ALL, null,
+                ExcelParser.READ_ALL, null, true, formatted);
+        handler.startDocument();
+        for (int i = 0; i < types.length; i++) {
+            switch (types[i]) {
+                case START:
+                    handler.startElement("", names[i], names[i], attributes[i]);
+                    break;
+                case END:
+                    handler.endElement("", names[i], names[i]);
+                    break;
+                default:
+                    handler.characters(characters[i], 0, characters[i].length);
+                    break;
+            }
+        }
+        handler.endDocument();
+        return handler.getValueList().size();
+    }
+}
@@ -0,0 +1,74 @@
+package org.xl.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xl.excel.components.ColumnBatch;
+import org.xl.excel.parser.BatchListener;
+import org.xl.excel.parser.ExcelParser;
+import org.xl.excel.parser.XLSParser;
+
+/**
+ * Parses generated XLS workbooks into memory, as row Strings and as
+ * ColumnBatches.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class XLSParserBenchmark {
+    private static final int ROWS = 10000;
+
+    @Param({"5", "100"})
+    public int columns;
+
+    @Param({"STRINGS", "NUMBERS"})
+    public BenchWorkbooks.Content content;
+
+    @Param({"false", "true"})
+    public boolean formatted;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        file = BenchWorkbooks.xls(ROWS, columns, content, formatted);
+    }
+
+    @Benchmark
+    public int rowList() throws Exception {
+        XLSParser parser = ExcelParser.createXLSParser(file);
+        parser.process(true, formatted);
+        return parser.getSheetList().get(0).getRowCount();
+    }
+
+    @Benchmark
+    public long columnBatches() throws Exception {
+        final long[] rows = new long[1];
+        XLSParser parser = ExcelParser.createXLSParser(file);
+        parser.setBatchListener(new BatchListener() {
+            public void batch(ColumnBatch batch) {
+                rows[0] += batch.getRowCount();
+                batch.release();
+            }
+        }, ColumnBatch.DEFAULT_CAPACITY);
+        parser.process(true, formatted);
+        return rows[0];
+    }
+}
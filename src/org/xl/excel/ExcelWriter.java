@@ -0,0 +1,519 @@
+package org.xl.excel;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xl.excel.components.Sheet;
+import org.xl.excel.parser.RowListener;
+
+/**
+ * Writes Sheets to an XLSX file, streaming the rows straight into the
+ * worksheet parts of the ZIP file so memory does not grow with the number
+ * of rows.
+ * <p>
+ * The shared strings table is built while the rows are written and stored
+ * when the writer is closed. It holds at most getMaxSharedStrings()
+ * distinct strings, later new strings are written as inline strings so a
+ * column of unique values cannot exhaust the heap.
+ * <p>
+ * Cells are typed from the Column Types: Number Columns are written as
+ * numbers, Date Columns as dates (m/d/yy) when the cell holds an Excel
+ * serial date and Boolean Columns as booleans. Values which do not fit the
+ * Column Type and all other Columns are written as strings, empty cells are
+ * skipped. Without Column Types every cell holding a plain number is
+ * written as a number, unless a leading zero like in 00123 makes it a code.
+ * Headers are always written as strings.
+ * <p>
+ * Sheets are written with writeSheet(), row by row with startSheet(),
+ * writeRow() and endSheet(), or by setting the writer as the RowListener of
+ * an ExcelParser, which converts a workbook to XLSX while it is parsed. The
+ * file is complete once close() is called.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class ExcelWriter implements RowListener, Closeable {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ExcelWriter.class);
+
+    public static final int DEFAULT_MAX_SHARED_STRINGS = 1 << 18;
+    public static final int MAX_ROWS = 1 << 20;
+
+    private static final String MAIN_NS =
+            "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String REL_NS =
+            "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String PACKAGE_REL_NS =
+            "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String CONTENT_TYPE =
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.";
+    private static final String XML_DECLARATION =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+    private static final int MAX_SHEET_NAME = 31;
+
+    private static final byte STRING = 0;
+    private static final byte NUMBER = 1;
+    private static final byte DATE = 2;
+    private static final byte BOOLEAN = 3;
+    //No Column Types, numbers are detected per cell
+    private static final byte DETECT = 4;
+
+    private final ZipOutputStream zip;
+    private final Writer out;
+    private final Map<String, Integer> sharedStrings =
+            new LinkedHashMap<String, Integer>();
+    private final List<String> sheetNames = new ArrayList<String>();
+    private final Set<String> usedSheetNames = new HashSet<String>();
+    private int maxSharedStrings = DEFAULT_MAX_SHARED_STRINGS;
+    private long sharedStringCells;
+    private String[] columnLetters = new String[0];
+    private byte[] columnKinds = new byte[0];
+    private boolean sheetOpen;
+    private boolean closed;
+    private int rowNumber;
+
+    public ExcelWriter(OutputStream output) {
+        this.zip = new ZipOutputStream(new BufferedOutputStream(output, 65536));
+        this.out = new BufferedWriter(new OutputStreamWriter(zip,
+                StandardCharsets.UTF_8), 65536);
+    }
+
+    /**
+     * Creates a writer for the XLSX file.
+     *
+     * @param xlsxFile
+     * @return ExcelWriter
+     * @throws IOException
+     */
+    public static ExcelWriter create(File xlsxFile) throws IOException {
+        return new ExcelWriter(new FileOutputStream(xlsxFile));
+    }
+
+    public int getMaxSharedStrings() {
+        return maxSharedStrings;
+    }
+
+    /**
+     * Limits the number of distinct strings kept in the shared strings
+     * table, DEFAULT_MAX_SHARED_STRINGS by default.
+     *
+     * @param maxSharedStrings
+     */
+    public void setMaxSharedStrings(int maxSharedStrings) {
+        this.maxSharedStrings = maxSharedStrings;
+    }
+
+    /**
+     * Writes the Sheet, its Headers followed by its rows.
+     *
+     * @param sheet
+     * @throws IOException
+     */
+    public void writeSheet(Sheet sheet) throws IOException {
+        startSheet(sheet.getSheetName(), sheet.getColumnTypes());
+        List<String> headers = sheet.getHeaderList();
+        writeHeaderRow(headers.toArray(new String[headers.size()]));
+        int rowCount = sheet.getRowCount();
+        for (int i = 0; i < rowCount; i++)
+            writeRow(sheet.getCellValues(i, false));
+        endSheet();
+    }
+
+    /**
+     * Starts a new Sheet, ending the current one. The Sheet name is made
+     * valid and unique for Excel.
+     *
+     * @param sheetName
+     * @param columnTypes Column Types as in Sheet.getColumnTypes() or null
+     * @throws IOException
+     */
+    public void startSheet(String sheetName, List<String> columnTypes)
+            throws IOException {
+        checkOpen();
+        if (sheetOpen)
+            endSheet();
+        String name = sheetName(sheetName);
+        sheetNames.add(name);
+        columnKinds = new byte[null == columnTypes ? 0 : columnTypes.size()];
+        for (int i = 0; i < columnKinds.length; i++)
+            columnKinds[i] = kind(columnTypes.get(i));
+        out.flush();
+        zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheetNames.size() + ".xml"));
+        out.write(XML_DECLARATION);
+        out.write("<worksheet xmlns=\"" + MAIN_NS + "\"><sheetData>");
+        sheetOpen = true;
+        rowNumber = 0;
+    }
+
+    /**
+     * Writes the Headers as the next row of the current Sheet, every cell
+     * as a string whatever its Column Type.
+     *
+     * @param headers
+     * @throws IOException
+     */
+    public void writeHeaderRow(String[] headers) throws IOException {
+        writeRow(headers, true);
+    }
+
+    /**
+     * Writes the next row of the current Sheet.
+     *
+     * @param cells unquoted cell values
+     * @throws IOException
+     */
+    public void writeRow(String[] cells) throws IOException {
+        writeRow(cells, false);
+    }
+
+    private void writeRow(String[] cells, boolean headers) throws IOException {
+        if (!sheetOpen)
+            throw new IllegalStateException("No Sheet started");
+        if (rowNumber >= MAX_ROWS)
+            throw new IllegalStateException("Sheet " + sheetNames.get(sheetNames.size() - 1) +
+                    " exceeds the " + MAX_ROWS + " rows of a worksheet");
+        String row = Integer.toString(++rowNumber);
+        out.write("<row r=\"");
+        out.write(row);
+        out.write("\">");
+        for (int c = 0; c < cells.length; c++) {
+            String value = cells[c];
+            if (null == value || value.length() == 0)
+                continue;
+            out.write("<c r=\"");
+            out.write(columnLetters(c));
+            out.write(row);
+            byte kind = headers ? STRING : c < columnKinds.length ? columnKinds[c] : DETECT;
+            if (kind == BOOLEAN && ("TRUE".equalsIgnoreCase(value) ||
+                    "FALSE".equalsIgnoreCase(value))) {
+                out.write("\" t=\"b\"><v>");
+                out.write("TRUE".equalsIgnoreCase(value) ? '1' : '0');
+                out.write("</v></c>");
+                continue;
+            }
+            if (kind != STRING && kind != BOOLEAN &&
+                    !(kind == DETECT && hasLeadingZero(value))) {
+                double number = parseNumber(value);
+                if (!Double.isNaN(number)) {
+                    out.write(kind == DATE ? "\" s=\"1\"><v>" : "\"><v>");
+                    out.write(Double.toString(number));
+                    out.write("</v></c>");
+                    continue;
+                }
+            }
+            writeString(value);
+        }
+        out.write("</row>");
+    }
+
+    /**
+     * Ends the current Sheet.
+     *
+     * @throws IOException
+     */
+    public void endSheet() throws IOException {
+        if (!sheetOpen)
+            return;
+        out.write("</sheetData></worksheet>");
+        sheetOpen = false;
+    }
+
+    /**
+     * Ends the current Sheet and writes the shared strings table, styles
+     * and workbook parts. A workbook without Sheets gets an empty one.
+     */
+    public void close() throws IOException {
+        if (closed)
+            return;
+        try {
+            if (sheetNames.isEmpty())
+                startSheet("Sheet1", null);
+            endSheet();
+            writeSharedStrings();
+            writeStyles();
+            writeWorkbook();
+            out.flush();
+            zip.closeEntry();
+            LOGGER.debug("Wrote " + sheetNames.size() + " Sheets with " +
+                    sharedStrings.size() + " shared strings");
+        } finally {
+            closed = true;
+            zip.close();
+        }
+    }
+
+    public void startSheet(int sheetIndex, String sheetName) {
+        try {
+            startSheet(sheetName, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void headerRow(List<String> headers) {
+        try {
+            writeHeaderRow(headers.toArray(new String[headers.size()]));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void row(String row) {
+        try {
+            writeRow(Sheet.splitRow(row, false));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void endSheet(Sheet sheet) {
+        try {
+            endSheet();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        Integer index = sharedStrings.get(value);
+        if (null == index && sharedStrings.size() < maxSharedStrings) {
+            index = sharedStrings.size();
+            sharedStrings.put(value, index);
+        }
+        if (null != index) {
+            sharedStringCells++;
+            out.write("\" t=\"s\"><v>");
+            out.write(Integer.toString(index));
+            out.write("</v></c>");
+        } else {
+            out.write("\" t=\"inlineStr\"><is>");
+            writeText(value);
+            out.write("</is></c>");
+        }
+    }
+
+    /**
+     * Writes a t element, keeping leading and trailing spaces.
+     */
+    private void writeText(String value) throws IOException {
+        boolean preserve = Character.isWhitespace(value.charAt(0)) ||
+                Character.isWhitespace(value.charAt(value.length() - 1));
+        out.write(preserve ? "<t xml:space=\"preserve\">" : "<t>");
+        writeEscaped(value);
+        out.write("</t>");
+    }
+
+    /**
+     * Writes the text with the XML special characters escaped, characters
+     * XML does not allow are dropped.
+     */
+    private void writeEscaped(String value) throws IOException {
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char ch = value.charAt(i);
+            String replacement;
+            if (ch == '&')
+                replacement = "&amp;";
+            else if (ch == '<')
+                replacement = "&lt;";
+            else if (ch == '>')
+                replacement = "&gt;";
+            else if (ch == '"')
+                replacement = "&quot;";
+            else if (ch < 0x20 && ch != '\t' && ch != '\n' && ch != '\r' ||
+                    ch == 0xFFFE || ch == 0xFFFF)
+                replacement = "";
+            else
+                continue;
+            out.write(value, start, i - start);
+            out.write(replacement);
+            start = i + 1;
+        }
+        out.write(value, start, length - start);
+    }
+
+    private void writeSharedStrings() throws IOException {
+        out.flush();
+        zip.putNextEntry(new ZipEntry("xl/sharedStrings.xml"));
+        out.write(XML_DECLARATION);
+        out.write("<sst xmlns=\"" + MAIN_NS + "\" count=\"" + sharedStringCells +
+                "\" uniqueCount=\"" + sharedStrings.size() + "\">");
+        for (String value : sharedStrings.keySet()) {
+            out.write("<si>");
+            writeText(value);
+            out.write("</si>");
+        }
+        out.write("</sst>");
+    }
+
+    private void writeStyles() throws IOException {
+        out.flush();
+        zip.putNextEntry(new ZipEntry("xl/styles.xml"));
+        out.write(XML_DECLARATION);
+        out.write("<styleSheet xmlns=\"" + MAIN_NS + "\">" +
+                "<fonts count=\"1\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>" +
+                "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill>" +
+                "<fill><patternFill patternType=\"gray125\"/></fill></fills>" +
+                "<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>" +
+                "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>" +
+                "<cellXfs count=\"2\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>" +
+                "<xf numFmtId=\"14\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/></cellXfs>" +
+                "<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>" +
+                "</styleSheet>");
+    }
+
+    private void writeWorkbook() throws IOException {
+        int sheets = sheetNames.size();
+        out.flush();
+        zip.putNextEntry(new ZipEntry("xl/workbook.xml"));
+        out.write(XML_DECLARATION);
+        out.write("<workbook xmlns=\"" + MAIN_NS + "\" xmlns:r=\"" + REL_NS + "\"><sheets>");
+        for (int i = 0; i < sheets; i++) {
+            out.write("<sheet name=\"");
+            writeEscaped(sheetNames.get(i));
+            out.write("\" sheetId=\"" + (i + 1) + "\" r:id=\"rId" + (i + 1) + "\"/>");
+        }
+        out.write("</sheets></workbook>");
+
+        out.flush();
+        zip.putNextEntry(new ZipEntry("xl/_rels/workbook.xml.rels"));
+        out.write(XML_DECLARATION);
+        out.write("<Relationships xmlns=\"" + PACKAGE_REL_NS + "\">");
+        for (int i = 0; i < sheets; i++) {
+            out.write("<Relationship Id=\"rId" + (i + 1) + "\" Type=\"" + REL_NS +
+                    "/worksheet\" Target=\"worksheets/sheet" + (i + 1) + ".xml\"/>");
+        }
+        out.write("<Relationship Id=\"rId" + (sheets + 1) + "\" Type=\"" + REL_NS +
+                "/styles\" Target=\"styles.xml\"/>");
+        out.write("<Relationship Id=\"rId" + (sheets + 2) + "\" Type=\"" + REL_NS +
+                "/sharedStrings\" Target=\"sharedStrings.xml\"/>");
+        out.write("</Relationships>");
+
+        out.flush();
+        zip.putNextEntry(new ZipEntry("_rels/.rels"));
+        out.write(XML_DECLARATION);
+        out.write("<Relationships xmlns=\"" + PACKAGE_REL_NS + "\">" +
+                "<Relationship Id=\"rId1\" Type=\"" + REL_NS +
+                "/officeDocument\" Target=\"xl/workbook.xml\"/></Relationships>");
+
+        out.flush();
+        zip.putNextEntry(new ZipEntry("[Content_Types].xml"));
+        out.write(XML_DECLARATION);
+        out.write("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">" +
+                "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>" +
+                "<Default Extension=\"xml\" ContentType=\"application/xml\"/>" +
+                "<Override PartName=\"/xl/workbook.xml\" ContentType=\"" + CONTENT_TYPE + "sheet.main+xml\"/>" +
+                "<Override PartName=\"/xl/styles.xml\" ContentType=\"" + CONTENT_TYPE + "styles+xml\"/>" +
+                "<Override PartName=\"/xl/sharedStrings.xml\" ContentType=\"" + CONTENT_TYPE + "sharedStrings+xml\"/>");
+        for (int i = 0; i < sheets; i++) {
+            out.write("<Override PartName=\"/xl/worksheets/sheet" + (i + 1) +
+                    ".xml\" ContentType=\"" + CONTENT_TYPE + "worksheet+xml\"/>");
+        }
+        out.write("</Types>");
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("ExcelWriter is closed");
+    }
+
+    private String columnLetters(int column) {
+        if (column >= columnLetters.length) {
+            String[] letters = new String[Math.max(column + 1, columnLetters.length * 2)];
+            System.arraycopy(columnLetters, 0, letters, 0, columnLetters.length);
+            columnLetters = letters;
+        }
+        String letters = columnLetters[column];
+        if (null == letters) {
+            StringBuilder name = new StringBuilder();
+            for (int c = column + 1; c > 0; c = (c - 1) / 26)
+                name.insert(0, (char) ('A' + (c - 1) % 26));
+            letters = name.toString();
+            columnLetters[column] = letters;
+        }
+        return letters;
+    }
+
+    /**
+     * Returns an Excel Sheet name: at most 31 characters, without the
+     * characters Excel does not allow and different from the previous
+     * Sheet names ignoring case.
+     */
+    private String sheetName(String sheetName) {
+        String base = null == sheetName ? "" : sheetName.replaceAll("[\\[\\]:*?/\\\\]", "_");
+        if (base.trim().length() == 0)
+            base = "Sheet" + (sheetNames.size() + 1);
+        if (base.length() > MAX_SHEET_NAME)
+            base = base.substring(0, MAX_SHEET_NAME);
+        String name = base;
+        for (int i = 2; !usedSheetNames.add(name.toLowerCase()); i++) {
+            String suffix = " (" + i + ")";
+            name = base.substring(0, Math.min(base.length(),
+                    MAX_SHEET_NAME - suffix.length())) + suffix;
+        }
+        return name;
+    }
+
+    private static byte kind(String columnType) {
+        if ("Number".equals(columnType))
+            return NUMBER;
+        if ("Date".equals(columnType))
+            return DATE;
+        if ("Boolean".equals(columnType))
+            return BOOLEAN;
+        return STRING;
+    }
+
+    /**
+     * Returns true when the integer part starts with a 0 followed by more
+     * digits, as codes like 00123 do.
+     */
+    private static boolean hasLeadingZero(String value) {
+        int i = value.startsWith("-") || value.startsWith("+") ? 1 : 0;
+        return value.length() > i + 1 && value.charAt(i) == '0' &&
+                value.charAt(i + 1) >= '0' && value.charAt(i + 1) <= '9';
+    }
+
+    /**
+     * Returns the value of a plain decimal number or NaN, text like 1,234,
+     * $5 or NaN is not a number.
+     */
+    private static double parseNumber(String value) {
+        int length = value.length();
+        boolean digits = false;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9')
+                digits = true;
+            else if (!(c == '-' || c == '+' || c == '.' || c == 'E' || c == 'e'))
+                return Double.NaN;
+        }
+        if (!digits)
+            return Double.NaN;
+        try {
+            double number = Double.parseDouble(value);
+            return Double.isInfinite(number) ? Double.NaN : number;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package org.xl.excel;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xl.excel.components.ColumnBatch;
+import org.xl.excel.parser.BatchListener;
+
+/**
+ * Writes the parsed rows as JSON Lines, one JSON object per data row keyed
+ * by the Headers of the Sheet:
+ * <pre>
+ * {"Name":"Widget","Price":9.95,"Sold":"2024-01-05","Active":true}
+ * </pre>
+ * Set the writer as the BatchListener of an ExcelParser. The values keep
+ * their type: numbers are JSON numbers, booleans true or false, dates
+ * ISO-8601 (yyyy-MM-dd, or yyyy-MM-ddTHH:mm:ss[.SSS] when the date has a
+ * time, 1900 date system with Excel's nonexistent 1900-02-29 as serial 60)
+ * and strings and errors JSON strings. Empty cells
+ * are left out unless setIncludeNulls() is set. Empty Headers, and cells
+ * right of the Headers, get the key "Column n", duplicate Headers an _n
+ * suffix.
+ * <p>
+ * The JSON is written as UTF-8 straight into a byte buffer which is drained
+ * to the channel whenever it is full, no String is built per row. Every
+ * batch is released once written. The output is complete once close() is
+ * called, which closes the channel.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class JsonLinesWriter implements BatchListener, Closeable {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(JsonLinesWriter.class);
+
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    //Days from the Excel epoch (Dec 30, 1899) to 1970-01-01, valid from
+    //serial 61 (Mar 1, 1900). Excel counts Feb 29, 1900 as serial 60, so
+    //earlier serials are one day later
+    private static final long EPOCH_SERIAL = 25569;
+    private static final long LEAP_DAY_SERIAL = 60;
+    private static final long MILLIS_PER_DAY = 86400000L;
+    private static final byte[] TRUE = bytes("true");
+    private static final byte[] FALSE = bytes("false");
+    private static final byte[] NULL = bytes("null");
+    private static final byte[] HEX = bytes("0123456789abcdef");
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private String sheetKey;
+    private boolean includeNulls;
+    private int sheetIndex = -1;
+    //Encoded ,"key": of every Column
+    private List<byte[]> keys = new ArrayList<byte[]>();
+    private byte[] sheetMember;
+    private final byte[] digits = new byte[20];
+    private long rows;
+    private boolean closed;
+
+    public JsonLinesWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param channel
+     * @param bufferSize Bytes buffered before writing to the channel
+     */
+    public JsonLinesWriter(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(Math.max(64, bufferSize));
+    }
+
+    /**
+     * Creates a writer for the file.
+     *
+     * @param file
+     * @return JsonLinesWriter
+     * @throws IOException
+     */
+    public static JsonLinesWriter create(File file) throws IOException {
+        return new JsonLinesWriter(FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /**
+     * Adds the Sheet name under the key as the first member of every
+     * object, none by default. Useful when more than one Sheet is written.
+     *
+     * @param sheetKey
+     */
+    public void setSheetKey(String sheetKey) {
+        this.sheetKey = sheetKey;
+    }
+
+    /**
+     * Writes empty cells as null instead of leaving them out, false by
+     * default.
+     *
+     * @param includeNulls
+     */
+    public void setIncludeNulls(boolean includeNulls) {
+        this.includeNulls = includeNulls;
+    }
+
+    public long getRowCount() {
+        return rows;
+    }
+
+    public void batch(ColumnBatch batch) {
+        try {
+            if (closed)
+                throw new IllegalStateException("JsonLinesWriter is closed");
+            if (batch.getSheetIndex() != sheetIndex)
+                startSheet(batch);
+            int rowCount = batch.getRowCount();
+            int columns = batch.getColumnCount();
+            while (keys.size() < columns)
+                keys.add(key("Column " + (keys.size() + 1)));
+            for (int r = 0; r < rowCount; r++) {
+                put((byte) '{');
+                boolean first = true;
+                if (null != sheetMember) {
+                    put(sheetMember, 0, sheetMember.length);
+                    first = false;
+                }
+                for (int c = 0; c < columns; c++) {
+                    byte kind = batch.getKind(c, r);
+                    if (kind == ColumnBatch.NULL && !includeNulls)
+                        continue;
+                    byte[] key = keys.get(c);
+                    //Keys are stored with a leading comma
+                    put(key, first ? 1 : 0, first ? key.length - 1 : key.length);
+                    first = false;
+                    switch (kind) {
+                        case ColumnBatch.NUMBER:
+                            putNumber(batch.getNumber(c, r));
+                            break;
+                        case ColumnBatch.DATE:
+                            putDate(batch.getNumber(c, r));
+                            break;
+                        case ColumnBatch.BOOLEAN:
+                            byte[] value = batch.getNumber(c, r) != 0 ? TRUE : FALSE;
+                            put(value, 0, value.length);
+                            break;
+                        case ColumnBatch.NULL:
+                            put(NULL, 0, NULL.length);
+                            break;
+                        default:
+                            putString(batch.getString(c, r));
+                            break;
+                    }
+                }
+                put((byte) '}');
+                put((byte) '\n');
+            }
+            rows += rowCount;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            batch.release();
+        }
+    }
+
+    /**
+     * Writes the buffered JSON to the channel.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            flush();
+            LOGGER.debug("Wrote " + rows + " JSON Lines");
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Encodes the keys of the Sheet's Headers.
+     */
+    private void startSheet(ColumnBatch batch) {
+        sheetIndex = batch.getSheetIndex();
+        List<String> headers = batch.getHeaders();
+        keys = new ArrayList<byte[]>(headers.size());
+        Set<String> used = new HashSet<String>();
+        for (int c = 0; c < headers.size(); c++) {
+            String header = headers.get(c);
+            if (null == header || header.trim().length() == 0)
+                header = "Column " + (c + 1);
+            String unique = header;
+            for (int n = 2; !used.add(unique); n++)
+                unique = header + "_" + n;
+            keys.add(key(unique));
+        }
+        sheetMember = null;
+        if (null != sheetKey) {
+            byte[] key = key(sheetKey);
+            byte[] name = encode(null == batch.getSheetName() ? "" : batch.getSheetName());
+            sheetMember = new byte[key.length - 1 + name.length];
+            System.arraycopy(key, 1, sheetMember, 0, key.length - 1);
+            System.arraycopy(name, 0, sheetMember, key.length - 1, name.length);
+        }
+    }
+
+    /**
+     * Returns ,"key": as UTF-8.
+     */
+    private static byte[] key(String name) {
+        byte[] encoded = encode(name);
+        byte[] key = new byte[encoded.length + 2];
+        key[0] = ',';
+        System.arraycopy(encoded, 0, key, 1, encoded.length);
+        key[key.length - 1] = ':';
+        return key;
+    }
+
+    /**
+     * Returns the value as an escaped JSON string in UTF-8.
+     */
+    private static byte[] encode(String value) {
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                json.append('\\').append(c);
+            else if (c == '\n')
+                json.append("\\n");
+            else if (c == '\r')
+                json.append("\\r");
+            else if (c == '\t')
+                json.append("\\t");
+            else if (c < 0x20)
+                json.append(String.format("\\u%04x", (int) c));
+            else
+                json.append(c);
+        }
+        return json.append('"').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Puts a JSON number, integers without a fraction. NaN and infinite
+     * values are not valid JSON and become null.
+     */
+    private void putNumber(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            put(NULL, 0, NULL.length);
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            putLong((long) value, 1);
+        } else {
+            String text = Double.toString(value);
+            ensure(text.length());
+            for (int i = 0; i < text.length(); i++)
+                buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    /**
+     * Puts the Excel serial date as an ISO-8601 JSON string.
+     */
+    private void putDate(double serial) throws IOException {
+        if (Double.isNaN(serial) || Double.isInfinite(serial)) {
+            put(NULL, 0, NULL.length);
+            return;
+        }
+        long millis = Math.round(serial * MILLIS_PER_DAY);
+        long days = Math.floorDiv(millis, MILLIS_PER_DAY);
+        long time = millis - days * MILLIS_PER_DAY;
+        put((byte) '"');
+        if (days == LEAP_DAY_SERIAL) {
+            putLong(1900, 4);
+            put((byte) '-');
+            putLong(2, 2);
+            put((byte) '-');
+            putLong(29, 2);
+        } else {
+            LocalDate date = LocalDate.ofEpochDay(days - EPOCH_SERIAL +
+                    (days < LEAP_DAY_SERIAL ? 1 : 0));
+            int year = date.getYear();
+            if (year < 0) {
+                put((byte) '-');
+                year = -year;
+            }
+            putLong(year, 4);
+            put((byte) '-');
+            putLong(date.getMonthValue(), 2);
+            put((byte) '-');
+            putLong(date.getDayOfMonth(), 2);
+        }
+        if (time > 0) {
+            put((byte) 'T');
+            putLong(time / 3600000, 2);
+            put((byte) ':');
+            putLong(time / 60000 % 60, 2);
+            put((byte) ':');
+            putLong(time / 1000 % 60, 2);
+            if (time % 1000 != 0) {
+                put((byte) '.');
+                putLong(time % 1000, 3);
+            }
+        }
+        put((byte) '"');
+    }
+
+    /**
+     * Puts the decimal digits of the value, zero padded to width.
+     */
+    private void putLong(long value, int width) throws IOException {
+        if (value < 0) {
+            put((byte) '-');
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (count < width)
+            digits[count++] = '0';
+        ensure(count);
+        while (count > 0)
+            buffer.put(digits[--count]);
+    }
+
+    /**
+     * Puts the value as an escaped JSON string in UTF-8, unpaired
+     * surrogates become '?'.
+     */
+    private void putString(String value) throws IOException {
+        put((byte) '"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            ensure(6);
+            if (c == '"' || c == '\\') {
+                buffer.put((byte) '\\').put((byte) c);
+            } else if (c >= 0x20 && c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c == '\n') {
+                buffer.put((byte) '\\').put((byte) 'n');
+            } else if (c == '\r') {
+                buffer.put((byte) '\\').put((byte) 'r');
+            } else if (c == '\t') {
+                buffer.put((byte) '\\').put((byte) 't');
+            } else if (c < 0x20) {
+                buffer.put((byte) '\\').put((byte) 'u').put((byte) '0').put((byte) '0')
+                        .put(HEX[c >>> 4]).put(HEX[c & 0xF]);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >>> 6)).put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length &&
+                    Character.isLowSurrogate(value.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | code >>> 18)).put((byte) (0x80 | code >>> 12 & 0x3F))
+                        .put((byte) (0x80 | code >>> 6 & 0x3F)).put((byte) (0x80 | code & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | c >>> 12)).put((byte) (0x80 | c >>> 6 & 0x3F))
+                        .put((byte) (0x80 | c & 0x3F));
+            }
+        }
+        put((byte) '"');
+    }
+
+    private void put(byte value) throws IOException {
+        ensure(1);
+        buffer.put(value);
+    }
+
+    private void put(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(1);
+            int chunk = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    private void ensure(int length) throws IOException {
+        if (buffer.remaining() < length)
+            flush();
+    }
+
+    private static byte[] bytes(String ascii) {
+        return ascii.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,341 @@
+package org.xl.excel.arrow;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xl.excel.components.ColumnBatch;
+import org.xl.excel.parser.BatchListener;
+
+/**
+ * Writes the rows of a Sheet as an Arrow IPC stream: a Schema message
+ * followed by one RecordBatch message per ColumnBatch and the end of stream
+ * marker, readable by pyarrow.ipc.open_stream(), Spark and the other Arrow
+ * implementations.
+ * <p>
+ * Set the writer as the BatchListener of an XLSXParser or XLSParser. Every
+ * batch is filled into ArrowVectors held in direct ByteBuffers, which are
+ * written to the channel as they are and reused for the next batch, and the
+ * batch is released right away. The stream is complete once close() is
+ * called.
+ * <p>
+ * The schema is taken from the Headers and the cells of the first batch
+ * (see ArrowVector.getType(ColumnBatch, int)) unless Column Types are set.
+ * An Arrow stream has a single schema, which cannot be widened once written,
+ * so a later cell which does not fit the type of its Column, or lies right
+ * of the first batch's Columns, throws an IllegalStateException before its
+ * batch is written. Set the Column Types when the first rows do not show
+ * the type of every Column, or call setDropMismatchedCells(true) to write
+ * such cells as null instead; they are counted in getDroppedCells() and
+ * logged as a warning on close(). An Arrow stream holds one Sheet: process
+ * a single Sheet, a batch of another Sheet throws an IllegalStateException.
+ * <p>
+ * Only the JDK is used, the FlatBuffers metadata is encoded by
+ * FlatBufferWriter.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class ArrowStreamWriter implements BatchListener, Closeable {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ArrowStreamWriter.class);
+
+    private static final int CONTINUATION = 0xFFFFFFFF;
+    //MetadataVersion V5
+    private static final int METADATA_VERSION = 4;
+    //MessageHeader union
+    private static final int SCHEMA = 1;
+    private static final int RECORD_BATCH = 3;
+    //Type union
+    private static final int FLOATING_POINT = 3;
+    private static final int UTF8 = 5;
+    private static final int BOOL = 6;
+    private static final int TIMESTAMP = 10;
+    private static final int DOUBLE_PRECISION = 2;
+    private static final int MILLISECOND = 1;
+    private static final int ALIGNMENT = 8;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer prefix = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer padding = ByteBuffer.allocate(ALIGNMENT);
+    private List<String> columnTypes;
+    private ArrowVector[] vectors;
+    private int sheetIndex;
+    private long rows;
+    private long droppedCells;
+    private boolean dropMismatchedCells;
+    private boolean closed;
+
+    public ArrowStreamWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Creates a writer for the file.
+     *
+     * @param file
+     * @return ArrowStreamWriter
+     * @throws IOException
+     */
+    public static ArrowStreamWriter create(File file) throws IOException {
+        return new ArrowStreamWriter(FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /**
+     * Sets the Column Types, as in Sheet.getColumnTypes(), to build the
+     * schema from instead of the first batch. Columns without a type are
+     * UTF8.
+     * <p>
+     * Must be set before the first batch
+     *
+     * @param columnTypes
+     */
+    public void setColumnTypes(List<String> columnTypes) {
+        this.columnTypes = columnTypes;
+    }
+
+    /**
+     * Sets whether cells which do not fit the schema are written as null
+     * instead of failing the batch. Default is false.
+     *
+     * @param dropMismatchedCells
+     */
+    public void setDropMismatchedCells(boolean dropMismatchedCells) {
+        this.dropMismatchedCells = dropMismatchedCells;
+    }
+
+    /**
+     * Returns the number of cells written as null because they did not fit
+     * the schema, always 0 unless setDropMismatchedCells(true) was called.
+     */
+    public long getDroppedCells() {
+        return droppedCells;
+    }
+
+    public long getRowCount() {
+        return rows;
+    }
+
+    public void batch(ColumnBatch batch) {
+        try {
+            if (closed)
+                throw new IllegalStateException("ArrowStreamWriter is closed");
+            if (null == vectors)
+                writeSchema(batch);
+            else if (batch.getSheetIndex() != sheetIndex)
+                throw new IllegalStateException("An Arrow stream holds a single Sheet, " +
+                        "cannot add Sheet " + batch.getSheetName());
+            if (!dropMismatchedCells)
+                checkSchema(batch);
+            int count = batch.getRowCount();
+            for (int c = 0; c < vectors.length; c++)
+                droppedCells += vectors[c].fill(batch, c);
+            for (int c = vectors.length; c < batch.getColumnCount(); c++) {
+                for (int r = 0; r < count; r++) {
+                    if (!batch.isNull(c, r))
+                        droppedCells++;
+                }
+            }
+            writeRecordBatch(count);
+            rows += count;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            batch.release();
+        }
+    }
+
+    /**
+     * Writes the end of stream marker, and a schema without fields when no
+     * batch was written, and closes the channel.
+     */
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (null == vectors)
+                writeMessage(SCHEMA, schema(new ArrayList<FlatBufferWriter.Table>()), 0);
+            prefix.clear();
+            prefix.putInt(CONTINUATION).putInt(0).flip();
+            write(prefix);
+            if (droppedCells > 0)
+                LOGGER.warn(droppedCells + " cells did not fit the Arrow schema and were written as null");
+            LOGGER.debug("Wrote " + rows + " rows to the Arrow stream");
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeSchema(ColumnBatch batch) throws IOException {
+        sheetIndex = batch.getSheetIndex();
+        List<String> headers = batch.getHeaders();
+        int columns = Math.max(headers.size(), batch.getColumnCount());
+        vectors = new ArrowVector[columns];
+        List<FlatBufferWriter.Table> fields = new ArrayList<FlatBufferWriter.Table>();
+        for (int c = 0; c < columns; c++) {
+            byte type = null != columnTypes ?
+                    ArrowVector.getType(c < columnTypes.size() ? columnTypes.get(c) : null) :
+                    ArrowVector.getType(batch, c);
+            vectors[c] = new ArrowVector(type, batch.getCapacity());
+            String name = c < headers.size() ? headers.get(c) : null;
+            fields.add(field(null == name ? "" : name, type));
+        }
+        writeMessage(SCHEMA, schema(fields), 0);
+    }
+
+    /**
+     * Throws an IllegalStateException naming the first cell of the batch
+     * which does not fit the schema.
+     */
+    private void checkSchema(ColumnBatch batch) {
+        int count = batch.getRowCount();
+        for (int c = 0; c < batch.getColumnCount(); c++) {
+            if (c < vectors.length && vectors[c].getType() == ArrowVector.UTF8)
+                continue;
+            for (int r = 0; r < count; r++) {
+                byte kind = batch.getKind(c, r);
+                if (kind == ColumnBatch.NULL || (c < vectors.length && vectors[c].fits(kind)))
+                    continue;
+                String cell = "Cell '" + batch.getValue(c, r) + "' of row " + (rows + r + 1) +
+                        ", Column " + (c + 1);
+                throw new IllegalStateException(c < vectors.length ?
+                        cell + " does not fit the " + typeName(vectors[c].getType()) +
+                                " type of its Column in the Arrow schema" :
+                        cell + " is right of the " + vectors.length +
+                                " Columns of the Arrow schema");
+            }
+        }
+    }
+
+    private static String typeName(byte type) {
+        switch (type) {
+            case ArrowVector.FLOAT64:
+                return "float64";
+            case ArrowVector.TIMESTAMP:
+                return "timestamp";
+            case ArrowVector.BOOL:
+                return "bool";
+            default:
+                return "utf8";
+        }
+    }
+
+    private void writeRecordBatch(int length) throws IOException {
+        //FieldNodes: length and null count, Buffers: offset and length
+        long[] nodes = new long[2 * vectors.length];
+        List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+        for (int c = 0; c < vectors.length; c++) {
+            ArrowVector vector = vectors[c];
+            nodes[2 * c] = length;
+            nodes[2 * c + 1] = vector.getNullCount();
+            buffers.add(vector.getValidity());
+            if (vector.getType() == ArrowVector.UTF8) {
+                buffers.add(vector.getOffsets());
+                buffers.add(vector.getData());
+            } else {
+                buffers.add(vector.getValues());
+            }
+        }
+        long[] bufferEntries = new long[2 * buffers.size()];
+        long bodyLength = 0;
+        for (int i = 0; i < buffers.size(); i++) {
+            int size = buffers.get(i).remaining();
+            bufferEntries[2 * i] = bodyLength;
+            bufferEntries[2 * i + 1] = size;
+            bodyLength += pad(size);
+        }
+        FlatBufferWriter.Table recordBatch = new FlatBufferWriter.Table(3)
+                .putLong(0, length)
+                .putStructs(1, nodes)
+                .putStructs(2, bufferEntries);
+        writeMessage(RECORD_BATCH, recordBatch, bodyLength);
+        for (ByteBuffer buffer : buffers) {
+            int size = buffer.remaining();
+            write(buffer);
+            writePadding(size);
+        }
+    }
+
+    /**
+     * Writes the encapsulated message: continuation marker, metadata length
+     * and the Message flatbuffer, padded to 8 bytes. The body follows.
+     */
+    private void writeMessage(int headerType, FlatBufferWriter.Table header,
+                              long bodyLength) throws IOException {
+        FlatBufferWriter.Table message = new FlatBufferWriter.Table(4)
+                .putShort(0, METADATA_VERSION)
+                .putByte(1, headerType)
+                .putTable(2, header)
+                .putLong(3, bodyLength);
+        byte[] metadata = FlatBufferWriter.finish(message);
+        prefix.clear();
+        prefix.putInt(CONTINUATION).putInt(metadata.length).flip();
+        write(prefix);
+        write(ByteBuffer.wrap(metadata));
+    }
+
+    private static FlatBufferWriter.Table schema(List<FlatBufferWriter.Table> fields) {
+        //Little endian
+        return new FlatBufferWriter.Table(2)
+                .putShort(0, 0)
+                .putTables(1, fields);
+    }
+
+    private static FlatBufferWriter.Table field(String name, byte type) {
+        int typeId;
+        FlatBufferWriter.Table typeTable;
+        switch (type) {
+            case ArrowVector.FLOAT64:
+                typeId = FLOATING_POINT;
+                typeTable = new FlatBufferWriter.Table(1).putShort(0, DOUBLE_PRECISION);
+                break;
+            case ArrowVector.TIMESTAMP:
+                typeId = TIMESTAMP;
+                typeTable = new FlatBufferWriter.Table(1).putShort(0, MILLISECOND);
+                break;
+            case ArrowVector.BOOL:
+                typeId = BOOL;
+                typeTable = new FlatBufferWriter.Table(0);
+                break;
+            default:
+                typeId = UTF8;
+                typeTable = new FlatBufferWriter.Table(0);
+                break;
+        }
+        return new FlatBufferWriter.Table(6)
+                .putString(0, name)
+                .putByte(1, 1)
+                .putByte(2, typeId)
+                .putTable(3, typeTable)
+                .putTables(5, new ArrayList<FlatBufferWriter.Table>());
+    }
+
+    private void writePadding(int size) throws IOException {
+        int pad = (int) (pad(size) - size);
+        if (pad == 0)
+            return;
+        padding.clear().limit(pad);
+        write(padding);
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    private static long pad(long size) {
+        return (size + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+}
@@ -0,0 +1,331 @@
+package org.xl.excel.arrow;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.xl.excel.components.ColumnBatch;
+
+/**
+ * One Column of a ColumnBatch in the Arrow columnar layout, held in direct
+ * little endian ByteBuffers so it can be written to a channel or handed to
+ * native code without copying.
+ * <p>
+ * Every vector has a validity bitmap (bit r set when row r has a value,
+ * least significant bit first) and, depending on its type:
+ * <ul>
+ * <li>FLOAT64: 8 byte doubles.</li>
+ * <li>TIMESTAMP: 8 byte milliseconds since 1970-01-01 without time zone,
+ * converted from the Excel serial date of the 1900 date system. As in
+ * POI's DateUtil.getJavaDate(), Excel's nonexistent 1900-02-29 (serial 60)
+ * becomes 1900-03-01.</li>
+ * <li>BOOL: a bitmap of the values.</li>
+ * <li>UTF8: int32 offsets, one more than the rows, into the UTF-8 bytes of
+ * the values.</li>
+ * </ul>
+ * Cells which do not fit the type are null, numbers, dates and booleans
+ * fit UTF8 as text. The buffers are allocated once for the batch capacity
+ * and refilled by every fill(), only the UTF8 data buffer grows. Values of
+ * null cells are zero.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public final class ArrowVector {
+    public static final byte UTF8 = 0;
+    public static final byte FLOAT64 = 1;
+    public static final byte BOOL = 2;
+    public static final byte TIMESTAMP = 3;
+
+    //Days from the Excel epoch (Dec 30, 1899) to 1970-01-01, valid from
+    //serial 61 (Mar 1, 1900). Excel counts Feb 29, 1900 as serial 60, so
+    //earlier serials are one day later
+    private static final double EPOCH_SERIAL = 25569;
+    private static final double LEAP_DAY_SERIAL = 60;
+    private static final double MILLIS_PER_DAY = 86400000d;
+
+    private final byte type;
+    private final int capacity;
+    private final ByteBuffer validity;
+    private final ByteBuffer values;
+    private final ByteBuffer offsets;
+    private ByteBuffer data;
+    private int length;
+    private int nullCount;
+    private int dataSize;
+
+    /**
+     * @param type     UTF8, FLOAT64, BOOL or TIMESTAMP
+     * @param capacity Maximum number of rows
+     */
+    public ArrowVector(byte type, int capacity) {
+        if (type < UTF8 || type > TIMESTAMP)
+            throw new IllegalArgumentException("Unknown vector type " + type);
+        this.type = type;
+        this.capacity = capacity;
+        int bitmapBytes = 8 * ((capacity + 63) >>> 6);
+        this.validity = allocate(bitmapBytes);
+        this.values = type == UTF8 ? null : allocate(type == BOOL ? bitmapBytes : 8 * capacity);
+        this.offsets = type == UTF8 ? allocate(4 * (capacity + 1)) : null;
+        this.data = type == UTF8 ? allocate(Math.max(1024, 16 * capacity)) : null;
+    }
+
+    /**
+     * Returns the vector type for a Column Type of Sheet.getColumnTypes().
+     *
+     * @param columnType
+     * @return byte
+     */
+    public static byte getType(String columnType) {
+        if ("Number".equals(columnType))
+            return FLOAT64;
+        if ("Date".equals(columnType))
+            return TIMESTAMP;
+        if ("Boolean".equals(columnType))
+            return BOOL;
+        return UTF8;
+    }
+
+    /**
+     * Returns the vector type matching the cells of the batch Column:
+     * FLOAT64 for numbers, TIMESTAMP when all numbers are dates, BOOL for
+     * booleans and UTF8 for anything else, empty Columns included.
+     *
+     * @param batch
+     * @param column
+     * @return byte
+     */
+    public static byte getType(ColumnBatch batch, int column) {
+        boolean numbers = false;
+        boolean dates = true;
+        boolean booleans = false;
+        int rows = batch.getRowCount();
+        for (int r = 0; r < rows; r++) {
+            switch (batch.getKind(column, r)) {
+                case ColumnBatch.NULL:
+                    break;
+                case ColumnBatch.NUMBER:
+                    numbers = true;
+                    dates = false;
+                    break;
+                case ColumnBatch.DATE:
+                    numbers = true;
+                    break;
+                case ColumnBatch.BOOLEAN:
+                    booleans = true;
+                    break;
+                default:
+                    return UTF8;
+            }
+        }
+        if (numbers == booleans)
+            return UTF8;
+        if (booleans)
+            return BOOL;
+        return dates ? TIMESTAMP : FLOAT64;
+    }
+
+    /**
+     * Returns true when a cell of the ColumnBatch kind is a value of this
+     * vector. Empty cells always fit.
+     *
+     * @param kind
+     * @return boolean
+     */
+    public boolean fits(byte kind) {
+        switch (type) {
+            case FLOAT64:
+            case TIMESTAMP:
+                return kind == ColumnBatch.NULL || kind == ColumnBatch.NUMBER ||
+                        kind == ColumnBatch.DATE;
+            case BOOL:
+                return kind == ColumnBatch.NULL || kind == ColumnBatch.BOOLEAN;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Fills the vector with the Column of the batch, replacing the previous
+     * contents. Returns the number of cells which did not fit the type and
+     * were set to null.
+     *
+     * @param batch
+     * @param column
+     * @return int
+     */
+    public int fill(ColumnBatch batch, int column) {
+        int rows = batch.getRowCount();
+        if (rows > capacity)
+            throw new IllegalArgumentException("Batch of " + rows +
+                    " rows exceeds the vector capacity of " + capacity);
+        boolean hasColumn = column < batch.getColumnCount();
+        byte[] kinds = hasColumn ? batch.getKinds(column) : null;
+        long[] present = hasColumn ? batch.getNullBitmap(column) : null;
+        double[] numbers = hasColumn ? batch.getNumbers(column) : null;
+        String[] strings = hasColumn ? batch.getStrings(column) : null;
+
+        int dropped = 0;
+        long validWord = 0;
+        long valueWord = 0;
+        dataSize = 0;
+        if (type == UTF8)
+            offsets.putInt(0, 0);
+        for (int r = 0; r < rows; r++) {
+            byte kind = hasColumn && (present[r >>> 6] & (1L << r)) != 0 ?
+                    kinds[r] : ColumnBatch.NULL;
+            boolean valid = false;
+            switch (type) {
+                case FLOAT64:
+                case TIMESTAMP:
+                    double value = 0;
+                    if (kind == ColumnBatch.NUMBER || kind == ColumnBatch.DATE) {
+                        value = numbers[r];
+                        valid = true;
+                    }
+                    if (type == FLOAT64)
+                        values.putDouble(8 * r, value);
+                    else
+                        values.putLong(8 * r, valid ? Math.round((value - EPOCH_SERIAL +
+                                (value < LEAP_DAY_SERIAL + 1 ? 1 : 0)) * MILLIS_PER_DAY) : 0L);
+                    break;
+                case BOOL:
+                    if (kind == ColumnBatch.BOOLEAN) {
+                        valid = true;
+                        if (numbers[r] != 0)
+                            valueWord |= 1L << r;
+                    }
+                    break;
+                default:
+                    if (kind != ColumnBatch.NULL) {
+                        valid = true;
+                        putUtf8(kind == ColumnBatch.STRING || kind == ColumnBatch.ERROR ?
+                                strings[r] : batch.getValue(column, r));
+                    }
+                    offsets.putInt(4 * (r + 1), dataSize);
+                    break;
+            }
+            if (valid)
+                validWord |= 1L << r;
+            else if (kind != ColumnBatch.NULL)
+                dropped++;
+            if ((r & 63) == 63 || r == rows - 1) {
+                validity.putLong(8 * (r >>> 6), validWord);
+                if (type == BOOL)
+                    values.putLong(8 * (r >>> 6), valueWord);
+                validWord = 0;
+                valueWord = 0;
+            }
+        }
+        length = rows;
+        nullCount = rows - bitCount(rows);
+        return dropped;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of rows of the last fill().
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public int getNullCount() {
+        return nullCount;
+    }
+
+    /**
+     * Returns the validity bitmap, limited to the bytes of getLength()
+     * rows.
+     */
+    public ByteBuffer getValidity() {
+        return view(validity, (length + 7) >>> 3);
+    }
+
+    /**
+     * Returns the values of FLOAT64, TIMESTAMP and BOOL vectors, null for
+     * UTF8.
+     */
+    public ByteBuffer getValues() {
+        if (null == values)
+            return null;
+        return view(values, type == BOOL ? (length + 7) >>> 3 : 8 * length);
+    }
+
+    /**
+     * Returns the offsets of UTF8 vectors, null otherwise.
+     */
+    public ByteBuffer getOffsets() {
+        return null == offsets ? null : view(offsets, 4 * (length + 1));
+    }
+
+    /**
+     * Returns the UTF-8 bytes of UTF8 vectors, null otherwise.
+     */
+    public ByteBuffer getData() {
+        return null == data ? null : view(data, dataSize);
+    }
+
+    private int bitCount(int rows) {
+        int count = 0;
+        int words = (rows + 63) >>> 6;
+        for (int w = 0; w < words; w++)
+            count += Long.bitCount(validity.getLong(8 * w));
+        return count;
+    }
+
+    /**
+     * Appends the UTF-8 encoding of the value to the data buffer, unpaired
+     * surrogates become '?'.
+     */
+    private void putUtf8(String value) {
+        int chars = value.length();
+        if (dataSize + 3L * chars > data.capacity()) {
+            ByteBuffer grown = allocate((int) Math.min(Integer.MAX_VALUE - 8,
+                    Math.max(2L * data.capacity(), dataSize + 3L * chars)));
+            ByteBuffer used = data.duplicate();
+            used.clear().limit(dataSize);
+            grown.put(used);
+            data = grown;
+        }
+        int at = dataSize;
+        for (int i = 0; i < chars; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                data.put(at++, (byte) c);
+            } else if (c < 0x800) {
+                data.put(at++, (byte) (0xC0 | c >>> 6));
+                data.put(at++, (byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < chars &&
+                    Character.isLowSurrogate(value.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, value.charAt(++i));
+                data.put(at++, (byte) (0xF0 | code >>> 18));
+                data.put(at++, (byte) (0x80 | code >>> 12 & 0x3F));
+                data.put(at++, (byte) (0x80 | code >>> 6 & 0x3F));
+                data.put(at++, (byte) (0x80 | code & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                data.put(at++, (byte) '?');
+            } else {
+                data.put(at++, (byte) (0xE0 | c >>> 12));
+                data.put(at++, (byte) (0x80 | c >>> 6 & 0x3F));
+                data.put(at++, (byte) (0x80 | c & 0x3F));
+            }
+        }
+        dataSize = at;
+    }
+
+    private static ByteBuffer view(ByteBuffer buffer, int size) {
+        ByteBuffer view = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        view.clear().limit(size);
+        return view;
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
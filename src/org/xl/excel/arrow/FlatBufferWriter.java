@@ -0,0 +1,243 @@
+package org.xl.excel.arrow;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Minimal FlatBuffers encoder for the Arrow IPC metadata: tables of
+ * scalars, strings, vectors of tables and vectors of structs of longs.
+ * <p>
+ * Unlike the FlatBuffers builders, which write back to front, the buffer is
+ * written front to back: the root offset, then every table followed by the
+ * objects it references, so all offsets point forward as the format
+ * requires. Each vtable directly precedes its table. Scalars are aligned to
+ * their size from the start of the buffer and the buffer is padded to 8
+ * bytes, the alignment Arrow expects for the metadata of a message.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+final class FlatBufferWriter {
+    private byte[] bytes = new byte[256];
+    private int size;
+
+    private FlatBufferWriter() {
+    }
+
+    /**
+     * Returns the encoded buffer with the table as its root.
+     */
+    static byte[] finish(Table root) {
+        FlatBufferWriter writer = new FlatBufferWriter();
+        writer.putInt(0);
+        int rootPosition = writer.writeTable(root);
+        writer.patchInt(0, rootPosition);
+        writer.align(8, 0);
+        return Arrays.copyOf(writer.bytes, writer.size);
+    }
+
+    private int writeTable(Table table) {
+        int fields = table.sizes.length;
+        int[] offsets = new int[fields];
+        int tableSize = 4;
+        //Largest scalars first so every field is aligned
+        for (int fieldSize = 8; fieldSize >= 1; fieldSize >>= 1) {
+            for (int id = 0; id < fields; id++) {
+                if (table.sizes[id] != fieldSize)
+                    continue;
+                tableSize = (tableSize + fieldSize - 1) & -fieldSize;
+                offsets[id] = tableSize;
+                tableSize += fieldSize;
+            }
+        }
+
+        align(2, 0);
+        int vtable = size;
+        putShort(4 + 2 * fields);
+        putShort(tableSize);
+        for (int id = 0; id < fields; id++)
+            putShort(table.sizes[id] == 0 ? 0 : offsets[id]);
+
+        align(table.hasLong() ? 8 : 4, 0);
+        int position = size;
+        putInt(position - vtable);
+        ensure(tableSize - 4);
+        size = position + tableSize;
+        for (int id = 0; id < fields; id++) {
+            int at = position + offsets[id];
+            switch (table.sizes[id]) {
+                case 1:
+                    bytes[at] = (byte) table.scalars[id];
+                    break;
+                case 2:
+                    bytes[at] = (byte) table.scalars[id];
+                    bytes[at + 1] = (byte) (table.scalars[id] >>> 8);
+                    break;
+                case 8:
+                    for (int b = 0; b < 8; b++)
+                        bytes[at + b] = (byte) (table.scalars[id] >>> (8 * b));
+                    break;
+                default:
+                    break;
+            }
+        }
+        for (int id = 0; id < fields; id++) {
+            Object reference = table.references[id];
+            if (null == reference)
+                continue;
+            int child;
+            if (reference instanceof Table)
+                child = writeTable((Table) reference);
+            else if (reference instanceof String)
+                child = writeString((String) reference);
+            else if (reference instanceof long[])
+                child = writeStructs((long[]) reference);
+            else
+                child = writeTables((Table[]) reference);
+            int at = position + offsets[id];
+            patchInt(at, child - at);
+        }
+        return position;
+    }
+
+    private int writeString(String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        align(4, 0);
+        int position = size;
+        putInt(utf8.length);
+        ensure(utf8.length + 1);
+        System.arraycopy(utf8, 0, bytes, size, utf8.length);
+        size += utf8.length;
+        bytes[size++] = 0;
+        return position;
+    }
+
+    private int writeTables(Table[] tables) {
+        align(4, 0);
+        int position = size;
+        putInt(tables.length);
+        ensure(4 * tables.length);
+        size += 4 * tables.length;
+        for (int i = 0; i < tables.length; i++) {
+            int at = position + 4 + 4 * i;
+            patchInt(at, writeTable(tables[i]) - at);
+        }
+        return position;
+    }
+
+    /**
+     * Writes a vector of structs of two longs, aligning the structs to 8.
+     */
+    private int writeStructs(long[] values) {
+        align(8, 4);
+        int position = size;
+        putInt(values.length / 2);
+        for (long value : values) {
+            putInt((int) value);
+            putInt((int) (value >>> 32));
+        }
+        return position;
+    }
+
+    /**
+     * Pads with zeros until size % alignment == remainder.
+     */
+    private void align(int alignment, int remainder) {
+        while (size % alignment != remainder) {
+            ensure(1);
+            bytes[size++] = 0;
+        }
+    }
+
+    private void putShort(int value) {
+        ensure(2);
+        bytes[size++] = (byte) value;
+        bytes[size++] = (byte) (value >>> 8);
+    }
+
+    private void putInt(int value) {
+        ensure(4);
+        size += 4;
+        patchInt(size - 4, value);
+    }
+
+    private void patchInt(int at, int value) {
+        bytes[at] = (byte) value;
+        bytes[at + 1] = (byte) (value >>> 8);
+        bytes[at + 2] = (byte) (value >>> 16);
+        bytes[at + 3] = (byte) (value >>> 24);
+    }
+
+    private void ensure(int length) {
+        if (size + length > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(size + length, bytes.length * 2));
+    }
+
+    /**
+     * A table under construction, fields are set by their id in the
+     * schema. Unions take two ids: the type byte and the table.
+     */
+    static final class Table {
+        private final int[] sizes;
+        private final long[] scalars;
+        private final Object[] references;
+
+        Table(int fields) {
+            this.sizes = new int[fields];
+            this.scalars = new long[fields];
+            this.references = new Object[fields];
+        }
+
+        Table putByte(int id, int value) {
+            return scalar(id, 1, value);
+        }
+
+        Table putShort(int id, int value) {
+            return scalar(id, 2, value);
+        }
+
+        Table putLong(int id, long value) {
+            return scalar(id, 8, value);
+        }
+
+        Table putTable(int id, Table table) {
+            return reference(id, table);
+        }
+
+        Table putString(int id, String value) {
+            return reference(id, value);
+        }
+
+        Table putTables(int id, List<Table> tables) {
+            return reference(id, tables.toArray(new Table[tables.size()]));
+        }
+
+        /**
+         * Sets a vector of structs of two longs, values holds the longs of
+         * all structs.
+         */
+        Table putStructs(int id, long[] values) {
+            return reference(id, values);
+        }
+
+        private Table scalar(int id, int size, long value) {
+            sizes[id] = size;
+            scalars[id] = value;
+            return this;
+        }
+
+        private Table reference(int id, Object value) {
+            sizes[id] = 4;
+            references[id] = value;
+            return this;
+        }
+
+        private boolean hasLong() {
+            for (int fieldSize : sizes) {
+                if (fieldSize == 8)
+                    return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package org.xl.excel.batch;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xl.excel.components.Sheet;
+import org.xl.excel.parser.ExcelParser;
+import org.xl.excel.parser.ParseProgress;
+import org.xl.excel.parser.RowListener;
+
+/**
+ * Converts many workbooks to CSV at once, one file per worker thread.
+ * <p>
+ * The files are parsed on a ForkJoinPool with one worker per core by
+ * default. The list is split in halves recursively and idle workers steal
+ * the halves not yet started, so a worker stuck on a large file does not
+ * hold back the rest. The largest files are scheduled first. Workers live
+ * for the whole batch and reuse their SAX parser and number format cache
+ * from one file to the next.
+ * <p>
+ * Every file is converted on its own: a file which fails to parse or write
+ * is recorded with its error, its partial output is deleted and the batch
+ * goes on. XLSX files are written like ExcelParser.createXLSXtoCSVConverter(),
+ * XLS files in the same layout, one "name [index=n]:" line, the quoted
+ * headers and the rows for every Sheet. With setGzip() the CSV is gzip
+ * compressed on the worker thread, the pool already keeps every core busy.
+ * <p>
+ * When the batch is done a manifest with one line per file, in the order
+ * the files were given, is written to the output directory: status, Sheets,
+ * rows, bytes written, start offset and duration in milliseconds, worker
+ * thread and error.
+ *
+ * <pre>
+ * BatchResult result = new BatchConverter(new File("csv")).convert(new File("incoming"));
+ * </pre>
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class BatchConverter {
+    public static final String MANIFEST_NAME = "manifest.csv";
+
+    private static Logger LOGGER = LoggerFactory.getLogger(BatchConverter.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File outputDirectory;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean gzip;
+    private boolean ignoreBlankRows = true;
+    private boolean useCellFormatting;
+    private int maxRows = ExcelParser.READ_ALL;
+    private String manifestName = MANIFEST_NAME;
+
+    /**
+     * @param outputDirectory Directory receiving the CSV Files and the
+     *                        manifest, created when missing
+     */
+    public BatchConverter(File outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Sets the number of files converted at once, one per core by default.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Threads must be positive: " + threads);
+        this.threads = threads;
+    }
+
+    /**
+     * Writes gzip compressed ".csv.gz" Files instead of ".csv".
+     */
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    public void setIgnoreBlankRows(boolean ignoreBlankRows) {
+        this.ignoreBlankRows = ignoreBlankRows;
+    }
+
+    public void setUseCellFormatting(boolean useCellFormatting) {
+        this.useCellFormatting = useCellFormatting;
+    }
+
+    /**
+     * Sets the maximum number of rows read per Sheet, ExcelParser.READ_ALL
+     * for all.
+     */
+    public void setMaxRows(int maxRows) {
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * Sets the name of the manifest in the output directory, null to not
+     * write one.
+     */
+    public void setManifestName(String manifestName) {
+        this.manifestName = manifestName;
+    }
+
+    /**
+     * Converts the XLSX and XLS Files in the directory, see
+     * listWorkbooks().
+     *
+     * @param directory
+     * @return BatchResult
+     */
+    public BatchResult convert(File directory) {
+        return convert(listWorkbooks(directory));
+    }
+
+    /**
+     * Converts the Files, returns once all of them are done.
+     *
+     * @param files
+     * @return BatchResult
+     * @throws UncheckedIOException when the output directory or the
+     *                              manifest cannot be written
+     */
+    public BatchResult convert(List<File> files) {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs())
+            throw new UncheckedIOException(new IOException(
+                    "Failed to create output directory: " + outputDirectory));
+        File[] inputs = files.toArray(new File[0]);
+        File[] outputs = outputFiles(inputs);
+        ConversionResult[] results = new ConversionResult[inputs.length];
+        //Largest first, a large file started last would finish alone
+        final long[] sizes = new long[inputs.length];
+        Integer[] order = new Integer[inputs.length];
+        for (int i = 0; i < order.length; i++) {
+            sizes[i] = inputs[i].length();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(sizes[b], sizes[a]);
+            }
+        });
+        LOGGER.info("Converting " + inputs.length + " files on " + threads + " threads");
+        long start = System.currentTimeMillis();
+        if (inputs.length > 0) {
+            ForkJoinPool pool = new ForkJoinPool(threads, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                @Override
+                public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                    ForkJoinWorkerThread thread =
+                            ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("xl-batch-" + thread.getPoolIndex());
+                    return thread;
+                }
+            }, null, false);
+            try {
+                pool.invoke(new ConvertTask(inputs, outputs, results, order, 0, order.length, start));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        File manifest = null;
+        if (null != manifestName) {
+            manifest = new File(outputDirectory, manifestName);
+            writeManifest(manifest, results);
+        }
+        BatchResult result = new BatchResult(new ArrayList<ConversionResult>(
+                Arrays.asList(results)), elapsed, threads, manifest);
+        LOGGER.info("Converted " + result);
+        return result;
+    }
+
+    /**
+     * Returns the XLSX, XLSM and XLS Files directly in the directory sorted
+     * by name, without the "~$" lock files Excel leaves behind.
+     *
+     * @param directory
+     * @return List of Files
+     */
+    public static List<File> listWorkbooks(File directory) {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName().toLowerCase(Locale.ROOT);
+                return file.isFile() && !name.startsWith("~$") && (name.endsWith(".xlsx") ||
+                        name.endsWith(".xlsm") || name.endsWith(".xls"));
+            }
+        });
+        if (null == files)
+            throw new UncheckedIOException(new IOException("Not a directory: " + directory));
+        List<File> workbooks = new ArrayList<File>(Arrays.asList(files));
+        Collections.sort(workbooks);
+        return workbooks;
+    }
+
+    /**
+     * Names the CSV File of every input after the workbook, a number is
+     * appended when two workbooks have the same name.
+     */
+    private File[] outputFiles(File[] inputs) {
+        String extension = gzip ? ".csv.gz" : ".csv";
+        Set<String> used = new HashSet<String>();
+        if (null != manifestName)
+            used.add(manifestName.toLowerCase(Locale.ROOT));
+        File[] outputs = new File[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            String base = inputs[i].getName();
+            int dot = base.lastIndexOf('.');
+            if (dot > 0)
+                base = base.substring(0, dot);
+            String name = base + extension;
+            for (int n = 2; !used.add(name.toLowerCase(Locale.ROOT)); n++)
+                name = base + "-" + n + extension;
+            outputs[i] = new File(outputDirectory, name);
+        }
+        return outputs;
+    }
+
+    /**
+     * Converts one file, any failure is returned in the ConversionResult.
+     */
+    private ConversionResult convertFile(File file, File output, long batchStart) {
+        long start = System.currentTimeMillis();
+        ParseProgress progress = new ParseProgress();
+        String error = null;
+        try {
+            writeCsv(file, output, progress);
+        } catch (Exception e) {
+            error = describe(e);
+            LOGGER.warn("Failed to convert " + file + ": " + error, e);
+            if (output.exists() && !output.delete())
+                LOGGER.warn("Failed to delete partial output " + output);
+        }
+        long millis = System.currentTimeMillis() - start;
+        boolean success = null == error;
+        return new ConversionResult(file, output, success, progress.getSheetsCompleted(),
+                progress.getRowsEmitted(), success ? output.length() : 0, start - batchStart,
+                millis, Thread.currentThread().getName(), error);
+    }
+
+    private void writeCsv(File file, File output, ParseProgress progress)
+            throws IOException, InvalidFormatException {
+        boolean xlsx = isXLSX(file);
+        OutputStream out = new FileOutputStream(output);
+        PrintStream csv;
+        try {
+            if (gzip)
+                out = new GZIPOutputStream(out, BUFFER_SIZE);
+            csv = new PrintStream(new BufferedOutputStream(out, BUFFER_SIZE), false, "UTF-8");
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+        try {
+            ExcelParser parser;
+            if (xlsx) {
+                parser = ExcelParser.createXLSXtoCSVConverter(file, csv, ExcelParser.READ_ALL, maxRows);
+            } else {
+                parser = ExcelParser.createXLSParser(file, maxRows);
+                parser.setRowListener(new CsvRowListener(csv));
+            }
+            parser.setProgress(progress);
+            parser.process(ignoreBlankRows, useCellFormatting);
+        } finally {
+            csv.close();
+        }
+        //PrintStream keeps write errors to itself
+        if (csv.checkError())
+            throw new IOException("Failed to write " + output);
+    }
+
+    /**
+     * Tells XLSX from XLS Files by their signature, XLSX files are ZIP
+     * archives and XLS files OLE2 documents.
+     */
+    private static boolean isXLSX(File file) throws IOException {
+        byte[] signature = new byte[4];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = in.read(signature);
+            if (read == 4 && signature[0] == 'P' && signature[1] == 'K')
+                return true;
+            if (read == 4 && (signature[0] & 0xFF) == 0xD0 &&
+                    (signature[1] & 0xFF) == 0xCF)
+                return false;
+        } finally {
+            in.close();
+        }
+        throw new IllegalArgumentException("Not an XLSX or XLS workbook");
+    }
+
+    /**
+     * Returns the message of the root cause, the parsers wrap their
+     * exceptions in RuntimeExceptions.
+     */
+    private static String describe(Throwable e) {
+        Throwable cause = e;
+        while (null != cause.getCause() && cause.getCause() != cause)
+            cause = cause.getCause();
+        String message = cause.getLocalizedMessage();
+        return cause.getClass().getSimpleName() + (null == message ? "" : ": " + message);
+    }
+
+    private void writeManifest(File manifest, ConversionResult[] results) {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(manifest),
+                StandardCharsets.UTF_8)) {
+            writer.write("file,output,status,sheets,rows,bytes,start_ms,millis,thread,error\n");
+            for (ConversionResult result : results) {
+                StringBuilder line = new StringBuilder();
+                appendQuoted(line, result.getFile().getPath()).append(',');
+                appendQuoted(line, result.isSuccess() ? result.getOutput().getName() : "").append(',');
+                line.append(result.isSuccess() ? "OK" : "FAILED").append(',');
+                line.append(result.getSheets()).append(',');
+                line.append(result.getRows()).append(',');
+                line.append(result.getBytes()).append(',');
+                line.append(result.getStartMillis()).append(',');
+                line.append(result.getMillis()).append(',');
+                appendQuoted(line, result.getThread()).append(',');
+                appendQuoted(line, null == result.getError() ? "" : result.getError());
+                writer.write(line.append('\n').toString());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write manifest " + manifest, e);
+        }
+    }
+
+    private static StringBuilder appendQuoted(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"')
+                line.append('"');
+            line.append(c == '\n' || c == '\r' ? ' ' : c);
+        }
+        return line.append('"');
+    }
+
+    /**
+     * Converts the range of the scheduling order, splitting it in halves
+     * until a single file is left.
+     */
+    private class ConvertTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final File[] inputs;
+        private final File[] outputs;
+        private final ConversionResult[] results;
+        private final Integer[] order;
+        private final int from;
+        private final int to;
+        private final long batchStart;
+
+        ConvertTask(File[] inputs, File[] outputs, ConversionResult[] results,
+                    Integer[] order, int from, int to, long batchStart) {
+            this.inputs = inputs;
+            this.outputs = outputs;
+            this.results = results;
+            this.order = order;
+            this.from = from;
+            this.to = to;
+            this.batchStart = batchStart;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                int index = order[from];
+                results[index] = convertFile(inputs[index], outputs[index], batchStart);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ConvertTask(inputs, outputs, results, order, from, middle, batchStart),
+                    new ConvertTask(inputs, outputs, results, order, middle, to, batchStart));
+        }
+    }
+
+    /**
+     * Writes the rows of an XLS File in the layout of the XLSX to CSV
+     * converter.
+     */
+    private static class CsvRowListener implements RowListener {
+        private final PrintStream csv;
+
+        CsvRowListener(PrintStream csv) {
+            this.csv = csv;
+        }
+
+        @Override
+        public void startSheet(int sheetIndex, String sheetName) {
+            csv.println();
+            csv.println(sheetName + " [index=" + sheetIndex + "]:");
+        }
+
+        @Override
+        public void headerRow(List<String> headers) {
+            for (int i = 0; i < headers.size(); i++) {
+                if (i > 0)
+                    csv.print(',');
+                csv.print('"');
+                csv.print(headers.get(i));
+                csv.print('"');
+            }
+            csv.println();
+        }
+
+        @Override
+        public void row(String row) {
+            csv.println(row);
+        }
+
+        @Override
+        public void endSheet(Sheet sheet) {
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.xl.excel.batch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a BatchConverter run: one ConversionResult per file in the
+ * order the files were given, and the totals.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class BatchResult {
+    private final List<ConversionResult> results;
+    private final long elapsedMillis;
+    private final int threads;
+    private final File manifest;
+
+    BatchResult(List<ConversionResult> results, long elapsedMillis, int threads, File manifest) {
+        this.results = Collections.unmodifiableList(results);
+        this.elapsedMillis = elapsedMillis;
+        this.threads = threads;
+        this.manifest = manifest;
+    }
+
+    public List<ConversionResult> getResults() {
+        return results;
+    }
+
+    public List<ConversionResult> getFailures() {
+        List<ConversionResult> failures = new ArrayList<ConversionResult>();
+        for (ConversionResult result : results) {
+            if (!result.isSuccess())
+                failures.add(result);
+        }
+        return failures;
+    }
+
+    public long getRows() {
+        long rows = 0;
+        for (ConversionResult result : results)
+            rows += result.getRows();
+        return rows;
+    }
+
+    /**
+     * Returns the wall clock time of the whole batch.
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * Returns the sum of the per file times. Divided by getElapsedMillis()
+     * it gives the average number of files converted at once.
+     */
+    public long getBusyMillis() {
+        long millis = 0;
+        for (ConversionResult result : results)
+            millis += result.getMillis();
+        return millis;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Returns the manifest File, null when none was written.
+     */
+    public File getManifest() {
+        return manifest;
+    }
+
+    @Override
+    public String toString() {
+        return results.size() + " files, " + getFailures().size() + " failed, " +
+                getRows() + " rows in " + elapsedMillis + " ms on " + threads + " threads";
+    }
+}
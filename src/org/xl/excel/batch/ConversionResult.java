@@ -0,0 +1,98 @@
+package org.xl.excel.batch;
+
+import java.io.File;
+
+/**
+ * The outcome of converting one file of a BatchConverter run, a line of the
+ * manifest.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class ConversionResult {
+    private final File file;
+    private final File output;
+    private final boolean success;
+    private final long sheets;
+    private final long rows;
+    private final long bytes;
+    private final long startMillis;
+    private final long millis;
+    private final String thread;
+    private final String error;
+
+    ConversionResult(File file, File output, boolean success, long sheets, long rows,
+                     long bytes, long startMillis, long millis, String thread, String error) {
+        this.file = file;
+        this.output = output;
+        this.success = success;
+        this.sheets = sheets;
+        this.rows = rows;
+        this.bytes = bytes;
+        this.startMillis = startMillis;
+        this.millis = millis;
+        this.thread = thread;
+        this.error = error;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the CSV File, which only exists when the conversion succeeded.
+     */
+    public File getOutput() {
+        return output;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public long getSheets() {
+        return sheets;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the size of the written CSV File, 0 on failure.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns when the conversion started, in milliseconds since the start
+     * of the batch.
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * Returns the name of the worker thread which converted the file.
+     */
+    public String getThread() {
+        return thread;
+    }
+
+    /**
+     * Returns the message of the failure, null on success.
+     */
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return file.getName() + (success ? ": " + rows + " rows in " + millis + " ms"
+                : ": failed after " + millis + " ms, " + error);
+    }
+}
@@ -0,0 +1,415 @@
+package org.xl.excel.columnar;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the files of ColumnarWriter, see there for the layout.
+ * <p>
+ * The footer is read when the reader is opened. A Column is read page by
+ * page straight from its chunks, the other Columns of the file are never
+ * read. readColumn(int, int, double, double) also skips the pages whose
+ * min/max statistics cannot hold a number of the range.
+ * <p>
+ * Cells are returned as Double for NUMBER and DATE cells (Excel serial
+ * dates), Boolean for BOOLEAN cells, String for STRING cells and null for
+ * empty cells.
+ * <p>
+ * Not thread safe.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class ColumnarReader implements Closeable {
+    private static final int TRAILER_LENGTH = 8;
+
+    private final FileChannel channel;
+    private final List<SheetEntry> sheets = new ArrayList<SheetEntry>();
+    private int[] ids = new int[0];
+    private long pagesRead;
+    private long pagesSkipped;
+
+    public ColumnarReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        if (size < ColumnarWriter.MAGIC.length + TRAILER_LENGTH)
+            throw new IOException("Not a columnar file, " + size + " bytes");
+        checkMagic(read(0, ColumnarWriter.MAGIC.length));
+        ByteBuffer trailer = read(size - TRAILER_LENGTH, TRAILER_LENGTH);
+        int footerLength = trailer.getInt();
+        checkMagic(trailer);
+        if (footerLength < 0 || footerLength > size - TRAILER_LENGTH - ColumnarWriter.MAGIC.length)
+            throw new IOException("Invalid footer length " + footerLength);
+        readFooter(read(size - TRAILER_LENGTH - footerLength, footerLength));
+    }
+
+    /**
+     * Opens a reader for the file.
+     *
+     * @param file
+     * @return ColumnarReader
+     * @throws IOException
+     */
+    public static ColumnarReader open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new ColumnarReader(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getSheetCount() {
+        return sheets.size();
+    }
+
+    public String getSheetName(int sheet) {
+        return sheets.get(sheet).name;
+    }
+
+    /**
+     * Returns the index of the Sheet in its workbook.
+     */
+    public int getSheetIndex(int sheet) {
+        return sheets.get(sheet).index;
+    }
+
+    public List<String> getHeaders(int sheet) {
+        return Collections.unmodifiableList(sheets.get(sheet).headers);
+    }
+
+    public long getRowCount(int sheet) {
+        return sheets.get(sheet).rows;
+    }
+
+    /**
+     * Returns the number of pages read so far.
+     */
+    public long getPagesRead() {
+        return pagesRead;
+    }
+
+    /**
+     * Returns the number of pages skipped so far because of their
+     * statistics.
+     */
+    public long getPagesSkipped() {
+        return pagesSkipped;
+    }
+
+    /**
+     * Returns every cell of the Column, one per row of the Sheet.
+     *
+     * @param sheet
+     * @param column
+     * @return Object[]
+     * @throws IOException
+     */
+    public Object[] readColumn(int sheet, int column) throws IOException {
+        return readColumn(sheet, column, false, 0, 0);
+    }
+
+    /**
+     * Returns the cells of the Column read from the NUMBER and DATE pages
+     * whose statistics overlap min to max, inclusive. All other pages are
+     * skipped and their cells are null, the cells of the pages read still
+     * have to be filtered.
+     *
+     * @param sheet
+     * @param column
+     * @param min
+     * @param max
+     * @return Object[]
+     * @throws IOException
+     */
+    public Object[] readColumn(int sheet, int column, double min, double max) throws IOException {
+        return readColumn(sheet, column, true, min, max);
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private Object[] readColumn(int sheet, int column, boolean prune,
+                                double min, double max) throws IOException {
+        SheetEntry entry = sheets.get(sheet);
+        if (entry.rows > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("Sheet " + entry.name + " has " + entry.rows +
+                    " rows, more than an array holds");
+        Object[] cells = new Object[(int) entry.rows];
+        int row = 0;
+        for (RowGroupEntry group : entry.rowGroups) {
+            //Row groups without a chunk for the Column hold no cells of it
+            if (column < group.chunks.size()) {
+                ChunkEntry chunk = group.chunks.get(column);
+                long position = chunk.offset;
+                int pageRow = row;
+                for (PageEntry page : chunk.pages) {
+                    if (page.type == ColumnarWriter.NULL) {
+                        pageRow += page.rows;
+                    } else if (prune && (page.type == ColumnarWriter.BOOLEAN ||
+                            page.type == ColumnarWriter.STRING || page.max < min || page.min > max)) {
+                        pagesSkipped++;
+                        pageRow += page.rows;
+                    } else {
+                        readPage(read(position, page.length), cells, pageRow);
+                        pagesRead++;
+                        pageRow += page.rows;
+                    }
+                    position += page.length;
+                }
+            }
+            row += group.rows;
+        }
+        return cells;
+    }
+
+    /**
+     * Decodes a page into the cells from the row on.
+     */
+    private void readPage(ByteBuffer in, Object[] cells, int row) throws IOException {
+        byte type = in.get();
+        int rows = (int) readVarint(in);
+        int nulls = (int) readVarint(in);
+        byte encoding = in.get();
+        int values = rows - nulls;
+        //Row of every value
+        int[] valueRows = new int[values];
+        if (nulls > 0) {
+            ByteBuffer flags = slice(in, (int) readVarint(in));
+            int[] present = ensureIds(rows);
+            readRle(flags, rows, 1, present);
+            int value = 0;
+            for (int r = 0; r < rows; r++) {
+                if (present[r] != 0)
+                    valueRows[value++] = row + r;
+            }
+        } else {
+            for (int v = 0; v < values; v++)
+                valueRows[v] = row + v;
+        }
+
+        switch (type) {
+            case ColumnarWriter.NUMBER:
+            case ColumnarWriter.DATE:
+                for (int v = 0; v < values; v++)
+                    cells[valueRows[v]] = in.getDouble();
+                break;
+            case ColumnarWriter.BOOLEAN: {
+                int[] booleans = ensureIds(values);
+                readRle(in, values, 1, booleans);
+                for (int v = 0; v < values; v++)
+                    cells[valueRows[v]] = booleans[v] != 0;
+                break;
+            }
+            case ColumnarWriter.STRING:
+                if (encoding == ColumnarWriter.DICTIONARY) {
+                    String[] dictionary = new String[(int) readVarint(in)];
+                    for (int i = 0; i < dictionary.length; i++)
+                        dictionary[i] = readString(in);
+                    int[] codes = ensureIds(values);
+                    readRle(in, values, in.get(), codes);
+                    for (int v = 0; v < values; v++)
+                        cells[valueRows[v]] = dictionary[codes[v]];
+                } else {
+                    for (int v = 0; v < values; v++)
+                        cells[valueRows[v]] = readString(in);
+                }
+                break;
+            default:
+                throw new IOException("Unknown page type " + type);
+        }
+    }
+
+    private void readFooter(ByteBuffer in) {
+        int sheetCount = (int) readVarint(in);
+        for (int s = 0; s < sheetCount; s++) {
+            String name = readString(in);
+            int index = (int) readVarint(in);
+            int headerCount = (int) readVarint(in);
+            List<String> headers = new ArrayList<String>(headerCount);
+            for (int h = 0; h < headerCount; h++)
+                headers.add(readString(in));
+            SheetEntry sheet = new SheetEntry(index, name, headers);
+            int groups = (int) readVarint(in);
+            for (int g = 0; g < groups; g++) {
+                RowGroupEntry group = new RowGroupEntry((int) readVarint(in));
+                int chunks = (int) readVarint(in);
+                for (int c = 0; c < chunks; c++) {
+                    //Chunk type and length
+                    in.get();
+                    long offset = readVarint(in);
+                    readVarint(in);
+                    int pageCount = (int) readVarint(in);
+                    List<PageEntry> pages = new ArrayList<PageEntry>(pageCount);
+                    for (int p = 0; p < pageCount; p++)
+                        pages.add(readPageEntry(in));
+                    group.chunks.add(new ChunkEntry(offset, pages));
+                }
+                sheet.rowGroups.add(group);
+                sheet.rows += group.rows;
+            }
+            sheets.add(sheet);
+        }
+    }
+
+    private static PageEntry readPageEntry(ByteBuffer in) {
+        int length = (int) readVarint(in);
+        int rows = (int) readVarint(in);
+        //Nulls, the page holds them too
+        readVarint(in);
+        PageEntry entry = new PageEntry(length, rows, in.get());
+        //Encoding
+        in.get();
+        if (entry.type == ColumnarWriter.STRING) {
+            readString(in);
+            readString(in);
+        } else if (entry.type != ColumnarWriter.NULL) {
+            entry.min = in.getDouble();
+            entry.max = in.getDouble();
+        }
+        return entry;
+    }
+
+    /**
+     * Decodes count values of the run length / bit packing hybrid written
+     * by RleEncoder.
+     */
+    private static void readRle(ByteBuffer in, int count, int bitWidth, int[] values) {
+        int valueBytes = (bitWidth + 7) / 8;
+        long mask = (1L << bitWidth) - 1;
+        int i = 0;
+        while (i < count) {
+            long header = readVarint(in);
+            if ((header & 1) == 0) {
+                int repeat = (int) (header >>> 1);
+                int value = 0;
+                for (int b = 0; b < valueBytes; b++)
+                    value |= (in.get() & 0xFF) << (8 * b);
+                Arrays.fill(values, i, Math.min(count, i + repeat), value);
+                i += repeat;
+                continue;
+            }
+            int packed = (int) (header >>> 1) * 8;
+            long bits = 0;
+            int pending = 0;
+            for (int v = 0; v < packed; v++) {
+                while (pending < bitWidth) {
+                    bits |= (long) (in.get() & 0xFF) << pending;
+                    pending += 8;
+                }
+                if (i < count)
+                    values[i] = (int) (bits & mask);
+                i++;
+                bits >>>= bitWidth;
+                pending -= bitWidth;
+            }
+        }
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static String readString(ByteBuffer in) {
+        ByteBuffer utf8 = slice(in, (int) readVarint(in));
+        return StandardCharsets.UTF_8.decode(utf8).toString();
+    }
+
+    private static ByteBuffer slice(ByteBuffer in, int length) {
+        ByteBuffer slice = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+        slice.limit(length);
+        in.position(in.position() + length);
+        return slice;
+    }
+
+    private static void checkMagic(ByteBuffer in) throws IOException {
+        for (byte b : ColumnarWriter.MAGIC) {
+            if (in.get() != b)
+                throw new IOException("Not a columnar file");
+        }
+    }
+
+    private int[] ensureIds(int count) {
+        if (ids.length < count)
+            ids = new int[count];
+        return ids;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("Columnar file ends within " + length +
+                        " bytes at " + position);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static final class SheetEntry {
+        private final int index;
+        private final String name;
+        private final List<String> headers;
+        private final List<RowGroupEntry> rowGroups = new ArrayList<RowGroupEntry>();
+        private long rows;
+
+        private SheetEntry(int index, String name, List<String> headers) {
+            this.index = index;
+            this.name = name;
+            this.headers = headers;
+        }
+    }
+
+    private static final class RowGroupEntry {
+        private final int rows;
+        private final List<ChunkEntry> chunks = new ArrayList<ChunkEntry>();
+
+        private RowGroupEntry(int rows) {
+            this.rows = rows;
+        }
+    }
+
+    private static final class ChunkEntry {
+        private final long offset;
+        private final List<PageEntry> pages;
+
+        private ChunkEntry(long offset, List<PageEntry> pages) {
+            this.offset = offset;
+            this.pages = pages;
+        }
+    }
+
+    private static final class PageEntry {
+        private final int length;
+        private final int rows;
+        private final byte type;
+        private double min;
+        private double max;
+
+        private PageEntry(int length, int rows, byte type) {
+            this.length = length;
+            this.rows = rows;
+            this.type = type;
+        }
+    }
+}
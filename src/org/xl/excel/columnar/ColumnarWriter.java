@@ -0,0 +1,491 @@
+package org.xl.excel.columnar;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xl.excel.components.ColumnBatch;
+import org.xl.excel.parser.BatchListener;
+
+/**
+ * Writes the parsed Sheets in a columnar binary layout modelled on
+ * Parquet, so consumers read typed values and can skip Columns and pages
+ * instead of parsing every number of a CSV file again.
+ * <p>
+ * Set the writer as the BatchListener of an ExcelParser: every ColumnBatch
+ * the parser hands over becomes one page per Column and is released right
+ * away. Pages are collected per Column until a row group of
+ * getRowGroupRows() rows is complete, the row group is then written Column
+ * chunk after Column chunk. Memory is bounded by one row group. The file is
+ * complete once close() is called. Sheets without data rows are not
+ * written.
+ * <p>
+ * Layout, all numbers little endian, varints unsigned LEB128 and strings a
+ * varint byte length followed by UTF-8:
+ * <pre>
+ * "XLC1"
+ * column chunks, the pages of one Column of one row group
+ * footer
+ * int footer length
+ * "XLC1"
+ * </pre>
+ * A page holds the cells of one Column of one batch:
+ * <pre>
+ * byte type, varint rows, varint nulls, byte encoding
+ * [varint length, null flags]  when nulls &gt; 0, RLE bitWidth 1, 1 = value
+ * values of the non null cells
+ * </pre>
+ * The page type is NUMBER or DATE (PLAIN doubles, Excel serial dates for
+ * DATE), BOOLEAN (RLE bitWidth 1), STRING or NULL (no values). STRING
+ * pages are DICTIONARY encoded (varint size, the distinct strings, byte
+ * bitWidth, RLE ids) unless more than half of the values are distinct,
+ * then PLAIN strings. Cells of a batch Column with different kinds are
+ * written as STRING text, numbers and dates mixed as NUMBER. RLE is the
+ * run length / bit packing hybrid described in RleEncoder.
+ * <p>
+ * The footer lists for every Sheet its name, index, Headers and row
+ * groups. Every row group holds its row count and per Column chunk the
+ * type (MIXED when the pages differ), offset, length and pages. Every page
+ * entry holds its length, rows, nulls, type, encoding and min/max
+ * statistics: doubles for NUMBER, DATE and BOOLEAN pages, strings for
+ * STRING pages, none for NULL pages. ColumnarReader reads the file back and
+ * skips pages by their statistics.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class ColumnarWriter implements BatchListener, Closeable {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ColumnarWriter.class);
+
+    public static final byte[] MAGIC = {'X', 'L', 'C', '1'};
+    public static final int DEFAULT_ROW_GROUP_ROWS = 1 << 17;
+
+    //Page and chunk types
+    public static final byte NULL = 0;
+    public static final byte NUMBER = 1;
+    public static final byte DATE = 2;
+    public static final byte BOOLEAN = 3;
+    public static final byte STRING = 4;
+    public static final byte MIXED = 5;
+
+    //Encodings
+    public static final byte PLAIN = 0;
+    public static final byte DICTIONARY = 1;
+    public static final byte RLE = 2;
+
+    private final OutputStream out;
+    private final List<SheetEntry> sheets = new ArrayList<SheetEntry>();
+    private final List<PageBuffer> chunks = new ArrayList<PageBuffer>();
+    private final List<List<PageEntry>> chunkPages = new ArrayList<List<PageEntry>>();
+    private final PageBuffer page = new PageBuffer(65536);
+    private final PageBuffer flags = new PageBuffer(1024);
+    private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+    private final List<String> dictionaryValues = new ArrayList<String>();
+    private int[] ids = new int[0];
+    private int rowGroupRows = DEFAULT_ROW_GROUP_ROWS;
+    private SheetEntry sheet;
+    private int groupColumns;
+    private int groupRows;
+    private long position;
+    private boolean closed;
+
+    public ColumnarWriter(OutputStream output) throws IOException {
+        this.out = new BufferedOutputStream(output, 65536);
+        out.write(MAGIC);
+        position = MAGIC.length;
+    }
+
+    /**
+     * Creates a writer for the file.
+     *
+     * @param file
+     * @return ColumnarWriter
+     * @throws IOException
+     */
+    public static ColumnarWriter create(File file) throws IOException {
+        return new ColumnarWriter(new FileOutputStream(file));
+    }
+
+    public int getRowGroupRows() {
+        return rowGroupRows;
+    }
+
+    /**
+     * Sets the number of rows after which a row group is written,
+     * DEFAULT_ROW_GROUP_ROWS by default. Row groups end with the batch that
+     * reaches the size and with every Sheet.
+     *
+     * @param rowGroupRows
+     */
+    public void setRowGroupRows(int rowGroupRows) {
+        if (rowGroupRows < 1)
+            throw new IllegalArgumentException("Row groups need at least one row");
+        this.rowGroupRows = rowGroupRows;
+    }
+
+    public void batch(ColumnBatch batch) {
+        try {
+            if (closed)
+                throw new IllegalStateException("ColumnarWriter is closed");
+            int rows = batch.getRowCount();
+            if (rows == 0)
+                return;
+            if (null == sheet || sheet.index != batch.getSheetIndex()) {
+                writeRowGroup();
+                sheet = new SheetEntry(batch.getSheetIndex(), batch.getSheetName(),
+                        new ArrayList<String>(batch.getHeaders()));
+                sheets.add(sheet);
+            }
+            int columns = batch.getColumnCount();
+            //A Column first seen in this batch is null in the earlier batches
+            for (; groupColumns < columns; groupColumns++) {
+                if (chunks.size() == groupColumns) {
+                    chunks.add(new PageBuffer(65536));
+                    chunkPages.add(new ArrayList<PageEntry>());
+                }
+                if (groupRows > 0)
+                    writeNullPage(chunks.get(groupColumns),
+                            chunkPages.get(groupColumns), groupRows);
+            }
+            for (int c = 0; c < groupColumns; c++) {
+                if (c < columns)
+                    writePage(batch, c, chunks.get(c), chunkPages.get(c));
+                else
+                    writeNullPage(chunks.get(c), chunkPages.get(c), rows);
+            }
+            groupRows += rows;
+            if (groupRows >= rowGroupRows)
+                writeRowGroup();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            batch.release();
+        }
+    }
+
+    /**
+     * Writes the last row group and the footer.
+     */
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            writeRowGroup();
+            PageBuffer footer = new PageBuffer(4096);
+            footer.putVarint(sheets.size());
+            long rows = 0;
+            for (SheetEntry entry : sheets) {
+                footer.putString(null == entry.name ? "" : entry.name);
+                footer.putVarint(entry.index);
+                footer.putVarint(entry.headers.size());
+                for (String header : entry.headers)
+                    footer.putString(null == header ? "" : header);
+                footer.putVarint(entry.rowGroups.size());
+                for (RowGroupEntry group : entry.rowGroups) {
+                    rows += group.rows;
+                    footer.putVarint(group.rows);
+                    footer.putVarint(group.chunks.size());
+                    for (ChunkEntry chunk : group.chunks) {
+                        footer.putByte(chunk.type);
+                        footer.putVarint(chunk.offset);
+                        footer.putVarint(chunk.length);
+                        footer.putVarint(chunk.pages.size());
+                        for (PageEntry entryPage : chunk.pages)
+                            writePageEntry(footer, entryPage);
+                    }
+                }
+            }
+            footer.writeTo(out);
+            PageBuffer trailer = new PageBuffer(8);
+            trailer.putInt(footer.size());
+            trailer.put(MAGIC, 0, MAGIC.length);
+            trailer.writeTo(out);
+            out.flush();
+            LOGGER.debug("Wrote " + rows + " rows of " + sheets.size() +
+                    " Sheets in " + (position + footer.size() + trailer.size()) + " bytes");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Encodes the Column of the batch as a page of the chunk.
+     */
+    private void writePage(ColumnBatch batch, int column, PageBuffer chunk,
+                           List<PageEntry> pages) {
+        int rows = batch.getRowCount();
+        byte[] kinds = batch.getKinds(column);
+        long[] present = batch.getNullBitmap(column);
+        double[] numbers = batch.getNumbers(column);
+        String[] strings = batch.getStrings(column);
+
+        int nulls = 0;
+        boolean numeric = false;
+        boolean dates = true;
+        boolean booleans = false;
+        boolean text = false;
+        for (int r = 0; r < rows; r++) {
+            if ((present[r >>> 6] & (1L << r)) == 0) {
+                nulls++;
+                continue;
+            }
+            switch (kinds[r]) {
+                case ColumnBatch.NUMBER:
+                    numeric = true;
+                    dates = false;
+                    break;
+                case ColumnBatch.DATE:
+                    numeric = true;
+                    break;
+                case ColumnBatch.BOOLEAN:
+                    booleans = true;
+                    break;
+                default:
+                    text = true;
+                    break;
+            }
+        }
+        if (nulls == rows) {
+            writeNullPage(chunk, pages, rows);
+            return;
+        }
+        byte type;
+        if (text || (numeric && booleans))
+            type = STRING;
+        else if (booleans)
+            type = BOOLEAN;
+        else
+            type = dates ? DATE : NUMBER;
+
+        PageEntry entry = new PageEntry(rows, nulls, type);
+        page.reset();
+        page.putByte(type);
+        page.putVarint(rows);
+        page.putVarint(nulls);
+        int encodingAt = page.size();
+        page.putByte(PLAIN);
+        if (nulls > 0) {
+            ensureIds(rows);
+            for (int r = 0; r < rows; r++)
+                ids[r] = (present[r >>> 6] & (1L << r)) == 0 ? 0 : 1;
+            flags.reset();
+            RleEncoder.encode(ids, rows, 1, flags);
+            page.putVarint(flags.size());
+            page.put(flags);
+        }
+
+        byte encoding = PLAIN;
+        if (type == NUMBER || type == DATE) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int r = 0; r < rows; r++) {
+                if ((present[r >>> 6] & (1L << r)) == 0)
+                    continue;
+                double value = numbers[r];
+                page.putDouble(value);
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            entry.min = min;
+            entry.max = max;
+        } else if (type == BOOLEAN) {
+            int values = 0;
+            ensureIds(rows);
+            for (int r = 0; r < rows; r++) {
+                if ((present[r >>> 6] & (1L << r)) != 0)
+                    ids[values++] = numbers[r] != 0 ? 1 : 0;
+            }
+            double min = 1;
+            double max = 0;
+            for (int i = 0; i < values; i++) {
+                min = Math.min(min, ids[i]);
+                max = Math.max(max, ids[i]);
+            }
+            RleEncoder.encode(ids, values, 1, page);
+            encoding = RLE;
+            entry.min = min;
+            entry.max = max;
+        } else {
+            encoding = writeStrings(batch, column, rows, present, kinds, strings, entry);
+        }
+        entry.encoding = encoding;
+        page.patch(encodingAt, encoding);
+        entry.length = page.size();
+        chunk.put(page);
+        pages.add(entry);
+    }
+
+    /**
+     * Puts the non null cells of a STRING page, dictionary encoded unless
+     * more than half of them are distinct. Returns the encoding.
+     */
+    private byte writeStrings(ColumnBatch batch, int column, int rows, long[] present,
+                              byte[] kinds, String[] strings, PageEntry entry) {
+        dictionary.clear();
+        dictionaryValues.clear();
+        ensureIds(rows);
+        int values = 0;
+        String min = null;
+        String max = null;
+        for (int r = 0; r < rows; r++) {
+            if ((present[r >>> 6] & (1L << r)) == 0)
+                continue;
+            byte kind = kinds[r];
+            String value = kind == ColumnBatch.STRING || kind == ColumnBatch.ERROR ?
+                    strings[r] : batch.getValue(column, r);
+            Integer id = dictionary.get(value);
+            if (null == id) {
+                id = dictionaryValues.size();
+                dictionary.put(value, id);
+                dictionaryValues.add(value);
+                if (null == min || value.compareTo(min) < 0)
+                    min = value;
+                if (null == max || value.compareTo(max) > 0)
+                    max = value;
+            }
+            ids[values++] = id;
+        }
+        entry.minString = min;
+        entry.maxString = max;
+        if (dictionaryValues.size() * 2 > values) {
+            for (int i = 0; i < values; i++)
+                page.putString(dictionaryValues.get(ids[i]));
+            return PLAIN;
+        }
+        page.putVarint(dictionaryValues.size());
+        for (String value : dictionaryValues)
+            page.putString(value);
+        int bitWidth = RleEncoder.bitWidth(dictionaryValues.size() - 1);
+        page.putByte(bitWidth);
+        RleEncoder.encode(ids, values, bitWidth, page);
+        return DICTIONARY;
+    }
+
+    private void writeNullPage(PageBuffer chunk, List<PageEntry> pages, int rows) {
+        page.reset();
+        page.putByte(NULL);
+        page.putVarint(rows);
+        page.putVarint(rows);
+        page.putByte(PLAIN);
+        PageEntry entry = new PageEntry(rows, rows, NULL);
+        entry.encoding = PLAIN;
+        entry.length = page.size();
+        chunk.put(page);
+        pages.add(entry);
+    }
+
+    /**
+     * Writes the Column chunks of the collected pages and adds the row group
+     * to the Sheet.
+     */
+    private void writeRowGroup() throws IOException {
+        if (groupRows == 0)
+            return;
+        RowGroupEntry group = new RowGroupEntry(groupRows);
+        for (int c = 0; c < groupColumns; c++) {
+            PageBuffer chunk = chunks.get(c);
+            List<PageEntry> pages = chunkPages.get(c);
+            byte type = NULL;
+            for (PageEntry entry : pages) {
+                if (entry.type == NULL)
+                    continue;
+                type = type == NULL || type == entry.type ? entry.type : MIXED;
+            }
+            group.chunks.add(new ChunkEntry(type, position, chunk.size(),
+                    new ArrayList<PageEntry>(pages)));
+            chunk.writeTo(out);
+            position += chunk.size();
+            chunk.reset();
+            pages.clear();
+        }
+        sheet.rowGroups.add(group);
+        //The next row group starts with the Columns of its first batch
+        groupColumns = 0;
+        groupRows = 0;
+    }
+
+    private static void writePageEntry(PageBuffer footer, PageEntry entry) {
+        footer.putVarint(entry.length);
+        footer.putVarint(entry.rows);
+        footer.putVarint(entry.nulls);
+        footer.putByte(entry.type);
+        footer.putByte(entry.encoding);
+        if (entry.type == STRING) {
+            footer.putString(entry.minString);
+            footer.putString(entry.maxString);
+        } else if (entry.type != NULL) {
+            footer.putDouble(entry.min);
+            footer.putDouble(entry.max);
+        }
+    }
+
+    private void ensureIds(int rows) {
+        if (ids.length < rows)
+            ids = new int[rows];
+    }
+
+    private static final class SheetEntry {
+        private final int index;
+        private final String name;
+        private final List<String> headers;
+        private final List<RowGroupEntry> rowGroups = new ArrayList<RowGroupEntry>();
+
+        private SheetEntry(int index, String name, List<String> headers) {
+            this.index = index;
+            this.name = name;
+            this.headers = headers;
+        }
+    }
+
+    private static final class RowGroupEntry {
+        private final int rows;
+        private final List<ChunkEntry> chunks = new ArrayList<ChunkEntry>();
+
+        private RowGroupEntry(int rows) {
+            this.rows = rows;
+        }
+    }
+
+    private static final class ChunkEntry {
+        private final byte type;
+        private final long offset;
+        private final int length;
+        private final List<PageEntry> pages;
+
+        private ChunkEntry(byte type, long offset, int length, List<PageEntry> pages) {
+            this.type = type;
+            this.offset = offset;
+            this.length = length;
+            this.pages = pages;
+        }
+    }
+
+    private static final class PageEntry {
+        private final int rows;
+        private final int nulls;
+        private final byte type;
+        private byte encoding;
+        private int length;
+        private double min;
+        private double max;
+        private String minString;
+        private String maxString;
+
+        private PageEntry(int rows, int nulls, byte type) {
+            this.rows = rows;
+            this.nulls = nulls;
+            this.type = type;
+        }
+    }
+}
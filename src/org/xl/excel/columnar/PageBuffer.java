@@ -0,0 +1,96 @@
+package org.xl.excel.columnar;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable little endian byte buffer the pages, chunks and footer of a
+ * columnar file are encoded into. Kept and reset between row groups so a
+ * steady stream of pages allocates nothing.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+final class PageBuffer {
+    private byte[] bytes;
+    private int size;
+
+    PageBuffer(int capacity) {
+        this.bytes = new byte[Math.max(16, capacity)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    void putByte(int value) {
+        ensure(1);
+        bytes[size++] = (byte) value;
+    }
+
+    void putInt(int value) {
+        ensure(4);
+        bytes[size++] = (byte) value;
+        bytes[size++] = (byte) (value >>> 8);
+        bytes[size++] = (byte) (value >>> 16);
+        bytes[size++] = (byte) (value >>> 24);
+    }
+
+    void putDouble(double value) {
+        long bits = Double.doubleToLongBits(value);
+        putInt((int) bits);
+        putInt((int) (bits >>> 32));
+    }
+
+    /**
+     * Puts an unsigned LEB128 varint, 7 bits per byte.
+     */
+    void putVarint(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+    }
+
+    /**
+     * Puts the varint byte length followed by the UTF-8 bytes.
+     */
+    void putString(String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        putVarint(utf8.length);
+        put(utf8, 0, utf8.length);
+    }
+
+    /**
+     * Overwrites the byte at the offset.
+     */
+    void patch(int offset, int value) {
+        bytes[offset] = (byte) value;
+    }
+
+    void put(byte[] source, int offset, int length) {
+        ensure(length);
+        System.arraycopy(source, offset, bytes, size, length);
+        size += length;
+    }
+
+    void put(PageBuffer source) {
+        put(source.bytes, 0, source.size);
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, size);
+    }
+
+    private void ensure(int length) {
+        if (size + length > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(size + length, bytes.length * 2));
+    }
+}
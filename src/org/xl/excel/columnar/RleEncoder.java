@@ -0,0 +1,74 @@
+package org.xl.excel.columnar;
+
+/**
+ * Encodes small non negative integers (null flags, booleans and dictionary
+ * ids) with the run length / bit packing hybrid of Parquet.
+ * <p>
+ * The values are a sequence of runs, each starting with a varint header.
+ * An even header is a repeated run: header / 2 times the value that
+ * follows in (bitWidth + 7) / 8 little endian bytes. An odd header is a
+ * bit packed run of header / 2 groups of 8 values, every group taking
+ * bitWidth bytes with the values packed from the least significant bit
+ * on. The last group is padded with zeros, the reader knows the number of
+ * values from the page.
+ * <p>
+ * Repeats of 8 or more values become repeated runs, everything else is bit
+ * packed.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+final class RleEncoder {
+    private static final int MIN_REPEAT = 8;
+
+    private RleEncoder() {
+    }
+
+    /**
+     * Returns the number of bits needed for values up to maxValue.
+     */
+    static int bitWidth(int maxValue) {
+        return 32 - Integer.numberOfLeadingZeros(maxValue);
+    }
+
+    static void encode(int[] values, int count, int bitWidth, PageBuffer out) {
+        int i = 0;
+        while (i < count) {
+            int repeat = repeat(values, i, count);
+            if (repeat >= MIN_REPEAT) {
+                out.putVarint((long) repeat << 1);
+                int value = values[i];
+                for (int b = 0; b < bitWidth; b += 8)
+                    out.putByte(value >>> b);
+                i += repeat;
+                continue;
+            }
+            //Extend the bit packed run group by group until a long repeat starts
+            int end = i;
+            do {
+                end += 8;
+            } while (end < count && repeat(values, end, count) < MIN_REPEAT);
+            int groups = (end - i) / 8;
+            out.putVarint(((long) groups << 1) | 1);
+            long bits = 0;
+            int pending = 0;
+            for (int v = i; v < end; v++) {
+                bits |= (long) (v < count ? values[v] : 0) << pending;
+                pending += bitWidth;
+                while (pending >= 8) {
+                    out.putByte((int) bits);
+                    bits >>>= 8;
+                    pending -= 8;
+                }
+            }
+            i = Math.min(end, count);
+        }
+    }
+
+    private static int repeat(int[] values, int start, int count) {
+        int value = values[start];
+        int end = start + 1;
+        while (end < count && values[end] == value)
+            end++;
+        return end - start;
+    }
+}
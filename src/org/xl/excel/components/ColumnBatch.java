@@ -0,0 +1,318 @@
+package org.xl.excel.components;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Column major batch of up to getCapacity() data rows of one Sheet.
+ * <p>
+ * Every Column holds a kind per cell, a double array with the value of
+ * NUMBER, DATE and BOOLEAN cells, a String array with the value of STRING
+ * and ERROR cells and a null bitmap in which bit r of word r / 64 is set
+ * when row r has a value. The arrays are exposed directly for vectorized
+ * consumers and are only valid up to getRowCount().
+ * <p>
+ * DATE cells hold the Excel serial date, BOOLEAN cells 1 or 0. Empty cells
+ * are null.
+ * <p>
+ * Batches come from a ColumnBatchPool and are reused: once a consumer is
+ * done with a batch it must call release(), after which its contents may be
+ * overwritten at any time.
+ * <p>
+ * Rows are built one at a time by the parser with the set methods followed
+ * by commitRow() or discardRow().
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public final class ColumnBatch {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    public static final byte NULL = 0;
+    public static final byte STRING = 1;
+    public static final byte NUMBER = 2;
+    public static final byte DATE = 3;
+    public static final byte BOOLEAN = 4;
+    public static final byte ERROR = 5;
+
+    private final ColumnBatchPool pool;
+    //Set while the batch waits in its pool
+    private final AtomicBoolean pooled = new AtomicBoolean();
+    private final int capacity;
+    private final int bitmapWords;
+    private int columnCount;
+    private byte[][] kinds = new byte[0][];
+    private double[][] numbers = new double[0][];
+    private String[][] strings = new String[0][];
+    private long[][] present = new long[0][];
+    private int rowCount;
+    private int pendingCells;
+
+    private int sheetIndex;
+    private String sheetName;
+    private List<String> headers = Collections.emptyList();
+
+    ColumnBatch(ColumnBatchPool pool, int capacity) {
+        this.pool = pool;
+        this.capacity = capacity;
+        this.bitmapWords = (capacity + 63) >>> 6;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the number of Columns, at least the number of Headers.
+     */
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public boolean isFull() {
+        return rowCount >= capacity;
+    }
+
+    public int getSheetIndex() {
+        return sheetIndex;
+    }
+
+    public String getSheetName() {
+        return sheetName;
+    }
+
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    public boolean isNull(int column, int row) {
+        return column >= columnCount ||
+                (present[column][row >>> 6] & (1L << row)) == 0;
+    }
+
+    /**
+     * Returns the kind of the cell, NULL for empty cells.
+     */
+    public byte getKind(int column, int row) {
+        return isNull(column, row) ? NULL : kinds[column][row];
+    }
+
+    /**
+     * Returns the value of a NUMBER, DATE or BOOLEAN cell, NaN otherwise.
+     */
+    public double getNumber(int column, int row) {
+        byte kind = getKind(column, row);
+        return kind == NUMBER || kind == DATE || kind == BOOLEAN ?
+                numbers[column][row] : Double.NaN;
+    }
+
+    /**
+     * Returns the value of a STRING or ERROR cell, null otherwise.
+     */
+    public String getString(int column, int row) {
+        byte kind = getKind(column, row);
+        return kind == STRING || kind == ERROR ? strings[column][row] : null;
+    }
+
+    /**
+     * Returns the cell value as text: numbers as Java renders doubles,
+     * booleans as TRUE or FALSE and empty cells as the empty String.
+     */
+    public String getValue(int column, int row) {
+        switch (getKind(column, row)) {
+            case STRING:
+            case ERROR:
+                return strings[column][row];
+            case NUMBER:
+            case DATE:
+                return String.valueOf(numbers[column][row]);
+            case BOOLEAN:
+                return numbers[column][row] != 0 ? "TRUE" : "FALSE";
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * Returns the kinds of the Column's cells.
+     */
+    public byte[] getKinds(int column) {
+        return kinds[column];
+    }
+
+    /**
+     * Returns the numeric values of the Column's cells.
+     */
+    public double[] getNumbers(int column) {
+        return numbers[column];
+    }
+
+    /**
+     * Returns the String values of the Column's cells.
+     */
+    public String[] getStrings(int column) {
+        return strings[column];
+    }
+
+    /**
+     * Returns the null bitmap of the Column, a set bit marks a cell with a
+     * value.
+     */
+    public long[] getNullBitmap(int column) {
+        return present[column];
+    }
+
+    /**
+     * Hands the batch back to its pool. The batch must not be used
+     * afterwards, releasing it again throws an IllegalStateException.
+     */
+    public void release() {
+        pool.release(this);
+    }
+
+    /**
+     * Prepares the batch for the rows of a Sheet, called by the parser.
+     *
+     * @param sheetIndex
+     * @param sheetName
+     * @param headers
+     */
+    public void start(int sheetIndex, String sheetName, List<String> headers) {
+        this.sheetIndex = sheetIndex;
+        this.sheetName = sheetName;
+        this.headers = headers;
+        ensureColumns(headers.size());
+        columnCount = Math.max(columnCount, headers.size());
+    }
+
+    public void setString(int column, String value) {
+        if (null == value || value.length() == 0)
+            return;
+        set(column, STRING);
+        strings[column][rowCount] = value;
+    }
+
+    public void setError(int column, String value) {
+        set(column, ERROR);
+        strings[column][rowCount] = value;
+    }
+
+    /**
+     * Sets a NUMBER or DATE cell.
+     */
+    public void setNumber(int column, double value, boolean date) {
+        set(column, date ? DATE : NUMBER);
+        numbers[column][rowCount] = value;
+    }
+
+    public void setBoolean(int column, boolean value) {
+        set(column, BOOLEAN);
+        numbers[column][rowCount] = value ? 1 : 0;
+    }
+
+    /**
+     * Returns true if no cell of the row being built was set.
+     */
+    public boolean isPendingRowBlank() {
+        return pendingCells == 0;
+    }
+
+    /**
+     * Adds the row being built to the batch.
+     */
+    public void commitRow() {
+        if (isFull())
+            throw new IllegalStateException("ColumnBatch is full");
+        rowCount++;
+        pendingCells = 0;
+    }
+
+    /**
+     * Clears the row being built.
+     */
+    public void discardRow() {
+        if (pendingCells > 0) {
+            int word = rowCount >>> 6;
+            long mask = ~(1L << rowCount);
+            for (int c = 0; c < columnCount; c++) {
+                present[c][word] &= mask;
+                strings[c][rowCount] = null;
+            }
+        }
+        pendingCells = 0;
+    }
+
+    /**
+     * Marks the batch as waiting in its pool. Returns false when it already
+     * was, that is when the batch is released twice.
+     */
+    boolean markPooled() {
+        return pooled.compareAndSet(false, true);
+    }
+
+    /**
+     * Marks the batch as handed out by its pool.
+     */
+    void markAcquired() {
+        pooled.set(false);
+    }
+
+    /**
+     * Empties the batch, called when it is returned to the pool.
+     */
+    void clear() {
+        int words = (rowCount + 64) >>> 6;
+        int rows = Math.min(capacity, rowCount + 1);
+        for (int c = 0; c < columnCount; c++) {
+            Arrays.fill(present[c], 0, Math.min(words, bitmapWords), 0L);
+            //Drop the references so the values can be collected
+            Arrays.fill(strings[c], 0, rows, null);
+        }
+        rowCount = 0;
+        pendingCells = 0;
+        columnCount = 0;
+        headers = Collections.emptyList();
+        sheetName = null;
+    }
+
+    private void set(int column, byte kind) {
+        if (rowCount >= capacity)
+            throw new IllegalStateException("ColumnBatch is full");
+        if (column >= columnCount) {
+            ensureColumns(column + 1);
+            columnCount = column + 1;
+        }
+        long[] bits = present[column];
+        long bit = 1L << rowCount;
+        if ((bits[rowCount >>> 6] & bit) == 0) {
+            bits[rowCount >>> 6] |= bit;
+            pendingCells++;
+        }
+        kinds[column][rowCount] = kind;
+    }
+
+    /**
+     * Allocates the arrays of new Columns, Columns are kept when the batch
+     * is reused so this only allocates for the first batches of a Sheet.
+     */
+    private void ensureColumns(int columns) {
+        int allocated = kinds.length;
+        if (columns <= allocated)
+            return;
+        kinds = Arrays.copyOf(kinds, columns);
+        numbers = Arrays.copyOf(numbers, columns);
+        strings = Arrays.copyOf(strings, columns);
+        present = Arrays.copyOf(present, columns);
+        for (int c = allocated; c < columns; c++) {
+            kinds[c] = new byte[capacity];
+            numbers[c] = new double[capacity];
+            strings[c] = new String[capacity];
+            present[c] = new long[bitmapWords];
+        }
+    }
+}
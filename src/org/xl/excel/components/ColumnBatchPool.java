@@ -0,0 +1,82 @@
+package org.xl.excel.components;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of ColumnBatches.
+ * <p>
+ * At most maxBatches batches are ever created. When all of them are held
+ * by consumers acquire() waits until one is released, which throttles the
+ * parser to the speed of its consumers and bounds the memory used by
+ * batches in flight. Batches keep their Column arrays when released so a
+ * steady stream of batches allocates nothing.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class ColumnBatchPool {
+    public static final int DEFAULT_MAX_BATCHES = 4;
+
+    private final int batchCapacity;
+    private final int maxBatches;
+    private final BlockingQueue<ColumnBatch> free;
+    private final AtomicInteger created = new AtomicInteger();
+
+    public ColumnBatchPool() {
+        this(ColumnBatch.DEFAULT_CAPACITY, DEFAULT_MAX_BATCHES);
+    }
+
+    /**
+     * @param batchCapacity Number of rows per batch
+     * @param maxBatches    Maximum number of batches in use at once
+     */
+    public ColumnBatchPool(int batchCapacity, int maxBatches) {
+        this.batchCapacity = Math.max(1, batchCapacity);
+        this.maxBatches = Math.max(1, maxBatches);
+        this.free = new ArrayBlockingQueue<ColumnBatch>(this.maxBatches);
+    }
+
+    /**
+     * Returns an empty batch, waiting for a release when all batches are in
+     * use.
+     */
+    public ColumnBatch acquire() {
+        ColumnBatch batch = free.poll();
+        if (null != batch) {
+            batch.markAcquired();
+            return batch;
+        }
+        if (created.incrementAndGet() <= maxBatches)
+            return new ColumnBatch(this, batchCapacity);
+        created.decrementAndGet();
+        try {
+            batch = free.take();
+            batch.markAcquired();
+            return batch;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for a ColumnBatch", e);
+        }
+    }
+
+    public int getBatchCapacity() {
+        return batchCapacity;
+    }
+
+    public int getMaxBatches() {
+        return maxBatches;
+    }
+
+    /**
+     * Returns the batch to the free batches. A batch which is already free
+     * is rejected before it is cleared.
+     */
+    void release(ColumnBatch batch) {
+        if (!batch.markPooled())
+            throw new IllegalStateException("ColumnBatch released twice");
+        batch.clear();
+        if (!free.offer(batch))
+            throw new IllegalStateException("More ColumnBatches released than created");
+    }
+}
@@ -0,0 +1,271 @@
+package org.xl.excel.components;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Secondary indexes on one Column of a Sheet, answering lookups with row
+ * numbers instead of scanning the rows.
+ * <p>
+ * There are three indexes, each built from the cells of this Column only
+ * the first time a lookup needs it and then kept:<br>
+ * - a hash index of the distinct cell values for equality lookups<br>
+ * - a sorted index of the numeric cells for number ranges<br>
+ * - a sorted index of the non blank cells for text ranges
+ * <p>
+ * The row numbers of every value are held in one int array grouped by
+ * value, so an index costs a few ints per row besides the distinct values.
+ * Lookups return the row numbers in ascending order.
+ * <p>
+ * Thread safe, lookups on a built index do not lock. The index reflects
+ * the rows at the time it was built.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+final class ColumnIndex {
+    private static final int[] NO_ROWS = new int[0];
+
+    private final RowStore rowStore;
+    private final int rowCount;
+    private final int columnIndex;
+
+    //Each index is published by writing its volatile field last, so
+    //lookups only lock while the index is being built
+    //Hash index, the rows of value v are rows[start[v]..start[v+1])
+    private volatile Map<String, Integer> values;
+    private int[] valueStart;
+    private int[] valueRows;
+
+    //Numeric cells ordered by value
+    private volatile double[] numbers;
+    private int[] numberRows;
+
+    //Non blank cells ordered by text
+    private volatile String[] texts;
+    private int[] textRows;
+
+    ColumnIndex(RowStore rowStore, int rowCount, int columnIndex) {
+        this.rowStore = rowStore;
+        this.rowCount = rowCount;
+        this.columnIndex = columnIndex;
+    }
+
+    /**
+     * Returns true when a cell of the Column equals the value.
+     */
+    boolean contains(String value) {
+        if (null == values)
+            buildHash();
+        return values.containsKey(value);
+    }
+
+    /**
+     * Returns the rows whose cell equals the value.
+     */
+    int[] rowsEqualTo(String value) {
+        if (null == values)
+            buildHash();
+        Integer code = values.get(value);
+        if (null == code)
+            return NO_ROWS;
+        return Arrays.copyOfRange(valueRows, valueStart[code], valueStart[code + 1]);
+    }
+
+    /**
+     * Returns the rows whose cell is a number from min to max, inclusive.
+     */
+    int[] rowsBetween(double min, double max) {
+        if (null == numbers)
+            buildNumbers();
+        int from = lowerBound(numbers, min);
+        int to = upperBound(numbers, max);
+        return sortedRows(numberRows, from, Math.max(from, to));
+    }
+
+    /**
+     * Returns the rows whose non blank cell sorts from min to max,
+     * inclusive. A null bound is open.
+     */
+    int[] rowsBetween(String min, String max) {
+        if (null == texts)
+            buildTexts();
+        int from = null == min ? 0 : lowerBound(texts, min);
+        int to = null == max ? texts.length : upperBound(texts, max);
+        return sortedRows(textRows, from, Math.max(from, to));
+    }
+
+    private static int[] sortedRows(int[] rows, int from, int to) {
+        int[] result = Arrays.copyOfRange(rows, from, to);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private synchronized void buildHash() {
+        if (null != values)
+            return;
+        Map<String, Integer> codes = new HashMap<String, Integer>();
+        int[] rowCodes = new int[rowCount];
+        int[] counts = new int[16];
+        for (int row = 0; row < rowCount; row++) {
+            String cell = rowStore.getCell(row, columnIndex, false);
+            Integer code = codes.get(cell);
+            if (null == code) {
+                code = codes.size();
+                codes.put(cell, code);
+                if (code == counts.length)
+                    counts = Arrays.copyOf(counts, counts.length * 2);
+            }
+            rowCodes[row] = code;
+            counts[code]++;
+        }
+        int[] start = new int[codes.size() + 1];
+        for (int code = 0; code < codes.size(); code++)
+            start[code + 1] = start[code] + counts[code];
+        int[] next = Arrays.copyOf(start, codes.size());
+        int[] rows = new int[rowCount];
+        for (int row = 0; row < rowCount; row++)
+            rows[next[rowCodes[row]]++] = row;
+        valueStart = start;
+        valueRows = rows;
+        values = codes;
+    }
+
+    private synchronized void buildNumbers() {
+        if (null != numbers)
+            return;
+        double[] cells = new double[rowCount];
+        int count = 0;
+        Integer[] order = new Integer[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            double value = parse(rowStore.getCell(row, columnIndex, false));
+            if (!Double.isNaN(value)) {
+                cells[row] = value;
+                order[count++] = row;
+            }
+        }
+        final double[] sortValues = cells;
+        Arrays.sort(order, 0, count, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(sortValues[a], sortValues[b]);
+            }
+        });
+        double[] sorted = new double[count];
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = order[i];
+            sorted[i] = cells[rows[i]];
+        }
+        numberRows = rows;
+        numbers = sorted;
+    }
+
+    private synchronized void buildTexts() {
+        if (null != texts)
+            return;
+        final String[] cells = new String[rowCount];
+        int count = 0;
+        Integer[] order = new Integer[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            String cell = rowStore.getCell(row, columnIndex, false);
+            if (!cell.isEmpty()) {
+                cells[row] = cell;
+                order[count++] = row;
+            }
+        }
+        Arrays.sort(order, 0, count, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return cells[a].compareTo(cells[b]);
+            }
+        });
+        String[] sorted = new String[count];
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = order[i];
+            sorted[i] = cells[rows[i]];
+        }
+        textRows = rows;
+        texts = sorted;
+    }
+
+    /**
+     * Returns the first position whose value is not below the key.
+     */
+    private static int lowerBound(double[] sorted, double key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < key)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Returns the first position whose value is above the key.
+     */
+    private static int upperBound(double[] sorted, double key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] <= key)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private static int lowerBound(String[] sorted, String key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle].compareTo(key) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Returns the first position whose value is above the key.
+     */
+    private static int upperBound(String[] sorted, String key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle].compareTo(key) <= 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Parses a cell as a number, NaN when it is blank or not a number.
+     * Grouping separators are ignored.
+     */
+    private static double parse(String cell) {
+        if (cell.isEmpty())
+            return Double.NaN;
+        char first = cell.charAt(0);
+        if ((first < '0' || first > '9') && first != '-' && first != '+' && first != '.')
+            return Double.NaN;
+        try {
+            return Double.parseDouble(cell.indexOf(',') < 0 ? cell : cell.replace(",", ""));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
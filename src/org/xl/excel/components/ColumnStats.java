@@ -0,0 +1,201 @@
+package org.xl.excel.components;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The ColumnStats Object contains the statistics gathered for a single
+ * Column while the Sheet was being parsed. This includes the inferred
+ * Column Type, the number of values of each kind, the number of blank
+ * cells and the minimum and maximum numeric value.
+ * <p>
+ * When the parser was configured with a type inference sample size the
+ * statistics only cover the sampled rows, see getRowCount().
+ * <p>
+ * When column profiling is enabled on the parser the ColumnStats also hold
+ * an approximate distinct count and the most frequent values of the Column,
+ * gathered over all data rows in fixed memory.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class ColumnStats {
+    private final String header;
+    private final String columnType;
+    private final int rowCount;
+    private final int numberCount;
+    private final int dateCount;
+    private final int booleanCount;
+    private final int stringCount;
+    private final int errorCount;
+    private final double min;
+    private final double max;
+    private final HyperLogLog distinctValues;
+    private final SpaceSaving frequentValues;
+
+    public ColumnStats(String header,
+                       String columnType,
+                       int rowCount,
+                       int numberCount,
+                       int dateCount,
+                       int booleanCount,
+                       int stringCount,
+                       int errorCount,
+                       double min,
+                       double max) {
+        this(header, columnType, rowCount, numberCount, dateCount,
+                booleanCount, stringCount, errorCount, min, max, null, null);
+    }
+
+    public ColumnStats(String header,
+                       String columnType,
+                       int rowCount,
+                       int numberCount,
+                       int dateCount,
+                       int booleanCount,
+                       int stringCount,
+                       int errorCount,
+                       double min,
+                       double max,
+                       HyperLogLog distinctValues,
+                       SpaceSaving frequentValues) {
+        this.header = header;
+        this.columnType = columnType;
+        this.rowCount = rowCount;
+        this.numberCount = numberCount;
+        this.dateCount = dateCount;
+        this.booleanCount = booleanCount;
+        this.stringCount = stringCount;
+        this.errorCount = errorCount;
+        this.min = min;
+        this.max = max;
+        this.distinctValues = distinctValues;
+        this.frequentValues = frequentValues;
+    }
+
+    /**
+     * Returns true if the Column was profiled and getDistinctCount() and
+     * getTopValues() are available.
+     */
+    public boolean isProfiled() {
+        return distinctValues != null;
+    }
+
+    /**
+     * Returns the approximate number of distinct non blank values in the
+     * Column.
+     * <p>
+     * -1 if the Column was not profiled
+     *
+     * @return Distinct Count
+     */
+    public long getDistinctCount() {
+        return distinctValues == null ? -1 : distinctValues.cardinality();
+    }
+
+    /**
+     * Returns up to k of the most frequent non blank values in the Column,
+     * most frequent first.
+     * <p>
+     * Empty if the Column was not profiled
+     *
+     * @param k
+     * @return Top Values
+     */
+    public List<SpaceSaving.Counter> getTopValues(int k) {
+        if (frequentValues == null)
+            return Collections.emptyList();
+        return frequentValues.getTop(k);
+    }
+
+    /**
+     * Returns the Header of the Column.
+     *
+     * @return Header
+     */
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * Returns the inferred Column Type. This is the same value as the
+     * matching entry of Sheet.getColumnTypes()
+     *
+     * @return ColumnType
+     */
+    public String getColumnType() {
+        return columnType;
+    }
+
+    /**
+     * Returns the Number of Rows which were inspected for this Column.
+     *
+     * @return Number of Rows
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the Number of empty or missing cells in this Column.
+     *
+     * @return Number of Blank Cells
+     */
+    public int getBlankCount() {
+        return rowCount - numberCount - dateCount - booleanCount -
+                stringCount - errorCount;
+    }
+
+    public int getNumberCount() {
+        return numberCount;
+    }
+
+    public int getDateCount() {
+        return dateCount;
+    }
+
+    public int getBooleanCount() {
+        return booleanCount;
+    }
+
+    public int getStringCount() {
+        return stringCount;
+    }
+
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Returns the smallest numeric cell value of the Column. Excel stores
+     * Dates as numbers so Date cells are included.
+     * <p>
+     * Double.NaN if the Column has no numeric cells
+     *
+     * @return Minimum
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the largest numeric cell value of the Column. Excel stores
+     * Dates as numbers so Date cells are included.
+     * <p>
+     * Double.NaN if the Column has no numeric cells
+     *
+     * @return Maximum
+     */
+    public double getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnStats[header=" + header + ", type=" + columnType +
+                ", rows=" + rowCount + ", blank=" + getBlankCount() +
+                ", number=" + numberCount + ", date=" + dateCount +
+                ", boolean=" + booleanCount + ", string=" + stringCount +
+                ", error=" + errorCount + ", min=" + min + ", max=" + max +
+                (isProfiled() ? ", distinct~" + getDistinctCount() : "") + "]";
+    }
+}
@@ -0,0 +1,326 @@
+package org.xl.excel.components;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dictionary encoded storage for the rows of a Sheet.
+ * <p>
+ * Instead of one Comma Separated String per row every cell is stored as an
+ * int code. Codes 0 and up refer to an entry of the Sheet's dictionary, which
+ * the XLSX parser fills from the shared strings table so each distinct
+ * string is held once no matter how many cells repeat it. Other values are
+ * appended to a shared character buffer and referenced by negative codes.
+ * Values are only turned into Strings when they are read.
+ * <p>
+ * Rows are built one at a time with setEntry()/setLiteral() followed by
+ * commitRow() or discardRow(). Cells which are never set are missing.
+ * <p>
+ * Rows read exactly like the Comma Separated Strings of a Sheet which is
+ * not dictionary encoded: getRow() quotes every value, empty ones too, and
+ * leaves a missing cell empty. The unquoted cells have their quote
+ * characters removed.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public final class DictionaryRows implements RowStore {
+    //A cell without a value, and one holding an empty value
+    private static final int MISSING = -1;
+    private static final int EMPTY = -2;
+    //Largest array most VMs can allocate
+    private static final int MAX_ARRAY = Integer.MAX_VALUE - 8;
+
+    private final List<String> dictionary = new ArrayList<String>();
+
+    //Literal values, code -3 - i refers to literal i
+    private char[] chars = new char[1024];
+    private int charCount;
+    private int[] literalStart = new int[64];
+    private int literalCount;
+
+    //Committed rows, the cells of row r are codes[rowStart[r]..rowStart[r+1])
+    private int[] codes = new int[1024];
+    private int[] rowStart = new int[65];
+    private int rowCount;
+
+    //Row currently being built
+    private int[] pending = new int[16];
+    private int pendingCells;
+    private int pendingCharStart;
+    private int pendingLiteralStart;
+
+    public DictionaryRows() {
+    }
+
+    /**
+     * Adds a value to the dictionary and returns its code. Callers are
+     * responsible for not adding the same value twice.
+     *
+     * @param value
+     * @return code
+     */
+    public int addEntry(String value) {
+        dictionary.add(value);
+        return dictionary.size() - 1;
+    }
+
+    /**
+     * Returns the dictionary value of the code.
+     *
+     * @param code
+     * @return Value
+     */
+    public String getEntry(int code) {
+        return dictionary.get(code);
+    }
+
+    /**
+     * Returns the Number of distinct values in the dictionary.
+     *
+     * @return Dictionary Size
+     */
+    public int getEntryCount() {
+        return dictionary.size();
+    }
+
+    /**
+     * Sets a cell of the current row to a dictionary entry.
+     *
+     * @param position 0 indexed cell position
+     * @param code     code returned by addEntry()
+     */
+    public void setEntry(int position, int code) {
+        setPending(position, code);
+    }
+
+    /**
+     * Sets a cell of the current row to a literal value.
+     *
+     * @param position 0 indexed cell position
+     * @param value
+     */
+    public void setLiteral(int position, String value) {
+        int length = value.length();
+        if (length == 0) {
+            setPending(position, EMPTY);
+            return;
+        }
+        if ((long) charCount + length > chars.length) {
+            char[] grown = new char[capacity(chars.length, (long) charCount + length,
+                    "literal characters")];
+            System.arraycopy(chars, 0, grown, 0, charCount);
+            chars = grown;
+        }
+        value.getChars(0, length, chars, charCount);
+        if (literalCount + 1 >= literalStart.length)
+            literalStart = grow(literalStart, literalStart.length * 2);
+        literalStart[literalCount] = charCount;
+        charCount += length;
+        literalStart[literalCount + 1] = charCount;
+        setPending(position, -3 - literalCount++);
+    }
+
+    /**
+     * Adds empty cells to the current row up to the specified number of
+     * cells.
+     *
+     * @param cells
+     */
+    public void padRow(int cells) {
+        while (pendingCells < cells) {
+            setPending(pendingCells, EMPTY);
+        }
+    }
+
+    /**
+     * Returns true if no cell of the current row holds a value, quote
+     * characters not counted.
+     */
+    public boolean isPendingRowBlank() {
+        for (int i = 0; i < pendingCells; i++) {
+            if (!isBlank(value(pending[i])))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the values of the current row, used when the row turns out to
+     * be the header row.
+     *
+     * @return Values
+     */
+    public List<String> getPendingValues() {
+        List<String> values = new ArrayList<String>(pendingCells);
+        for (int i = 0; i < pendingCells; i++) {
+            values.add(value(pending[i]));
+        }
+        return values;
+    }
+
+    /**
+     * Stores the current row and starts a new one.
+     */
+    public void commitRow() {
+        int start = rowStart[rowCount];
+        if ((long) start + pendingCells > codes.length)
+            codes = grow(codes, capacity(codes.length, (long) start + pendingCells, "cells"));
+        System.arraycopy(pending, 0, codes, start, pendingCells);
+        if (rowCount + 2 > rowStart.length)
+            rowStart = grow(rowStart, rowStart.length * 2);
+        rowStart[++rowCount] = start + pendingCells;
+        startRow();
+    }
+
+    /**
+     * Drops the current row, including its literal values, and starts a new
+     * one.
+     */
+    public void discardRow() {
+        charCount = pendingCharStart;
+        literalCount = pendingLiteralStart;
+        startRow();
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public String[] getCells(int rowNumber, boolean withQuotes) {
+        checkRow(rowNumber);
+        int first = rowStart[rowNumber];
+        String[] cells = new String[rowStart[rowNumber + 1] - first];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = format(codes[first + i], withQuotes);
+        }
+        return cells;
+    }
+
+    public String getCell(int rowNumber, int columnIndex, boolean withQuotes) {
+        checkRow(rowNumber);
+        if (columnIndex < 0)
+            throw new IndexOutOfBoundsException("Column Index: " + columnIndex);
+        int cell = rowStart[rowNumber] + columnIndex;
+        if (cell >= rowStart[rowNumber + 1])
+            return "";
+        return format(codes[cell], withQuotes);
+    }
+
+    /**
+     * Returns the row as a Comma Separated String of quoted values, padded
+     * with empty values up to minCells. Missing cells are left empty.
+     *
+     * @param rowNumber
+     * @param minCells
+     * @return Row
+     */
+    public String getRow(int rowNumber, int minCells) {
+        checkRow(rowNumber);
+        int first = rowStart[rowNumber];
+        int cells = Math.max(rowStart[rowNumber + 1] - first, minCells);
+        StringBuilder row = new StringBuilder(cells * 8);
+        for (int i = 0; i < cells; i++) {
+            if (i > 0)
+                row.append(',');
+            int code = first + i < rowStart[rowNumber + 1] ? codes[first + i] : EMPTY;
+            if (code == MISSING)
+                continue;
+            row.append('"');
+            if (code >= 0)
+                row.append(dictionary.get(code));
+            else if (code != EMPTY)
+                row.append(chars, literalStart[-3 - code],
+                        literalStart[-2 - code] - literalStart[-3 - code]);
+            row.append('"');
+        }
+        return row.toString();
+    }
+
+    /**
+     * Returns a read only List view which renders each row with getRow()
+     * when it is accessed.
+     *
+     * @param minCells
+     * @return RowList
+     */
+    public List<String> asRowList(final int minCells) {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return getRow(index, minCells);
+            }
+
+            @Override
+            public int size() {
+                return rowCount;
+            }
+        };
+    }
+
+    private String format(int code, boolean withQuotes) {
+        if (code == MISSING)
+            return "";
+        String value = value(code);
+        if (withQuotes)
+            return '"' + value + '"';
+        return value.indexOf('"') < 0 ? value : value.replace("\"", "");
+    }
+
+    private String value(int code) {
+        if (code >= 0)
+            return dictionary.get(code);
+        if (code == MISSING || code == EMPTY)
+            return "";
+        int start = literalStart[-3 - code];
+        return new String(chars, start, literalStart[-2 - code] - start);
+    }
+
+    private static boolean isBlank(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != '"')
+                return false;
+        }
+        return true;
+    }
+
+    private void setPending(int position, int code) {
+        if (position >= pending.length)
+            pending = grow(pending, Math.max(position + 1, pending.length * 2));
+        while (pendingCells < position) {
+            pending[pendingCells++] = MISSING;
+        }
+        pending[position] = code;
+        if (position == pendingCells)
+            pendingCells++;
+    }
+
+    private void startRow() {
+        pendingCells = 0;
+        pendingCharStart = charCount;
+        pendingLiteralStart = literalCount;
+    }
+
+    private void checkRow(int rowNumber) {
+        if (rowNumber < 0 || rowNumber >= rowCount)
+            throw new IndexOutOfBoundsException("Row Number: " + rowNumber +
+                    ", Row Count: " + rowCount);
+    }
+
+    private static int[] grow(int[] values, int length) {
+        int[] grown = new int[length];
+        System.arraycopy(values, 0, grown, 0, values.length);
+        return grown;
+    }
+
+    /**
+     * Returns the grown length of an array which needs to hold the
+     * specified number of values, failing once an array can't hold them.
+     */
+    private static int capacity(int length, long needed, String values) {
+        if (needed > MAX_ARRAY)
+            throw new IllegalStateException("Dictionary encoded rows exceed " + MAX_ARRAY +
+                    " " + values + ", " + needed + " needed");
+        return (int) Math.min(MAX_ARRAY, Math.max(2L * length, needed));
+    }
+}
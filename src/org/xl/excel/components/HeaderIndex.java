@@ -0,0 +1,77 @@
+package org.xl.excel.components;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Case insensitive lookup of Column Headers to their column position.
+ * <p>
+ * Header names are folded the same way String.equalsIgnoreCase compares
+ * characters, so a lookup matches exactly the headers the previous linear
+ * scan matched. When a header appears more than once the first (left most)
+ * column wins.
+ * <p>
+ * Sheet.getColumnIndex() looks Headers up through this index, and so does
+ * anything else resolving a Header name, so all agree on the Column.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public final class HeaderIndex {
+    private final Map<String, Integer> positions;
+
+    private HeaderIndex(Map<String, Integer> positions) {
+        this.positions = positions;
+    }
+
+    /**
+     * Builds the index for the specified list of Headers, an empty index
+     * when the list is null.
+     *
+     * @param headerList
+     * @return HeaderIndex
+     */
+    public static HeaderIndex build(List<String> headerList) {
+        int size = null == headerList ? 0 : headerList.size();
+        Map<String, Integer> positions =
+                new HashMap<String, Integer>(Math.max(16, size * 4 / 3 + 1));
+        for (int i = 0; i < size; i++) {
+            String header = headerList.get(i);
+            if (header == null)
+                continue;
+            String key = fold(header);
+            if (!positions.containsKey(key))
+                positions.put(key, i);
+        }
+        return new HeaderIndex(positions);
+    }
+
+    /**
+     * Returns the column position of the specified header or -1 when the
+     * header does not exist.
+     *
+     * @param columnHeader
+     * @return columnIndex
+     */
+    public int indexOf(String columnHeader) {
+        if (columnHeader == null)
+            return -1;
+        Integer position = positions.get(fold(columnHeader));
+        return position == null ? -1 : position;
+    }
+
+    private static String fold(String value) {
+        int length = value.length();
+        char[] folded = null;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            char f = Character.toLowerCase(Character.toUpperCase(c));
+            if (f != c && folded == null) {
+                folded = value.toCharArray();
+            }
+            if (folded != null)
+                folded[i] = f;
+        }
+        return folded == null ? value : new String(folded);
+    }
+}
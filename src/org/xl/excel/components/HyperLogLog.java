@@ -0,0 +1,119 @@
+package org.xl.excel.components;
+
+/**
+ * HyperLogLog sketch which estimates the number of distinct values offered
+ * to it in a fixed amount of memory.
+ * <p>
+ * The sketch keeps 2^precision one byte registers, the default precision of
+ * 12 uses 4KB per sketch with a typical error of about 1.6%. Small
+ * cardinalities are estimated with linear counting so they are close to
+ * exact.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public final class HyperLogLog {
+    public static final int DEFAULT_PRECISION = 12;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param precision Number of index bits, between 4 and 18
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18)
+            throw new IllegalArgumentException("HyperLogLog precision must be between 4 and 18: "
+                    + precision);
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Adds a value to the sketch.
+     *
+     * @param value
+     */
+    public void offer(CharSequence value) {
+        offerHash(hash(value));
+    }
+
+    /**
+     * Adds an already hashed value to the sketch. The hash must be well
+     * mixed in all 64 bits, see hash(CharSequence).
+     *
+     * @param hash
+     */
+    public void offerHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        long remaining = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > registers[index])
+            registers[index] = rank;
+    }
+
+    /**
+     * Returns the estimated number of distinct values offered.
+     *
+     * @return Distinct Count
+     */
+    public long cardinality() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0)
+                zeros++;
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 :
+                0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0)
+            estimate = m * Math.log((double) m / zeros);
+        return Math.round(estimate);
+    }
+
+    /**
+     * Merges another sketch with the same precision into this one.
+     *
+     * @param other
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision)
+            throw new IllegalArgumentException("Cannot merge HyperLogLog of precision " +
+                    other.precision + " into " + precision);
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i])
+                registers[i] = other.registers[i];
+        }
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * 64 bit hash of the characters of a value, FNV-1a over the chars
+     * followed by the MurmurHash3 finalizer so every bit is mixed.
+     *
+     * @param value
+     * @return hash
+     */
+    public static long hash(CharSequence value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
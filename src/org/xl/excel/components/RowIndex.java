@@ -0,0 +1,238 @@
+package org.xl.excel.components;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Random access index over the Comma Separated Row Strings of a Sheet.
+ * <p>
+ * The cells are read straight from the row Strings of the Sheet's row
+ * list, nothing is copied. The first time a row is read the offsets of its
+ * cells are recorded, so reading its cells again does not require the
+ * quote aware regex split of the whole row. Rows which are never read cost
+ * nothing.
+ * <p>
+ * The offsets are kept together with the row String they were taken from.
+ * When a row of the list is replaced, or rows are added or removed, the
+ * String found at a position no longer is the one which was indexed and
+ * the row is split again, so the index always agrees with the list.
+ * <p>
+ * Cell boundaries are identical to splitting the row with
+ * <code>,(?=([^"]*"[^"]*")*[^"]*$)</code> as the parsers do, including the
+ * removal of trailing empty cells performed by String.split.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+final class RowIndex implements RowStore {
+    private static final RowCells[] NO_ROWS = new RowCells[0];
+
+    private final List<String> rowList;
+    private volatile RowCells[] rows = NO_ROWS;
+
+    private RowIndex(List<String> rowList) {
+        this.rowList = rowList;
+    }
+
+    /**
+     * Creates the index for the specified list of Comma Separated Row
+     * Strings. Rows are only split when they are first read.
+     *
+     * @param rowList
+     * @return RowIndex
+     */
+    static RowIndex build(List<String> rowList) {
+        return new RowIndex(rowList);
+    }
+
+    /**
+     * Splits a single Comma Separated Row String into its cells.
+     *
+     * @param row
+     * @param withQuotes
+     * @return String[]
+     */
+    static String[] split(String row, boolean withQuotes) {
+        return cells(row, bounds(row), withQuotes);
+    }
+
+    /**
+     * Returns the Number of Rows, the size of the row list.
+     *
+     * @return Number of Rows
+     */
+    public int getRowCount() {
+        return rowList.size();
+    }
+
+    /**
+     * Returns the Number of Cells in the specified row.
+     *
+     * @param rowNumber
+     * @return Number of Cells
+     */
+    int getCellCount(int rowNumber) {
+        String row = row(rowNumber);
+        return bounds(rowNumber, row).length - 1;
+    }
+
+    /**
+     * Returns the cell contents of the specified row.
+     *
+     * @param rowNumber
+     * @param withQuotes
+     * @return String[]
+     */
+    public String[] getCells(int rowNumber, boolean withQuotes) {
+        String row = row(rowNumber);
+        return cells(row, bounds(rowNumber, row), withQuotes);
+    }
+
+    /**
+     * Returns the contents of a single cell. Cells beyond the last cell of
+     * the row are empty and returned as an empty String.
+     *
+     * @param rowNumber
+     * @param columnIndex
+     * @param withQuotes
+     * @return Cell Value
+     */
+    public String getCell(int rowNumber, int columnIndex, boolean withQuotes) {
+        String row = row(rowNumber);
+        if (columnIndex < 0)
+            throw new IndexOutOfBoundsException("Column Index: " + columnIndex);
+        int[] bounds = bounds(rowNumber, row);
+        if (columnIndex >= bounds.length - 1)
+            return "";
+        return value(row, bounds[columnIndex], bounds[columnIndex + 1] - 1, withQuotes);
+    }
+
+    private String row(int rowNumber) {
+        int rowCount = rowList.size();
+        if (rowNumber < 0 || rowNumber >= rowCount)
+            throw new IndexOutOfBoundsException("Row Number: " + rowNumber +
+                    ", Row Count: " + rowCount);
+        return rowList.get(rowNumber);
+    }
+
+    /**
+     * Returns the cell offsets of the row, from the index when they were
+     * recorded for this very row String.
+     */
+    private int[] bounds(int rowNumber, String row) {
+        RowCells[] indexed = rows;
+        if (rowNumber < indexed.length) {
+            RowCells cells = indexed[rowNumber];
+            if (null != cells && cells.row == row)
+                return cells.bounds;
+        }
+        int[] bounds = bounds(row);
+        RowCells cells = new RowCells(row, bounds);
+        if (rowNumber < indexed.length) {
+            //Racing with grow() at worst loses the entry, the row is split
+            //again on its next read
+            indexed[rowNumber] = cells;
+        } else {
+            grow(rowNumber)[rowNumber] = cells;
+        }
+        return bounds;
+    }
+
+    private synchronized RowCells[] grow(int rowNumber) {
+        RowCells[] indexed = rows;
+        if (rowNumber >= indexed.length) {
+            indexed = Arrays.copyOf(indexed, Math.max(rowNumber + 1, rowList.size()));
+            rows = indexed;
+        }
+        return indexed;
+    }
+
+    /**
+     * Returns the start of every cell followed by the end of the last cell
+     * plus one, cell i runs from bounds[i] to bounds[i + 1] - 1.
+     */
+    private static int[] bounds(String row) {
+        int length = row.length();
+        //Quotes remaining to the right of the current position. A comma
+        //only separates cells when this count is even
+        int quotesAfter = 0;
+        for (int i = 0; i < length; i++) {
+            if (row.charAt(i) == '"')
+                quotesAfter++;
+        }
+        int[] bounds = new int[8];
+        int cells = 0;
+        int start = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i < length) {
+                char c = row.charAt(i);
+                if (c == '"') {
+                    quotesAfter--;
+                    continue;
+                }
+                if (c != ',' || (quotesAfter & 1) != 0)
+                    continue;
+            }
+            if (cells + 1 == bounds.length)
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            bounds[cells++] = start;
+            start = i + 1;
+        }
+        bounds[cells] = length + 1;
+        //String.split removes trailing empty cells, unless the row had no
+        //separator at all
+        if (cells > 1) {
+            //The start of a removed cell is the end of the one before plus one
+            while (cells > 0 && bounds[cells - 1] == bounds[cells] - 1)
+                cells--;
+        }
+        return Arrays.copyOf(bounds, cells + 1);
+    }
+
+    private static String[] cells(String row, int[] bounds, boolean withQuotes) {
+        String[] cells = new String[bounds.length - 1];
+        for (int i = 0; i < cells.length; i++)
+            cells[i] = value(row, bounds[i], bounds[i + 1] - 1, withQuotes);
+        return cells;
+    }
+
+    /**
+     * Returns the cell between start and end. Without quotes a cell
+     * wrapped in a single pair of quotes loses them, any other cell holding
+     * quotes loses every quote.
+     */
+    private static String value(String row, int start, int end, boolean withQuotes) {
+        if (withQuotes)
+            return row.substring(start, end);
+        int quotes = 0;
+        for (int i = start; i < end; i++) {
+            if (row.charAt(i) == '"')
+                quotes++;
+        }
+        if (quotes == 0)
+            return row.substring(start, end);
+        if (quotes == 2 && end - start >= 2 && row.charAt(start) == '"' &&
+                row.charAt(end - 1) == '"')
+            return row.substring(start + 1, end - 1);
+        char[] unquoted = new char[end - start];
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            char c = row.charAt(i);
+            if (c != '"')
+                unquoted[length++] = c;
+        }
+        return new String(unquoted, 0, length);
+    }
+
+    /**
+     * The cell offsets of one row and the row String they belong to.
+     */
+    private static final class RowCells {
+        final String row;
+        final int[] bounds;
+
+        RowCells(String row, int[] bounds) {
+            this.row = row;
+            this.bounds = bounds;
+        }
+    }
+}
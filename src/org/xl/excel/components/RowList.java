@@ -0,0 +1,71 @@
+package org.xl.excel.components;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The row list handed out by a Sheet. Reads and writes go straight to the
+ * list the Sheet was created with, and every change made through it, a
+ * replaced row included, counts as a modification, so the Column indexes
+ * of the Sheet can tell they were built on other rows.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+final class RowList extends AbstractList<String> implements RandomAccess {
+    private final List<String> rows;
+
+    RowList(List<String> rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * Returns the number of changes made through this list.
+     */
+    int getModCount() {
+        return modCount;
+    }
+
+    @Override
+    public String get(int index) {
+        return rows.get(index);
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    @Override
+    public String set(int index, String row) {
+        String previous = rows.set(index, row);
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public void add(int index, String row) {
+        rows.add(index, row);
+        modCount++;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends String> added) {
+        modCount++;
+        return rows.addAll(added);
+    }
+
+    @Override
+    public String remove(int index) {
+        String removed = rows.remove(index);
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        rows.clear();
+        modCount++;
+    }
+}
@@ -0,0 +1,26 @@
+package org.xl.excel.components;
+
+/**
+ * Read access to the cells of a Sheet, implemented by the different ways a
+ * Sheet can hold its rows.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+interface RowStore {
+
+    /**
+     * Returns the Number of Rows.
+     */
+    int getRowCount();
+
+    /**
+     * Returns the cell contents of the specified row. 0 indexed.
+     */
+    String[] getCells(int rowNumber, boolean withQuotes);
+
+    /**
+     * Returns the contents of a single cell, an empty String for cells
+     * past the end of the row. 0 indexed.
+     */
+    String getCell(int rowNumber, int columnIndex, boolean withQuotes);
+}
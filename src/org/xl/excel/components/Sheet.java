@@ -1,7 +1,6 @@
 package org.xl.excel.components;
 
-import org.apache.commons.lang3.StringUtils;
-
+import java.util.Collections;
 import java.util.List;
 
 
@@ -16,20 +15,58 @@ import java.util.List;
 public class Sheet {
     private int sheetIndex;
     private String sheetName;
-    private List<String> rowList;
+    private RowList rowList;
     private List<String> headerList;
     private List<String> columnTypes;
+    private List<ColumnStats> columnStats;
+    private RowStore rowStore;
+    private HeaderIndex headerIndex;
+    private volatile ColumnIndexes columnIndexes;
 
     public Sheet(String sheetName,
                  int sheetIndex,
                  List<String> columnTypes,
                  List<String> headerList,
                  List<String> rowList) {
+        this(sheetName, sheetIndex, columnTypes, headerList, rowList,
+                Collections.<ColumnStats>emptyList());
+    }
+
+    public Sheet(String sheetName,
+                 int sheetIndex,
+                 List<String> columnTypes,
+                 List<String> headerList,
+                 List<String> rowList,
+                 List<ColumnStats> columnStats) {
         this.sheetName = sheetName;
         this.sheetIndex = sheetIndex;
         this.columnTypes = columnTypes;
+        this.columnStats = columnStats;
         this.headerList = headerList;
-        this.rowList = rowList;
+        this.headerIndex = HeaderIndex.build(headerList);
+        this.rowList = new RowList(rowList);
+        this.rowStore = RowIndex.build(rowList);
+    }
+
+    /**
+     * Creates a Sheet whose rows are held dictionary encoded. getRowList()
+     * renders the rows on access, the cells are read directly from the
+     * DictionaryRows.
+     */
+    public Sheet(String sheetName,
+                 int sheetIndex,
+                 List<String> columnTypes,
+                 List<String> headerList,
+                 DictionaryRows rows,
+                 List<ColumnStats> columnStats) {
+        this.sheetName = sheetName;
+        this.sheetIndex = sheetIndex;
+        this.columnTypes = columnTypes;
+        this.columnStats = columnStats;
+        this.headerList = headerList;
+        this.headerIndex = HeaderIndex.build(headerList);
+        this.rowList = new RowList(rows.asRowList(null == headerList ? 0 : headerList.size()));
+        this.rowStore = rows;
     }
 
     /**
@@ -74,6 +111,9 @@ public class Sheet {
 
     /**
      * Returns the list of Rows as list of Comma Separated Strings
+     * <p>
+     * For dictionary encoded Sheets this is a read only view which builds
+     * each row String when it is accessed
      *
      * @return RowList
      */
@@ -82,7 +122,9 @@ public class Sheet {
     }
 
     protected void setRowList(List<String> valueList) {
-        this.rowList = valueList;
+        this.rowList = new RowList(valueList);
+        this.rowStore = RowIndex.build(valueList);
+        dropIndexes();
     }
 
     /**
@@ -98,6 +140,8 @@ public class Sheet {
 
     protected void setHeaderList(List<String> headerList) {
         this.headerList = headerList;
+        this.headerIndex = HeaderIndex.build(headerList);
+        dropIndexes();
     }
 
     /**
@@ -105,9 +149,14 @@ public class Sheet {
      * not be relied on 100%.
      * <p>
      * The types are:<br>
-     * - string
-     * - numeric
-     * - date
+     * - String
+     * - Number
+     * - Date
+     * - Boolean
+     * - Error
+     * <p>
+     * A Column only gets a type other than String when every non blank
+     * cell inspected while parsing agrees on it.
      *
      * @return ColumnTypes
      */
@@ -119,27 +168,63 @@ public class Sheet {
         this.columnTypes = columnTypes;
     }
 
+    /**
+     * Returns the statistics gathered for each Column while the Sheet was
+     * parsed, in the same order as the Header List.
+     * <p>
+     * Empty if the parser did not gather statistics
+     *
+     * @return ColumnStats
+     */
+    public List<ColumnStats> getColumnStats() {
+        return columnStats;
+    }
+
+    protected void setColumnStats(List<ColumnStats> columnStats) {
+        this.columnStats = columnStats;
+    }
+
     /**
      * Returns an array of the cell contents within the specified row
      * number.
      * <p>
      * 0 indexed
+     * <p>
+     * The cells of a row are located once, on its first read, so the row
+     * is not split again on every call. Rows changed, added or removed
+     * through the list returned by getRowList() are read as they are now.
      *
      * @param rowNumber
      * @return String[]
      */
     public String[] getCellValues(int rowNumber, boolean withQuotes) {
-        String[] cellValues = getRowList().get(rowNumber).split(",(?=([^\"]*\"[^\"]*\")*[^\"]*$)");
-        if (withQuotes) {
-            return cellValues;
-        } else {
-            String[] qCellValues = new String[cellValues.length];
-            int index = 0;
-            for (String cellValue : cellValues) {
-                qCellValues[index++] = StringUtils.remove(cellValue, '"');
-            }
-            return qCellValues;
-        }
+        return rowStore.getCells(rowNumber, withQuotes);
+    }
+
+    /**
+     * Splits a Comma Separated Row String, as found in getRowList(), into
+     * its cell values the same way getCellValues() does.
+     *
+     * @param row
+     * @param withQuotes
+     * @return String[]
+     */
+    public static String[] splitRow(String row, boolean withQuotes) {
+        return RowIndex.split(row, withQuotes);
+    }
+
+    /**
+     * Returns the unquoted contents of a single cell.
+     * <p>
+     * 0 indexed. Columns past the last cell of the row are empty and are
+     * returned as an empty String.
+     *
+     * @param rowNumber
+     * @param columnIndex
+     * @return Cell Value
+     */
+    public String getCell(int rowNumber, int columnIndex) {
+        return rowStore.getCell(rowNumber, columnIndex, false);
     }
 
     /**
@@ -152,21 +237,159 @@ public class Sheet {
      * failSilently to false throws a RuntimeException if it does not find
      * the column
      * header.
+     * <p>
+     * Headers are matched ignoring case. If the same header appears more
+     * than once the first column is returned.
      *
      * @param columnHeader
      * @param failSilently
      * @return columnIndex
      */
     public int getColumnIndex(String columnHeader, boolean failSilently) {
-        for (int i = 0; i < headerList.size(); i++) {
-            String header = headerList.get(i);
-            if (header.equalsIgnoreCase(columnHeader))
-                return i;
+        int index = headerIndex.indexOf(columnHeader);
+        if (index < 0 && !failSilently)
+            throw headerNotFound(columnHeader);
+        return index;
+    }
+
+    /**
+     * Resolves a list of Column Headers to their column indexes in a single
+     * call. The returned array has the same order as the columnHeaders list.
+     * Missing headers are returned as -1 when failSilently is true, otherwise
+     * a RuntimeException is thrown for the first missing header.
+     *
+     * @param columnHeaders
+     * @param failSilently
+     * @return columnIndexes
+     */
+    public int[] getColumnIndexes(List<String> columnHeaders,
+                                  boolean failSilently) {
+        int[] indexes = new int[columnHeaders.size()];
+        int i = 0;
+        for (String columnHeader : columnHeaders) {
+            indexes[i++] = getColumnIndex(columnHeader, failSilently);
+        }
+        return indexes;
+    }
+
+    /**
+     * Returns true when a cell of the Column equals the value exactly.
+     * <p>
+     * The first lookup on a Column builds a hash index of its cells, which
+     * is kept with the Sheet, so later lookups do not scan the rows. The
+     * indexes are built again once rows are changed, added or removed
+     * through getRowList().
+     *
+     * @param columnIndex
+     * @param value
+     * @return Contains Value
+     */
+    public boolean containsValue(int columnIndex, String value) {
+        return columnIndex(columnIndex).contains(value);
+    }
+
+    /**
+     * Returns the numbers of the rows whose cell in the Column equals the
+     * value exactly, in ascending order. Uses the same hash index as
+     * containsValue().
+     *
+     * @param columnIndex
+     * @param value
+     * @return Row Numbers
+     */
+    public int[] findRows(int columnIndex, String value) {
+        return columnIndex(columnIndex).rowsEqualTo(value);
+    }
+
+    /**
+     * Returns the numbers of the rows whose cell in the Column is a number
+     * from min to max inclusive, in ascending order. Blank cells and cells
+     * which are not numbers never match.
+     * <p>
+     * The first range lookup on a Column builds a sorted index of its
+     * numeric cells, which is kept with the Sheet.
+     *
+     * @param columnIndex
+     * @param min
+     * @param max
+     * @return Row Numbers
+     */
+    public int[] findRowsBetween(int columnIndex, double min, double max) {
+        return columnIndex(columnIndex).rowsBetween(min, max);
+    }
+
+    /**
+     * Returns the numbers of the rows whose non blank cell in the Column
+     * sorts from min to max inclusive, comparing text, in ascending order.
+     * A null bound is open.
+     * <p>
+     * The first text range lookup on a Column builds a sorted index of its
+     * cells, which is kept with the Sheet.
+     *
+     * @param columnIndex
+     * @param min
+     * @param max
+     * @return Row Numbers
+     */
+    public int[] findRowsBetween(int columnIndex, String min, String max) {
+        return columnIndex(columnIndex).rowsBetween(min, max);
+    }
+
+    /**
+     * Releases the indexes built by the lookups. They are built again on
+     * the next lookup.
+     */
+    public synchronized void dropIndexes() {
+        columnIndexes = null;
+    }
+
+    private ColumnIndex columnIndex(int columnIndex) {
+        //ColumnIndex only has final fields, so a racy read of the array is
+        //safe, a missing entry is created under the lock
+        ColumnIndexes indexes = columnIndexes;
+        if (null != indexes && indexes.isCurrent(rowList) && columnIndex >= 0 &&
+                columnIndex < indexes.columns.length && null != indexes.columns[columnIndex])
+            return indexes.columns[columnIndex];
+        return createColumnIndex(columnIndex);
+    }
+
+    private synchronized ColumnIndex createColumnIndex(int columnIndex) {
+        int columnCount = headerList.size();
+        if (columnIndex < 0 || columnIndex >= columnCount)
+            throw new IllegalArgumentException("Column index " + columnIndex +
+                    " is not between 0 and " + (columnCount - 1) + " on Sheet " + getSheetName());
+        if (null == columnIndexes || !columnIndexes.isCurrent(rowList))
+            columnIndexes = new ColumnIndexes(rowList, columnCount);
+        ColumnIndex[] columns = columnIndexes.columns;
+        if (null == columns[columnIndex])
+            columns[columnIndex] = new ColumnIndex(rowStore, rowStore.getRowCount(), columnIndex);
+        return columns[columnIndex];
+    }
+
+    /**
+     * The Column indexes built on the rows as they were at one size and
+     * modification count of the row list.
+     */
+    private static final class ColumnIndexes {
+        final int rowCount;
+        final int modCount;
+        final ColumnIndex[] columns;
+
+        ColumnIndexes(RowList rowList, int columnCount) {
+            this.rowCount = rowList.size();
+            this.modCount = rowList.getModCount();
+            this.columns = new ColumnIndex[columnCount];
+        }
+
+        boolean isCurrent(RowList rowList) {
+            return rowCount == rowList.size() && modCount == rowList.getModCount();
         }
-        if (!failSilently)
-            throw new RuntimeException("Column Header: '" + columnHeader +
-                    "'not found on Sheet"+getSheetName()+" - index:"+getSheetIndex());
-        else
-        return -1;
+    }
+
+    private RuntimeException headerNotFound(String columnHeader) {
+        return new RuntimeException(new StringBuilder("Column Header: '")
+                .append(columnHeader).append("' not found on Sheet ")
+                .append(getSheetName()).append(" - index:")
+                .append(getSheetIndex()).toString());
     }
 }
\ No newline at end of file
@@ -0,0 +1,177 @@
+package org.xl.excel.components;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving sketch which tracks the most frequent values offered to it
+ * using a fixed number of counters.
+ * <p>
+ * Every value which occurs more than rows / capacity times is guaranteed to
+ * be tracked. When all counters are in use a new value replaces the value
+ * with the smallest count and inherits that count as its error, so a
+ * Counter's count is an upper bound and count - error a lower bound of the
+ * true frequency.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public final class SpaceSaving {
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * A tracked value with its estimated count
+     */
+    public static final class Counter {
+        private final String value;
+        private final long count;
+        private final long error;
+
+        Counter(String value, long count, long error) {
+            this.value = value;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * Returns the estimated count, never lower than the true count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the maximum overestimation of the count
+         */
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return value + "=" + count + (error > 0 ? "(+-" + error + ")" : "");
+        }
+    }
+
+    //Min heap on counts, positions keeps the heap slot of every value
+    private final String[] values;
+    private final long[] counts;
+    private final long[] errors;
+    private final Map<String, Integer> positions;
+    private int size;
+
+    public SpaceSaving() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Number of counters
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("SpaceSaving capacity must be positive: "
+                    + capacity);
+        this.values = new String[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.positions = new HashMap<String, Integer>(capacity * 4 / 3 + 1);
+    }
+
+    /**
+     * Counts an occurrence of the value.
+     *
+     * @param value
+     */
+    public void offer(String value) {
+        Integer position = positions.get(value);
+        if (position != null) {
+            counts[position]++;
+            siftDown(position);
+        } else if (size < values.length) {
+            values[size] = value;
+            counts[size] = 1;
+            errors[size] = 0;
+            positions.put(value, size);
+            siftUp(size++);
+        } else {
+            positions.remove(values[0]);
+            values[0] = value;
+            errors[0] = counts[0];
+            counts[0]++;
+            positions.put(value, 0);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Returns up to k of the most frequent values, most frequent first.
+     *
+     * @param k
+     * @return Counters
+     */
+    public List<Counter> getTop(int k) {
+        List<Counter> counters = new ArrayList<Counter>(size);
+        for (int i = 0; i < size; i++) {
+            counters.add(new Counter(values[i], counts[i], errors[i]));
+        }
+        Collections.sort(counters, new Comparator<Counter>() {
+            @Override
+            public int compare(Counter a, Counter b) {
+                return a.count != b.count ? (a.count > b.count ? -1 : 1) :
+                        Long.compare(a.error, b.error);
+            }
+        });
+        return counters.size() > k ? counters.subList(0, k) : counters;
+    }
+
+    public int getCapacity() {
+        return values.length;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (counts[parent] <= counts[i])
+                break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && counts[left] < counts[smallest])
+                smallest = left;
+            if (right < size && counts[right] < counts[smallest])
+                smallest = right;
+            if (smallest == i)
+                return;
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        String value = values[a];
+        long count = counts[a];
+        long error = errors[a];
+        values[a] = values[b];
+        counts[a] = counts[b];
+        errors[a] = errors[b];
+        values[b] = value;
+        counts[b] = count;
+        errors[b] = error;
+        positions.put(values[a], a);
+        positions.put(values[b], b);
+    }
+}
@@ -0,0 +1,227 @@
+package org.xl.excel.generator;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes an OLE2 compound file (version 3, 512 byte sectors) holding a
+ * single stream, the container of XLS workbooks.
+ * <p>
+ * The stream is written sequentially from the first sector on, so its size
+ * does not have to be known up front. The directory, the FAT and, for
+ * streams over 7 MB, the DIFAT sectors follow the stream and the header
+ * is written last. Streams are padded to 4096 bytes so they are never kept
+ * in the mini stream. Bytes already written to the stream can be patched,
+ * for example offsets that are only known once later records are written.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+final class CompoundFileWriter implements Closeable {
+    private static final int SECTOR_SIZE = 512;
+    private static final int IDS_PER_SECTOR = SECTOR_SIZE / 4;
+    private static final int HEADER_DIFAT_IDS = 109;
+    private static final int MINI_STREAM_CUTOFF = 4096;
+    private static final int DIFAT_SECTOR = 0xFFFFFFFC;
+    private static final int FAT_SECTOR = 0xFFFFFFFD;
+    private static final int END_OF_CHAIN = 0xFFFFFFFE;
+    private static final int FREE_SECTOR = 0xFFFFFFFF;
+    private static final int NO_STREAM = 0xFFFFFFFF;
+    private static final long SIGNATURE = 0xE11AB1A1E011CFD0L;
+
+    private final FileChannel channel;
+    private final String streamName;
+    private final BufferedOutputStream buffered;
+    private final OutputStream stream;
+    private long streamSize;
+
+    CompoundFileWriter(File file, String streamName) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.streamName = streamName;
+        channel.position(SECTOR_SIZE);
+        this.buffered = new BufferedOutputStream(Channels.newOutputStream(channel), 65536);
+        this.stream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                buffered.write(b);
+                streamSize++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                buffered.write(b, off, len);
+                streamSize += len;
+            }
+        };
+    }
+
+    /**
+     * Returns the stream, it must not be closed.
+     */
+    OutputStream getStream() {
+        return stream;
+    }
+
+    /**
+     * Returns the number of bytes written to the stream.
+     */
+    long getStreamSize() {
+        return streamSize;
+    }
+
+    /**
+     * Overwrites bytes already written to the stream.
+     *
+     * @param offset position in the stream
+     * @param bytes
+     */
+    void patch(long offset, byte[] bytes) throws IOException {
+        if (offset + bytes.length > streamSize)
+            throw new IllegalArgumentException("Cannot patch past the end of the stream");
+        buffered.flush();
+        ByteBuffer patch = ByteBuffer.wrap(bytes);
+        long position = SECTOR_SIZE + offset;
+        while (patch.hasRemaining())
+            position += channel.write(patch, position);
+    }
+
+    /**
+     * Pads the stream and writes the directory, FAT, DIFAT and header.
+     */
+    public void close() throws IOException {
+        try {
+            long size = Math.max(streamSize, MINI_STREAM_CUTOFF);
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Stream of " + size + " bytes is too large");
+            int streamSectors = (int) ((size + SECTOR_SIZE - 1) / SECTOR_SIZE);
+            long padding = (long) streamSectors * SECTOR_SIZE - streamSize;
+            for (long i = 0; i < padding; i++)
+                buffered.write(0);
+            int directorySector = streamSectors;
+
+            //The FAT covers its own sectors and the DIFAT sectors as well
+            int fatSectors = 1;
+            int difatSectors = 0;
+            while (true) {
+                long sectors = streamSectors + 1L + fatSectors + difatSectors;
+                int fat = (int) ((sectors + IDS_PER_SECTOR - 1) / IDS_PER_SECTOR);
+                int difat = fat <= HEADER_DIFAT_IDS ? 0 :
+                        (fat - HEADER_DIFAT_IDS + IDS_PER_SECTOR - 2) / (IDS_PER_SECTOR - 1);
+                if (fat == fatSectors && difat == difatSectors)
+                    break;
+                fatSectors = fat;
+                difatSectors = difat;
+            }
+            int firstFatSector = directorySector + 1;
+            int firstDifatSector = firstFatSector + fatSectors;
+
+            ByteBuffer sector = ByteBuffer.allocate(SECTOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            writeDirectory(sector, size);
+
+            int id = 0;
+            int total = fatSectors * IDS_PER_SECTOR;
+            for (int s = 0; s < fatSectors; s++) {
+                sector.clear();
+                for (int i = 0; i < IDS_PER_SECTOR; i++, id++) {
+                    int next;
+                    if (id < streamSectors - 1)
+                        next = id + 1;
+                    else if (id == streamSectors - 1 || id == directorySector)
+                        next = END_OF_CHAIN;
+                    else if (id >= firstFatSector && id < firstDifatSector)
+                        next = FAT_SECTOR;
+                    else if (id >= firstDifatSector && id < firstDifatSector + difatSectors)
+                        next = DIFAT_SECTOR;
+                    else
+                        next = FREE_SECTOR;
+                    sector.putInt(next);
+                }
+                buffered.write(sector.array());
+            }
+            if (id != total)
+                throw new IllegalStateException("FAT size mismatch");
+
+            int fat = HEADER_DIFAT_IDS;
+            for (int s = 0; s < difatSectors; s++) {
+                sector.clear();
+                for (int i = 0; i < IDS_PER_SECTOR - 1; i++, fat++)
+                    sector.putInt(fat < fatSectors ? firstFatSector + fat : FREE_SECTOR);
+                sector.putInt(s < difatSectors - 1 ? firstDifatSector + s + 1 : END_OF_CHAIN);
+                buffered.write(sector.array());
+            }
+            buffered.flush();
+
+            sector.clear();
+            sector.putLong(SIGNATURE);
+            sector.put(new byte[16]);
+            sector.putShort((short) 0x003E);
+            sector.putShort((short) 0x0003);
+            sector.putShort((short) 0xFFFE);
+            sector.putShort((short) 9);
+            sector.putShort((short) 6);
+            sector.put(new byte[6]);
+            sector.putInt(0);
+            sector.putInt(fatSectors);
+            sector.putInt(directorySector);
+            sector.putInt(0);
+            sector.putInt(MINI_STREAM_CUTOFF);
+            sector.putInt(END_OF_CHAIN);
+            sector.putInt(0);
+            sector.putInt(difatSectors > 0 ? firstDifatSector : END_OF_CHAIN);
+            sector.putInt(difatSectors);
+            for (int i = 0; i < HEADER_DIFAT_IDS; i++)
+                sector.putInt(i < fatSectors ? firstFatSector + i : FREE_SECTOR);
+            sector.flip();
+            long position = 0;
+            while (sector.hasRemaining())
+                position += channel.write(sector, position);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes the directory sector: the root storage, the stream and two
+     * unused entries.
+     */
+    private void writeDirectory(ByteBuffer sector, long size) throws IOException {
+        sector.clear();
+        directoryEntry(sector, "Root Entry", 5, 1, END_OF_CHAIN, 0);
+        directoryEntry(sector, streamName, 2, NO_STREAM, 0, size);
+        for (int i = 0; i < 2; i++) {
+            sector.put(new byte[68]);
+            sector.putInt(NO_STREAM);
+            sector.putInt(NO_STREAM);
+            sector.putInt(NO_STREAM);
+            sector.put(new byte[48]);
+        }
+        buffered.write(sector.array());
+    }
+
+    private static void directoryEntry(ByteBuffer sector, String name, int type,
+                                       int child, int startSector, long size) {
+        byte[] chars = name.getBytes(StandardCharsets.UTF_16LE);
+        sector.put(chars);
+        sector.put(new byte[64 - chars.length]);
+        sector.putShort((short) (chars.length + 2));
+        sector.put((byte) type);
+        //Black, there is only one node per level
+        sector.put((byte) 1);
+        sector.putInt(NO_STREAM);
+        sector.putInt(NO_STREAM);
+        sector.putInt(child);
+        //CLSID, state bits, creation and modification time
+        sector.put(new byte[16 + 4 + 8 + 8]);
+        sector.putInt(startSector);
+        sector.putLong(size);
+    }
+}
@@ -0,0 +1,554 @@
+package org.xl.excel.generator;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xl.excel.components.Sheet;
+
+/**
+ * Generates reproducible XLSX and XLS workbooks of any shape for load and
+ * scale testing, together with the Sheet contents the parsers should read
+ * from them.
+ * <p>
+ * Every Sheet has a header row (Column 1, Column 2, ...) followed by
+ * getRows() data rows. Each Column holds one kind of value: shared strings,
+ * inline strings, dates or numbers, in the proportions set with
+ * setSharedStringRatio(), setInlineStringRatio() and setDateRatio(). The
+ * remaining Columns hold numbers. Cells are left empty with the probability
+ * set with setBlankDensity().
+ * <p>
+ * Every cell is derived from the seed and its position only, so the same
+ * settings always produce the same workbook and the expected contents of
+ * any cell are known without reading the file back. The files are written
+ * directly as ZIP and XML or as BIFF8 records in an OLE2 compound file,
+ * without building a POI workbook, so multi-GB files are written at disk
+ * speed.
+ * <p>
+ * The expected Sheets are what ExcelParser reads with ignoreBlankRows true
+ * and useCellFormatting false: strings as is, numbers as Java renders
+ * doubles, dates as the Excel serial date for XLSX and as dd-MMM-yyyy for
+ * XLS, empty cells as the empty String and rows without any value
+ * skipped. Parsers render empty cells in different ways so the rows should
+ * be compared with Sheet.getCellValues() rather than as Strings.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class WorkbookGenerator {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(WorkbookGenerator.class);
+
+    static final int SHARED_STRING = 0;
+    static final int INLINE_STRING = 1;
+    static final int DATE = 2;
+    static final int NUMBER = 3;
+
+    static final String SHEET_NAME = "Sheet";
+    static final String HEADER = "Column ";
+    static final String DEFAULT_DATE_FORMAT = "m/d/yy";
+    //How POI renders date cells of XLS files
+    static final String XLS_DATE_FORMAT = "dd-MMM-yyyy";
+    //Excel serial date of Jan 1, 2000
+    static final int FIRST_DATE = 36526;
+    static final int DATE_RANGE_DAYS = 9131;
+    static final int XLS_MAX_ROWS = 65535;
+    static final int XLS_MAX_COLUMNS = 256;
+
+    private static final double GOLDEN_RATIO = 0.6180339887498949;
+    private static final long BLANK_SALT = 0x2545F4914F6CDD1DL;
+    private static final long VALUE_SALT = 0x9E3779B97F4A7C15L;
+    private static final String[] WORDS = {"alpha", "bravo", "charlie",
+            "delta", "echo", "foxtrot", "golf", "hotel", "india", "juliet",
+            "kilo", "lima", "mike", "november", "oscar", "papa", "quebec",
+            "romeo", "sierra", "tango", "uniform", "victor", "whiskey",
+            "x-ray", "yankee", "zulu", "R&D", "<none>"};
+
+    private long seed = 1;
+    private int rows = 1000;
+    private int columns = 10;
+    private int sheets = 1;
+    private double sharedStringRatio = 0.4;
+    private double inlineStringRatio;
+    private double dateRatio = 0.1;
+    private double blankDensity;
+    private int stringCardinality = 1000;
+    private List<String> numberFormats = Collections.emptyList();
+    private String dateFormat = DEFAULT_DATE_FORMAT;
+    private int compressionLevel = Deflater.BEST_SPEED;
+
+    /**
+     * Writes a workbook from the command line:
+     * <pre>
+     * WorkbookGenerator file.xlsx|file.xls rows columns [sheets] [expectedDirectory]
+     * </pre>
+     * The other settings keep their defaults.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: WorkbookGenerator <file.xlsx|file.xls> " +
+                    "<rows> <columns> [sheets] [expectedDirectory]");
+            System.exit(1);
+        }
+        File file = new File(args[0]);
+        boolean xls = file.getName().toLowerCase().endsWith(".xls");
+        WorkbookGenerator generator = new WorkbookGenerator();
+        generator.setRows(Integer.parseInt(args[1]));
+        generator.setColumns(Integer.parseInt(args[2]));
+        if (args.length > 3)
+            generator.setSheets(Integer.parseInt(args[3]));
+        long start = System.currentTimeMillis();
+        if (xls)
+            generator.writeXLS(file);
+        else
+            generator.writeXLSX(file);
+        LOGGER.info("Wrote " + file + " (" + file.length() + " bytes) in " +
+                (System.currentTimeMillis() - start) + " ms");
+        if (args.length > 4)
+            generator.writeExpected(new File(args[4]), xls);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets the seed all values are derived from, 1 by default.
+     *
+     * @param seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Sets the number of data rows of every Sheet, not counting the header
+     * row. 1000 by default.
+     *
+     * @param rows
+     */
+    public void setRows(int rows) {
+        if (rows < 0)
+            throw new IllegalArgumentException("Row count must not be negative: " + rows);
+        this.rows = rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Sets the number of Columns of every Sheet, 10 by default.
+     *
+     * @param columns
+     */
+    public void setColumns(int columns) {
+        if (columns < 1)
+            throw new IllegalArgumentException("Column count must be positive: " + columns);
+        this.columns = columns;
+    }
+
+    public int getSheets() {
+        return sheets;
+    }
+
+    /**
+     * Sets the number of Sheets, 1 by default.
+     *
+     * @param sheets
+     */
+    public void setSheets(int sheets) {
+        if (sheets < 1)
+            throw new IllegalArgumentException("Sheet count must be positive: " + sheets);
+        this.sheets = sheets;
+    }
+
+    /**
+     * Sets the share of Columns holding strings from the shared strings
+     * table, 0.4 by default.
+     *
+     * @param sharedStringRatio
+     */
+    public void setSharedStringRatio(double sharedStringRatio) {
+        this.sharedStringRatio = ratio(sharedStringRatio);
+    }
+
+    /**
+     * Sets the share of Columns holding inline strings, XLSX inlineStr
+     * cells and XLS LABEL records. 0 by default.
+     *
+     * @param inlineStringRatio
+     */
+    public void setInlineStringRatio(double inlineStringRatio) {
+        this.inlineStringRatio = ratio(inlineStringRatio);
+    }
+
+    /**
+     * Sets the share of Columns holding dates, 0.1 by default.
+     *
+     * @param dateRatio
+     */
+    public void setDateRatio(double dateRatio) {
+        this.dateRatio = ratio(dateRatio);
+    }
+
+    /**
+     * Sets the probability of a data cell being empty, 0 by default.
+     *
+     * @param blankDensity
+     */
+    public void setBlankDensity(double blankDensity) {
+        this.blankDensity = ratio(blankDensity);
+    }
+
+    /**
+     * Sets the number of distinct strings the string cells are drawn from,
+     * 1000 by default.
+     *
+     * @param stringCardinality
+     */
+    public void setStringCardinality(int stringCardinality) {
+        if (stringCardinality < 1)
+            throw new IllegalArgumentException("String cardinality must be positive: " +
+                    stringCardinality);
+        this.stringCardinality = stringCardinality;
+    }
+
+    /**
+     * Sets the number formats of the number Columns, which take them in
+     * turn. Number Columns are unformatted (General) by default. The
+     * formats should not be date formats.
+     *
+     * @param numberFormats
+     */
+    public void setNumberFormats(String... numberFormats) {
+        this.numberFormats = Collections.unmodifiableList(
+                new ArrayList<String>(Arrays.asList(numberFormats)));
+    }
+
+    /**
+     * Sets the format of the date Columns, m/d/yy by default.
+     *
+     * @param dateFormat
+     */
+    public void setDateFormat(String dateFormat) {
+        this.dateFormat = dateFormat;
+    }
+
+    /**
+     * Sets the Deflater level of the XLSX parts, Deflater.BEST_SPEED by
+     * default.
+     *
+     * @param compressionLevel
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Writes the workbook as XLSX.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void writeXLSX(File file) throws IOException {
+        new XLSXWriter(this).write(file);
+    }
+
+    /**
+     * Writes the workbook as XLS. XLS Sheets hold at most 65535 data rows
+     * and 256 Columns.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void writeXLS(File file) throws IOException {
+        if (rows > XLS_MAX_ROWS || columns > XLS_MAX_COLUMNS)
+            throw new IllegalArgumentException("XLS Sheets are limited to " +
+                    XLS_MAX_ROWS + " data rows and " + XLS_MAX_COLUMNS +
+                    " Columns: " + rows + " x " + columns);
+        new XLSWriter(this).write(file);
+    }
+
+    /**
+     * Returns the Sheets ExcelParser should read from the XLSX or XLS
+     * workbook. Every row is held in memory, use writeExpected() for large
+     * workbooks.
+     *
+     * @param xls
+     * @return List of Sheets
+     */
+    public List<Sheet> getExpectedSheets(boolean xls) {
+        List<Sheet> expected = new ArrayList<Sheet>(sheets);
+        SimpleDateFormat xlsDate = xls ? new SimpleDateFormat(XLS_DATE_FORMAT) : null;
+        for (int sheet = 0; sheet < sheets; sheet++) {
+            List<String> rowList = new ArrayList<String>();
+            StringBuilder row = new StringBuilder();
+            for (int r = 1; r <= rows; r++) {
+                if (appendExpectedRow(row, sheet, r, xlsDate))
+                    rowList.add(row.toString());
+            }
+            expected.add(new Sheet(getSheetName(sheet), sheet,
+                    getColumnTypes(sheet), getHeaders(), rowList));
+        }
+        return expected;
+    }
+
+    /**
+     * Writes the expected contents of every Sheet to a file named after
+     * the Sheet with the .csv extension in the directory: the header row
+     * followed by the rows as getRowList() holds them.
+     *
+     * @param directory
+     * @param xls
+     * @throws IOException
+     */
+    public void writeExpected(File directory, boolean xls) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create " + directory);
+        StringBuilder row = new StringBuilder();
+        SimpleDateFormat xlsDate = xls ? new SimpleDateFormat(XLS_DATE_FORMAT) : null;
+        for (int sheet = 0; sheet < sheets; sheet++) {
+            File file = new File(directory, getSheetName(sheet) + ".csv");
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file), StandardCharsets.UTF_8), 65536)) {
+                row.setLength(0);
+                for (int c = 0; c < columns; c++) {
+                    if (c > 0)
+                        row.append(',');
+                    row.append('"').append(getHeader(c)).append('"');
+                }
+                out.append(row).append('\n');
+                for (int r = 1; r <= rows; r++) {
+                    if (appendExpectedRow(row, sheet, r, xlsDate))
+                        out.append(row).append('\n');
+                }
+            }
+        }
+    }
+
+    /**
+     * Renders the expected data row, returns false if the row has no value
+     * and is skipped by the parsers. Dates are rendered with xlsDate, as
+     * serial dates when it is null.
+     */
+    private boolean appendExpectedRow(StringBuilder row, int sheet, int r,
+                                      SimpleDateFormat xlsDate) {
+        row.setLength(0);
+        boolean blank = true;
+        for (int c = 0; c < columns; c++) {
+            if (c > 0)
+                row.append(',');
+            row.append('"');
+            if (!isBlank(sheet, r, c)) {
+                blank = false;
+                switch (getColumnKind(sheet, c)) {
+                    case SHARED_STRING:
+                    case INLINE_STRING:
+                        row.append(getString(getStringIndex(sheet, r, c)));
+                        break;
+                    case DATE:
+                        int date = getDate(sheet, r, c);
+                        if (null != xlsDate)
+                            row.append(xlsDate.format(DateUtil.getJavaDate(date)));
+                        else
+                            row.append(date);
+                        break;
+                    default:
+                        row.append(getNumber(sheet, r, c));
+                        break;
+                }
+            }
+            row.append('"');
+        }
+        return !blank;
+    }
+
+    private List<String> getColumnTypes(int sheet) {
+        List<String> types = new ArrayList<String>(columns);
+        for (int c = 0; c < columns; c++) {
+            int kind = getColumnKind(sheet, c);
+            boolean hasValue = false;
+            for (int r = 1; r <= rows && !hasValue; r++)
+                hasValue = !isBlank(sheet, r, c);
+            //Columns without any value default to String
+            types.add(!hasValue || kind == SHARED_STRING ||
+                    kind == INLINE_STRING ? "String" :
+                    kind == DATE ? "Date" : "Number");
+        }
+        return types;
+    }
+
+    List<String> getHeaders() {
+        List<String> headers = new ArrayList<String>(columns);
+        for (int c = 0; c < columns; c++)
+            headers.add(getHeader(c));
+        return headers;
+    }
+
+    String getHeader(int column) {
+        return HEADER + (column + 1);
+    }
+
+    String getSheetName(int sheet) {
+        return SHEET_NAME + (sheet + 1);
+    }
+
+    int getStringCardinality() {
+        return stringCardinality;
+    }
+
+    int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Returns the distinct cell formats in use, the number formats followed
+     * by the date format when there are date Columns.
+     */
+    List<String> getCellFormats() {
+        List<String> formats = new ArrayList<String>();
+        for (String format : numberFormats) {
+            if (!formats.contains(format))
+                formats.add(format);
+        }
+        if (dateRatio > 0 && !formats.contains(dateFormat))
+            formats.add(dateFormat);
+        return formats;
+    }
+
+    /**
+     * Returns the format of the cells of the Column or null for General.
+     */
+    String getCellFormat(int sheet, int column) {
+        switch (getColumnKind(sheet, column)) {
+            case DATE:
+                return dateFormat;
+            case NUMBER:
+                return numberFormats.isEmpty() ? null :
+                        numberFormats.get(column % numberFormats.size());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns true if any Column of any Sheet holds shared strings, the
+     * distinct strings are only added to the shared strings table then.
+     */
+    boolean hasSharedStrings() {
+        for (int sheet = 0; sheet < sheets; sheet++) {
+            for (int c = 0; c < columns; c++) {
+                if (getColumnKind(sheet, c) == SHARED_STRING)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the kind of value the Column holds. Columns are spread with
+     * the golden ratio so every prefix of Columns holds the kinds in about
+     * the configured proportions.
+     */
+    int getColumnKind(int sheet, int column) {
+        double position = (column + 1 + sheet * 7L) * GOLDEN_RATIO;
+        position -= Math.floor(position);
+        if (position < sharedStringRatio)
+            return SHARED_STRING;
+        if (position < sharedStringRatio + inlineStringRatio)
+            return INLINE_STRING;
+        if (position < sharedStringRatio + inlineStringRatio + dateRatio)
+            return DATE;
+        return NUMBER;
+    }
+
+    boolean isBlank(int sheet, int row, int column) {
+        return blankDensity > 0 &&
+                unit(hash(sheet, row, column, BLANK_SALT)) < blankDensity;
+    }
+
+    /**
+     * Returns the index of the distinct string of a string cell.
+     */
+    int getStringIndex(int sheet, int row, int column) {
+        return (int) ((hash(sheet, row, column, VALUE_SALT) >>> 1) %
+                stringCardinality);
+    }
+
+    /**
+     * Returns the distinct string with the index: a unique upper case word
+     * followed by up to three words from a fixed list.
+     */
+    String getString(int index) {
+        StringBuilder text = new StringBuilder();
+        for (int i = index + 1; i > 0; i = (i - 1) / 26)
+            text.insert(0, (char) ('A' + (i - 1) % 26));
+        long bits = mix(seed ^ index);
+        int words = (int) (bits & 3);
+        for (int w = 0; w < words; w++) {
+            bits >>>= 8;
+            text.append(' ').append(WORDS[(int) ((bits & 0xff) % WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns the value of a number cell, a whole number of cents between
+     * -1000000 and 1000000.
+     */
+    double getNumber(int sheet, int row, int column) {
+        long cents = (hash(sheet, row, column, VALUE_SALT) >>> 1) % 200000001L;
+        return (cents - 100000000L) / 100.0;
+    }
+
+    /**
+     * Returns the Excel serial date of a date cell, a day in 2000 to 2024.
+     */
+    int getDate(int sheet, int row, int column) {
+        return FIRST_DATE + (int) ((hash(sheet, row, column, VALUE_SALT) >>> 1) %
+                DATE_RANGE_DAYS);
+    }
+
+    private long hash(int sheet, int row, int column, long salt) {
+        long h = mix(seed ^ salt);
+        h = mix(h + sheet);
+        h = mix(h + row);
+        return mix(h + column);
+    }
+
+    /**
+     * SplitMix64 finalizer.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static double unit(long bits) {
+        return (bits >>> 11) * 0x1.0p-53;
+    }
+
+    private static double ratio(double value) {
+        if (value < 0 || value > 1)
+            throw new IllegalArgumentException("Ratio must be between 0 and 1: " + value);
+        return value;
+    }
+}
@@ -0,0 +1,318 @@
+package org.xl.excel.generator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+
+/**
+ * Writes the workbook of a WorkbookGenerator as XLS: BIFF8 records in the
+ * Workbook stream of an OLE2 compound file.
+ * <p>
+ * The globals hold the fonts, formats, cell styles, the BOUNDSHEET of every
+ * Sheet and the shared strings table (the distinct strings, when any Column
+ * holds shared strings, followed by the headers). Every Sheet substream
+ * holds its rows in blocks of 32 ROW records followed by their cells.
+ * Shared strings are LABELSST records, inline strings LABEL records and
+ * numbers and dates NUMBER records. The Sheet offsets in the BOUNDSHEETs
+ * and the shared string count are patched once the Sheets are written.
+ * <p>
+ * Strings are written as 8 bit characters, the generated strings are
+ * ASCII.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+final class XLSWriter {
+    private static final int BOF = 0x0809;
+    private static final int EOF = 0x000A;
+    private static final int CODEPAGE = 0x0042;
+    private static final int WINDOW1 = 0x003D;
+    private static final int DATEMODE = 0x0022;
+    private static final int FONT = 0x0031;
+    private static final int FORMAT = 0x041E;
+    private static final int XF = 0x00E0;
+    private static final int STYLE = 0x0293;
+    private static final int BOUNDSHEET = 0x0085;
+    private static final int SST = 0x00FC;
+    private static final int CONTINUE = 0x003C;
+    private static final int DIMENSIONS = 0x0200;
+    private static final int ROW = 0x0208;
+    private static final int LABELSST = 0x00FD;
+    private static final int LABEL = 0x0204;
+    private static final int NUMBER = 0x0203;
+    private static final int WINDOW2 = 0x023E;
+
+    private static final int MAX_RECORD = 8224;
+    private static final int ROW_BLOCK = 32;
+    //Excel expects 15 style XFs followed by the default cell XF
+    private static final int DEFAULT_XF = 15;
+    private static final int FONTS = 4;
+
+    private final WorkbookGenerator generator;
+    private final List<String> formats;
+    private final int headerOffset;
+    private final ByteBuffer body = ByteBuffer.allocate(MAX_RECORD)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    private final byte[] header = new byte[4];
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream(65536);
+    private CompoundFileWriter file;
+    private OutputStream stream;
+    private long sharedStringCells;
+
+    XLSWriter(WorkbookGenerator generator) {
+        this.generator = generator;
+        this.formats = generator.getCellFormats();
+        this.headerOffset = generator.hasSharedStrings() ?
+                generator.getStringCardinality() : 0;
+    }
+
+    void write(File target) throws IOException {
+        try (CompoundFileWriter file = new CompoundFileWriter(target, "Workbook")) {
+            this.file = file;
+            this.stream = file.getStream();
+            int sheets = generator.getSheets();
+            long[] boundSheetOffsets = new long[sheets];
+            long sharedStringCountOffset = writeGlobals(boundSheetOffsets);
+            for (int sheet = 0; sheet < sheets; sheet++) {
+                file.patch(boundSheetOffsets[sheet],
+                        intBytes(file.getStreamSize()));
+                writeSheet(sheet);
+            }
+            file.patch(sharedStringCountOffset, intBytes(sharedStringCells));
+        }
+    }
+
+    /**
+     * Writes the workbook globals, returns the stream offset of the total
+     * shared string count and fills in the offsets of the BOUNDSHEET Sheet
+     * positions.
+     */
+    private long writeGlobals(long[] boundSheetOffsets) throws IOException {
+        writeBof(0x0005);
+        begin().putShort((short) 1200);
+        end(CODEPAGE, stream);
+        begin().putShort((short) 0x0168).putShort((short) 0x010E)
+                .putShort((short) 0x3A5C).putShort((short) 0x23BE)
+                .putShort((short) 0x0038).putShort((short) 0).putShort((short) 0)
+                .putShort((short) 1).putShort((short) 0x0258);
+        end(WINDOW1, stream);
+        begin().putShort((short) 0);
+        end(DATEMODE, stream);
+
+        for (int i = 0; i < FONTS; i++) {
+            begin().putShort((short) 200).putShort((short) 0)
+                    .putShort((short) 0x7FFF).putShort((short) 400)
+                    .putShort((short) 0).put((byte) 0).put((byte) 0)
+                    .put((byte) 0).put((byte) 0);
+            putShortString(body, "Arial");
+            end(FONT, stream);
+        }
+
+        int[] formatIds = new int[formats.size()];
+        int customId = BuiltinFormats.FIRST_USER_DEFINED_FORMAT_INDEX;
+        for (int i = 0; i < formats.size(); i++) {
+            String format = formats.get(i);
+            int builtin = BuiltinFormats.getBuiltinFormat(format);
+            if (builtin >= 0) {
+                formatIds[i] = builtin;
+                continue;
+            }
+            formatIds[i] = customId++;
+            begin().putShort((short) formatIds[i]);
+            putString(body, format);
+            end(FORMAT, stream);
+        }
+
+        for (int i = 0; i < DEFAULT_XF; i++)
+            writeXf(0, 0xFFF5, 0);
+        writeXf(0, 0x0001, 0);
+        for (int formatId : formatIds)
+            writeXf(formatId, 0x0001, 0x04);
+        //The builtin Normal style
+        begin().putShort((short) 0x8000).put((byte) 0).put((byte) 0xFF);
+        end(STYLE, stream);
+
+        for (int sheet = 0; sheet < boundSheetOffsets.length; sheet++) {
+            boundSheetOffsets[sheet] = file.getStreamSize() + 4;
+            begin().putInt(0).putShort((short) 0);
+            putShortString(body, generator.getSheetName(sheet));
+            end(BOUNDSHEET, stream);
+        }
+
+        //Strings do not span records, a CONTINUE starts at a string
+        long sharedStringCountOffset = file.getStreamSize() + 4;
+        int sid = SST;
+        begin().putInt(0).putInt(headerOffset + generator.getColumns());
+        for (int i = 0; i < headerOffset + generator.getColumns(); i++) {
+            String text = i < headerOffset ? generator.getString(i) :
+                    generator.getHeader(i - headerOffset);
+            if (body.remaining() < 3 + text.length()) {
+                end(sid, stream);
+                sid = CONTINUE;
+                begin();
+            }
+            putString(body, text);
+        }
+        end(sid, stream);
+        begin();
+        end(EOF, stream);
+        return sharedStringCountOffset;
+    }
+
+    private void writeSheet(int sheet) throws IOException {
+        int columns = generator.getColumns();
+        int rows = generator.getRows();
+        int[] kinds = new int[columns];
+        int[] xfs = new int[columns];
+        for (int c = 0; c < columns; c++) {
+            kinds[c] = generator.getColumnKind(sheet, c);
+            String format = generator.getCellFormat(sheet, c);
+            xfs[c] = null == format ? DEFAULT_XF :
+                    DEFAULT_XF + 1 + formats.indexOf(format);
+        }
+
+        writeBof(0x0010);
+        begin().putInt(0).putInt(rows + 1).putShort((short) 0)
+                .putShort((short) columns).putShort((short) 0);
+        end(DIMENSIONS, stream);
+
+        int[] firstColumns = new int[ROW_BLOCK];
+        int[] lastColumns = new int[ROW_BLOCK];
+        for (int first = 0; first <= rows; first += ROW_BLOCK) {
+            int last = Math.min(rows, first + ROW_BLOCK - 1);
+            block.reset();
+            for (int r = first; r <= last; r++) {
+                int firstColumn = -1;
+                int lastColumn = -1;
+                for (int c = 0; c < columns; c++) {
+                    if (r == 0) {
+                        sharedStringCells++;
+                        begin().putShort((short) 0).putShort((short) c)
+                                .putShort((short) DEFAULT_XF).putInt(headerOffset + c);
+                        end(LABELSST, block);
+                    } else if (generator.isBlank(sheet, r, c)) {
+                        continue;
+                    } else {
+                        writeCell(sheet, r, c, kinds[c], xfs[c]);
+                    }
+                    if (firstColumn < 0)
+                        firstColumn = c;
+                    lastColumn = c;
+                }
+                firstColumns[r - first] = Math.max(0, firstColumn);
+                lastColumns[r - first] = lastColumn + 1;
+            }
+            for (int r = first; r <= last; r++) {
+                begin().putShort((short) r).putShort((short) firstColumns[r - first])
+                        .putShort((short) lastColumns[r - first])
+                        .putShort((short) 0x00FF).putShort((short) 0)
+                        .putShort((short) 0).putShort((short) 0x0100)
+                        .putShort((short) DEFAULT_XF);
+                end(ROW, stream);
+            }
+            block.writeTo(stream);
+        }
+
+        begin().putShort((short) (sheet == 0 ? 0x06B6 : 0x00B6))
+                .putShort((short) 0).putShort((short) 0).putInt(0x40)
+                .putShort((short) 0).putShort((short) 0).putInt(0);
+        end(WINDOW2, stream);
+        begin();
+        end(EOF, stream);
+    }
+
+    private void writeCell(int sheet, int row, int column, int kind, int xf)
+            throws IOException {
+        begin().putShort((short) row).putShort((short) column).putShort((short) xf);
+        switch (kind) {
+            case WorkbookGenerator.SHARED_STRING:
+                sharedStringCells++;
+                body.putInt(generator.getStringIndex(sheet, row, column));
+                end(LABELSST, block);
+                break;
+            case WorkbookGenerator.INLINE_STRING:
+                putString(body, generator.getString(
+                        generator.getStringIndex(sheet, row, column)));
+                end(LABEL, block);
+                break;
+            case WorkbookGenerator.DATE:
+                body.putDouble(generator.getDate(sheet, row, column));
+                end(NUMBER, block);
+                break;
+            default:
+                body.putDouble(generator.getNumber(sheet, row, column));
+                end(NUMBER, block);
+                break;
+        }
+    }
+
+    private void writeBof(int type) throws IOException {
+        begin().putShort((short) 0x0600).putShort((short) type)
+                .putShort((short) 0x10D3).putShort((short) 0x07CC)
+                .putInt(0x41).putInt(0x06);
+        end(BOF, stream);
+    }
+
+    /**
+     * Writes an XF with font 0.
+     *
+     * @param formatId     number format
+     * @param typeAndParent style flag and parent style XF
+     * @param usedAttributes attribute groups which differ from the parent
+     */
+    private void writeXf(int formatId, int typeAndParent, int usedAttributes)
+            throws IOException {
+        begin().putShort((short) 0).putShort((short) formatId)
+                .putShort((short) typeAndParent).put((byte) 0x20).put((byte) 0)
+                .put((byte) 0).put((byte) usedAttributes).putInt(0).putInt(0)
+                .putShort((short) 0x20C0);
+        end(XF, stream);
+    }
+
+    private ByteBuffer begin() {
+        body.clear();
+        return body;
+    }
+
+    /**
+     * Writes the record header and the body collected since begin().
+     */
+    private void end(int sid, OutputStream out) throws IOException {
+        int length = body.position();
+        header[0] = (byte) sid;
+        header[1] = (byte) (sid >>> 8);
+        header[2] = (byte) length;
+        header[3] = (byte) (length >>> 8);
+        out.write(header);
+        out.write(body.array(), 0, length);
+    }
+
+    /**
+     * Puts an XLUnicodeString with a 16 bit length and 8 bit characters.
+     */
+    private static void putString(ByteBuffer buffer, String text) {
+        buffer.putShort((short) text.length()).put((byte) 0)
+                .put(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Puts a ShortXLUnicodeString with an 8 bit length and 8 bit characters.
+     */
+    private static void putShortString(ByteBuffer buffer, String text) {
+        buffer.put((byte) text.length()).put((byte) 0)
+                .put(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static byte[] intBytes(long value) {
+        if (value > 0xFFFFFFFFL)
+            throw new IllegalStateException("Value does not fit the record: " + value);
+        return new byte[]{(byte) value, (byte) (value >>> 8),
+                (byte) (value >>> 16), (byte) (value >>> 24)};
+    }
+}
@@ -0,0 +1,298 @@
+package org.xl.excel.generator;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+
+/**
+ * Writes the workbook of a WorkbookGenerator as XLSX, streaming the XML of
+ * every part straight into the ZIP file.
+ * <p>
+ * The shared strings table holds the distinct strings, when any Column
+ * holds shared strings, followed by the headers. Cell style 0 is General,
+ * style i + 1 has the i-th of getCellFormats(). Empty cells and rows
+ * without any value are not written.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+final class XLSXWriter {
+    private static final String MAIN_NS =
+            "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String REL_NS =
+            "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String PACKAGE_REL_NS =
+            "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String CONTENT_TYPE =
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.";
+    private static final String XML_DECLARATION =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+
+    private final WorkbookGenerator generator;
+    private final List<String> formats;
+    private final int headerOffset;
+    private final byte[] buffer = new byte[65536];
+    private int count;
+    private OutputStream out;
+
+    XLSXWriter(WorkbookGenerator generator) {
+        this.generator = generator;
+        this.formats = generator.getCellFormats();
+        this.headerOffset = generator.hasSharedStrings() ?
+                generator.getStringCardinality() : 0;
+    }
+
+    void write(File file) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), 65536))) {
+            zip.setLevel(generator.getCompressionLevel());
+            out = zip;
+            entry(zip, "[Content_Types].xml");
+            writeContentTypes();
+            entry(zip, "_rels/.rels");
+            append(XML_DECLARATION).append("<Relationships xmlns=\"")
+                    .append(PACKAGE_REL_NS).append("\"><Relationship Id=\"rId1\" Type=\"")
+                    .append(REL_NS).append("/officeDocument\" Target=\"xl/workbook.xml\"/>")
+                    .append("</Relationships>");
+            entry(zip, "xl/workbook.xml");
+            writeWorkbook();
+            entry(zip, "xl/_rels/workbook.xml.rels");
+            writeWorkbookRelationships();
+            entry(zip, "xl/styles.xml");
+            writeStyles();
+            entry(zip, "xl/sharedStrings.xml");
+            writeSharedStrings();
+            for (int sheet = 0; sheet < generator.getSheets(); sheet++) {
+                entry(zip, "xl/worksheets/sheet" + (sheet + 1) + ".xml");
+                writeSheet(sheet);
+            }
+            flush();
+            zip.closeEntry();
+        }
+    }
+
+    private void writeContentTypes() throws IOException {
+        append(XML_DECLARATION).append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">")
+                .append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>")
+                .append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+                .append("<Override PartName=\"/xl/workbook.xml\" ContentType=\"")
+                .append(CONTENT_TYPE).append("sheet.main+xml\"/>")
+                .append("<Override PartName=\"/xl/styles.xml\" ContentType=\"")
+                .append(CONTENT_TYPE).append("styles+xml\"/>")
+                .append("<Override PartName=\"/xl/sharedStrings.xml\" ContentType=\"")
+                .append(CONTENT_TYPE).append("sharedStrings+xml\"/>");
+        for (int sheet = 0; sheet < generator.getSheets(); sheet++) {
+            append("<Override PartName=\"/xl/worksheets/sheet").append(sheet + 1)
+                    .append(".xml\" ContentType=\"").append(CONTENT_TYPE)
+                    .append("worksheet+xml\"/>");
+        }
+        append("</Types>");
+    }
+
+    private void writeWorkbook() throws IOException {
+        append(XML_DECLARATION).append("<workbook xmlns=\"").append(MAIN_NS)
+                .append("\" xmlns:r=\"").append(REL_NS).append("\"><sheets>");
+        for (int sheet = 0; sheet < generator.getSheets(); sheet++) {
+            append("<sheet name=\"").appendEscaped(generator.getSheetName(sheet))
+                    .append("\" sheetId=\"").append(sheet + 1)
+                    .append("\" r:id=\"rId").append(sheet + 1).append("\"/>");
+        }
+        append("</sheets></workbook>");
+    }
+
+    private void writeWorkbookRelationships() throws IOException {
+        int sheets = generator.getSheets();
+        append(XML_DECLARATION).append("<Relationships xmlns=\"")
+                .append(PACKAGE_REL_NS).append("\">");
+        for (int sheet = 0; sheet < sheets; sheet++) {
+            append("<Relationship Id=\"rId").append(sheet + 1).append("\" Type=\"")
+                    .append(REL_NS).append("/worksheet\" Target=\"worksheets/sheet")
+                    .append(sheet + 1).append(".xml\"/>");
+        }
+        append("<Relationship Id=\"rId").append(sheets + 1).append("\" Type=\"")
+                .append(REL_NS).append("/styles\" Target=\"styles.xml\"/>")
+                .append("<Relationship Id=\"rId").append(sheets + 2).append("\" Type=\"")
+                .append(REL_NS).append("/sharedStrings\" Target=\"sharedStrings.xml\"/>")
+                .append("</Relationships>");
+    }
+
+    private void writeStyles() throws IOException {
+        append(XML_DECLARATION).append("<styleSheet xmlns=\"").append(MAIN_NS).append("\">");
+        int customFormats = 0;
+        for (String format : formats) {
+            if (BuiltinFormats.getBuiltinFormat(format) < 0)
+                customFormats++;
+        }
+        if (customFormats > 0) {
+            append("<numFmts count=\"").append(customFormats).append("\">");
+            int id = BuiltinFormats.FIRST_USER_DEFINED_FORMAT_INDEX;
+            for (String format : formats) {
+                if (BuiltinFormats.getBuiltinFormat(format) < 0) {
+                    append("<numFmt numFmtId=\"").append(id++)
+                            .append("\" formatCode=\"").appendEscaped(format).append("\"/>");
+                }
+            }
+            append("</numFmts>");
+        }
+        append("<fonts count=\"1\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>")
+                .append("<fills count=\"1\"><fill><patternFill patternType=\"none\"/></fill></fills>")
+                .append("<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>")
+                .append("<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>")
+                .append("<cellXfs count=\"").append(formats.size() + 1).append("\">")
+                .append("<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>");
+        int id = BuiltinFormats.FIRST_USER_DEFINED_FORMAT_INDEX;
+        for (String format : formats) {
+            int builtin = BuiltinFormats.getBuiltinFormat(format);
+            append("<xf numFmtId=\"").append(builtin < 0 ? id++ : builtin)
+                    .append("\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/>");
+        }
+        append("</cellXfs></styleSheet>");
+    }
+
+    private void writeSharedStrings() throws IOException {
+        int strings = headerOffset + generator.getColumns();
+        append(XML_DECLARATION).append("<sst xmlns=\"").append(MAIN_NS)
+                .append("\" uniqueCount=\"").append(strings).append("\">");
+        for (int i = 0; i < headerOffset; i++)
+            append("<si><t>").appendEscaped(generator.getString(i)).append("</t></si>");
+        for (int c = 0; c < generator.getColumns(); c++)
+            append("<si><t>").appendEscaped(generator.getHeader(c)).append("</t></si>");
+        append("</sst>");
+    }
+
+    private void writeSheet(int sheet) throws IOException {
+        int columns = generator.getColumns();
+        int rows = generator.getRows();
+        String[] letters = new String[columns];
+        int[] kinds = new int[columns];
+        int[] styles = new int[columns];
+        for (int c = 0; c < columns; c++) {
+            letters[c] = columnLetters(c);
+            kinds[c] = generator.getColumnKind(sheet, c);
+            String format = generator.getCellFormat(sheet, c);
+            styles[c] = null == format ? 0 : formats.indexOf(format) + 1;
+        }
+
+        append(XML_DECLARATION).append("<worksheet xmlns=\"").append(MAIN_NS)
+                .append("\"><dimension ref=\"A1:").append(letters[columns - 1])
+                .append(rows + 1).append("\"/><sheetData><row r=\"1\">");
+        for (int c = 0; c < columns; c++) {
+            append("<c r=\"").append(letters[c]).append("1\" t=\"s\"><v>")
+                    .append(headerOffset + c).append("</v></c>");
+        }
+        append("</row>");
+        for (int r = 1; r <= rows; r++) {
+            boolean open = false;
+            for (int c = 0; c < columns; c++) {
+                if (generator.isBlank(sheet, r, c))
+                    continue;
+                if (!open) {
+                    append("<row r=\"").append(r + 1).append("\">");
+                    open = true;
+                }
+                append("<c r=\"").append(letters[c]).append(r + 1);
+                switch (kinds[c]) {
+                    case WorkbookGenerator.SHARED_STRING:
+                        append("\" t=\"s\"><v>")
+                                .append(generator.getStringIndex(sheet, r, c));
+                        break;
+                    case WorkbookGenerator.INLINE_STRING:
+                        append("\" t=\"inlineStr\"><is><t>")
+                                .appendEscaped(generator.getString(
+                                        generator.getStringIndex(sheet, r, c)))
+                                .append("</t></is></c>");
+                        continue;
+                    case WorkbookGenerator.DATE:
+                        append("\" s=\"").append(styles[c]).append("\"><v>")
+                                .append(generator.getDate(sheet, r, c));
+                        break;
+                    default:
+                        if (styles[c] > 0)
+                            append("\" s=\"").append(styles[c]);
+                        append("\"><v>").append(Double.toString(
+                                generator.getNumber(sheet, r, c)));
+                        break;
+                }
+                append("</v></c>");
+            }
+            if (open)
+                append("</row>");
+        }
+        append("</sheetData></worksheet>");
+    }
+
+    private void entry(ZipOutputStream zip, String name) throws IOException {
+        flush();
+        zip.putNextEntry(new ZipEntry(name));
+    }
+
+    private XLSXWriter append(String text) throws IOException {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char ch = text.charAt(i);
+            if (ch >= 0x80) {
+                appendUtf8(text.substring(i));
+                return this;
+            }
+            if (count == buffer.length)
+                flush();
+            buffer[count++] = (byte) ch;
+        }
+        return this;
+    }
+
+    private XLSXWriter append(int number) throws IOException {
+        return append(Integer.toString(number));
+    }
+
+    private XLSXWriter appendEscaped(String text) throws IOException {
+        int length = text.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char ch = text.charAt(i);
+            String entity = ch == '&' ? "&amp;" : ch == '<' ? "&lt;" :
+                    ch == '>' ? "&gt;" : ch == '"' ? "&quot;" : null;
+            if (null != entity) {
+                append(text.substring(start, i)).append(entity);
+                start = i + 1;
+            }
+        }
+        return start == 0 ? append(text) : append(text.substring(start));
+    }
+
+    private void appendUtf8(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (count + bytes.length > buffer.length)
+            flush();
+        if (bytes.length > buffer.length) {
+            out.write(bytes);
+        } else {
+            System.arraycopy(bytes, 0, buffer, count, bytes.length);
+            count += bytes.length;
+        }
+    }
+
+    private void flush() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    /**
+     * Returns the letters of a 0 indexed Column, A for 0 and AA for 26.
+     */
+    static String columnLetters(int column) {
+        StringBuilder letters = new StringBuilder();
+        for (int c = column + 1; c > 0; c = (c - 1) / 26)
+            letters.insert(0, (char) ('A' + (c - 1) % 26));
+        return letters.toString();
+    }
+}
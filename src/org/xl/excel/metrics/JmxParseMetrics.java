@@ -0,0 +1,232 @@
+package org.xl.excel.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ParseMetrics which accumulates the timings and counters of all parsers it
+ * is set on and exposes them as an MBean.
+ * <p>
+ * Register it with the platform MBeanServer and set it on the parsers:
+ * <pre>
+ * JmxParseMetrics metrics = JmxParseMetrics.register("imports");
+ * parser.setMetrics(metrics);
+ * </pre>
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class JmxParseMetrics implements ParseMetrics, JmxParseMetricsMBean {
+    private static Logger LOGGER = LoggerFactory.getLogger(JmxParseMetrics.class);
+
+    public static final String DOMAIN = "org.xl.excel";
+
+    private final AtomicLongArray phaseNanos =
+            new AtomicLongArray(ParsePhase.values().length);
+    private final AtomicLongArray phaseCounts =
+            new AtomicLongArray(ParsePhase.values().length);
+    private final AtomicLongArray counters =
+            new AtomicLongArray(ParseCounter.values().length);
+
+    private volatile ObjectName objectName;
+
+    /**
+     * Creates a JmxParseMetrics and registers it with the platform
+     * MBeanServer as org.xl.excel:type=ParseMetrics,name=[name].
+     *
+     * @param name
+     * @return JmxParseMetrics
+     * @throws IllegalStateException when an MBean of that name is already
+     *                               registered, unregister() it first
+     */
+    public static JmxParseMetrics register(String name) {
+        JmxParseMetrics metrics = new JmxParseMetrics();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=ParseMetrics,name=" +
+                    ObjectName.quote(name));
+            server.registerMBean(metrics, objectName);
+            metrics.objectName = objectName;
+        } catch (InstanceAlreadyExistsException e) {
+            throw new IllegalStateException("A ParseMetrics MBean named '" + name +
+                    "' is already registered", e);
+        } catch (JMException e) {
+            LOGGER.warn("Failed to register ParseMetrics MBean '" + name + "': " +
+                    e.getLocalizedMessage(), e);
+        }
+        return metrics;
+    }
+
+    /**
+     * Removes the MBean registered by register(), the name can then be
+     * registered again.
+     */
+    public void unregister() {
+        ObjectName registered = objectName;
+        if (null == registered)
+            return;
+        objectName = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+        } catch (JMException e) {
+            LOGGER.warn("Failed to unregister ParseMetrics MBean " + registered + ": " +
+                    e.getLocalizedMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void phase(ParsePhase phase, long nanos) {
+        phaseNanos.addAndGet(phase.ordinal(), nanos);
+        phaseCounts.incrementAndGet(phase.ordinal());
+    }
+
+    @Override
+    public void count(ParseCounter counter, long delta) {
+        counters.addAndGet(counter.ordinal(), delta);
+    }
+
+    /**
+     * Returns the total time of a phase in milliseconds.
+     *
+     * @param phase
+     */
+    public double getMillis(ParsePhase phase) {
+        return phaseNanos.get(phase.ordinal()) / 1000000.0;
+    }
+
+    /**
+     * Returns the number of times a phase was recorded.
+     *
+     * @param phase
+     */
+    public long getCount(ParsePhase phase) {
+        return phaseCounts.get(phase.ordinal());
+    }
+
+    public long getCount(ParseCounter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    @Override
+    public long getRows() {
+        return getCount(ParseCounter.ROWS);
+    }
+
+    @Override
+    public long getCells() {
+        return getCount(ParseCounter.CELLS);
+    }
+
+    @Override
+    public long getSstLookups() {
+        return getCount(ParseCounter.SST_LOOKUPS);
+    }
+
+    @Override
+    public long getFormattedCells() {
+        return getCount(ParseCounter.FORMATTED_CELLS);
+    }
+
+    @Override
+    public long getCompressedBytes() {
+        return getCount(ParseCounter.COMPRESSED_BYTES);
+    }
+
+    @Override
+    public long getInflatedBytes() {
+        return getCount(ParseCounter.INFLATED_BYTES);
+    }
+
+    @Override
+    public long getFilteredRows() {
+        return getCount(ParseCounter.FILTERED_ROWS);
+    }
+
+    @Override
+    public long getSheetsParsed() {
+        return getCount(ParsePhase.SHEET_PARSE);
+    }
+
+    @Override
+    public double getPackageOpenMillis() {
+        return getMillis(ParsePhase.PACKAGE_OPEN);
+    }
+
+    @Override
+    public double getSharedStringsLoadMillis() {
+        return getMillis(ParsePhase.SHARED_STRINGS_LOAD);
+    }
+
+    @Override
+    public double getStylesLoadMillis() {
+        return getMillis(ParsePhase.STYLES_LOAD);
+    }
+
+    @Override
+    public double getSheetParseMillis() {
+        return getMillis(ParsePhase.SHEET_PARSE);
+    }
+
+    @Override
+    public double getTypeInferenceMillis() {
+        return getMillis(ParsePhase.TYPE_INFERENCE);
+    }
+
+    @Override
+    public double getOutputMillis() {
+        return getMillis(ParsePhase.OUTPUT);
+    }
+
+    @Override
+    public double getRowsPerSecond() {
+        return perSecond(getRows());
+    }
+
+    @Override
+    public double getCellsPerSecond() {
+        return perSecond(getCells());
+    }
+
+    @Override
+    public double getCompressionRatio() {
+        long compressed = getCompressedBytes();
+        return compressed == 0 ? 0 : (double) getInflatedBytes() / compressed;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < phaseNanos.length(); i++) {
+            phaseNanos.set(i, 0);
+            phaseCounts.set(i, 0);
+        }
+        for (int i = 0; i < counters.length(); i++)
+            counters.set(i, 0);
+    }
+
+    private double perSecond(long count) {
+        long nanos = phaseNanos.get(ParsePhase.SHEET_PARSE.ordinal());
+        return nanos == 0 ? 0 : count * 1000000000.0 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("ParseMetrics[");
+        for (ParsePhase phase : ParsePhase.values())
+            sb.append(phase).append('=').append(getMillis(phase)).append("ms, ");
+        for (ParseCounter counter : ParseCounter.values())
+            sb.append(counter).append('=').append(getCount(counter)).append(", ");
+        sb.setLength(sb.length() - 2);
+        return sb.append(']').toString();
+    }
+}
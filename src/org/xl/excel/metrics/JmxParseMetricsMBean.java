@@ -0,0 +1,55 @@
+package org.xl.excel.metrics;
+
+/**
+ * Management interface of JmxParseMetrics. Times are totals in
+ * milliseconds since the last reset.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public interface JmxParseMetricsMBean {
+
+    long getRows();
+
+    long getCells();
+
+    long getSstLookups();
+
+    long getFormattedCells();
+
+    long getCompressedBytes();
+
+    long getInflatedBytes();
+
+    long getFilteredRows();
+
+    long getSheetsParsed();
+
+    double getPackageOpenMillis();
+
+    double getSharedStringsLoadMillis();
+
+    double getStylesLoadMillis();
+
+    double getSheetParseMillis();
+
+    double getTypeInferenceMillis();
+
+    double getOutputMillis();
+
+    /**
+     * Returns the rows per second of Sheet parsing.
+     */
+    double getRowsPerSecond();
+
+    /**
+     * Returns the cells per second of Sheet parsing.
+     */
+    double getCellsPerSecond();
+
+    /**
+     * Returns the inflated bytes per compressed byte of the Sheet parts.
+     */
+    double getCompressionRatio();
+
+    void reset();
+}
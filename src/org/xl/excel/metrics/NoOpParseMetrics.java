@@ -0,0 +1,26 @@
+package org.xl.excel.metrics;
+
+/**
+ * ParseMetrics which records nothing, the default of every ExcelParser.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public final class NoOpParseMetrics implements ParseMetrics {
+    public static final NoOpParseMetrics INSTANCE = new NoOpParseMetrics();
+
+    private NoOpParseMetrics() {
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+    @Override
+    public void phase(ParsePhase phase, long nanos) {
+    }
+
+    @Override
+    public void count(ParseCounter counter, long delta) {
+    }
+}
@@ -0,0 +1,37 @@
+package org.xl.excel.metrics;
+
+/**
+ * Counters of a parse reported to ParseMetrics.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public enum ParseCounter {
+    /**
+     * Data rows kept, written or handed to a listener
+     */
+    ROWS,
+    /**
+     * Cell values read
+     */
+    CELLS,
+    /**
+     * Cells resolved through the shared strings table
+     */
+    SST_LOOKUPS,
+    /**
+     * Numeric cells formatted with their cell format
+     */
+    FORMATTED_CELLS,
+    /**
+     * Compressed size of the XLSX Sheet parts read
+     */
+    COMPRESSED_BYTES,
+    /**
+     * Bytes inflated from the XLSX Sheet parts
+     */
+    INFLATED_BYTES,
+    /**
+     * Data rows dropped by the RowPredicate
+     */
+    FILTERED_ROWS
+}
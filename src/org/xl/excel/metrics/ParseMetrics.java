@@ -0,0 +1,36 @@
+package org.xl.excel.metrics;
+
+/**
+ * Receives the phase timings and counters of the ExcelParsers.
+ * <p>
+ * The parsers count cells and rows in plain fields and report them once per
+ * Sheet, and only take timestamps when isEnabled() returns true, so a
+ * disabled implementation such as NoOpParseMetrics costs nothing.
+ * Implementations must be thread safe when shared between parsers.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public interface ParseMetrics {
+
+    /**
+     * Returns false if nothing is recorded, the parsers then skip all
+     * timing and reporting.
+     */
+    boolean isEnabled();
+
+    /**
+     * Records the duration of a phase.
+     *
+     * @param phase
+     * @param nanos
+     */
+    void phase(ParsePhase phase, long nanos);
+
+    /**
+     * Adds to a counter.
+     *
+     * @param counter
+     * @param delta
+     */
+    void count(ParseCounter counter, long delta);
+}
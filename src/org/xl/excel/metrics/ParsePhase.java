@@ -0,0 +1,33 @@
+package org.xl.excel.metrics;
+
+/**
+ * Timed phases of a parse reported to ParseMetrics.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public enum ParsePhase {
+    /**
+     * Opening the XLSX package, or loading the XLS workbook
+     */
+    PACKAGE_OPEN,
+    /**
+     * Loading the XLSX shared strings table
+     */
+    SHARED_STRINGS_LOAD,
+    /**
+     * Loading the XLSX styles table
+     */
+    STYLES_LOAD,
+    /**
+     * Parsing the rows of one Sheet, reported per Sheet
+     */
+    SHEET_PARSE,
+    /**
+     * Turning the per cell observations into Column Types and ColumnStats
+     */
+    TYPE_INFERENCE,
+    /**
+     * Handing rows to a RowListener or BatchListener
+     */
+    OUTPUT
+}
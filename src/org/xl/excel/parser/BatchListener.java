@@ -0,0 +1,28 @@
+package org.xl.excel.parser;
+
+import org.xl.excel.components.ColumnBatch;
+
+/**
+ * Receives the data rows of each Sheet in column major ColumnBatches while
+ * the Excel File is being parsed.
+ * <p>
+ * The listener owns a batch once it is handed over and must call
+ * ColumnBatch.release() when done with it, which may happen on another
+ * thread. The parser waits for a released batch when all batches of the
+ * ColumnBatchPool are in use.
+ * <p>
+ * Called on the thread running ExcelParser.process(). A RuntimeException
+ * thrown by the listener stops the parse.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public interface BatchListener {
+
+    /**
+     * Called with every full batch and with the last, possibly partial,
+     * batch of each Sheet.
+     *
+     * @param batch
+     */
+    void batch(ColumnBatch batch);
+}
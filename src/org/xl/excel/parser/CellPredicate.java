@@ -0,0 +1,54 @@
+package org.xl.excel.parser;
+
+/**
+ * Tests the typed value of one cell for a RowPredicate. Exactly one method
+ * is called per cell, depending on its type. Every method returns false
+ * unless overridden, so a subclass only implements the types it accepts.
+ * <p>
+ * Dates are Excel serial numbers, use DateUtil.getExcelDate() to compare
+ * them with a java.util.Date. Formula cells are tested by their cached
+ * result.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public abstract class CellPredicate {
+
+    /**
+     * Tests a string cell, never called with an empty String.
+     *
+     * @param value
+     */
+    public boolean text(String value) {
+        return false;
+    }
+
+    /**
+     * Tests a numeric or date cell.
+     *
+     * @param value
+     * @param date  true when the cell has a date format
+     */
+    public boolean number(double value, boolean date) {
+        return false;
+    }
+
+    public boolean booleanValue(boolean value) {
+        return false;
+    }
+
+    /**
+     * Tests an error cell, the value is "ERROR:" followed by the error.
+     *
+     * @param value
+     */
+    public boolean error(String value) {
+        return false;
+    }
+
+    /**
+     * Tests a cell which is missing or empty.
+     */
+    public boolean blank() {
+        return false;
+    }
+}
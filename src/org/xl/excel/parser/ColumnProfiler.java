@@ -0,0 +1,104 @@
+package org.xl.excel.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xl.excel.components.HyperLogLog;
+import org.xl.excel.components.SpaceSaving;
+
+/**
+ * Optional streaming profile of each Column, fed by the parsers with the
+ * value of every cell.
+ * <p>
+ * Like ColumnTypeInference the cells of a row are held until the parser
+ * knows whether the row is data, then either committed into the per column
+ * HyperLogLog and SpaceSaving sketches or discarded. Memory is fixed per
+ * column regardless of the number of rows.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+final class ColumnProfiler {
+    private final int precision;
+    private final int capacity;
+    private final List<HyperLogLog> distinctValues = new ArrayList<HyperLogLog>();
+    private final List<SpaceSaving> frequentValues = new ArrayList<SpaceSaving>();
+
+    private int[] pendingColumns = new int[16];
+    private String[] pendingValues = new String[16];
+    private int pendingCount;
+
+    /**
+     * @param precision HyperLogLog precision
+     * @param capacity  Number of SpaceSaving counters per column
+     */
+    ColumnProfiler(int precision, int capacity) {
+        this.precision = precision;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Records the unquoted value of a cell of the current row. Blank values
+     * are not profiled.
+     *
+     * @param column
+     * @param value
+     */
+    void cell(int column, String value) {
+        if (value.length() == 0)
+            return;
+        if (pendingCount == pendingColumns.length) {
+            int grown = pendingCount * 2;
+            int[] columns = new int[grown];
+            String[] values = new String[grown];
+            System.arraycopy(pendingColumns, 0, columns, 0, pendingCount);
+            System.arraycopy(pendingValues, 0, values, 0, pendingCount);
+            pendingColumns = columns;
+            pendingValues = values;
+        }
+        pendingColumns[pendingCount] = column;
+        pendingValues[pendingCount] = value;
+        pendingCount++;
+    }
+
+    /**
+     * Adds the cells of the current row to the sketches.
+     */
+    void commitRow() {
+        for (int i = 0; i < pendingCount; i++) {
+            int column = pendingColumns[i];
+            ensureColumn(column);
+            String value = pendingValues[i];
+            distinctValues.get(column).offer(value);
+            frequentValues.get(column).offer(value);
+            pendingValues[i] = null;
+        }
+        pendingCount = 0;
+    }
+
+    /**
+     * Drops the cells of the current row.
+     */
+    void discardRow() {
+        for (int i = 0; i < pendingCount; i++) {
+            pendingValues[i] = null;
+        }
+        pendingCount = 0;
+    }
+
+    HyperLogLog getDistinctValues(int column) {
+        ensureColumn(column);
+        return distinctValues.get(column);
+    }
+
+    SpaceSaving getFrequentValues(int column) {
+        ensureColumn(column);
+        return frequentValues.get(column);
+    }
+
+    private void ensureColumn(int column) {
+        while (distinctValues.size() <= column) {
+            distinctValues.add(new HyperLogLog(precision));
+            frequentValues.add(new SpaceSaving(capacity));
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package org.xl.excel.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xl.excel.components.ColumnStats;
+
+/**
+ * Streaming Column Type inference used by the parsers while they read a
+ * Sheet.
+ * <p>
+ * Every cell of a row is classified as it is parsed and held until the
+ * parser knows what the row was. Data rows are committed into per column
+ * counters, the header row and skipped blank rows are discarded. Once the
+ * parse ends the Column Types and ColumnStats are derived from the counters
+ * without another pass over the data.
+ * <p>
+ * A sample size limits inference to the first data rows of the Sheet, after
+ * which isSampling() returns false and cells are no longer classified.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+final class ColumnTypeInference {
+    static final int BLANK = 0;
+    static final int STRING = 1;
+    static final int NUMBER = 2;
+    static final int DATE = 3;
+    static final int BOOLEAN = 4;
+    static final int ERROR = 5;
+
+    private final int sampleRows;
+    private int rowCount;
+
+    //Cells of the row currently being parsed
+    private int[] pendingColumns = new int[16];
+    private int[] pendingKinds = new int[16];
+    private double[] pendingNumbers = new double[16];
+    private int pendingCount;
+
+    //Committed counters, one slot per column
+    private int[][] kindCounts = new int[ERROR + 1][16];
+    private double[] min = new double[16];
+    private double[] max = new double[16];
+    private int columnCount;
+
+    /**
+     * @param sampleRows Number of data rows to inspect or
+     *                   ExcelParser.READ_ALL
+     */
+    ColumnTypeInference(int sampleRows) {
+        this.sampleRows = sampleRows;
+    }
+
+    /**
+     * Returns true while cells should still be classified and passed to
+     * cell().
+     */
+    boolean isSampling() {
+        return sampleRows < 0 || rowCount < sampleRows;
+    }
+
+    /**
+     * Records a cell of the current row.
+     *
+     * @param column 0 indexed column
+     * @param kind   one of the kind constants
+     * @param number numeric value of the cell or Double.NaN
+     */
+    void cell(int column, int kind, double number) {
+        if (!isSampling())
+            return;
+        if (pendingCount == pendingColumns.length) {
+            int grown = pendingCount * 2;
+            pendingColumns = grow(pendingColumns, grown);
+            pendingKinds = grow(pendingKinds, grown);
+            pendingNumbers = grow(pendingNumbers, grown);
+        }
+        pendingColumns[pendingCount] = column;
+        pendingKinds[pendingCount] = kind;
+        pendingNumbers[pendingCount] = number;
+        pendingCount++;
+    }
+
+    /**
+     * Adds the cells of the current row to the column counters.
+     */
+    void commitRow() {
+        if (!isSampling()) {
+            pendingCount = 0;
+            return;
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            int column = pendingColumns[i];
+            ensureColumn(column);
+            int kind = pendingKinds[i];
+            if (kind != BLANK)
+                kindCounts[kind][column]++;
+            double number = pendingNumbers[i];
+            if (!Double.isNaN(number)) {
+                if (Double.isNaN(min[column]) || number < min[column])
+                    min[column] = number;
+                if (Double.isNaN(max[column]) || number > max[column])
+                    max[column] = number;
+            }
+        }
+        pendingCount = 0;
+        rowCount++;
+    }
+
+    /**
+     * Drops the cells of the current row, used for the header row and for
+     * rows which are not kept.
+     */
+    void discardRow() {
+        pendingCount = 0;
+    }
+
+    /**
+     * Returns the inferred type of every column of the specified header
+     * list.
+     *
+     * @param headers
+     * @return ColumnTypes
+     */
+    List<String> getColumnTypes(List<String> headers) {
+        List<String> types = new ArrayList<String>(headers.size());
+        for (int i = 0; i < headers.size(); i++) {
+            types.add(typeOf(i));
+        }
+        return types;
+    }
+
+    /**
+     * Returns the statistics of every column of the specified header list,
+     * including the sketches of the profiler when one is given.
+     *
+     * @param headers
+     * @param profiler ColumnProfiler or null
+     * @return ColumnStats
+     */
+    List<ColumnStats> getColumnStats(List<String> headers,
+                                     ColumnProfiler profiler) {
+        List<ColumnStats> stats = new ArrayList<ColumnStats>(headers.size());
+        for (int i = 0; i < headers.size(); i++) {
+            boolean seen = i < columnCount;
+            stats.add(new ColumnStats(headers.get(i), typeOf(i), rowCount,
+                    count(NUMBER, i), count(DATE, i), count(BOOLEAN, i),
+                    count(STRING, i), count(ERROR, i),
+                    seen ? min[i] : Double.NaN, seen ? max[i] : Double.NaN,
+                    null == profiler ? null : profiler.getDistinctValues(i),
+                    null == profiler ? null : profiler.getFrequentValues(i)));
+        }
+        return stats;
+    }
+
+    private String typeOf(int column) {
+        int errors = count(ERROR, column);
+        int values = count(NUMBER, column) + count(DATE, column) +
+                count(BOOLEAN, column) + count(STRING, column);
+        //Error cells do not decide the type unless there is nothing else
+        if (values == 0)
+            return errors > 0 ? "Error" : "String";
+        if (count(NUMBER, column) == values)
+            return "Number";
+        if (count(DATE, column) == values)
+            return "Date";
+        if (count(BOOLEAN, column) == values)
+            return "Boolean";
+        return "String";
+    }
+
+    private int count(int kind, int column) {
+        return column < columnCount ? kindCounts[kind][column] : 0;
+    }
+
+    private void ensureColumn(int column) {
+        if (column >= min.length) {
+            int grown = Math.max(column + 1, min.length * 2);
+            for (int k = 0; k < kindCounts.length; k++) {
+                kindCounts[k] = grow(kindCounts[k], grown);
+            }
+            min = grow(min, grown);
+            max = grow(max, grown);
+        }
+        while (columnCount <= column) {
+            min[columnCount] = Double.NaN;
+            max[columnCount] = Double.NaN;
+            columnCount++;
+        }
+    }
+
+    /**
+     * Returns true if the value looks like a Date, ie three integer parts
+     * separated by '-', '/' or '.' such as 2013-05-16 or 16/05/2013. Quotes
+     * around the value are ignored.
+     *
+     * @param value
+     * @return isDate
+     */
+    static boolean isDate(String value) {
+        int start = 0;
+        int end = value.length();
+        if (end - start >= 2 && value.charAt(start) == '"' &&
+                value.charAt(end - 1) == '"') {
+            start++;
+            end--;
+        }
+        char separator = 0;
+        int separators = 0;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                //Each part must fit into an Integer
+                if (++digits > 9)
+                    return false;
+            } else if (c == '-' || c == '/' || c == '.') {
+                if (separator == 0)
+                    separator = c;
+                else if (c != separator)
+                    return false;
+                if (digits == 0 || ++separators > 2)
+                    return false;
+                digits = 0;
+            } else {
+                return false;
+            }
+        }
+        return separators == 2 && digits > 0;
+    }
+
+    private static int[] grow(int[] values, int length) {
+        int[] grown = new int[length];
+        System.arraycopy(values, 0, grown, 0, values.length);
+        return grown;
+    }
+
+    private static double[] grow(double[] values, int length) {
+        double[] grown = new double[length];
+        System.arraycopy(values, 0, grown, 0, values.length);
+        return grown;
+    }
+}
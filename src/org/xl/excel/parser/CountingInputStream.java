@@ -0,0 +1,51 @@
+package org.xl.excel.parser;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Adds the bytes read from the wrapped stream to a ParseProgress and stops
+ * reading once the parse is cancelled.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+class CountingInputStream extends FilterInputStream {
+    private final ParseProgress progress;
+
+    CountingInputStream(InputStream in, ParseProgress progress) {
+        super(in);
+        this.progress = progress;
+    }
+
+    @Override
+    public int read() throws IOException {
+        progress.checkCancelled();
+        int b = super.read();
+        if (b != -1)
+            progress.addBytes(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        progress.checkCancelled();
+        int read = super.read(b, off, len);
+        if (read > 0)
+            progress.addBytes(read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        if (skipped > 0)
+            progress.addBytes(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
@@ -1,11 +1,19 @@
 package org.xl.excel.parser;
 
 import java.io.File;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.xl.excel.components.ColumnBatchPool;
+import org.xl.excel.components.HyperLogLog;
 import org.xl.excel.components.Sheet;
+import org.xl.excel.components.SpaceSaving;
+import org.xl.excel.metrics.NoOpParseMetrics;
+import org.xl.excel.metrics.ParseMetrics;
+import org.xl.excel.metrics.ParsePhase;
 
 /**
  * Generic ExcelParser class which is the Factory Creator for
@@ -17,6 +25,18 @@ import org.xl.excel.components.Sheet;
 public abstract class ExcelParser {
     public static final int READ_ALL = -1;
 
+    protected int typeSampleRows = READ_ALL;
+    protected boolean profileColumns = false;
+    protected int profilePrecision = HyperLogLog.DEFAULT_PRECISION;
+    protected int profileCapacity = SpaceSaving.DEFAULT_CAPACITY;
+    protected boolean dictionaryEncoding = false;
+    protected RowListener rowListener;
+    protected ParseProgress progress;
+    protected BatchListener batchListener;
+    protected ColumnBatchPool batchPool;
+    protected ParseMetrics metrics = NoOpParseMetrics.INSTANCE;
+    protected RowPredicate rowPredicate;
+
     /**
      * Returns the List of Sheet Objects which represents the loaded
      * Excel File.
@@ -54,6 +74,235 @@ public abstract class ExcelParser {
             useCellFormatting, int index) throws RuntimeException,
             InvalidFormatException;
 
+    /**
+     * Process the specified Excel File on the Executor.
+     * <p>
+     * Returns immediately with a ParseJob which completes with the loaded
+     * Sheets. Its ParseProgress reports the bytes, rows and Sheets parsed
+     * so far, and cancelling the job stops the parse at the next row.
+     *
+     * @param ignoreBlankRows
+     * @param useCellFormatting
+     * @param executor
+     * @return ParseJob
+     */
+    public ParseJob processAsync(boolean ignoreBlankRows,
+                                 boolean useCellFormatting, Executor executor) {
+        return processAsync(ignoreBlankRows, useCellFormatting, READ_ALL, executor);
+    }
+
+    /**
+     * Process the specified Sheet of the Excel File on the Executor, see
+     * processAsync(boolean, boolean, Executor).<br>
+     * 0 Indexed, READ_ALL for all Sheets.
+     *
+     * @param ignoreBlankRows
+     * @param useCellFormatting
+     * @param index
+     * @param executor
+     * @return ParseJob
+     */
+    public ParseJob processAsync(final boolean ignoreBlankRows,
+                                 final boolean useCellFormatting,
+                                 final int index, Executor executor) {
+        final ParseJob job = new ParseJob(new ParseProgress());
+        this.progress = job.getProgress();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (job.isDone())
+                    return;
+                long start = System.currentTimeMillis();
+                try {
+                    if (READ_ALL == index)
+                        process(ignoreBlankRows, useCellFormatting);
+                    else
+                        process(ignoreBlankRows, useCellFormatting, index);
+                    job.complete(new ParseResult(getSheetList(),
+                            job.getProgress().getRowsEmitted(),
+                            System.currentTimeMillis() - start));
+                } catch (Throwable e) {
+                    //The cancellation surfaces wrapped by the parser
+                    if (job.getProgress().isCancelled())
+                        job.cancel(false);
+                    else
+                        job.completeExceptionally(e);
+                }
+            }
+        });
+        return job;
+    }
+
+    /**
+     * Tracks the progress of process() in the specified ParseProgress,
+     * which can also be used to cancel it from another thread.
+     * <p>
+     * Must be set before invoking process()
+     *
+     * @param progress
+     */
+    public void setProgress(ParseProgress progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Returns the ParseProgress of the current or last parse, null when
+     * progress is not tracked.
+     */
+    public ParseProgress getProgress() {
+        return progress;
+    }
+
+    /**
+     * Limits the Column Type inference and ColumnStats to the first
+     * sampleRows data rows of each Sheet. By default every row is
+     * inspected (READ_ALL).
+     * <p>
+     * Must be set before invoking process()
+     *
+     * @param sampleRows
+     */
+    public void setTypeSampleRows(int sampleRows) {
+        this.typeSampleRows = sampleRows;
+    }
+
+    /**
+     * Enables the approximate distinct count and most frequent values of
+     * every Column, available through Sheet.getColumnStats() once the file
+     * has been processed. Disabled by default.
+     * <p>
+     * Must be set before invoking process()
+     *
+     * @param profileColumns
+     */
+    public void setColumnProfiling(boolean profileColumns) {
+        this.profileColumns = profileColumns;
+    }
+
+    /**
+     * Enables column profiling with the specified HyperLogLog precision and
+     * number of SpaceSaving counters per Column.
+     *
+     * @param precision
+     * @param capacity
+     */
+    public void setColumnProfiling(int precision, int capacity) {
+        this.profileColumns = true;
+        this.profilePrecision = precision;
+        this.profileCapacity = capacity;
+    }
+
+    /**
+     * Keeps the rows of each loaded Sheet dictionary encoded: XLSX shared
+     * strings are stored once per Sheet and cells only hold an int code, so
+     * columns with few distinct values take a fraction of the memory. Rows
+     * are rendered as Strings when getRowList() is read, and read the same
+     * as without the encoding. Only applies when
+     * loading XLSX files into memory. Disabled by default.
+     * <p>
+     * Must be set before invoking process()
+     *
+     * @param dictionaryEncoding
+     */
+    public void setDictionaryEncoding(boolean dictionaryEncoding) {
+        this.dictionaryEncoding = dictionaryEncoding;
+    }
+
+    /**
+     * Streams the rows of every Sheet to the listener while the file is
+     * processed instead of loading them into memory. Only applies when
+     * loading into memory, not to the CSV converters.
+     * <p>
+     * Must be set before invoking process()
+     *
+     * @param rowListener
+     */
+    public void setRowListener(RowListener rowListener) {
+        this.rowListener = rowListener;
+    }
+
+    /**
+     * Delivers the data rows of every Sheet to the listener in column major
+     * batches of typed values taken from the pool, instead of loading them
+     * into memory. Numbers and dates are kept as raw values so cell
+     * formatting does not apply to them. Takes precedence over the
+     * RowListener and dictionary encoding, and only applies when loading
+     * into memory, not to the CSV converters.
+     * <p>
+     * Must be set before invoking process()
+     *
+     * @param batchListener
+     * @param batchPool
+     */
+    public void setBatchListener(BatchListener batchListener,
+                                 ColumnBatchPool batchPool) {
+        this.batchListener = batchListener;
+        this.batchPool = batchPool;
+    }
+
+    /**
+     * Delivers the data rows in batches of batchSize rows from a pool of
+     * ColumnBatchPool.DEFAULT_MAX_BATCHES batches.
+     *
+     * @param batchListener
+     * @param batchSize
+     */
+    public void setBatchListener(BatchListener batchListener, int batchSize) {
+        setBatchListener(batchListener, new ColumnBatchPool(batchSize,
+                ColumnBatchPool.DEFAULT_MAX_BATCHES));
+    }
+
+    /**
+     * Keeps only the data rows which match the predicate. Rows are tested
+     * while they are parsed, the rejected ones are never stored, handed to
+     * a listener or added to a batch, and do not count towards the Column
+     * Types and ColumnStats. The CSV converters test the rows against the
+     * Headers printed in the first row, and print only the matching ones.
+     * <p>
+     * Must be set before invoking process()
+     *
+     * @param rowPredicate the predicate, null to keep every row
+     */
+    public void setRowPredicate(RowPredicate rowPredicate) {
+        this.rowPredicate = rowPredicate;
+    }
+
+    /**
+     * Reports the phase timings and counters of every parse to the
+     * ParseMetrics, for example a JmxParseMetrics. NoOpParseMetrics by
+     * default.
+     *
+     * @param metrics
+     */
+    public void setMetrics(ParseMetrics metrics) {
+        this.metrics = null == metrics ? NoOpParseMetrics.INSTANCE : metrics;
+    }
+
+    /**
+     * Returns System.nanoTime() when metrics are enabled, 0 otherwise.
+     */
+    long startTimer() {
+        return metrics.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time since startTimer() for the phase when metrics are
+     * enabled.
+     */
+    void stopTimer(ParsePhase phase, long start) {
+        if (metrics.isEnabled())
+            metrics.phase(phase, System.nanoTime() - start);
+    }
+
+    /**
+     * Returns a new ColumnProfiler for a Sheet, or null when column
+     * profiling is disabled.
+     */
+    ColumnProfiler createColumnProfiler() {
+        return profileColumns ?
+                new ColumnProfiler(profilePrecision, profileCapacity) : null;
+    }
+
     /**
      * Creates a Parser which will write the XLSX Excel File Contents to the
      * specified PrintStream.
@@ -82,6 +331,37 @@ public abstract class ExcelParser {
         return new XLSXParser(xlsxFile, output, READ_ALL, READ_ALL);
     }
 
+    /**
+     * Creates a Parser which will write the XLSX Excel File Contents as gzip
+     * compressed UTF-8 CSV to the specified OutputStream. Blocks are
+     * compressed in parallel by a ParallelGzipOutputStream, the gzip data
+     * is complete when process() returns. The OutputStream is not closed.
+     *
+     * @param xlsxFile
+     * @param output
+     * @param minColumns
+     * @param maxRows
+     * @return XLSXParser
+     */
+    public static XLSXParser createXLSXtoGzipCSVConverter(File xlsxFile,
+                                                          OutputStream output, int minColumns, int maxRows) {
+        return new XLSXParser(xlsxFile, new ParallelGzipOutputStream(output),
+                minColumns, maxRows);
+    }
+
+    /**
+     * Creates a Parser which will write the XLSX Excel File Contents as gzip
+     * compressed UTF-8 CSV to the specified OutputStream
+     *
+     * @param xlsxFile
+     * @param output
+     * @return XLSXParser
+     */
+    public static XLSXParser createXLSXtoGzipCSVConverter(File xlsxFile,
+                                                          OutputStream output) {
+        return createXLSXtoGzipCSVConverter(xlsxFile, output, READ_ALL, READ_ALL);
+    }
+
     /**
      * Creates a Parser which will load the XLSX Excel File Contents into
      * memory with
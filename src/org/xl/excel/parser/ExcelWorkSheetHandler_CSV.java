@@ -2,17 +2,28 @@ package org.xl.excel.parser;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.poi.ss.usermodel.BuiltinFormats;
 import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
 import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
 import org.apache.poi.xssf.model.StylesTable;
 import org.apache.poi.xssf.usermodel.XSSFCellStyle;
 import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xl.excel.components.ColumnBatch;
+import org.xl.excel.components.ColumnBatchPool;
+import org.xl.excel.components.ColumnStats;
+import org.xl.excel.components.DictionaryRows;
+import org.xl.excel.metrics.NoOpParseMetrics;
+import org.xl.excel.metrics.ParseCounter;
+import org.xl.excel.metrics.ParseMetrics;
+import org.xl.excel.metrics.ParsePhase;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
@@ -28,6 +39,10 @@ public class ExcelWorkSheetHandler_CSV extends DefaultHandler {
     private static Logger LOGGER =
             LoggerFactory.getLogger(ExcelWorkSheetHandler_CSV.class);
 
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
     /**
      * The type of the data value is indicated by an attribute on
      * the cell element; the value is in a "v" element within the cell.
@@ -56,14 +71,41 @@ public class ExcelWorkSheetHandler_CSV extends DefaultHandler {
     private StringBuilder objCurrentRow = new StringBuilder();
     private List<String> valueList;
     private List<String> headerList;
-    private List<String> columnTypes;
     private List<String> columnFilter;
     private int maxRows;
     private int currRowNum = 0;
-    private boolean settingTypes = false;
     private boolean ignoreBlankRows = true;
     private boolean useCellFormatting = true;
-    private int typesSet = 0;
+    private final ColumnTypeInference typeInference;
+    private ColumnProfiler columnProfiler;
+    private DictionaryRows dictionaryRows;
+    private RowListener rowListener;
+    private ParseProgress progress;
+    private ParseMetrics metrics = NoOpParseMetrics.INSTANCE;
+    private boolean timing;
+    private long rowCount;
+    private long cellCount;
+    private long sstLookups;
+    private long formattedCells;
+    private long outputNanos;
+    private BatchListener batchListener;
+    private ColumnBatchPool batchPool;
+    private ColumnBatch batch;
+    private List<String> batchHeaders;
+    private int sheetIndex;
+    private String sheetName;
+    //SST index + 1 to dictionary code, 0 when the string was not seen yet
+    private int[] sstCodes;
+    private byte[] entryKinds;
+    private int[] filteredPositions;
+    private RowPredicate rowPredicate;
+    private RowMatcher rowMatcher;
+    private boolean rowRejected;
+    //Converter only: the Headers from the first row and the printed cells
+    //of the current row, held back until the predicate accepts it
+    private List<String> convertedHeaders;
+    private StringBuilder convertedRow;
+    private long filteredRows;
 
     /**
      * Accepts objects needed while parsing.
@@ -78,16 +120,35 @@ public class ExcelWorkSheetHandler_CSV extends DefaultHandler {
                                      PrintStream target, int maxRows, List<String> columnFilter, boolean
                                              ignorBlankRows,
                                      boolean useCellFormatting) {
+        this(styles, strings, cols, target, maxRows, columnFilter,
+                ignorBlankRows, useCellFormatting, ExcelParser.READ_ALL);
+    }
+
+    /**
+     * Accepts objects needed while parsing.
+     *
+     * @param styles          Table of styles
+     * @param strings         Table of shared strings
+     * @param cols            Minimum number of columns to show
+     * @param target          Sink for output
+     * @param typeSampleRows  Number of data rows used to infer the Column
+     *                        Types or ExcelParser.READ_ALL
+     */
+    public ExcelWorkSheetHandler_CSV(StylesTable styles,
+                                     ReadOnlySharedStringsTable strings, int cols,
+                                     PrintStream target, int maxRows, List<String> columnFilter, boolean
+                                             ignorBlankRows,
+                                     boolean useCellFormatting, int typeSampleRows) {
         this.stylesTable = styles;
         this.sharedStringsTable = strings;
         this.minColumnCount = cols;
         this.output = target;
         this.value = new StringBuffer();
         this.nextDataType = xssfDataType.NUMBER;
-        this.formatter = new DataFormatter();
+        this.formatter = ParserResources.get().getFormatter();
         this.valueList = new ArrayList<String>();
         this.headerList = new ArrayList<String>();
-        this.columnTypes = new ArrayList<String>();
+        this.typeInference = new ColumnTypeInference(typeSampleRows);
         this.maxRows = maxRows;
         this.columnFilter = columnFilter;
         this.ignoreBlankRows = ignorBlankRows;
@@ -102,8 +163,181 @@ public class ExcelWorkSheetHandler_CSV extends DefaultHandler {
         return headerList;
     }
 
+    /**
+     * Sets the profiler which receives the value of every data cell, null to
+     * disable column profiling.
+     */
+    void setColumnProfiler(ColumnProfiler columnProfiler) {
+        this.columnProfiler = columnProfiler;
+    }
+
+    /**
+     * Keeps the data rows dictionary encoded instead of building Comma
+     * Separated Strings. Shared strings are resolved once per Sheet and every
+     * cell referring to them only stores an int code. Has no effect when
+     * writing to a PrintStream.
+     */
+    void setDictionaryEncoding(boolean dictionaryEncoding) {
+        if (dictionaryEncoding && null == output) {
+            this.dictionaryRows = new DictionaryRows();
+            this.sstCodes = new int[256];
+            this.entryKinds = new byte[256];
+        } else {
+            this.dictionaryRows = null;
+        }
+    }
+
+    /**
+     * Hands the header and data rows to the listener instead of keeping
+     * them in the value list. Has no effect when writing to a PrintStream.
+     */
+    void setRowListener(RowListener rowListener) {
+        this.rowListener = null == output ? rowListener : null;
+        if (null != this.rowListener)
+            this.dictionaryRows = null;
+    }
+
+    /**
+     * Drops the data rows which do not match the predicate. The cells the
+     * predicate tests are checked as they arrive, and once a row is
+     * rejected its remaining cells are skipped. When writing to a
+     * PrintStream the first row holds the Headers and every later row is
+     * printed once the predicate accepted it.
+     */
+    void setRowPredicate(RowPredicate rowPredicate) {
+        this.rowPredicate = rowPredicate;
+        if (null != rowPredicate && null != output) {
+            convertedHeaders = new ArrayList<String>();
+            convertedRow = new StringBuilder();
+        }
+    }
+
+    /**
+     * Returns the number of data rows dropped by the RowPredicate.
+     */
+    long getFilteredRowCount() {
+        return filteredRows;
+    }
+
+    /**
+     * Sets the ParseProgress the data rows are counted in, the parse stops
+     * at the end of the current row once it is cancelled.
+     */
+    void setProgress(ParseProgress progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Sets the ParseMetrics the counters of the Sheet are reported to by
+     * reportMetrics().
+     */
+    void setMetrics(ParseMetrics metrics) {
+        this.metrics = metrics;
+        this.timing = metrics.isEnabled();
+    }
+
+    /**
+     * Returns the number of data rows parsed.
+     */
+    long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the number of cell values read.
+     */
+    long getCellCount() {
+        return cellCount;
+    }
+
+    /**
+     * Reports the counters and output time of the Sheet to the
+     * ParseMetrics, called once the Sheet has been parsed.
+     */
+    void reportMetrics() {
+        if (!metrics.isEnabled())
+            return;
+        metrics.count(ParseCounter.ROWS, rowCount);
+        metrics.count(ParseCounter.CELLS, cellCount);
+        metrics.count(ParseCounter.SST_LOOKUPS, sstLookups);
+        metrics.count(ParseCounter.FORMATTED_CELLS, formattedCells);
+        if (filteredRows > 0)
+            metrics.count(ParseCounter.FILTERED_ROWS, filteredRows);
+        if (outputNanos > 0)
+            metrics.phase(ParsePhase.OUTPUT, outputNanos);
+    }
+
+    /**
+     * Fills ColumnBatches from the pool with the typed cell values of the
+     * data rows and hands them to the listener, instead of building Comma
+     * Separated Strings. Replaces the RowListener and dictionary encoding,
+     * has no effect when writing to a PrintStream.
+     */
+    void setBatchListener(BatchListener batchListener, ColumnBatchPool batchPool,
+                          int sheetIndex, String sheetName) {
+        if (null == batchListener || null != output)
+            return;
+        this.batchListener = batchListener;
+        this.batchPool = batchPool;
+        this.sheetIndex = sheetIndex;
+        this.sheetName = sheetName;
+        this.rowListener = null;
+        this.dictionaryRows = null;
+    }
+
+    /**
+     * Hands the last partial batch to the BatchListener, called once the
+     * Sheet has been parsed.
+     */
+    void flushBatch() {
+        if (null == batch)
+            return;
+        ColumnBatch full = batch;
+        batch = null;
+        if (full.getRowCount() > 0) {
+            long start = timing ? System.nanoTime() : 0;
+            batchListener.batch(full);
+            if (timing)
+                outputNanos += System.nanoTime() - start;
+        } else
+            full.release();
+    }
+
+    /**
+     * Gives the partial batch back to the pool without handing it to the
+     * BatchListener, called when the parse of the Sheet failed or was
+     * cancelled.
+     */
+    void releaseBatch() {
+        if (null == batch)
+            return;
+        ColumnBatch partial = batch;
+        batch = null;
+        partial.release();
+    }
+
+    /**
+     * Returns the dictionary encoded rows, null unless dictionary encoding
+     * was enabled.
+     */
+    public DictionaryRows getDictionaryRows() {
+        return dictionaryRows;
+    }
+
+    /**
+     * Returns the Column Types inferred from the data rows. Only complete
+     * once the Sheet has been parsed.
+     */
     public List<String> getColumnTypes() {
-        return columnTypes;
+        return typeInference.getColumnTypes(headerList);
+    }
+
+    /**
+     * Returns the ColumnStats gathered from the data rows. Only complete
+     * once the Sheet has been parsed.
+     */
+    public List<ColumnStats> getColumnStats() {
+        return typeInference.getColumnStats(headerList, columnProfiler);
     }
 
     /**
@@ -113,7 +347,9 @@ public class ExcelWorkSheetHandler_CSV extends DefaultHandler {
      */
     public void startElement(String uri, String localName, String name,
                              Attributes attributes) throws SAXException {
-        if ("inlineStr".equals(name) || "v".equals(name)) {
+        if (rowRejected)
+            return;
+        if ("is".equals(name) || "v".equals(name)) {
             vIsOpen = true;
 // Clear contents cache
             value.setLength(0);
@@ -181,91 +417,82 @@ but it's not in the
             throws SAXException {
         String thisStr = "";
         boolean skipColumn = false;
-// v => contents of a cell
-        if ("v".equals(name)) {
+        if (rowRejected && !"row".equals(name))
+            return;
+// v => contents of a cell, is => contents of an inline string cell
+        if ("v".equals(name) || "is".equals(name)) {
+            if (testsRows() && testCell()) {
+                rowRejected = true;
+                vIsOpen = false;
+                return;
+            }
             if (null != columnFilter && headerList.size() > 0) {
                 if (!columnFilter.contains(headerList.get(thisColumn)))
                     skipColumn = true;
             }
-            if (this.headerList.size() > 0 &&
-                    this.getValueList().size() == 0) {
-                settingTypes = true;
-//If we're setting types and we skipped a column assume its a String column
-                if ((thisColumn - 1) != lastColumnNumber) {
-                    for (int i = 0; i < ((thisColumn) -
-                            (lastColumnNumber + 1)); i++) {
-                        columnTypes.add("String");
-                        typesSet++;
-                    }
-                }
-            } else {
-                settingTypes = false;
-                for (int i = 0; i < (headerList.size() - typesSet);
-                     i++) {
-                    columnTypes.add("String");
-                    typesSet++;
-                }
+            boolean inferType = !skipColumn && null == output &&
+                    typeInference.isSampling();
+            int kind = ColumnTypeInference.STRING;
+            double number = Double.NaN;
+            int code = -1;
+            if (!skipColumn)
+                cellCount++;
+            if (!skipColumn && null != batchListener && headerList.size() > 0) {
+                batchCell(inferType);
+                lastColumnNumber = thisColumn;
+                return;
             }
             if (!skipColumn) {
 // Process the value contents as required.
 // Do now, as characters() may be called more than once
                 switch (nextDataType) {
                     case BOOL:
+                        //An empty <v> is a blank cell
+                        if (value.length() == 0) {
+                            thisStr = "\"\"";
+                            kind = ColumnTypeInference.BLANK;
+                            break;
+                        }
                         char first = value.charAt(0);
                         thisStr = first == '0' ? "\"FALSE\"" :
                                 "\"TRUE\"";
-                        if (settingTypes) {
-                            this.columnTypes.add("Boolean");
-                            typesSet++;
-                        }
+                        kind = ColumnTypeInference.BOOLEAN;
                         break;
                     case ERROR:
                         thisStr = "\"ERROR:" + value.toString()
                                 + '"';
-                        if (settingTypes) {
-                            this.columnTypes.add("Error");
-                            typesSet++;
-                        }
+                        kind = ColumnTypeInference.ERROR;
                         break;
                     case FORMULA:
 // A formula could result in a string value,
 // so always add double-quote characters.
                                         thisStr = '"' + value.toString() + '"';
-                        if (settingTypes) {
-                            this.columnTypes.add("String");
-                            typesSet++;
-                        }
                         break;
                     case INLINESTR:
 // TODO: have seen an example of this, so it 's untested.
                         XSSFRichTextString rtsi = new
                                 XSSFRichTextString(value.toString());
                         thisStr = '"' + rtsi.toString() + '"';
-                        if (settingTypes) {
-                            if (isDate(thisStr))
-                                this.columnTypes.add("Date");
-                            else
-                                this.columnTypes.add("String");
-                            typesSet++;
-                        }
+                        if (inferType)
+                            kind = stringKind(thisStr);
                         break;
                     case SSTINDEX:
+                        sstLookups++;
                         String sstIndex = value.toString();
                         try {
                             int idx =
                                     Integer.parseInt(sstIndex);
+                            if (null != dictionaryRows) {
+                                code = dictionaryCode(idx);
+                                kind = entryKinds[code];
+                                break;
+                            }
                             XSSFRichTextString rtss = new
                                     XSSFRichTextString(sharedStringsTable.getEntryAt(idx));
                             thisStr = '"' + rtss.toString()
                                     + '"';
-                            if (settingTypes) {
-                                if (isDate(thisStr))
-                                    this.columnTypes.add("Date");
-                                else
-
-                                    this.columnTypes.add("String");
-                                typesSet++;
-                            }
+                            if (inferType)
+                                kind = stringKind(thisStr);
                         } catch (NumberFormatException ex) {
                             LOGGER.warn("Failed to parse SST index '" +
                                     sstIndex + "':" + ex.getLocalizedMessage(), ex);
@@ -276,8 +503,14 @@ but it's not in the
                         break;
                     case NUMBER:
                         String n = value.toString();
+                        if (n.length() == 0) {
+                            thisStr = "\"\"";
+                            kind = ColumnTypeInference.BLANK;
+                            break;
+                        }
                         if (this.formatString != null) {
                             if (useCellFormatting) {
+                                formattedCells++;
                                 thisStr = '"' +
                                         formatter.formatRawCellContents(Double.parseDouble(n), this.formatIndex,
                                                 this.formatString) + '"';
@@ -286,30 +519,36 @@ but it's not in the
                             } else {
                                 thisStr = '"' + n + '"';
                             }
-                            if (settingTypes) {
-                                if (isDate(thisStr))
-                                    this.columnTypes.add("Date");
-                                else if (thisStr.contains("."))
-                                    this.columnTypes.add("Number");
-                                else
-                                    this.columnTypes.add("Number");
-                                typesSet++;
-                            }
                         } else {
                             thisStr = '"' + n + '"';
-                            if (settingTypes) {
-                                if (thisStr.contains("\\."))
-                                    this.columnTypes.add("Number");
-                                else
-                                    this.columnTypes.add("Number");
-                                typesSet++;
-                            }
+                        }
+                        if (inferType) {
+                            number = Double.parseDouble(n);
+                            kind = this.formatString != null &&
+                                    DateUtil.isADateFormat(this.formatIndex,
+                                            this.formatString) ?
+                                    ColumnTypeInference.DATE :
+                                    ColumnTypeInference.NUMBER;
                         }
                         break;
                     default:
                         thisStr = '"' + value.toString() + '"';
                         break;
                 }
+                if (inferType)
+                    typeInference.cell(thisColumn, kind, number);
+                if (null != columnProfiler && null == output)
+                    columnProfiler.cell(thisColumn, code >= 0 ?
+                            dictionaryRows.getEntry(code) : unquote(thisStr));
+                if (null != dictionaryRows) {
+                    int position = columnPosition(thisColumn);
+                    if (code >= 0)
+                        dictionaryRows.setEntry(position, code);
+                    else
+                        dictionaryRows.setLiteral(position, unquote(thisStr));
+                    lastColumnNumber = thisColumn;
+                    return;
+                }
 // Output after we've seen the string contents
 // Emit commas for any fields that were missing on this row
                 if (lastColumnNumber == -1) {
@@ -319,7 +558,7 @@ but it's not in the
                 for (int i = lastColumnNumber; i < thisColumn;
                      ++i) {
                     if (null != output) {
-                        output.print(',');
+                        print(",");
                     } else {
                         if (null != columnFilter &&
                                 headerList.size() > 0) {
@@ -332,7 +571,9 @@ but it's not in the
                 }
 // Might be the empty string.
                 if (null != output) {
-                    output.print(thisStr);
+                    print(thisStr);
+                    if (null != convertedHeaders && currRowNum == 0)
+                        convertedHeader(thisColumn, unquote(thisStr));
                 } else {
                     if (null != columnFilter &&
                             headerList.size() > 0) {
@@ -347,18 +588,19 @@ but it's not in the
                     lastColumnNumber = thisColumn;
             }
         } else if ("row".equals(name)) {
-            // We're onto a new row
-            /**
-             * Sometimes there are excel files where the first row has
-             * trailing empty cells. In this case the Column Types size
-             * does not match the Header Size. This next loop just adds
-             * 'String' column types for the empty cells
-             */int emptyTrailingColumns = this.headerList.size() -
-                    this.columnTypes.size();
-            for (int i = 0; i < emptyTrailingColumns; i++) {
-                this.columnTypes.add("String");
+            if (testsRows() && (rowRejected || !rowMatcher().endRow())) {
+                rejectRow();
+                return;
             }
-
+            if (null != dictionaryRows) {
+                endDictionaryRow();
+                return;
+            }
+            if (null != batchListener && headerList.size() > 0) {
+                endBatchRow();
+                return;
+            }
+            // We're onto a new row
 // Print out any missing commas if needed
             if (minColumnCount > 0) {
 // Columns are 0 based
@@ -369,7 +611,7 @@ but it's not in the
                 for (int i = lastColumnNumber;
                      i < (this.minColumnCount); i++) {
                     if (null != output) {
-                        output.print(',');
+                        print(",");
                     } else {
                         objCurrentRow.append(",");
                     }
@@ -420,11 +662,41 @@ but it's not in the
                     for (String header : headers) {
                         this.headerList.add(StringUtils.remove(header, '"'));
                     }
+                    if (null != rowListener)
+                        rowListener.headerRow(filterHeaders(headerList));
+                    typeInference.discardRow();
+                    if (null != columnProfiler)
+                        columnProfiler.discardRow();
                 } else {
-                    this.valueList.add(objCurrentRow.toString());
+                    if (null != rowListener) {
+                        long start = timing ? System.nanoTime() : 0;
+                        rowListener.row(objCurrentRow.toString());
+                        if (timing)
+                            outputNanos += System.nanoTime() - start;
+                    } else {
+                        this.valueList.add(objCurrentRow.toString());
+                    }
+                    typeInference.commitRow();
+                    if (null != columnProfiler)
+                        columnProfiler.commitRow();
+                    rowEmitted();
                 }
                 objCurrentRow = new StringBuilder();
+            } else {
+                objCurrentRow.setLength(0);
+                typeInference.discardRow();
+                if (null != columnProfiler)
+                    columnProfiler.discardRow();
+            }
+            //The converter prints the header as the first row of the Sheet
+            if (null != output && currRowNum > 0)
+                rowEmitted();
+            if (null != convertedRow) {
+                output.print(convertedRow);
+                convertedRow.setLength(0);
             }
+            if (null != progress)
+                progress.checkCancelled();
             if (currRowNum++ >= maxRows && maxRows > 0) {
                 throw new
                         RuntimeException(XLSXParser.MAX_ROW_CODE);
@@ -435,6 +707,412 @@ but it's not in the
         }
     }
 
+    /**
+     * Row end when dictionary encoding, the same decisions as for the Comma
+     * Separated Strings are made on the encoded row, which is padded the
+     * same way.
+     */
+    private void endDictionaryRow() {
+        if (headerList.size() > 0)
+            dictionaryRows.padRow(filteredColumnCount());
+        if (ignoreBlankRows && dictionaryRows.isPendingRowBlank()) {
+            dictionaryRows.discardRow();
+            typeInference.discardRow();
+            if (null != columnProfiler)
+                columnProfiler.discardRow();
+        } else if (this.headerList.size() == 0 &&
+                dictionaryRows.getRowCount() == 0) {
+            List<String> headers = dictionaryRows.getPendingValues();
+            //An empty row String splits into one empty Header
+            if (headers.isEmpty())
+                this.headerList.add("");
+            for (String header : headers) {
+                this.headerList.add(StringUtils.remove(header, '"'));
+            }
+            dictionaryRows.discardRow();
+            typeInference.discardRow();
+            if (null != columnProfiler)
+                columnProfiler.discardRow();
+        } else {
+            dictionaryRows.commitRow();
+            typeInference.commitRow();
+            if (null != columnProfiler)
+                columnProfiler.commitRow();
+            rowEmitted();
+        }
+        if (null != progress)
+            progress.checkCancelled();
+        if (currRowNum++ >= maxRows && maxRows > 0) {
+            throw new
+                    RuntimeException(XLSXParser.MAX_ROW_CODE);
+        }
+        lastColumnNumber = -1;
+    }
+
+    /**
+     * Row end of a row the RowPredicate rejected, the cells stored before
+     * it was rejected are discarded.
+     */
+    private void rejectRow() {
+        rowRejected = false;
+        rowMatcher.discardRow();
+        objCurrentRow.setLength(0);
+        if (null != convertedRow)
+            convertedRow.setLength(0);
+        if (null != dictionaryRows)
+            dictionaryRows.discardRow();
+        if (null != batch)
+            batch.discardRow();
+        typeInference.discardRow();
+        if (null != columnProfiler)
+            columnProfiler.discardRow();
+        filteredRows++;
+        if (null != progress)
+            progress.checkCancelled();
+        if (currRowNum++ >= maxRows && maxRows > 0) {
+            throw new
+                    RuntimeException(XLSXParser.MAX_ROW_CODE);
+        }
+        lastColumnNumber = -1;
+    }
+
+    /**
+     * Returns true once the rows are tested against the RowPredicate, from
+     * the first row after the Headers.
+     */
+    private boolean testsRows() {
+        if (null == rowPredicate)
+            return false;
+        return null == output ? headerList.size() > 0 : currRowNum > 0;
+    }
+
+    /**
+     * Returns the RowMatcher bound to the Headers of the Sheet.
+     */
+    private RowMatcher rowMatcher() {
+        if (null == rowMatcher)
+            rowMatcher = new RowMatcher(rowPredicate,
+                    null == output ? headerList : convertedHeaders);
+        return rowMatcher;
+    }
+
+    /**
+     * Records a cell of the first row printed by the converter as the
+     * Header of its Column.
+     */
+    private void convertedHeader(int column, String header) {
+        while (convertedHeaders.size() < column)
+            convertedHeaders.add("");
+        convertedHeaders.add(header);
+    }
+
+    /**
+     * Prints converter output, held back in the row buffer while a
+     * RowPredicate may still reject the row.
+     */
+    private void print(String text) {
+        if (null != convertedRow)
+            convertedRow.append(text);
+        else
+            output.print(text);
+    }
+
+    /**
+     * Tests the typed value of the current cell when the RowPredicate
+     * tests its Column, returns true when the row is rejected. Only the
+     * tested cells are resolved, the rest are left to the row building.
+     */
+    private boolean testCell() {
+        RowMatcher matcher = rowMatcher();
+        if (!matcher.isTested(thisColumn))
+            return false;
+        switch (nextDataType) {
+            case BOOL:
+                if (value.length() == 0)
+                    return matcher.blank(thisColumn);
+                return matcher.booleanValue(thisColumn, value.charAt(0) != '0');
+            case ERROR:
+                return matcher.error(thisColumn, "ERROR:" + value);
+            case SSTINDEX:
+                int idx = parseIndex(value);
+                return matcher.text(thisColumn, idx < 0 ? "" : sharedStringsTable.getEntryAt(idx));
+            case NUMBER:
+                if (value.length() == 0)
+                    return matcher.blank(thisColumn);
+                boolean date = this.formatString != null &&
+                        DateUtil.isADateFormat(this.formatIndex, this.formatString);
+                return matcher.number(thisColumn, parseNumber(value), date);
+            default:
+                return matcher.text(thisColumn, value.toString());
+        }
+    }
+
+    private void rowEmitted() {
+        rowCount++;
+        if (null != progress)
+            progress.addRow();
+    }
+
+    /**
+     * Stores the value of the current cell in the batch without building any
+     * Strings, numbers are kept as their raw double value.
+     */
+    private void batchCell(boolean inferType) {
+        ColumnBatch target = currentBatch();
+        int position = columnPosition(thisColumn);
+        int kind;
+        double number = Double.NaN;
+        String text;
+        switch (nextDataType) {
+            case BOOL:
+                //An empty <v> is a blank cell
+                if (value.length() == 0) {
+                    text = "";
+                    kind = ColumnTypeInference.BLANK;
+                    break;
+                }
+                boolean bool = value.charAt(0) != '0';
+                target.setBoolean(position, bool);
+                kind = ColumnTypeInference.BOOLEAN;
+                text = bool ? "TRUE" : "FALSE";
+                break;
+            case ERROR:
+                text = "ERROR:" + value;
+                target.setError(position, text);
+                kind = ColumnTypeInference.ERROR;
+                break;
+            case SSTINDEX:
+                sstLookups++;
+                int idx = parseIndex(value);
+                text = idx < 0 ? "" : sharedStringsTable.getEntryAt(idx);
+                target.setString(position, text);
+                kind = inferType ? textKind(text) : ColumnTypeInference.STRING;
+                break;
+            case NUMBER:
+                if (value.length() == 0) {
+                    text = "";
+                    kind = ColumnTypeInference.BLANK;
+                    break;
+                }
+                number = parseNumber(value);
+                boolean date = this.formatString != null &&
+                        DateUtil.isADateFormat(this.formatIndex, this.formatString);
+                target.setNumber(position, number, date);
+                kind = date ? ColumnTypeInference.DATE : ColumnTypeInference.NUMBER;
+                text = null;
+                break;
+            default:
+                text = value.toString();
+                target.setString(position, text);
+                kind = inferType ? textKind(text) : ColumnTypeInference.STRING;
+                break;
+        }
+        if (inferType)
+            typeInference.cell(thisColumn, kind, number);
+        if (null != columnProfiler)
+            columnProfiler.cell(thisColumn, null != text ? text : value.toString());
+    }
+
+    /**
+     * Row end when filling batches, the full batch is handed to the
+     * BatchListener.
+     */
+    private void endBatchRow() {
+        ColumnBatch target = currentBatch();
+        if (ignoreBlankRows && target.isPendingRowBlank()) {
+            target.discardRow();
+            typeInference.discardRow();
+            if (null != columnProfiler)
+                columnProfiler.discardRow();
+        } else {
+            target.commitRow();
+            typeInference.commitRow();
+            if (null != columnProfiler)
+                columnProfiler.commitRow();
+            rowEmitted();
+            if (target.isFull())
+                flushBatch();
+        }
+        if (null != progress)
+            progress.checkCancelled();
+        if (currRowNum++ >= maxRows && maxRows > 0) {
+            throw new
+                    RuntimeException(XLSXParser.MAX_ROW_CODE);
+        }
+        lastColumnNumber = -1;
+    }
+
+    private ColumnBatch currentBatch() {
+        if (null == batch) {
+            if (null == batchHeaders)
+                batchHeaders = Collections.unmodifiableList(filterHeaders(headerList));
+            batch = batchPool.acquire();
+            batch.start(sheetIndex, sheetName, batchHeaders);
+        }
+        return batch;
+    }
+
+    /**
+     * Parses the shared string index of the cell, -1 if it is invalid.
+     */
+    private int parseIndex(CharSequence text) {
+        int length = text.length();
+        if (length == 0 || length > 9)
+            return invalidIndex(text);
+        int idx = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9')
+                return invalidIndex(text);
+            idx = idx * 10 + (c - '0');
+        }
+        return idx;
+    }
+
+    private int invalidIndex(CharSequence text) {
+        LOGGER.warn("Failed to parse SST index '" + text + "'");
+        return -1;
+    }
+
+    /**
+     * Parses the raw value of a numeric cell without creating a String.
+     * Values with at most 15 significant digits and a small exponent, which
+     * covers nearly all cells, are exact as a long divided or multiplied by
+     * an exactly representable power of ten. Anything else falls back to
+     * Double.parseDouble().
+     */
+    static double parseNumber(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+'))
+            negative = text.charAt(i++) == '-';
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        boolean fraction = false;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                any = true;
+                if (mantissa == 0 && c == '0') {
+                    //Leading zeros are not significant
+                } else if (++digits > 15) {
+                    return Double.parseDouble(text.toString());
+                } else {
+                    mantissa = mantissa * 10 + (c - '0');
+                }
+                if (fraction)
+                    exponent--;
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (!any)
+            return Double.parseDouble(text.toString());
+        if (i < length) {
+            char c = text.charAt(i++);
+            if ((c != 'E' && c != 'e') || i == length)
+                return Double.parseDouble(text.toString());
+            boolean negativeExponent = false;
+            if (text.charAt(i) == '-' || text.charAt(i) == '+')
+                negativeExponent = text.charAt(i++) == '-';
+            int explicit = 0;
+            if (i == length || length - i > 3)
+                return Double.parseDouble(text.toString());
+            for (; i < length; i++) {
+                c = text.charAt(i);
+                if (c < '0' || c > '9')
+                    return Double.parseDouble(text.toString());
+                explicit = explicit * 10 + (c - '0');
+            }
+            exponent += negativeExponent ? -explicit : explicit;
+        }
+        double result = mantissa;
+        if (mantissa == 0) {
+            result = 0;
+        } else if (exponent < 0 && exponent >= -22) {
+            result = result / POWERS_OF_TEN[-exponent];
+        } else if (exponent > 0 && exponent <= 22) {
+            result = result * POWERS_OF_TEN[exponent];
+        } else if (exponent != 0) {
+            return Double.parseDouble(text.toString());
+        }
+        return negative ? -result : result;
+    }
+
+    private static int textKind(String text) {
+        if (text.length() == 0)
+            return ColumnTypeInference.BLANK;
+        return ColumnTypeInference.isDate(text) ?
+                ColumnTypeInference.DATE : ColumnTypeInference.STRING;
+    }
+
+    /**
+     * Returns the dictionary code of a shared string, adding the string to
+     * the Sheet's dictionary the first time it is seen.
+     */
+    private int dictionaryCode(int sstIndex) {
+        if (sstIndex >= sstCodes.length)
+            sstCodes = Arrays.copyOf(sstCodes,
+                    Math.max(sstIndex + 1, sstCodes.length * 2));
+        int code = sstCodes[sstIndex] - 1;
+        if (code < 0) {
+            String entry = new XSSFRichTextString(
+                    sharedStringsTable.getEntryAt(sstIndex)).toString();
+            code = dictionaryRows.addEntry(entry);
+            sstCodes[sstIndex] = code + 1;
+            if (code >= entryKinds.length)
+                entryKinds = Arrays.copyOf(entryKinds, entryKinds.length * 2);
+            entryKinds[code] = (byte) stringKind('"' + entry + '"');
+        }
+        return code;
+    }
+
+    /**
+     * Returns the cell position of a column in the stored row, which is
+     * its position among the columns kept by the column filter.
+     */
+    private int columnPosition(int column) {
+        if (null == columnFilter || headerList.size() == 0)
+            return column;
+        if (null == filteredPositions) {
+            filteredPositions = new int[headerList.size()];
+            int position = 0;
+            for (int i = 0; i < headerList.size(); i++) {
+                filteredPositions[i] = position;
+                if (columnFilter.contains(headerList.get(i)))
+                    position++;
+            }
+        }
+        return filteredPositions[column];
+    }
+
+    /**
+     * Returns the number of Columns the Column filter keeps.
+     */
+    private int filteredColumnCount() {
+        if (null == columnFilter)
+            return headerList.size();
+        int last = headerList.size() - 1;
+        return columnPosition(last) +
+                (columnFilter.contains(headerList.get(last)) ? 1 : 0);
+    }
+
+    private List<String> filterHeaders(List<String> headers) {
+        if (null == columnFilter)
+            return headers;
+        List<String> filtered = new ArrayList<String>();
+        for (String header : headers) {
+            if (columnFilter.contains(header))
+                filtered.add(header);
+        }
+        return filtered;
+    }
+
     private boolean isRowBlank(String rowData) {
         if (!ignoreBlankRows)
             return false;
@@ -451,7 +1129,8 @@ but it's not in the
 
     /**
      * Captures characters only if a suitable element is open.
-     * Originally was just "v"; extended for inlineStr also.
+     * Originally was just "v"; extended for the text of inline strings
+     * (the t elements of an is element) also.
      */
     public void characters(char[] ch, int start, int length)
             throws SAXException {
@@ -473,33 +1152,18 @@ but it's not in the
         return column;
     }
 
-    private boolean isDate(String thisStr) {
-        thisStr = thisStr.replace("\"", "");
-        boolean result = false;
-        if ((thisStr.split("-").length == 3)) {
-            for (String partDate : thisStr.split("-")) {
-                result = isInteger(partDate);
-            }
-        }
-        if ((thisStr.split("/").length == 3)) {
-            for (String partDate : thisStr.split("/")) {
-                result = isInteger(partDate);
-            }
-        }
-        if ((thisStr.split(".").length == 3)) {
-            for (String partDate : thisStr.split(".")) {
-                result = isInteger(partDate);
-            }
-        }
-        return result;
+    private String unquote(String thisStr) {
+        int length = thisStr.length();
+        if (length >= 2 && thisStr.charAt(0) == '"' &&
+                thisStr.charAt(length - 1) == '"')
+            return thisStr.substring(1, length - 1);
+        return thisStr;
     }
 
-    private boolean isInteger(String value) {
-        try {
-            Integer.parseInt(value);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
-        }
+    private int stringKind(String thisStr) {
+        if (thisStr.length() == 2)
+            return ColumnTypeInference.BLANK;
+        return ColumnTypeInference.isDate(thisStr) ?
+                ColumnTypeInference.DATE : ColumnTypeInference.STRING;
     }
-}
+}
\ No newline at end of file
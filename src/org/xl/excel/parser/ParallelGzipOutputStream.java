@@ -0,0 +1,298 @@
+package org.xl.excel.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip compresses on worker threads, in the style of pigz, so compression
+ * does not slow down the thread writing the data.
+ * <p>
+ * The data is cut into blocks of getBlockSize() bytes. Every block is
+ * compressed on its own into a complete gzip member, and the members are
+ * written to the underlying stream in order. A file of concatenated gzip
+ * members is a valid gzip file which gunzip, GZIPInputStream and the other
+ * readers decompress as a whole. Blocks do not share a dictionary, which
+ * costs a little compression for independent blocks.
+ * <p>
+ * At most twice as many blocks as threads are in flight, the writer waits
+ * for the oldest one beyond that, which bounds the memory used. flush() and
+ * finish() end the current block, so the data written so far forms complete
+ * members. Further writes start new members. close() also closes the
+ * underlying stream.
+ * <p>
+ * Once a block fails to compress or to be written, every later write,
+ * flush() and finish() throws an IOException caused by that failure, so
+ * the blocks after a lost one are never written as if nothing happened.
+ * <p>
+ * Streams share a pool of daemon threads unless given an ExecutorService.
+ * Not thread safe, like other OutputStreams a stream is written by one
+ * thread.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int GZIP_MAGIC = 0x8B1F;
+    private static ExecutorService sharedExecutor;
+
+    private final OutputStream out;
+    private final int blockSize;
+    private final int level;
+    private final int maxPending;
+    private final ExecutorService executor;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+    private final ConcurrentLinkedQueue<byte[]> freeBlocks = new ConcurrentLinkedQueue<byte[]>();
+    private byte[] block;
+    private int blockLength;
+    private boolean started;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * Compresses blocks of DEFAULT_BLOCK_SIZE at the default compression
+     * level on the shared pool of one thread per core.
+     *
+     * @param out
+     */
+    public ParallelGzipOutputStream(OutputStream out) {
+        this(out, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION, sharedExecutor(),
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param out
+     * @param blockSize Uncompressed bytes per gzip member
+     * @param level     Deflater compression level
+     * @param executor  Executor compressing the blocks, not shut down by the
+     *                  stream
+     * @param threads   Number of blocks compressed at once
+     */
+    public ParallelGzipOutputStream(OutputStream out, int blockSize, int level,
+                                    ExecutorService executor, int threads) {
+        if (blockSize < 1 || threads < 1)
+            throw new IllegalArgumentException("Block size and threads must be positive");
+        this.out = out;
+        this.blockSize = blockSize;
+        this.level = level;
+        this.executor = executor;
+        this.maxPending = 2 * threads;
+    }
+
+    /**
+     * Returns the pool of daemon threads, one per core, shared by the
+     * streams which are not given an Executor. Idle threads stop.
+     */
+    private static synchronized ExecutorService sharedExecutor() {
+        if (null == sharedExecutor) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                    30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "gzip-" +
+                                    count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            sharedExecutor = executor;
+        }
+        return sharedExecutor;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (null == block || blockLength == blockSize)
+            nextBlock();
+        block[blockLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (null == block || blockLength == blockSize)
+                nextBlock();
+            int chunk = Math.min(length, blockSize - blockLength);
+            System.arraycopy(bytes, offset, block, blockLength, chunk);
+            blockLength += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Compresses the current block and writes all blocks, waiting for them
+     * to be compressed, then flushes the underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        finish();
+        out.flush();
+    }
+
+    /**
+     * Compresses the current block and writes all blocks without closing
+     * the underlying stream.
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        checkOpen();
+        submitBlock();
+        while (!pending.isEmpty())
+            writeMember();
+        //An empty file is not valid gzip, an empty member is
+        if (!started) {
+            out.write(compress(new byte[0], 0, level));
+            started = true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        Throwable primary = null;
+        try {
+            finish();
+        } catch (Throwable t) {
+            primary = t;
+            throw t;
+        } finally {
+            closed = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                //Do not hide the failure of finish()
+                if (null == primary)
+                    throw e;
+                primary.addSuppressed(e);
+            }
+        }
+    }
+
+    /**
+     * Submits the full block and starts a new one, writing the members
+     * which are done and waiting for the oldest when too many are in flight.
+     */
+    private void nextBlock() throws IOException {
+        checkOpen();
+        submitBlock();
+        while (!pending.isEmpty() && (pending.size() >= maxPending || pending.peekFirst().isDone()))
+            writeMember();
+        block = freeBlocks.poll();
+        if (null == block)
+            block = new byte[blockSize];
+        blockLength = 0;
+    }
+
+    private void submitBlock() {
+        if (null == block || blockLength == 0)
+            return;
+        final byte[] data = block;
+        final int length = blockLength;
+        block = null;
+        blockLength = 0;
+        started = true;
+        pending.addLast(executor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                try {
+                    return compress(data, length, level);
+                } finally {
+                    freeBlocks.offer(data);
+                }
+            }
+        }));
+    }
+
+    private void writeMember() throws IOException {
+        Future<byte[]> member = pending.removeFirst();
+        try {
+            out.write(member.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw fail(new InterruptedIOException("Interrupted waiting for a compressed block"));
+        } catch (ExecutionException e) {
+            throw fail(new IOException("Failed to compress block", e.getCause()));
+        } catch (IOException e) {
+            throw fail(e);
+        }
+    }
+
+    private IOException fail(IOException e) {
+        failure = e;
+        return e;
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed");
+        if (null != failure)
+            throw new IOException("An earlier block was not written", failure);
+    }
+
+    /**
+     * Returns the block as a gzip member: header, raw deflate data and the
+     * CRC32 and length trailer.
+     */
+    static byte[] compress(byte[] data, int length, int level) {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(length / 2 + 64);
+        //Magic, deflate, no flags, no time, no extra flags, unknown OS
+        member.write(GZIP_MAGIC & 0xFF);
+        member.write(GZIP_MAGIC >>> 8);
+        member.write(Deflater.DEFLATED);
+        for (int i = 0; i < 6; i++)
+            member.write(0);
+        member.write(0xFF);
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(512, Math.min(length, 65536))];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                member.write(buffer, 0, count);
+            }
+        } finally {
+            deflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        writeInt(member, (int) crc.getValue());
+        writeInt(member, length);
+        return member.toByteArray();
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+}
@@ -0,0 +1,36 @@
+package org.xl.excel.parser;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handle of an asynchronous parse started with ExcelParser.processAsync().
+ * <p>
+ * Completes with the ParseResult, or exceptionally with the failure of the
+ * parse. The ParseProgress can be polled while the parse runs, and
+ * cancel() stops the parse at the next row instead of leaving it running in
+ * the background.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class ParseJob extends CompletableFuture<ParseResult> {
+    private final ParseProgress progress;
+
+    ParseJob(ParseProgress progress) {
+        this.progress = progress;
+    }
+
+    public ParseProgress getProgress() {
+        return progress;
+    }
+
+    /**
+     * Cancels the job and asks the parse to stop at the next row.
+     *
+     * @param mayInterruptIfRunning ignored, the parse is never interrupted
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        progress.cancel();
+        return super.cancel(mayInterruptIfRunning);
+    }
+}
@@ -0,0 +1,107 @@
+package org.xl.excel.parser;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live progress of an ExcelParser.process() call, safe to read from any
+ * thread while the parse runs.
+ * <p>
+ * Bytes are counted as the parser reads them: for XLSX files the
+ * uncompressed Sheet parts, for XLS files the workbook stream, which POI
+ * reads completely before the first row is parsed. Rows are the data rows
+ * that were kept, written or handed to the RowListener.
+ * <p>
+ * Cancelling is cooperative, the parser checks the flag at every row and
+ * every read and stops with a CancellationException.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class ParseProgress {
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong rowsEmitted = new AtomicLong();
+    private final AtomicLong sheetsCompleted = new AtomicLong();
+    private volatile long totalBytes = -1;
+    private volatile boolean cancelled;
+
+    /**
+     * Returns the bytes the parser has read so far.
+     */
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * Returns the bytes the parser is expected to read, -1 when unknown.
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Returns the number of data rows parsed so far.
+     */
+    public long getRowsEmitted() {
+        return rowsEmitted.get();
+    }
+
+    /**
+     * Returns the number of Sheets parsed completely.
+     */
+    public long getSheetsCompleted() {
+        return sheetsCompleted.get();
+    }
+
+    /**
+     * Returns the fraction of the bytes read between 0 and 1, -1 when the
+     * total is unknown.
+     */
+    public double getFraction() {
+        long total = totalBytes;
+        if (total <= 0)
+            return -1;
+        return Math.min(1.0, (double) bytesRead.get() / total);
+    }
+
+    /**
+     * Asks the parse to stop at the next row.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Throws a CancellationException once cancel() has been called.
+     */
+    void checkCancelled() {
+        if (cancelled)
+            throw new CancellationException("Parse Cancelled");
+    }
+
+    void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    void addBytes(long bytes) {
+        bytesRead.addAndGet(bytes);
+    }
+
+    void addRow() {
+        rowsEmitted.incrementAndGet();
+    }
+
+    void addSheet() {
+        sheetsCompleted.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "ParseProgress[bytes=" + bytesRead + "/" + totalBytes + ", rows=" +
+                rowsEmitted + ", sheets=" + sheetsCompleted +
+                (cancelled ? ", cancelled" : "") + "]";
+    }
+}
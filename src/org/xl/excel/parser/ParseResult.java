@@ -0,0 +1,46 @@
+package org.xl.excel.parser;
+
+import java.util.List;
+
+import org.xl.excel.components.Sheet;
+
+/**
+ * Outcome of an asynchronous parse started with ExcelParser.processAsync().
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class ParseResult {
+    private final List<Sheet> sheetList;
+    private final long rowCount;
+    private final long elapsedMillis;
+
+    ParseResult(List<Sheet> sheetList, long rowCount, long elapsedMillis) {
+        this.sheetList = sheetList;
+        this.rowCount = rowCount;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Returns the loaded Sheets, the same List as ExcelParser.getSheetList().
+     */
+    public List<Sheet> getSheetList() {
+        return sheetList;
+    }
+
+    /**
+     * Returns the number of data rows parsed.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ParseResult[sheets=" + sheetList.size() + ", rows=" + rowCount +
+                ", elapsed=" + elapsedMillis + "ms]";
+    }
+}
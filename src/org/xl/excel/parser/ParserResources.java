@@ -0,0 +1,83 @@
+package org.xl.excel.parser;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.xml.sax.SAXException;
+
+/**
+ * The parser objects which are expensive to create and can be reused from
+ * one Sheet and one file to the next, kept once per thread.
+ * <p>
+ * Looking up the SAXParserFactory scans the classpath, and the
+ * DataFormatter caches every number format it has seen. Both are not thread
+ * safe, so a thread converting many files, like the workers of a
+ * BatchConverter, keeps its own and reuses them for every Sheet it parses.
+ * The SAXParser is checked out while a Sheet is parsed, so it is never
+ * reset under a parse which is still running.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+final class ParserResources {
+    private static final ThreadLocal<ParserResources> RESOURCES =
+            new ThreadLocal<ParserResources>() {
+                @Override
+                protected ParserResources initialValue() {
+                    return new ParserResources();
+                }
+            };
+
+    //Not checked out by a running parse
+    private SAXParser idleParser;
+    private DataFormatter formatter;
+
+    private ParserResources() {
+    }
+
+    /**
+     * Returns the resources of the current thread.
+     */
+    static ParserResources get() {
+        return RESOURCES.get();
+    }
+
+    /**
+     * Checks out the SAXParser of the thread, reset to the state of a new
+     * one. Hand it back with releaseSheetParser() once the parse is done.
+     * <p>
+     * A parse can start another one on the same thread before it is done,
+     * for example when a RowListener parses a second file or the
+     * ParseScheduler runs a waiting job from a row callback. The parser of
+     * the running parse is checked out then, so the nested parse gets a
+     * new one.
+     *
+     * @throws ParserConfigurationException
+     * @throws SAXException
+     */
+    SAXParser acquireSheetParser() throws ParserConfigurationException, SAXException {
+        SAXParser parser = idleParser;
+        idleParser = null;
+        if (null == parser)
+            return SAXParserFactory.newInstance().newSAXParser();
+        parser.reset();
+        return parser;
+    }
+
+    /**
+     * Hands a parser back for the next parse on the thread.
+     */
+    void releaseSheetParser(SAXParser parser) {
+        idleParser = parser;
+    }
+
+    /**
+     * Returns the DataFormatter of the thread.
+     */
+    DataFormatter getFormatter() {
+        if (null == formatter)
+            formatter = new DataFormatter();
+        return formatter;
+    }
+}
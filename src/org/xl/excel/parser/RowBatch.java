@@ -0,0 +1,65 @@
+package org.xl.excel.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xl.excel.components.Sheet;
+
+/**
+ * Consecutive data rows of one Sheet, the unit published by RowPublisher.
+ * Rows are Comma Separated Strings of quoted values, the same format as
+ * Sheet.getRowList().
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class RowBatch {
+    private final int sheetIndex;
+    private final String sheetName;
+    private final List<String> headers;
+    private final List<String> rows;
+
+    RowBatch(int sheetIndex, String sheetName, List<String> headers, int capacity) {
+        this.sheetIndex = sheetIndex;
+        this.sheetName = sheetName;
+        this.headers = headers;
+        this.rows = new ArrayList<String>(capacity);
+    }
+
+    public int getSheetIndex() {
+        return sheetIndex;
+    }
+
+    public String getSheetName() {
+        return sheetName;
+    }
+
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    /**
+     * Returns the row as a Comma Separated String of quoted values.
+     *
+     * @param row
+     */
+    public String getRow(int row) {
+        return rows.get(row);
+    }
+
+    /**
+     * Returns the unquoted cell values of the row.
+     *
+     * @param row
+     */
+    public String[] getCells(int row) {
+        return Sheet.splitRow(rows.get(row), false);
+    }
+
+    void add(String row) {
+        rows.add(row);
+    }
+}
@@ -0,0 +1,53 @@
+package org.xl.excel.parser;
+
+import java.util.List;
+
+import org.xl.excel.components.Sheet;
+
+/**
+ * Receives the rows of each Sheet while the Excel File is being parsed.
+ * <p>
+ * When a RowListener is set on an ExcelParser the data rows are handed to
+ * the listener as soon as they are parsed and are not kept in memory, the
+ * Sheets in ExcelParser.getSheetList() then only hold the headers, Column
+ * Types and ColumnStats.
+ * <p>
+ * All methods are called on the thread running ExcelParser.process(). A
+ * RuntimeException thrown by the listener stops the parse.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public interface RowListener {
+
+    /**
+     * Called before the first row of a Sheet is parsed.
+     *
+     * @param sheetIndex
+     * @param sheetName
+     */
+    void startSheet(int sheetIndex, String sheetName);
+
+    /**
+     * Called with the Headers of the Sheet, the first row which contains
+     * Data.
+     *
+     * @param headers
+     */
+    void headerRow(List<String> headers);
+
+    /**
+     * Called for every data row as a Comma Separated String of quoted
+     * values, the same format as Sheet.getRowList(). Use
+     * Sheet.splitRow() to get the cell values.
+     *
+     * @param row
+     */
+    void row(String row);
+
+    /**
+     * Called once the Sheet has been parsed.
+     *
+     * @param sheet the Sheet without rows, null if no header row was found
+     */
+    void endSheet(Sheet sheet);
+}
@@ -0,0 +1,242 @@
+package org.xl.excel.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xl.excel.components.HeaderIndex;
+
+/**
+ * A RowPredicate bound to the Headers of one Sheet, which tests the cells
+ * of a row as the parser reads them.
+ * <p>
+ * Every Column condition of the predicate has a state for the current row:
+ * unknown until its cell is seen, then true or false. The predicate is
+ * evaluated on these three states after every tested cell, so a row is
+ * rejected as soon as the known states make it false, whatever the
+ * remaining cells hold. endRow() tests the conditions still unknown as
+ * blank cells.
+ * <p>
+ * Not thread safe, one matcher per Sheet being parsed.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+final class RowMatcher {
+    private static Logger LOGGER = LoggerFactory.getLogger(RowMatcher.class);
+
+    private static final byte UNKNOWN = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+
+    //The predicate as a tree of nodes, node 0 is the root
+    private final RowPredicate.Operator[] operators;
+    private final int[][] operands;
+    private final int[] nodeConditions;
+    private final CellPredicate[] tests;
+    //Column to the conditions testing it
+    private final int[][] columnConditions;
+    private final int[] columns;
+    private final byte[] states;
+
+    RowMatcher(RowPredicate predicate, List<String> headers) {
+        List<RowPredicate> nodes = new ArrayList<RowPredicate>();
+        List<RowPredicate> conditions = new ArrayList<RowPredicate>();
+        collect(predicate, nodes, conditions);
+        operators = new RowPredicate.Operator[nodes.size()];
+        operands = new int[nodes.size()][];
+        nodeConditions = new int[nodes.size()];
+        tests = new CellPredicate[conditions.size()];
+        states = new byte[conditions.size()];
+        int[] conditionColumns = new int[conditions.size()];
+        int columnCount = 0;
+        //Case insensitive, like Sheet.getColumnIndex()
+        HeaderIndex headerIndex = HeaderIndex.build(headers);
+        for (int i = 0; i < conditions.size(); i++) {
+            RowPredicate condition = conditions.get(i);
+            tests[i] = condition.getTest();
+            conditionColumns[i] = headerIndex.indexOf(condition.getColumn());
+            if (conditionColumns[i] < 0)
+                LOGGER.warn("Sheet has no Column '" + condition.getColumn() +
+                        "', its cells are tested as blank");
+            columnCount = Math.max(columnCount, conditionColumns[i] + 1);
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            RowPredicate node = nodes.get(i);
+            operators[i] = node.getOperator();
+            nodeConditions[i] = -1;
+            if (RowPredicate.Operator.COLUMN == node.getOperator()) {
+                nodeConditions[i] = indexOf(conditions, node);
+            } else {
+                List<RowPredicate> nodeOperands = node.getOperands();
+                operands[i] = new int[nodeOperands.size()];
+                for (int j = 0; j < nodeOperands.size(); j++)
+                    operands[i][j] = indexOf(nodes, nodeOperands.get(j));
+            }
+        }
+        columnConditions = new int[columnCount][];
+        List<Integer> tested = new ArrayList<Integer>();
+        for (int column = 0; column < columnCount; column++) {
+            int count = 0;
+            for (int conditionColumn : conditionColumns) {
+                if (conditionColumn == column)
+                    count++;
+            }
+            if (count == 0)
+                continue;
+            columnConditions[column] = new int[count];
+            count = 0;
+            for (int i = 0; i < conditionColumns.length; i++) {
+                if (conditionColumns[i] == column)
+                    columnConditions[column][count++] = i;
+            }
+            tested.add(column);
+        }
+        columns = new int[tested.size()];
+        for (int i = 0; i < columns.length; i++)
+            columns[i] = tested.get(i);
+    }
+
+    /**
+     * Adds the nodes in depth first order, a predicate used more than once
+     * in the tree is one node.
+     */
+    private static void collect(RowPredicate node, List<RowPredicate> nodes,
+                                List<RowPredicate> conditions) {
+        if (indexOf(nodes, node) >= 0)
+            return;
+        nodes.add(node);
+        if (RowPredicate.Operator.COLUMN == node.getOperator()) {
+            conditions.add(node);
+            return;
+        }
+        for (RowPredicate operand : node.getOperands())
+            collect(operand, nodes, conditions);
+    }
+
+    private static int indexOf(List<RowPredicate> nodes, RowPredicate node) {
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i) == node)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the Columns the predicate tests, in ascending order.
+     */
+    int[] getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns true when the cells of the Column are tested.
+     */
+    boolean isTested(int column) {
+        return column >= 0 && column < columnConditions.length &&
+                null != columnConditions[column];
+    }
+
+    /**
+     * Tests a string cell, returns true when the row is rejected.
+     */
+    boolean text(int column, String value) {
+        if (value.isEmpty())
+            return blank(column);
+        for (int condition : columnConditions[column])
+            states[condition] = tests[condition].text(value) ? TRUE : FALSE;
+        return isRejected();
+    }
+
+    /**
+     * Tests a numeric or date cell, returns true when the row is rejected.
+     */
+    boolean number(int column, double value, boolean date) {
+        for (int condition : columnConditions[column])
+            states[condition] = tests[condition].number(value, date) ? TRUE : FALSE;
+        return isRejected();
+    }
+
+    /**
+     * Tests a boolean cell, returns true when the row is rejected.
+     */
+    boolean booleanValue(int column, boolean value) {
+        for (int condition : columnConditions[column])
+            states[condition] = tests[condition].booleanValue(value) ? TRUE : FALSE;
+        return isRejected();
+    }
+
+    /**
+     * Tests an error cell, returns true when the row is rejected.
+     */
+    boolean error(int column, String value) {
+        for (int condition : columnConditions[column])
+            states[condition] = tests[condition].error(value) ? TRUE : FALSE;
+        return isRejected();
+    }
+
+    /**
+     * Tests a blank cell, returns true when the row is rejected.
+     */
+    boolean blank(int column) {
+        for (int condition : columnConditions[column])
+            states[condition] = tests[condition].blank() ? TRUE : FALSE;
+        return isRejected();
+    }
+
+    /**
+     * Tests the Columns without a cell in the row as blank and returns true
+     * when the row matches. Starts the next row.
+     */
+    boolean endRow() {
+        for (int i = 0; i < states.length; i++) {
+            if (UNKNOWN == states[i])
+                states[i] = tests[i].blank() ? TRUE : FALSE;
+        }
+        boolean matches = TRUE == evaluate(0);
+        discardRow();
+        return matches;
+    }
+
+    /**
+     * Forgets the cells tested in the current row.
+     */
+    void discardRow() {
+        Arrays.fill(states, UNKNOWN);
+    }
+
+    private boolean isRejected() {
+        return FALSE == evaluate(0);
+    }
+
+    private byte evaluate(int node) {
+        switch (operators[node]) {
+            case COLUMN:
+                return states[nodeConditions[node]];
+            case NOT:
+                byte operand = evaluate(operands[node][0]);
+                return UNKNOWN == operand ? UNKNOWN : TRUE == operand ? FALSE : TRUE;
+            case AND:
+                byte and = TRUE;
+                for (int child : operands[node]) {
+                    byte state = evaluate(child);
+                    if (FALSE == state)
+                        return FALSE;
+                    if (UNKNOWN == state)
+                        and = UNKNOWN;
+                }
+                return and;
+            default:
+                byte or = FALSE;
+                for (int child : operands[node]) {
+                    byte state = evaluate(child);
+                    if (TRUE == state)
+                        return TRUE;
+                    if (UNKNOWN == state)
+                        or = UNKNOWN;
+                }
+                return or;
+        }
+    }
+}
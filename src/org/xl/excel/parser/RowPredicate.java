@@ -0,0 +1,294 @@
+package org.xl.excel.parser;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A condition on the typed cell values of a data row, set on an
+ * ExcelParser to drop the rows which do not match while the file is
+ * parsed.
+ * <p>
+ * Conditions name a Column by its Header, ignoring case like
+ * Sheet.getColumnIndex(), test its cells with a CellPredicate, and combine
+ * with and(), or() and not(). A row is tested as its cells arrive: once
+ * the cells seen so far decide that the row cannot match, the rest of the
+ * row is skipped without reading shared strings, formatting numbers or
+ * building the row. Columns the row has no cell for, and Headers the Sheet
+ * does not have, are tested as blank.
+ *
+ * <pre>
+ * parser.setRowPredicate(RowPredicate.and(
+ *         RowPredicate.equalTo("Status", "OPEN"),
+ *         RowPredicate.greaterThan("Amount", 1000)));
+ * </pre>
+ * <p>
+ * Predicates are immutable and can be shared between parsers. The tree
+ * can be read with getOperator(), getOperands(), getColumn() and
+ * getTest(), to evaluate a predicate on rows which were already parsed.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public final class RowPredicate {
+    /**
+     * The kind of a node in the predicate tree.
+     */
+    public enum Operator {
+        /**
+         * Tests the cells of a Column
+         */
+        COLUMN,
+        AND,
+        OR,
+        NOT
+    }
+
+    private final Operator operator;
+    private final String column;
+    private final CellPredicate test;
+    private final RowPredicate[] operands;
+    private final String description;
+
+    private RowPredicate(Operator operator, String column, CellPredicate test,
+                         RowPredicate[] operands, String description) {
+        if (Operator.COLUMN == operator && null == column)
+            throw new IllegalArgumentException("Column is required");
+        this.operator = operator;
+        this.column = column;
+        this.test = test;
+        this.operands = operands;
+        this.description = description;
+    }
+
+    /**
+     * Tests the cells of the Column with the CellPredicate.
+     *
+     * @param column Header of the Column
+     * @param test
+     * @return RowPredicate
+     */
+    public static RowPredicate column(String column, CellPredicate test) {
+        if (null == test)
+            throw new IllegalArgumentException("Test is required");
+        return new RowPredicate(Operator.COLUMN, column, test, null, column + " " + test);
+    }
+
+    /**
+     * Matches the cells with exactly this text. Numeric cells match when
+     * the value is a number equal to theirs, boolean cells when it is TRUE
+     * or FALSE, and the empty String matches blank cells.
+     *
+     * @param column
+     * @param value
+     * @return RowPredicate
+     */
+    public static RowPredicate equalTo(String column, final String value) {
+        if (null == value)
+            throw new IllegalArgumentException("Value is required, use isBlank() for blank cells");
+        final double number = toNumber(value);
+        return new RowPredicate(Operator.COLUMN, column, new CellPredicate() {
+            @Override
+            public boolean text(String text) {
+                return value.equals(text);
+            }
+
+            @Override
+            public boolean number(double cell, boolean date) {
+                return cell == number;
+            }
+
+            @Override
+            public boolean booleanValue(boolean cell) {
+                return value.equalsIgnoreCase(cell ? "TRUE" : "FALSE");
+            }
+
+            @Override
+            public boolean blank() {
+                return value.isEmpty();
+            }
+        }, null, column + " = \"" + value + "\"");
+    }
+
+    /**
+     * Matches the numeric and date cells equal to the value.
+     *
+     * @param column
+     * @param value
+     * @return RowPredicate
+     */
+    public static RowPredicate equalTo(String column, double value) {
+        return range(column, value, true, value, true, column + " = " + value);
+    }
+
+    /**
+     * Matches the cells equal to any of the values, see equalTo().
+     *
+     * @param column
+     * @param values
+     * @return RowPredicate
+     */
+    public static RowPredicate in(String column, Collection<String> values) {
+        final Set<String> texts = new HashSet<String>(values);
+        final Set<Double> numbers = new HashSet<Double>();
+        for (String value : values) {
+            double number = toNumber(value);
+            if (!Double.isNaN(number))
+                numbers.add(number == 0 ? 0.0 : number);
+        }
+        return new RowPredicate(Operator.COLUMN, column, new CellPredicate() {
+            @Override
+            public boolean text(String text) {
+                return texts.contains(text);
+            }
+
+            @Override
+            public boolean number(double cell, boolean date) {
+                return numbers.contains(cell == 0 ? 0.0 : cell);
+            }
+
+            @Override
+            public boolean booleanValue(boolean cell) {
+                return texts.contains(cell ? "TRUE" : "FALSE");
+            }
+
+            @Override
+            public boolean blank() {
+                return texts.contains("");
+            }
+        }, null, column + " in " + values);
+    }
+
+    public static RowPredicate greaterThan(String column, double value) {
+        return range(column, value, false, Double.POSITIVE_INFINITY, true, column + " > " + value);
+    }
+
+    public static RowPredicate greaterThanOrEqual(String column, double value) {
+        return range(column, value, true, Double.POSITIVE_INFINITY, true, column + " >= " + value);
+    }
+
+    public static RowPredicate lessThan(String column, double value) {
+        return range(column, Double.NEGATIVE_INFINITY, true, value, false, column + " < " + value);
+    }
+
+    public static RowPredicate lessThanOrEqual(String column, double value) {
+        return range(column, Double.NEGATIVE_INFINITY, true, value, true, column + " <= " + value);
+    }
+
+    /**
+     * Matches the numeric and date cells from min to max inclusive.
+     *
+     * @param column
+     * @param min
+     * @param max
+     * @return RowPredicate
+     */
+    public static RowPredicate between(String column, double min, double max) {
+        return range(column, min, true, max, true, column + " between " + min + " and " + max);
+    }
+
+    public static RowPredicate isBlank(String column) {
+        return new RowPredicate(Operator.COLUMN, column, new CellPredicate() {
+            @Override
+            public boolean blank() {
+                return true;
+            }
+        }, null, column + " is blank");
+    }
+
+    public static RowPredicate notBlank(String column) {
+        return not(isBlank(column));
+    }
+
+    public static RowPredicate and(RowPredicate... operands) {
+        return combine(Operator.AND, " and ", operands);
+    }
+
+    public static RowPredicate or(RowPredicate... operands) {
+        return combine(Operator.OR, " or ", operands);
+    }
+
+    public static RowPredicate not(RowPredicate operand) {
+        if (null == operand)
+            throw new IllegalArgumentException("Operand is required");
+        return new RowPredicate(Operator.NOT, null, null, new RowPredicate[]{operand},
+                "not (" + operand + ")");
+    }
+
+    private static RowPredicate combine(Operator operator, String word, RowPredicate[] operands) {
+        if (operands.length == 0)
+            throw new IllegalArgumentException("At least one operand is required");
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < operands.length; i++) {
+            if (null == operands[i])
+                throw new IllegalArgumentException("Operand " + i + " is null");
+            description.append(i > 0 ? word : "").append('(').append(operands[i]).append(')');
+        }
+        return new RowPredicate(operator, null, null,
+                Arrays.copyOf(operands, operands.length), description.toString());
+    }
+
+    private static RowPredicate range(String column, final double min, final boolean minInclusive,
+                                      final double max, final boolean maxInclusive,
+                                      String description) {
+        return new RowPredicate(Operator.COLUMN, column, new CellPredicate() {
+            @Override
+            public boolean number(double cell, boolean date) {
+                return (minInclusive ? cell >= min : cell > min) &&
+                        (maxInclusive ? cell <= max : cell < max);
+            }
+        }, null, description);
+    }
+
+    /**
+     * Returns the value as a number, NaN when it is not one.
+     */
+    private static double toNumber(String value) {
+        if (value.isEmpty())
+            return Double.NaN;
+        char first = value.charAt(0);
+        if (!Character.isDigit(first) && first != '-' && first != '+' && first != '.')
+            return Double.NaN;
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    /**
+     * Returns the Header of the tested Column, null unless the operator is
+     * COLUMN.
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * Returns the test of the Column cells, null unless the operator is
+     * COLUMN.
+     */
+    public CellPredicate getTest() {
+        return test;
+    }
+
+    /**
+     * Returns the operands of AND, OR and NOT, empty for COLUMN.
+     */
+    public List<RowPredicate> getOperands() {
+        if (null == operands)
+            return Collections.emptyList();
+        return Collections.unmodifiableList(Arrays.asList(operands));
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,209 @@
+package org.xl.excel.parser;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.xl.excel.components.Sheet;
+
+/**
+ * Publishes the rows of an Excel File in RowBatches, honouring the demand
+ * of the Subscriber.
+ * <p>
+ * The parsers push rows as they read them, so the parse runs on a thread of
+ * the Executor and is paused whenever a batch is full and the Subscriber
+ * has not requested another one. Only the batch being filled is held in
+ * memory, no matter how large the Sheet is. XLS files are still read into
+ * memory by POI before the first row is published.
+ * <p>
+ * Batches never span Sheets, the last batch of a Sheet may be smaller than
+ * the batch size. Cancelling the Subscription stops the parse at the next
+ * row. A RowPublisher can be subscribed to once.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class RowPublisher implements Flow.Publisher<RowBatch> {
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    private final ExcelParser parser;
+    private final boolean ignoreBlankRows;
+    private final boolean useCellFormatting;
+    private final int sheetNumber;
+    private final int batchSize;
+    private final Executor executor;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * @param parser            Parser of the Excel File, its RowListener and
+     *                          ParseProgress are replaced
+     * @param ignoreBlankRows
+     * @param useCellFormatting
+     * @param sheetNumber       0 indexed Sheet or ExcelParser.READ_ALL
+     * @param batchSize         Maximum number of rows per RowBatch
+     * @param executor          Executor the parse runs on
+     */
+    public RowPublisher(ExcelParser parser, boolean ignoreBlankRows,
+                        boolean useCellFormatting, int sheetNumber,
+                        int batchSize, Executor executor) {
+        this.parser = parser;
+        this.ignoreBlankRows = ignoreBlankRows;
+        this.useCellFormatting = useCellFormatting;
+        this.sheetNumber = sheetNumber;
+        this.batchSize = Math.max(1, batchSize);
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super RowBatch> subscriber) {
+        if (null == subscriber)
+            throw new NullPointerException("subscriber");
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("RowPublisher only supports one Subscriber"));
+            return;
+        }
+        final BatchSubscription subscription = new BatchSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                subscription.parse();
+            }
+        });
+    }
+
+    /**
+     * Subscription which is also the RowListener of the parse, rows are
+     * collected into batches on the parse thread which blocks until there
+     * is demand for the batch.
+     */
+    private class BatchSubscription implements Flow.Subscription, RowListener {
+        private final Flow.Subscriber<? super RowBatch> subscriber;
+        private final ParseProgress progress = new ParseProgress();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition demanded = lock.newCondition();
+        private long demand;
+        private Throwable error;
+        private int sheetIndex;
+        private String sheetName;
+        private List<String> headers = Collections.emptyList();
+        private RowBatch batch;
+
+        BatchSubscription(Flow.Subscriber<? super RowBatch> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            lock.lock();
+            try {
+                if (n <= 0) {
+                    error = new IllegalArgumentException(
+                            "Subscription request must be positive: " + n);
+                    progress.cancel();
+                } else {
+                    //Demand is capped at Long.MAX_VALUE, meaning unbounded
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+                demanded.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                progress.cancel();
+                demanded.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void parse() {
+            try {
+                parser.setRowListener(this);
+                parser.setProgress(progress);
+                if (ExcelParser.READ_ALL == sheetNumber)
+                    parser.process(ignoreBlankRows, useCellFormatting);
+                else
+                    parser.process(ignoreBlankRows, useCellFormatting, sheetNumber);
+            } catch (Throwable e) {
+                if (null != error)
+                    subscriber.onError(error);
+                else if (!progress.isCancelled())
+                    subscriber.onError(e);
+                return;
+            }
+            if (!progress.isCancelled())
+                subscriber.onComplete();
+        }
+
+        @Override
+        public void startSheet(int sheetIndex, String sheetName) {
+            this.sheetIndex = sheetIndex;
+            this.sheetName = sheetName;
+            this.headers = Collections.emptyList();
+        }
+
+        @Override
+        public void headerRow(List<String> headers) {
+            this.headers = Collections.unmodifiableList(headers);
+        }
+
+        @Override
+        public void row(String row) {
+            if (null == batch)
+                batch = new RowBatch(sheetIndex, sheetName, headers, batchSize);
+            batch.add(row);
+            if (batch.getRowCount() >= batchSize)
+                publish();
+        }
+
+        @Override
+        public void endSheet(Sheet sheet) {
+            if (null != batch)
+                publish();
+        }
+
+        /**
+         * Waits for demand and hands the current batch to the Subscriber.
+         */
+        private void publish() {
+            lock.lock();
+            try {
+                while (demand == 0 && !progress.isCancelled())
+                    demanded.awaitUninterruptibly();
+                progress.checkCancelled();
+                if (demand != Long.MAX_VALUE)
+                    demand--;
+            } finally {
+                lock.unlock();
+            }
+            RowBatch published = batch;
+            batch = null;
+            try {
+                subscriber.onNext(published);
+            } catch (RuntimeException e) {
+                //A failing Subscriber is treated as cancelled
+                progress.cancel();
+                throw new CancellationException("Subscriber failed: " + e.getLocalizedMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.xl.excel.parser;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event spanning the load of the XLSX shared strings table.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+@Name("org.xl.excel.SharedStringsLoad")
+@Label("Shared Strings Load")
+@Category({"XL", "Excel Parser"})
+@Description("Load of the shared strings table of an XLSX workbook")
+final class SharedStringsLoadEvent extends Event {
+    @Label("File")
+    String file;
+}
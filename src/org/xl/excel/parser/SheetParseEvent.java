@@ -0,0 +1,39 @@
+package org.xl.excel.parser;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event spanning the parse of one Sheet.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+@Name("org.xl.excel.SheetParse")
+@Label("Sheet Parse")
+@Category({"XL", "Excel Parser"})
+@Description("Parse of the rows of one Sheet")
+final class SheetParseEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Sheet Name")
+    String sheetName;
+
+    @Label("Sheet Index")
+    int sheetIndex;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Cells")
+    long cells;
+
+    @Label("Bytes Read")
+    @Description("Uncompressed bytes of the Sheet part, 0 for XLS files")
+    @DataAmount
+    long bytesRead;
+}
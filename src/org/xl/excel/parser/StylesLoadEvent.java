@@ -0,0 +1,21 @@
+package org.xl.excel.parser;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event spanning the load of the XLSX styles table.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+@Name("org.xl.excel.StylesLoad")
+@Label("Styles Load")
+@Category({"XL", "Excel Parser"})
+@Description("Load of the styles table of an XLSX workbook")
+final class StylesLoadEvent extends Event {
+    @Label("File")
+    String file;
+}
@@ -0,0 +1,39 @@
+package org.xl.excel.parser;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event spanning the parse of a whole Excel File.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+@Name("org.xl.excel.WorkbookParse")
+@Label("Workbook Parse")
+@Category({"XL", "Excel Parser"})
+@Description("Parse of an XLSX or XLS workbook")
+final class WorkbookParseEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Format")
+    String format;
+
+    @Label("File Size")
+    @DataAmount
+    long fileSize;
+
+    @Label("Sheets")
+    int sheets;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+}
@@ -2,17 +2,24 @@ package org.xl.excel.parser;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DateUtil;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xl.excel.components.ColumnBatch;
+import org.xl.excel.components.ColumnStats;
+import org.xl.excel.metrics.ParseCounter;
+import org.xl.excel.metrics.ParsePhase;
 
 /**
  * This class is an ExcelParser which is built using the
@@ -30,6 +37,10 @@ public class XLSParser extends ExcelParser {
     private int maxRows = -1;
     private File xlsFile;
     private List<org.xl.excel.components.Sheet> sheetList;
+    private long sheetRows;
+    private long sheetCells;
+    private long sheetFiltered;
+    private long outputNanos;
 
     protected XLSParser(File xlsFile) {
         this.xlsFile = xlsFile;
@@ -68,8 +79,8 @@ public class XLSParser extends ExcelParser {
 
         InputStream fis = null;
         try {
-            fis = new FileInputStream(xlsFile);
-            sheetList = readContentsAsList(ignoreBlankRows, useCellFormatting, fis);
+            fis = openStream();
+            sheetList = readContentsAsList(ignoreBlankRows, useCellFormatting, fis, READ_ALL);
         } catch (Exception e) {
             LOGGER.warn("Failed to process workbook: " + e.getLocalizedMessage(), e);
             throw new RuntimeException("Failed to process workbook: " + e.getLocalizedMessage());
@@ -98,10 +109,10 @@ public class XLSParser extends ExcelParser {
         LOGGER.info("Processing XLS file: " + this.xlsFile.getName());
         InputStream fis = null;
         try {
-            fis = new FileInputStream(xlsFile);
-            List<org.xl.excel.components.Sheet> tmpSheets = readContentsAsList(ignoreBlankRows, useCellFormatting, fis);
+            fis = openStream();
+            List<org.xl.excel.components.Sheet> tmpSheets = readContentsAsList(ignoreBlankRows, useCellFormatting, fis, index);
             sheetList = new ArrayList<org.xl.excel.components.Sheet>();
-            sheetList.add(tmpSheets.get(index));
+            sheetList.add(tmpSheets.get(0));
         } catch (Exception e) {
             LOGGER.warn("Failed to process workbook: " + e.getLocalizedMessage(), e);
             throw new RuntimeException("Failed to process workbook: " + e.getLocalizedMessage());
@@ -116,63 +127,167 @@ public class XLSParser extends ExcelParser {
         }
     }
 
-    private List<org.xl.excel.components.Sheet> readContentsAsList(boolean ignoreBlankRows, boolean useCellFormatting, InputStream fis) {
+    /**
+     * Opens the XLS File, counting the bytes read when the progress is
+     * tracked.
+     */
+    private InputStream openStream() throws IOException {
+        InputStream in = new FileInputStream(xlsFile);
+        if (null == progress)
+            return in;
+        progress.setTotalBytes(xlsFile.length());
+        return new CountingInputStream(in, progress);
+    }
+
+    private List<org.xl.excel.components.Sheet> readContentsAsList(boolean ignoreBlankRows, boolean useCellFormatting, InputStream fis, int sheetNum) {
         List<org.xl.excel.components.Sheet> sheets = new ArrayList<org.xl.excel.components.Sheet>();
         List<String> rowList = null;
         List<String> headers = null;
         List<String> columnTypes = null;
+        ColumnTypeInference typeInference = null;
+        ColumnProfiler columnProfiler = null;
         StringBuilder currentRowObj = new StringBuilder();
         Workbook workbook = null;
         Sheet sheet = null;
         Row row = null;
         Cell cell = null;
+        WorkbookParseEvent workbookEvent = new WorkbookParseEvent();
+        workbookEvent.begin();
+        long workbookRows = 0;
         try {
+            long start = startTimer();
             workbook = WorkbookFactory.create(fis);
+            stopTimer(ParsePhase.PACKAGE_OPEN, start);
             for (int sheetIndex = 0; sheetIndex <
                     workbook.getNumberOfSheets(); sheetIndex++) {
+                if (READ_ALL != sheetNum && sheetIndex != sheetNum)
+                    continue;
+                start = startTimer();
+                SheetParseEvent sheetEvent = new SheetParseEvent();
+                sheetEvent.begin();
+                sheetRows = 0;
+                sheetCells = 0;
+                sheetFiltered = 0;
+                outputNanos = 0;
                 sheet = workbook.getSheetAt(sheetIndex);
                 rowList = new ArrayList<String>();
                 headers = new ArrayList<String>();
-                columnTypes = new ArrayList<String>();
+                typeInference = new ColumnTypeInference(typeSampleRows);
+                columnProfiler = createColumnProfiler();
 
                 headers = getHeaders(workbook, sheetIndex);
-                columnTypes = getColumnTypes(headers);
+                //Header cells are read values, as in the XLSX parser
+                sheetCells += headers.size();
+                boolean batching = null != batchListener;
+                if (null != rowListener && !batching) {
+                    rowListener.startSheet(sheetIndex, sheet.getSheetName());
+                    rowListener.headerRow(headers);
+                }
 
                 //If they haven't made a maxRow request it will be -1. In this case
                 int len = ((maxRows == -1) ? sheet.getLastRowNum() :
                         (Math.min(40, sheet.getLastRowNum())));
-                for (int i = 1; i < len + 1; i++) {
-                    row = sheet.getRow(i);
+                RowMatcher matcher = null == rowPredicate ? null :
+                        new RowMatcher(rowPredicate, headers);
+                if (batching) {
+                    readBatches(sheet, sheetIndex, headers, len, ignoreBlankRows,
+                            typeInference, columnProfiler, matcher);
+                } else {
+                    for (int i = 1; i < len + 1; i++) {
+                        row = sheet.getRow(i);
+                        if (null != matcher && !matches(matcher, row)) {
+                            sheetFiltered++;
+                            if (null != progress)
+                                progress.checkCancelled();
+                            continue;
+                        }
 //Reset the variables
-                    currentRowObj.setLength(0);
-                    int lastCellNum = row.getLastCellNum();
-                    for (int j = 0; j < row.getLastCellNum(); j++) {
-                        cell = row.getCell(j);
-                        if (cell != null) {
-                            currentRowObj.append("\"" + cell.toString() + "\"");
-                        } else {
-                            currentRowObj.append("\"\"");
+                        currentRowObj.setLength(0);
+                        int lastCellNum = row.getLastCellNum();
+                        for (int j = 0; j < row.getLastCellNum(); j++) {
+                            cell = row.getCell(j);
+                            if (cell != null) {
+                                sheetCells++;
+                                String cellValue = cell.toString();
+                                currentRowObj.append("\"" + cellValue + "\"");
+                                if (typeInference.isSampling())
+                                    inferType(typeInference, j, cell);
+                                if (null != columnProfiler)
+                                    columnProfiler.cell(j, cellValue);
+                            } else {
+                                currentRowObj.append("\"\"");
+                            }
+                            currentRowObj.append((j < lastCellNum - 1) ? "," : "");
                         }
-                        currentRowObj.append((j < lastCellNum - 1) ? "," : "");
-                    }
+//A row without cells still has its first cell
+                        if (currentRowObj.length() == 0)
+                            currentRowObj.append("\"\"");
 //Add any missing elements
-                    int missingEls = (headers.size() -
-                            currentRowObj.toString().split(",(?=([^\"]*\"[^\"]*\")*[^\"]*$)").length);
-                    for (int j = 0; j < missingEls; j++) {
-                        currentRowObj.append(",\"\"");
-                    }
-                    if (ignoreBlankRows) {
-                        if (!isRowBlank(currentRowObj.toString()))
-                            rowList.add(currentRowObj.toString());
-                    } else {
-                        rowList.add(currentRowObj.toString());
+                        int missingEls = (headers.size() -
+                                currentRowObj.toString().split(",(?=([^\"]*\"[^\"]*\")*[^\"]*$)").length);
+                        for (int j = 0; j < missingEls; j++) {
+                            currentRowObj.append(",\"\"");
+                        }
+                        if (ignoreBlankRows && isRowBlank(currentRowObj.toString())) {
+                            typeInference.discardRow();
+                            if (null != columnProfiler)
+                                columnProfiler.discardRow();
+                        } else {
+                            if (null != rowListener) {
+                                long outputStart = startTimer();
+                                rowListener.row(currentRowObj.toString());
+                                if (metrics.isEnabled())
+                                    outputNanos += System.nanoTime() - outputStart;
+                            } else {
+                                rowList.add(currentRowObj.toString());
+                            }
+                            typeInference.commitRow();
+                            if (null != columnProfiler)
+                                columnProfiler.commitRow();
+                            rowEmitted();
+                        }
+                        if (null != progress)
+                            progress.checkCancelled();
                     }
                 }
-                sheets.add(new org.xl.excel.components.Sheet(sheet.getSheetName(),
+                reportSheetMetrics(start);
+                workbookRows += sheetRows;
+                sheetEvent.end();
+                if (sheetEvent.shouldCommit()) {
+                    sheetEvent.file = xlsFile.getName();
+                    sheetEvent.sheetName = sheet.getSheetName();
+                    sheetEvent.sheetIndex = sheetIndex;
+                    sheetEvent.rows = sheetRows;
+                    sheetEvent.cells = sheetCells;
+                    sheetEvent.commit();
+                }
+                start = startTimer();
+                columnTypes = typeInference.getColumnTypes(headers);
+                List<ColumnStats> columnStats = typeInference.getColumnStats(headers, columnProfiler);
+                stopTimer(ParsePhase.TYPE_INFERENCE, start);
+                org.xl.excel.components.Sheet loadedSheet =
+                        new org.xl.excel.components.Sheet(sheet.getSheetName(),
                         sheetIndex,
                         columnTypes,//ColumnTypes
                         headers,
-                        rowList));
+                        rowList,
+                        columnStats);
+                sheets.add(loadedSheet);
+                if (null != rowListener && !batching)
+                    rowListener.endSheet(loadedSheet);
+                if (null != progress)
+                    progress.addSheet();
+            }
+            workbookEvent.end();
+            if (workbookEvent.shouldCommit()) {
+                workbookEvent.file = xlsFile.getName();
+                workbookEvent.format = "XLS";
+                workbookEvent.fileSize = xlsFile.length();
+                workbookEvent.sheets = sheets.size();
+                workbookEvent.rows = workbookRows;
+                //POI reads the whole workbook stream before the first Sheet
+                workbookEvent.bytesRead = xlsFile.length();
+                workbookEvent.commit();
             }
         } catch (Exception e) {
             LOGGER.warn("Failed to read excel file contents: " + e.getLocalizedMessage(), e);
@@ -181,6 +296,170 @@ public class XLSParser extends ExcelParser {
         return sheets;
     }
 
+    /**
+     * Hands the data rows of the Sheet to the BatchListener in ColumnBatches
+     * filled straight from the typed cell values.
+     */
+    private void readBatches(Sheet sheet, int sheetIndex, List<String> headers,
+                             int lastRow, boolean ignoreBlankRows,
+                             ColumnTypeInference typeInference,
+                             ColumnProfiler columnProfiler, RowMatcher matcher) {
+        List<String> batchHeaders = Collections.unmodifiableList(headers);
+        ColumnBatch batch = null;
+        try {
+            for (int i = 1; i < lastRow + 1; i++) {
+                if (null == batch) {
+                    batch = batchPool.acquire();
+                    batch.start(sheetIndex, sheet.getSheetName(), batchHeaders);
+                }
+                Row row = sheet.getRow(i);
+                if (null != matcher && !matches(matcher, row)) {
+                    sheetFiltered++;
+                    if (null != progress)
+                        progress.checkCancelled();
+                    continue;
+                }
+                if (null != row) {
+                    for (int j = 0; j < row.getLastCellNum(); j++) {
+                        Cell cell = row.getCell(j);
+                        if (cell == null)
+                            continue;
+                        sheetCells++;
+                        batchCell(batch, j, cell);
+                        if (typeInference.isSampling())
+                            inferType(typeInference, j, cell);
+                        if (null != columnProfiler)
+                            columnProfiler.cell(j, cell.toString());
+                    }
+                }
+                if (ignoreBlankRows && batch.isPendingRowBlank()) {
+                    batch.discardRow();
+                    typeInference.discardRow();
+                    if (null != columnProfiler)
+                        columnProfiler.discardRow();
+                } else {
+                    batch.commitRow();
+                    typeInference.commitRow();
+                    if (null != columnProfiler)
+                        columnProfiler.commitRow();
+                    rowEmitted();
+                    if (batch.isFull()) {
+                        ColumnBatch full = batch;
+                        batch = null;
+                        deliver(full);
+                    }
+                }
+                if (null != progress)
+                    progress.checkCancelled();
+            }
+            if (null != batch && batch.getRowCount() > 0) {
+                ColumnBatch last = batch;
+                batch = null;
+                deliver(last);
+            }
+        } finally {
+            //A failed or cancelled parse gives its partial batch back
+            if (null != batch)
+                batch.release();
+        }
+    }
+
+    private void deliver(ColumnBatch batch) {
+        long start = startTimer();
+        batchListener.batch(batch);
+        if (metrics.isEnabled())
+            outputNanos += System.nanoTime() - start;
+    }
+
+    private void rowEmitted() {
+        sheetRows++;
+        if (null != progress)
+            progress.addRow();
+    }
+
+    /**
+     * Reports the parse time and counters of the current Sheet.
+     */
+    private void reportSheetMetrics(long start) {
+        if (!metrics.isEnabled())
+            return;
+        stopTimer(ParsePhase.SHEET_PARSE, start);
+        metrics.count(ParseCounter.ROWS, sheetRows);
+        metrics.count(ParseCounter.CELLS, sheetCells);
+        if (sheetFiltered > 0)
+            metrics.count(ParseCounter.FILTERED_ROWS, sheetFiltered);
+        if (outputNanos > 0)
+            metrics.phase(ParsePhase.OUTPUT, outputNanos);
+    }
+
+    /**
+     * Stores the typed value of the cell in the batch, formula cells by
+     * their cached result.
+     */
+    private void batchCell(ColumnBatch batch, int column, Cell cell) {
+        int cellType = cell.getCellType();
+        if (cellType == Cell.CELL_TYPE_FORMULA)
+            cellType = cell.getCachedFormulaResultType();
+        switch (cellType) {
+            case Cell.CELL_TYPE_NUMERIC:
+                batch.setNumber(column, cell.getNumericCellValue(),
+                        DateUtil.isCellDateFormatted(cell));
+                break;
+            case Cell.CELL_TYPE_STRING:
+                batch.setString(column, cell.getStringCellValue());
+                break;
+            case Cell.CELL_TYPE_BOOLEAN:
+                batch.setBoolean(column, cell.getBooleanCellValue());
+                break;
+            case Cell.CELL_TYPE_ERROR:
+                batch.setError(column, cell.toString());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Tests the row against the RowPredicate before any other cell is read.
+     * Only the Columns the predicate tests are looked at, and only until
+     * the row is decided.
+     */
+    private boolean matches(RowMatcher matcher, Row row) {
+        if (null != row) {
+            for (int column : matcher.getColumns()) {
+                Cell cell = row.getCell(column);
+                if (null != cell && testCell(matcher, column, cell)) {
+                    matcher.discardRow();
+                    return false;
+                }
+            }
+        }
+        return matcher.endRow();
+    }
+
+    /**
+     * Tests the typed value of the cell, formula cells by their cached
+     * result. Returns true when the row is rejected.
+     */
+    private boolean testCell(RowMatcher matcher, int column, Cell cell) {
+        int cellType = cell.getCellType();
+        if (cellType == Cell.CELL_TYPE_FORMULA)
+            cellType = cell.getCachedFormulaResultType();
+        switch (cellType) {
+            case Cell.CELL_TYPE_NUMERIC:
+                return matcher.number(column, cell.getNumericCellValue(),
+                        DateUtil.isCellDateFormatted(cell));
+            case Cell.CELL_TYPE_STRING:
+                return matcher.text(column, cell.getStringCellValue());
+            case Cell.CELL_TYPE_BOOLEAN:
+                return matcher.booleanValue(column, cell.getBooleanCellValue());
+            case Cell.CELL_TYPE_ERROR:
+                return matcher.error(column, "ERROR:" + cell.toString());
+            default:
+                return matcher.blank(column);
+        }
+    }
+
     private boolean isRowBlank(String rowData) {
         String[] values = rowData.split(",");
         for (String value : values) {
@@ -190,12 +469,36 @@ public class XLSParser extends ExcelParser {
         return true;
     }
 
-    private List<String> getColumnTypes(List<String> headers) {
-        List<String> types = new ArrayList<String>();
-        for (int i = 0; i < headers.size(); i++) {
-            types.add("String");
+    /**
+     * Classifies the cell for the Column Type inference using the cell type
+     * POI reports, formula cells are classified by their cached result.
+     */
+    private void inferType(ColumnTypeInference typeInference, int column, Cell cell) {
+        int cellType = cell.getCellType();
+        if (cellType == Cell.CELL_TYPE_FORMULA)
+            cellType = cell.getCachedFormulaResultType();
+        switch (cellType) {
+            case Cell.CELL_TYPE_NUMERIC:
+                typeInference.cell(column, DateUtil.isCellDateFormatted(cell) ?
+                        ColumnTypeInference.DATE : ColumnTypeInference.NUMBER,
+                        cell.getNumericCellValue());
+                break;
+            case Cell.CELL_TYPE_STRING:
+                String value = cell.getStringCellValue();
+                typeInference.cell(column, value.length() == 0 ?
+                        ColumnTypeInference.BLANK : ColumnTypeInference.isDate(value) ?
+                        ColumnTypeInference.DATE : ColumnTypeInference.STRING, Double.NaN);
+                break;
+            case Cell.CELL_TYPE_BOOLEAN:
+                typeInference.cell(column, ColumnTypeInference.BOOLEAN, Double.NaN);
+                break;
+            case Cell.CELL_TYPE_ERROR:
+                typeInference.cell(column, ColumnTypeInference.ERROR, Double.NaN);
+                break;
+            default:
+                typeInference.cell(column, ColumnTypeInference.BLANK, Double.NaN);
+                break;
         }
-        return types;
     }
 
     /**
@@ -1,12 +1,17 @@
 package org.xl.excel.parser;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
 import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 import org.apache.poi.openxml4j.opc.OPCPackage;
@@ -14,7 +19,10 @@ import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
 import org.apache.poi.xssf.eventusermodel.XSSFReader;
 import org.apache.poi.xssf.model.StylesTable;
+import org.xl.excel.components.ColumnStats;
 import org.xl.excel.components.Sheet;
+import org.xl.excel.metrics.ParseCounter;
+import org.xl.excel.metrics.ParsePhase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.InputSource;
@@ -30,6 +38,7 @@ public class XLSXParser extends ExcelParser {
     private File xlsxFile;
     private OPCPackage xlsxPackage;
     private PrintStream output;
+    private ParallelGzipOutputStream gzipOutput;
     private int minColumns;
     private int maxRows;
     private List<Sheet> sheetList;
@@ -42,6 +51,12 @@ public class XLSXParser extends ExcelParser {
         this.minColumns = minColumns;
         this.sheetList = new ArrayList<Sheet>();
         this.maxRows = maxRows;
+    }
+        protected XLSXParser(File xlsxFile, ParallelGzipOutputStream gzipOutput,
+        int minColumns, int maxRows){
+        this(xlsxFile, new PrintStream(gzipOutput, false,
+                StandardCharsets.UTF_8), minColumns, maxRows);
+        this.gzipOutput = gzipOutput;
     }
         protected XLSXParser(File xlsxFile, int minColumns, int maxRows){
         this.xlsxFile = xlsxFile;
@@ -83,11 +98,17 @@ public class XLSXParser extends ExcelParser {
         @Override
         public void process ( boolean ignoreBlankRows,boolean
         useCellFormatting)throws RuntimeException, InvalidFormatException {
+        Throwable failure = null;
         try {
             displayFilters();
+            long start = startTimer();
             this.xlsxPackage = OPCPackage.open(xlsxFile.getPath(),
                     PackageAccess.READ);
+            stopTimer(ParsePhase.PACKAGE_OPEN, start);
             read(ignoreBlankRows, useCellFormatting, READ_ALL);
+        } catch (Throwable t) {
+            failure = t;
+            throw t;
         } finally {
             if (null != this.xlsxPackage) {
                 try {
@@ -96,6 +117,7 @@ public class XLSXParser extends ExcelParser {
                     e.printStackTrace();
                 }
             }
+            finishOutput(failure);
         }
     }
 /**
@@ -110,11 +132,17 @@ public class XLSXParser extends ExcelParser {
         public void process ( boolean ignoreBlankRows,boolean
         useCellFormatting,int sheetNumber)throws RuntimeException,
             InvalidFormatException {
+        Throwable failure = null;
         try {
             displayFilters();
+            long start = startTimer();
             this.xlsxPackage = OPCPackage.open(xlsxFile.getPath(),
                     PackageAccess.READ);
+            stopTimer(ParsePhase.PACKAGE_OPEN, start);
             read(ignoreBlankRows, useCellFormatting, sheetNumber);
+        } catch (Throwable t) {
+            failure = t;
+            throw t;
         } finally {
             if (null != this.xlsxPackage) {
                 try {
@@ -123,63 +151,204 @@ public class XLSXParser extends ExcelParser {
                     e.printStackTrace();
                 }
             }
+            finishOutput(failure);
+        }
+    }
+
+    /**
+     * Writes the remaining gzip blocks of a gzip CSV converter, the
+     * underlying stream stays open. A write error is added to the failure
+     * of the parse, if there was one, instead of hiding it.
+     */
+    private void finishOutput(Throwable failure) {
+        if (null == gzipOutput)
+            return;
+        output.flush();
+        try {
+            gzipOutput.flush();
+            //PrintStream keeps write errors to itself
+            if (output.checkError())
+                throw new IOException("Failed to write to the gzip stream");
+        } catch (IOException e) {
+            if (null != failure) {
+                failure.addSuppressed(e);
+                return;
+            }
+            throw new RuntimeException("Failed to write the compressed CSV", e);
         }
     }
 
     private void read(boolean ignoreBlankRows, boolean useCellFormatting,
                       int sheetNum) throws RuntimeException {
+        WorkbookParseEvent workbookEvent = new WorkbookParseEvent();
+        workbookEvent.begin();
         try {
+            long start = startTimer();
+            SharedStringsLoadEvent stringsEvent = new SharedStringsLoadEvent();
+            stringsEvent.begin();
             ReadOnlySharedStringsTable strings = new
                     ReadOnlySharedStringsTable(this.xlsxPackage);
+            stringsEvent.end();
+            if (stringsEvent.shouldCommit()) {
+                stringsEvent.file = xlsxFile.getName();
+                stringsEvent.commit();
+            }
+            stopTimer(ParsePhase.SHARED_STRINGS_LOAD, start);
             XSSFReader xssfReader = new
                     XSSFReader(this.xlsxPackage);
+            start = startTimer();
+            StylesLoadEvent stylesEvent = new StylesLoadEvent();
+            stylesEvent.begin();
             StylesTable styles = xssfReader.getStylesTable();
+            stylesEvent.end();
+            if (stylesEvent.shouldCommit()) {
+                stylesEvent.file = xlsxFile.getName();
+                stylesEvent.commit();
+            }
+            stopTimer(ParsePhase.STYLES_LOAD, start);
             XSSFReader.SheetIterator iter =
                     (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            long[] partSizes = null;
+            if (READ_ALL == sheetNum && (null != progress || metrics.isEnabled()))
+                partSizes = getSheetPartSizes();
+            if (null != progress)
+                progress.setTotalBytes(null == partSizes ? -1 : partSizes[1]);
+            //Inflated bytes are counted separately from the progress, which
+            //may be shared with other parses, and only when someone records them
+            boolean countBytes = metrics.isEnabled() || workbookEvent.isEnabled() ||
+                    new SheetParseEvent().isEnabled();
+            long inflated = 0;
+            long rows = 0;
+            int sheets = 0;
             int index = 0;
             while (iter.hasNext()) {
                 InputStream stream = iter.next();
                 if ((READ_ALL == sheetNum) || (index ==
                         sheetNum)) {
+                    if (null != progress)
+                        stream = new CountingInputStream(stream, progress);
+                    ParseProgress sheetBytes = countBytes ? new ParseProgress() : null;
+                    if (null != sheetBytes)
+                        stream = new CountingInputStream(stream, sheetBytes);
                     String sheetName = iter.getSheetName();
                     if (null != output) {
                         this.output.println();
                         this.output.println(sheetName +
                                 " [index=" + index + "]:");
                     }
-                    readSheet(ignoreBlankRows,
-                            useCellFormatting, index, styles, strings, stream, sheetName);
+                    rows += readSheet(ignoreBlankRows,
+                            useCellFormatting, index, styles, strings, stream,
+                            sheetName, sheetBytes);
                     stream.close();
+                    sheets++;
+                    if (null != sheetBytes)
+                        inflated += sheetBytes.getBytesRead();
+                    if (null != progress)
+                        progress.addSheet();
                 }
                 ++index;
             }
+            if (metrics.isEnabled()) {
+                metrics.count(ParseCounter.INFLATED_BYTES, inflated);
+                //Sheet parts can't be matched to ZIP entries, so the compressed
+                //size is only known when every Sheet was read
+                if (null != partSizes && partSizes[0] >= 0)
+                    metrics.count(ParseCounter.COMPRESSED_BYTES, partSizes[0]);
+            }
+            workbookEvent.end();
+            if (workbookEvent.shouldCommit()) {
+                workbookEvent.file = xlsxFile.getName();
+                workbookEvent.format = "XLSX";
+                workbookEvent.fileSize = xlsxFile.length();
+                workbookEvent.sheets = sheets;
+                workbookEvent.rows = rows;
+                workbookEvent.bytesRead = inflated;
+                workbookEvent.commit();
+            }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    private void readSheet(boolean ignoreBlankRows, boolean
+    /**
+     * Returns the total compressed and uncompressed size of the Sheet parts,
+     * read from the ZIP central directory without inflating them. A size is
+     * -1 if unknown.
+     */
+    private long[] getSheetPartSizes() {
+        ZipFile zip = null;
+        long[] sizes = new long[]{-1, -1};
+        try {
+            zip = new ZipFile(xlsxFile);
+            long compressed = 0;
+            long uncompressed = 0;
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().startsWith("xl/worksheets/") &&
+                        entry.getName().endsWith(".xml")) {
+                    if (entry.getSize() < 0 || entry.getCompressedSize() < 0)
+                        return sizes;
+                    compressed += entry.getCompressedSize();
+                    uncompressed += entry.getSize();
+                }
+            }
+            sizes[0] = compressed;
+            sizes[1] = uncompressed;
+            return sizes;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read Sheet sizes: " + e.getLocalizedMessage());
+            return sizes;
+        } finally {
+            if (null != zip) {
+                try {
+                    zip.close();
+                } catch (IOException e) {
+                    //Only read from
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses one Sheet and returns the number of data rows.
+     */
+    private long readSheet(boolean ignoreBlankRows, boolean
             useCellFormatting, int index, StylesTable styles, ReadOnlySharedStringsTable
                                    strings,
                            InputStream sheetInputStream,
-                           String sheetName) throws RuntimeException {
+                           String sheetName, ParseProgress sheetBytes)
+            throws RuntimeException {
         ExcelWorkSheetHandler_CSV contentHandler = null;
+        SAXParser saxParser = null;
+        long start = startTimer();
+        SheetParseEvent sheetEvent = new SheetParseEvent();
+        sheetEvent.begin();
         try {
             InputSource sheetSource = new
                     InputSource(sheetInputStream);
-            SAXParserFactory saxFactory =
-                    SAXParserFactory.newInstance();
-            SAXParser saxParser = saxFactory.newSAXParser();
+            saxParser = ParserResources.get().acquireSheetParser();
             XMLReader sheetParser = saxParser.getXMLReader();
             contentHandler = new ExcelWorkSheetHandler_CSV(styles,
                     strings, minColumns, output, maxRows, columnFilter, ignoreBlankRows,
-                    useCellFormatting);
+                    useCellFormatting, typeSampleRows);
+            contentHandler.setColumnProfiler(createColumnProfiler());
+            contentHandler.setDictionaryEncoding(dictionaryEncoding);
+            contentHandler.setRowListener(rowListener);
+            contentHandler.setProgress(progress);
+            contentHandler.setRowPredicate(rowPredicate);
+            contentHandler.setBatchListener(batchListener, batchPool, index, sheetName);
+            contentHandler.setMetrics(metrics);
+            if (null != rowListener && null == output && null == batchListener)
+                rowListener.startSheet(index, sheetName);
             sheetParser.setContentHandler(contentHandler);
             sheetParser.parse(sheetSource);
+            contentHandler.flushBatch();
         } catch (RuntimeException e) {
             if (MAX_ROW_CODE.equals(e.getMessage())) {
                 LOGGER.info("Reached Specified Maximum Allowed Row Count" +
                         maxRows + " on Sheet" + index + " - " + sheetName);
+                contentHandler.flushBatch();
             } else {
                 throw new RuntimeException(e);
             }
@@ -188,28 +357,72 @@ public class XLSXParser extends ExcelParser {
                     contentHandler.getValueList().size() + " on Sheet" + index + " - " + sheetName);
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            if (null != saxParser)
+                ParserResources.get().releaseSheetParser(saxParser);
+            //Nothing left after a flush, a failed parse keeps its partial batch
+            if (null != contentHandler)
+                contentHandler.releaseBatch();
+        }
+        contentHandler.reportMetrics();
+        stopTimer(ParsePhase.SHEET_PARSE, start);
+        sheetEvent.end();
+        if (sheetEvent.shouldCommit()) {
+            sheetEvent.file = xlsxFile.getName();
+            sheetEvent.sheetName = sheetName;
+            sheetEvent.sheetIndex = index;
+            sheetEvent.rows = contentHandler.getRowCount();
+            sheetEvent.cells = contentHandler.getCellCount();
+            sheetEvent.bytesRead = null == sheetBytes ? 0 : sheetBytes.getBytesRead();
+            sheetEvent.commit();
         }
+        Sheet sheet = null;
         if (contentHandler.getHeaderList().size() > 0) {
+            start = startTimer();
+            List<String> columnTypes = contentHandler.getColumnTypes();
+            List<ColumnStats> columnStats = contentHandler.getColumnStats();
+            stopTimer(ParsePhase.TYPE_INFERENCE, start);
             if (null != columnFilter) {
                 List<String> filteredHeaderList = new
                         ArrayList<String>();
-                for (String header :
-                        contentHandler.getHeaderList()) {
+                List<String> filteredColumnTypes = new
+                        ArrayList<String>();
+                List<ColumnStats> filteredColumnStats = new
+                        ArrayList<ColumnStats>();
+                List<String> headerList = contentHandler.getHeaderList();
+                for (int i = 0; i < headerList.size(); i++) {
+                    String header = headerList.get(i);
                     if (columnFilter.contains(header)) {
                         filteredHeaderList.add(header);
+                        filteredColumnTypes.add(columnTypes.get(i));
+                        filteredColumnStats.add(columnStats.get(i));
                     }
                 }
-                this.sheetList.add(new Sheet(sheetName, index,
-                        contentHandler.getColumnTypes(),
-                        filteredHeaderList,
-                        contentHandler.getValueList()));
+                sheet = createSheet(sheetName, index,
+                        filteredColumnTypes, filteredHeaderList,
+                        contentHandler, filteredColumnStats);
             } else {
-                this.sheetList.add(new Sheet(sheetName, index,
-                        contentHandler.getColumnTypes(),
-                        contentHandler.getHeaderList(),
-                        contentHandler.getValueList()));
+                sheet = createSheet(sheetName, index,
+                        columnTypes, contentHandler.getHeaderList(),
+                        contentHandler, columnStats);
             }
+            this.sheetList.add(sheet);
+        }
+        if (null != rowListener && null == output && null == batchListener)
+            rowListener.endSheet(sheet);
+        return contentHandler.getRowCount();
+    }
+
+    private Sheet createSheet(String sheetName, int index,
+                              List<String> columnTypes, List<String> headerList,
+                              ExcelWorkSheetHandler_CSV contentHandler,
+                              List<ColumnStats> columnStats) {
+        if (null != contentHandler.getDictionaryRows()) {
+            return new Sheet(sheetName, index, columnTypes, headerList,
+                    contentHandler.getDictionaryRows(), columnStats);
         }
+        return new Sheet(sheetName, index, columnTypes, headerList,
+                contentHandler.getValueList(), columnStats);
     }
 
     private void displayFilters() {
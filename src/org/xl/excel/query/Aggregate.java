@@ -0,0 +1,98 @@
+package org.xl.excel.query;
+
+import java.util.Locale;
+
+/**
+ * An aggregate function computed per group by a Query.
+ * <p>
+ * count() counts the rows, count(column) the non blank cells of the
+ * Column. sum, min, max and avg only take the numeric cells into account
+ * and are NaN for a group without any.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public final class Aggregate {
+
+    public enum Function {
+        COUNT,
+        SUM,
+        MIN,
+        MAX,
+        AVG
+    }
+
+    private final Function function;
+    private final String column;
+    private final String alias;
+
+    private Aggregate(Function function, String column, String alias) {
+        this.function = function;
+        this.column = column;
+        this.alias = alias;
+    }
+
+    /**
+     * Counts the rows of the group, named "count".
+     */
+    public static Aggregate count() {
+        return new Aggregate(Function.COUNT, null, "count");
+    }
+
+    public static Aggregate count(String column) {
+        return of(Function.COUNT, column);
+    }
+
+    public static Aggregate sum(String column) {
+        return of(Function.SUM, column);
+    }
+
+    public static Aggregate min(String column) {
+        return of(Function.MIN, column);
+    }
+
+    public static Aggregate max(String column) {
+        return of(Function.MAX, column);
+    }
+
+    public static Aggregate avg(String column) {
+        return of(Function.AVG, column);
+    }
+
+    private static Aggregate of(Function function, String column) {
+        if (null == column)
+            throw new IllegalArgumentException("Column is required");
+        return new Aggregate(function, column,
+                function.name().toLowerCase(Locale.ROOT) + "(" + column + ")");
+    }
+
+    /**
+     * Returns the same aggregate with another name for its result Column,
+     * by default the function and Column, like "sum(Amount)".
+     *
+     * @param alias
+     * @return Aggregate
+     */
+    public Aggregate as(String alias) {
+        return new Aggregate(function, column, alias);
+    }
+
+    public Function getFunction() {
+        return function;
+    }
+
+    /**
+     * Returns the Header of the aggregated Column, null for count().
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    @Override
+    public String toString() {
+        return alias;
+    }
+}
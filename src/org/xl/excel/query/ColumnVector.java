@@ -0,0 +1,209 @@
+package org.xl.excel.query;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.xl.excel.components.Sheet;
+
+/**
+ * The cells of one Column decoded once into arrays, so operators run over
+ * primitive values instead of splitting row Strings.
+ * <p>
+ * There are two views, each built on first use: the numeric view holds
+ * every cell as a double, NaN for blank cells and for the cells which are
+ * not numbers, which are flagged. The text view encodes the cells with a
+ * dictionary of the distinct values, code 0 is the blank cell, and ranks
+ * the dictionary so text can be sorted by comparing ints.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+final class ColumnVector {
+    private static final int DECODE_SPLIT = 16 * 1024;
+
+    private final Sheet sheet;
+    private final int column;
+    private final int rows;
+    private final String type;
+    private double[] numbers;
+    private long[] nonNumeric;
+    private int[] codes;
+    private String[] dictionary;
+    private int[] ranks;
+
+    ColumnVector(Sheet sheet, int column) {
+        this.sheet = sheet;
+        this.column = column;
+        this.rows = sheet.getRowCount();
+        this.type = column < sheet.getColumnTypes().size() ?
+                sheet.getColumnTypes().get(column) : "String";
+    }
+
+    int getColumn() {
+        return column;
+    }
+
+    int getRowCount() {
+        return rows;
+    }
+
+    String getType() {
+        return type;
+    }
+
+    /**
+     * Returns true for Number and Date Columns, which are compared by their
+     * numeric view.
+     */
+    boolean isNumeric() {
+        return "Number".equals(type) || "Date".equals(type);
+    }
+
+    boolean isDate() {
+        return "Date".equals(type);
+    }
+
+    String getCell(int row) {
+        return sheet.getCell(row, column);
+    }
+
+    /**
+     * Returns the cell values as numbers, NaN when blank or not a number.
+     */
+    synchronized double[] numbers(ForkJoinPool pool) {
+        if (null == numbers) {
+            double[] values = new double[rows];
+            long[] flags = new long[(rows + 63) >>> 6];
+            pool.invoke(new DecodeNumbers(values, flags, 0, rows));
+            nonNumeric = flags;
+            numbers = values;
+        }
+        return numbers;
+    }
+
+    /**
+     * Returns true when the cell is neither blank nor a number, only valid
+     * once the numeric view is built.
+     */
+    boolean isNonNumeric(int row) {
+        return (nonNumeric[row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Returns the dictionary code of every cell.
+     */
+    synchronized int[] codes() {
+        if (null == codes) {
+            int[] values = new int[rows];
+            Map<String, Integer> positions = new HashMap<String, Integer>();
+            String[] entries = new String[16];
+            entries[0] = "";
+            positions.put("", 0);
+            for (int row = 0; row < rows; row++) {
+                String cell = sheet.getCell(row, column);
+                Integer code = positions.get(cell);
+                if (null == code) {
+                    code = positions.size();
+                    positions.put(cell, code);
+                    if (code == entries.length)
+                        entries = Arrays.copyOf(entries, entries.length * 2);
+                    entries[code] = cell;
+                }
+                values[row] = code;
+            }
+            dictionary = Arrays.copyOf(entries, positions.size());
+            codes = values;
+        }
+        return codes;
+    }
+
+    /**
+     * Returns the distinct values of the text view by code.
+     */
+    synchronized String[] dictionary() {
+        codes();
+        return dictionary;
+    }
+
+    /**
+     * Returns the sort position of every dictionary code, blank first.
+     */
+    synchronized int[] ranks() {
+        if (null == ranks) {
+            final String[] entries = dictionary();
+            Integer[] order = new Integer[entries.length];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return entries[a].compareTo(entries[b]);
+                }
+            });
+            int[] positions = new int[entries.length];
+            for (int i = 0; i < order.length; i++)
+                positions[order[i]] = i;
+            ranks = positions;
+        }
+        return ranks;
+    }
+
+    /**
+     * Parses a cell as a number, NaN when it is blank or not a number.
+     * Grouping separators are ignored.
+     */
+    static double parse(String cell) {
+        int length = cell.length();
+        if (length == 0)
+            return Double.NaN;
+        char first = cell.charAt(0);
+        if ((first < '0' || first > '9') && first != '-' && first != '+' && first != '.')
+            return Double.NaN;
+        try {
+            return Double.parseDouble(cell.indexOf(',') < 0 ? cell : cell.replace(",", ""));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Decodes the numeric view over a range of rows, every task writes its
+     * own slots. The flags are set per 64 row word, so ranges are split at
+     * multiples of 64.
+     */
+    private class DecodeNumbers extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] values;
+        private final long[] flags;
+        private final int from;
+        private final int to;
+
+        DecodeNumbers(double[] values, long[] flags, int from, int to) {
+            this.values = values;
+            this.flags = flags;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= DECODE_SPLIT) {
+                for (int row = from; row < to; row++) {
+                    String cell = sheet.getCell(row, column);
+                    double value = parse(cell);
+                    values[row] = value;
+                    if (Double.isNaN(value) && cell.length() > 0)
+                        flags[row >>> 6] |= 1L << row;
+                }
+                return;
+            }
+            int middle = ((from + to) >>> 1) & ~63;
+            invokeAll(new DecodeNumbers(values, flags, from, middle),
+                    new DecodeNumbers(values, flags, middle, to));
+        }
+    }
+}
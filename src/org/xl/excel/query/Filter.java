@@ -0,0 +1,163 @@
+package org.xl.excel.query;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xl.excel.parser.CellPredicate;
+import org.xl.excel.parser.RowPredicate;
+
+/**
+ * A RowPredicate evaluated on the Columns of a SheetTable, a vector of rows
+ * at a time.
+ * <p>
+ * Each condition fills a mask for the rows of the vector from the decoded
+ * Column: Number and Date Columns test the numeric view, other Columns
+ * test every distinct value of the dictionary once and look the result up
+ * by code. A value of these Columns which reads as a number is tested as
+ * a number or as its text, so a Column holding both matches numeric
+ * conditions on its numbers. AND and OR skip their remaining operands
+ * once the mask is decided for every row of the vector.
+ * <p>
+ * Built before the query forks, evaluate() is then safe to call from
+ * several threads.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+final class Filter {
+    private static Logger LOGGER = LoggerFactory.getLogger(Filter.class);
+
+    private final RowPredicate.Operator operator;
+    private final Filter[] operands;
+    private final CellPredicate test;
+    private final boolean blank;
+    //Numeric view of Number and Date Columns
+    private final ColumnVector vector;
+    private final double[] numbers;
+    //Result per dictionary code for the other Columns
+    private final int[] codes;
+    private final boolean[] results;
+
+    Filter(RowPredicate predicate, SheetTable table, ForkJoinPool pool) {
+        this.operator = predicate.getOperator();
+        if (RowPredicate.Operator.COLUMN != operator) {
+            List<RowPredicate> children = predicate.getOperands();
+            operands = new Filter[children.size()];
+            for (int i = 0; i < operands.length; i++)
+                operands[i] = new Filter(children.get(i), table, pool);
+            test = null;
+            blank = false;
+            vector = null;
+            numbers = null;
+            codes = null;
+            results = null;
+            return;
+        }
+        operands = null;
+        test = predicate.getTest();
+        blank = test.blank();
+        ColumnVector column = table.vector(predicate.getColumn());
+        if (null == column) {
+            LOGGER.warn("Sheet has no Column '" + predicate.getColumn() +
+                    "', its cells are tested as blank");
+            vector = null;
+            numbers = null;
+            codes = null;
+            results = null;
+        } else if (column.isNumeric()) {
+            vector = column;
+            numbers = column.numbers(pool);
+            codes = null;
+            results = null;
+        } else {
+            vector = null;
+            numbers = null;
+            codes = column.codes();
+            String[] dictionary = column.dictionary();
+            boolean booleans = "Boolean".equals(column.getType());
+            results = new boolean[dictionary.length];
+            for (int code = 0; code < dictionary.length; code++)
+                results[code] = test(dictionary[code], booleans);
+        }
+    }
+
+    private boolean test(String value, boolean booleans) {
+        if (value.isEmpty())
+            return blank;
+        if (booleans && ("TRUE".equalsIgnoreCase(value) || "FALSE".equalsIgnoreCase(value)))
+            return test.booleanValue("TRUE".equalsIgnoreCase(value));
+        if (value.startsWith("ERROR:"))
+            return test.error(value);
+        double number = ColumnVector.parse(value);
+        if (!Double.isNaN(number) && test.number(number, false))
+            return true;
+        return test.text(value);
+    }
+
+    /**
+     * Sets mask[i] to whether row from + i matches, for the rows up to
+     * to.
+     */
+    void evaluate(int from, int to, boolean[] mask) {
+        int length = to - from;
+        switch (operator) {
+            case COLUMN:
+                if (null != numbers) {
+                    boolean date = vector.isDate();
+                    for (int i = 0; i < length; i++) {
+                        int row = from + i;
+                        double value = numbers[row];
+                        if (!Double.isNaN(value))
+                            mask[i] = test.number(value, date);
+                        else if (vector.isNonNumeric(row))
+                            mask[i] = testText(row);
+                        else
+                            mask[i] = blank;
+                    }
+                } else if (null != codes) {
+                    for (int i = 0; i < length; i++)
+                        mask[i] = results[codes[from + i]];
+                } else {
+                    for (int i = 0; i < length; i++)
+                        mask[i] = blank;
+                }
+                break;
+            case NOT:
+                operands[0].evaluate(from, to, mask);
+                for (int i = 0; i < length; i++)
+                    mask[i] = !mask[i];
+                break;
+            case AND:
+            case OR:
+                boolean and = RowPredicate.Operator.AND == operator;
+                operands[0].evaluate(from, to, mask);
+                boolean[] operand = new boolean[length];
+                for (int o = 1; o < operands.length && !decided(mask, length, and); o++) {
+                    operands[o].evaluate(from, to, operand);
+                    for (int i = 0; i < length; i++)
+                        mask[i] = and ? mask[i] && operand[i] : mask[i] || operand[i];
+                }
+                break;
+        }
+    }
+
+    /**
+     * Tests a cell of a numeric Column which is not a number as text.
+     */
+    private boolean testText(int row) {
+        String cell = vector.getCell(row);
+        return cell.startsWith("ERROR:") ? test.error(cell) : test.text(cell);
+    }
+
+    /**
+     * Returns true when every row is false for AND, or true for OR.
+     */
+    private static boolean decided(boolean[] mask, int length, boolean and) {
+        for (int i = 0; i < length; i++) {
+            if (mask[i] == and)
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,198 @@
+package org.xl.excel.query;
+
+import java.util.Arrays;
+
+/**
+ * The groups of a group by and their aggregate states, keyed by the
+ * dictionary codes of the key Columns.
+ * <p>
+ * Groups are numbered in the order they are found. The key codes of all
+ * groups are kept in one int array and found through an open addressing
+ * table of group numbers, so looking up a row's group does not create any
+ * objects. Every aggregate keeps a count, sum, min and max per group in
+ * parallel arrays.
+ * <p>
+ * Each fork/join task fills its own GroupTable, the tables are merged as
+ * the tasks join. The codes come from the shared dictionaries of the
+ * SheetTable, so equal keys have equal codes in every table.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+final class GroupTable {
+    private final int keyCount;
+    private final int aggregates;
+    private int groups;
+    private int[] keys;
+    private int[] slots;
+    private long[] rows;
+    private long[][] counts;
+    private double[][] sums;
+    private double[][] mins;
+    private double[][] maxs;
+
+    GroupTable(int keyCount, int aggregates) {
+        this.keyCount = keyCount;
+        this.aggregates = aggregates;
+        int capacity = 16;
+        this.keys = new int[capacity * keyCount];
+        this.slots = new int[capacity * 2];
+        this.rows = new long[capacity];
+        this.counts = new long[aggregates][capacity];
+        this.sums = new double[aggregates][capacity];
+        this.mins = new double[aggregates][capacity];
+        this.maxs = new double[aggregates][capacity];
+    }
+
+    int getGroupCount() {
+        return groups;
+    }
+
+    /**
+     * Returns the group of the row with the key codes taken from the key
+     * Columns, adding the group when it is new.
+     */
+    int group(int[][] keyCodes, int row) {
+        int hash = 0;
+        for (int k = 0; k < keyCount; k++)
+            hash = hash * 31 + keyCodes[k][row];
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int group = slots[slot] - 1;
+            if (group < 0)
+                return add(slot, keyCodes, row);
+            if (sameKey(group, keyCodes, row))
+                return group;
+        }
+    }
+
+    private boolean sameKey(int group, int[][] keyCodes, int row) {
+        int start = group * keyCount;
+        for (int k = 0; k < keyCount; k++) {
+            if (keys[start + k] != keyCodes[k][row])
+                return false;
+        }
+        return true;
+    }
+
+    private int add(int slot, int[][] keyCodes, int row) {
+        int group = newGroup();
+        for (int k = 0; k < keyCount; k++)
+            keys[group * keyCount + k] = keyCodes[k][row];
+        slots[slot] = group + 1;
+        if (groups * 2 > slots.length)
+            rehash();
+        return group;
+    }
+
+    private int newGroup() {
+        if (groups == rows.length) {
+            int capacity = rows.length * 2;
+            keys = Arrays.copyOf(keys, capacity * keyCount);
+            rows = Arrays.copyOf(rows, capacity);
+            for (int a = 0; a < aggregates; a++) {
+                counts[a] = Arrays.copyOf(counts[a], capacity);
+                sums[a] = Arrays.copyOf(sums[a], capacity);
+                mins[a] = Arrays.copyOf(mins[a], capacity);
+                maxs[a] = Arrays.copyOf(maxs[a], capacity);
+            }
+        }
+        int group = groups++;
+        for (int a = 0; a < aggregates; a++) {
+            mins[a][group] = Double.NaN;
+            maxs[a][group] = Double.NaN;
+        }
+        return group;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int group = 0; group < groups; group++) {
+            int hash = 0;
+            for (int k = 0; k < keyCount; k++)
+                hash = hash * 31 + keys[group * keyCount + k];
+            int slot = mix(hash) & mask;
+            while (slots[slot] != 0)
+                slot = (slot + 1) & mask;
+            slots[slot] = group + 1;
+        }
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    void addRow(int group) {
+        rows[group]++;
+    }
+
+    /**
+     * Counts a non blank cell which is not a number.
+     */
+    void addCell(int aggregate, int group) {
+        counts[aggregate][group]++;
+    }
+
+    void addNumber(int aggregate, int group, double value) {
+        counts[aggregate][group]++;
+        sums[aggregate][group] += value;
+        double min = mins[aggregate][group];
+        if (Double.isNaN(min) || value < min)
+            mins[aggregate][group] = value;
+        double max = maxs[aggregate][group];
+        if (Double.isNaN(max) || value > max)
+            maxs[aggregate][group] = value;
+    }
+
+    /**
+     * Adds the groups of the other table, combining the states of the
+     * groups both have.
+     */
+    void merge(GroupTable other) {
+        int[][] otherKeys = new int[keyCount][1];
+        for (int source = 0; source < other.groups; source++) {
+            for (int k = 0; k < keyCount; k++)
+                otherKeys[k][0] = other.keys[source * keyCount + k];
+            int group = group(otherKeys, 0);
+            rows[group] += other.rows[source];
+            for (int a = 0; a < aggregates; a++) {
+                counts[a][group] += other.counts[a][source];
+                sums[a][group] += other.sums[a][source];
+                mins[a][group] = min(mins[a][group], other.mins[a][source]);
+                maxs[a][group] = max(maxs[a][group], other.maxs[a][source]);
+            }
+        }
+    }
+
+    private static double min(double a, double b) {
+        return Double.isNaN(a) ? b : Double.isNaN(b) ? a : Math.min(a, b);
+    }
+
+    private static double max(double a, double b) {
+        return Double.isNaN(a) ? b : Double.isNaN(b) ? a : Math.max(a, b);
+    }
+
+    int getKey(int group, int key) {
+        return keys[group * keyCount + key];
+    }
+
+    /**
+     * Returns the value of the aggregate for the group.
+     */
+    double getValue(int group, int aggregate, Aggregate.Function function, boolean allRows) {
+        switch (function) {
+            case COUNT:
+                return allRows ? rows[group] : counts[aggregate][group];
+            case SUM:
+                return counts[aggregate][group] == 0 ? Double.NaN : sums[aggregate][group];
+            case MIN:
+                return mins[aggregate][group];
+            case MAX:
+                return maxs[aggregate][group];
+            default:
+                long count = counts[aggregate][group];
+                return count == 0 ? Double.NaN : sums[aggregate][group] / count;
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package org.xl.excel.query;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xl.excel.components.Sheet;
+
+/**
+ * Joins the rows of two Sheets on equal key cells, for example the Orders
+ * of a workbook to the Customers of another.
+ * <p>
+ * The side with fewer rows is the build side: its key Column is hashed
+ * once, then the rows of the other side are split into ranges which probe
+ * the hash table as fork/join tasks. Both key Columns are dictionary
+ * encoded by the SheetTable, so every distinct key is hashed once per side
+ * and probing a row is an array lookup.
+ * <p>
+ * When the hash table would take more than the memory budget the join
+ * spills: the keys of both sides are written to partition files in the
+ * spill directory by the hash of the key, and each pair of partitions is
+ * joined on its own, in parallel, with a hash table of that partition only.
+ * The files are deleted once the join is done.
+ * <p>
+ * Blank keys never match. When both key Columns are Number Columns keys
+ * are compared by value, so 7 matches 7.0, otherwise by their text. The
+ * result holds the Columns of the left Sheet followed by those of the right
+ * Sheet, in the order of the left rows and then of the right rows. A right
+ * Header which is also a left Header is prefixed with the right Sheet Name.
+ * An inner join keeps the matching rows only, a left join also keeps the
+ * left rows without a match, with blank right Columns.
+ *
+ * <pre>
+ * Join join = new Join(orders, customers);
+ * join.setKeys("CustomerId", "Id");
+ * join.setType(Join.Type.LEFT);
+ * QueryResult result = join.execute();
+ * </pre>
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class Join {
+    private static Logger LOGGER = LoggerFactory.getLogger(Join.class);
+
+    public enum Type {
+        INNER,
+        LEFT
+    }
+
+    private static final int SPLIT_ROWS = 32 * 1024;
+    private static final int MAX_PARTITIONS = 1024;
+    //Estimated hash table bytes per build row besides the key chars
+    private static final int ROW_BYTES = 64;
+    private static final long NO_ROW = -1;
+
+    private final SheetTable left;
+    private final SheetTable right;
+    private String leftKey;
+    private String rightKey;
+    private Type type = Type.INNER;
+    private long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+    private File spillDirectory = new File(System.getProperty("java.io.tmpdir"));
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    public Join(Sheet left, Sheet right) {
+        this(new SheetTable(left), new SheetTable(right));
+    }
+
+    /**
+     * Joins two SheetTables, reusing the Columns they already decoded.
+     */
+    public Join(SheetTable left, SheetTable right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * Sets the Headers of the key Columns of the left and right Sheet.
+     */
+    public void setKeys(String leftKey, String rightKey) {
+        this.leftKey = leftKey;
+        this.rightKey = rightKey;
+    }
+
+    /**
+     * Sets the join Type, INNER by default.
+     */
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * Sets the bytes the hash table of the build side may take before the
+     * join spills to disk, a quarter of the maximum heap by default.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget <= 0)
+            throw new IllegalArgumentException("Memory budget must be positive: " + memoryBudget);
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Sets the directory of the partition files, java.io.tmpdir by default.
+     */
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Runs the join.
+     *
+     * @return QueryResult
+     * @throws RuntimeException when a key Column is not found
+     * @throws UncheckedIOException when the partition files cannot be
+     *                              written or read
+     */
+    public QueryResult execute() {
+        if (null == leftKey || null == rightKey)
+            throw new IllegalStateException("The keys are not set");
+        ColumnVector leftVector = left.vector(left.columnIndex(leftKey));
+        ColumnVector rightVector = right.vector(right.columnIndex(rightKey));
+        boolean buildLeft = left.getRowCount() < right.getRowCount();
+        Side build = new Side(buildLeft ? leftVector : rightVector, buildLeft);
+        Side probe = new Side(buildLeft ? rightVector : leftVector, !buildLeft);
+        boolean numeric = "Number".equals(leftVector.getType()) &&
+                "Number".equals(rightVector.getType());
+
+        long estimate = estimate(build.vector);
+        LongList pairs;
+        boolean ordered;
+        if (estimate <= memoryBudget) {
+            pairs = hashJoin(build, probe, numeric);
+            ordered = !buildLeft;
+        } else {
+            int partitions = partitions(estimate);
+            LOGGER.info("Join build side of about {} bytes is over the budget of {}, spilling to {} partitions",
+                    estimate, memoryBudget, partitions);
+            pairs = spillJoin(build, probe, numeric, partitions);
+            ordered = false;
+        }
+        if (Type.LEFT == type && buildLeft) {
+            addUnmatched(pairs);
+            ordered = false;
+        }
+        long[] sorted = Arrays.copyOf(pairs.values, pairs.size);
+        if (!ordered)
+            Arrays.parallelSort(sorted);
+        return result(sorted);
+    }
+
+    /**
+     * The rows of one side and whether it is the left Sheet.
+     */
+    private static class Side {
+        final ColumnVector vector;
+        final boolean isLeft;
+
+        Side(ColumnVector vector, boolean isLeft) {
+            this.vector = vector;
+            this.isLeft = isLeft;
+        }
+
+        long pair(int row, long otherRow) {
+            return isLeft ? pack(row, otherRow) : pack(otherRow, row);
+        }
+    }
+
+    /**
+     * Packs a result row so the pairs sort by the left row and then by the
+     * right row, with the unmatched right row first.
+     */
+    private static long pack(long leftRow, long rightRow) {
+        return leftRow << 32 | ((rightRow + 1) & 0xFFFFFFFFL);
+    }
+
+    private static int leftRow(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    private static int rightRow(long pair) {
+        return (int) (pair & 0xFFFFFFFFL) - 1;
+    }
+
+    private static String key(String cell, boolean numeric) {
+        if (numeric) {
+            double value = ColumnVector.parse(cell);
+            if (!Double.isNaN(value))
+                return QueryResult.format(value);
+        }
+        return cell;
+    }
+
+    private long estimate(ColumnVector build) {
+        int rows = build.getRowCount();
+        long bytes = 0;
+        for (int row = 0; row < rows; row++)
+            bytes += ROW_BYTES + 2L * build.getCell(row).length();
+        return bytes;
+    }
+
+    /**
+     * Returns enough partitions for every pool thread to hold the hash
+     * table of a partition within the budget.
+     */
+    private int partitions(long estimate) {
+        long perPartition = Math.max(1, memoryBudget / pool.getParallelism());
+        long needed = (estimate + perPartition - 1) / perPartition;
+        int partitions = 2;
+        while (partitions < needed && partitions < MAX_PARTITIONS)
+            partitions *= 2;
+        return partitions;
+    }
+
+    private LongList hashJoin(Side build, Side probe, boolean numeric) {
+        int[] buildCodes = build.vector.codes();
+        String[] buildDictionary = build.vector.dictionary();
+        //Chains the build rows of every dictionary code in row order
+        Map<String, Integer> keyCodes = new HashMap<String, Integer>();
+        int[] keyOf = new int[buildDictionary.length];
+        keyOf[0] = -1;
+        for (int code = 1; code < buildDictionary.length; code++) {
+            String key = key(buildDictionary[code], numeric);
+            Integer keyCode = keyCodes.get(key);
+            if (null == keyCode) {
+                keyCode = keyCodes.size();
+                keyCodes.put(key, keyCode);
+            }
+            keyOf[code] = keyCode;
+        }
+        int[] heads = new int[keyCodes.size()];
+        Arrays.fill(heads, -1);
+        int[] next = new int[buildCodes.length];
+        for (int row = buildCodes.length - 1; row >= 0; row--) {
+            int keyCode = keyOf[buildCodes[row]];
+            if (keyCode >= 0) {
+                next[row] = heads[keyCode];
+                heads[keyCode] = row;
+            }
+        }
+        String[] probeDictionary = probe.vector.dictionary();
+        int[] probeKeys = new int[probeDictionary.length];
+        probeKeys[0] = -1;
+        for (int code = 1; code < probeDictionary.length; code++) {
+            Integer keyCode = keyCodes.get(key(probeDictionary[code], numeric));
+            probeKeys[code] = null == keyCode ? -1 : keyCode;
+        }
+        int[] probeCodes = probe.vector.codes();
+        return pool.invoke(new ProbeTask(probe, probeCodes, probeKeys, heads, next,
+                0, probeCodes.length));
+    }
+
+    private class ProbeTask extends RecursiveTask<LongList> {
+        private static final long serialVersionUID = 1L;
+
+        private final Side probe;
+        private final int[] probeCodes;
+        private final int[] probeKeys;
+        private final int[] heads;
+        private final int[] next;
+        private final int from;
+        private final int to;
+
+        ProbeTask(Side probe, int[] probeCodes, int[] probeKeys, int[] heads, int[] next,
+                  int from, int to) {
+            this.probe = probe;
+            this.probeCodes = probeCodes;
+            this.probeKeys = probeKeys;
+            this.heads = heads;
+            this.next = next;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected LongList compute() {
+            if (to - from > SPLIT_ROWS) {
+                int middle = (from + to) >>> 1;
+                ProbeTask second = new ProbeTask(probe, probeCodes, probeKeys, heads, next,
+                        middle, to);
+                second.fork();
+                LongList first = new ProbeTask(probe, probeCodes, probeKeys, heads, next,
+                        from, middle).compute();
+                first.add(second.join());
+                return first;
+            }
+            LongList pairs = new LongList();
+            boolean keepUnmatched = Type.LEFT == type && probe.isLeft;
+            for (int row = from; row < to; row++) {
+                int keyCode = probeKeys[probeCodes[row]];
+                if (keyCode < 0) {
+                    if (keepUnmatched)
+                        pairs.add(probe.pair(row, NO_ROW));
+                    continue;
+                }
+                for (int match = heads[keyCode]; match >= 0; match = next[match])
+                    pairs.add(probe.pair(row, match));
+            }
+            return pairs;
+        }
+    }
+
+    private LongList spillJoin(Side build, Side probe, boolean numeric, int partitions) {
+        File[] buildFiles = new File[partitions];
+        File[] probeFiles = new File[partitions];
+        LongList pairs = new LongList();
+        try {
+            partition(build, numeric, buildFiles, null);
+            partition(probe, numeric, probeFiles, Type.LEFT == type && probe.isLeft ? pairs : null);
+            List<PartitionTask> tasks = new ArrayList<PartitionTask>(partitions);
+            for (int p = 0; p < partitions; p++)
+                tasks.add(new PartitionTask(build, probe, buildFiles[p], probeFiles[p]));
+            for (PartitionTask task : tasks)
+                pool.execute(task);
+            for (PartitionTask task : tasks)
+                pairs.add(task.join());
+            return pairs;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            delete(buildFiles);
+            delete(probeFiles);
+        }
+    }
+
+    /**
+     * Writes the row and key of every non blank key to the partition file
+     * of its hash. Blank keys of the left side of a left join are added to
+     * the unmatched pairs straight away.
+     */
+    private void partition(Side side, boolean numeric, File[] files, LongList unmatched)
+            throws IOException {
+        int partitions = files.length;
+        int shift = 32 - Integer.numberOfTrailingZeros(partitions);
+        DataOutputStream[] outputs = new DataOutputStream[partitions];
+        try {
+            for (int p = 0; p < partitions; p++) {
+                files[p] = File.createTempFile("xl-join-", ".part", spillDirectory);
+                outputs[p] = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(files[p])));
+            }
+            int rows = side.vector.getRowCount();
+            for (int row = 0; row < rows; row++) {
+                String cell = side.vector.getCell(row);
+                if (cell.isEmpty()) {
+                    if (null != unmatched)
+                        unmatched.add(side.pair(row, NO_ROW));
+                    continue;
+                }
+                String key = key(cell, numeric);
+                //The high bits, the partition HashMaps use the low bits
+                int p = (key.hashCode() * 0x9E3779B9) >>> shift;
+                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                outputs[p].writeInt(row);
+                outputs[p].writeInt(bytes.length);
+                outputs[p].write(bytes);
+            }
+        } finally {
+            for (DataOutputStream output : outputs) {
+                if (null != output)
+                    output.close();
+            }
+        }
+    }
+
+    private static void delete(File[] files) {
+        for (File file : files) {
+            if (null != file && !file.delete() && file.exists())
+                LOGGER.warn("Could not delete join partition {}", file);
+        }
+    }
+
+    /**
+     * Joins one partition: hashes the build rows of the partition file and
+     * probes it with the rows of the matching probe partition file.
+     */
+    private class PartitionTask extends RecursiveTask<LongList> {
+        private static final long serialVersionUID = 1L;
+
+        private final Side build;
+        private final Side probe;
+        private final File buildFile;
+        private final File probeFile;
+
+        PartitionTask(Side build, Side probe, File buildFile, File probeFile) {
+            this.build = build;
+            this.probe = probe;
+            this.buildFile = buildFile;
+            this.probeFile = probeFile;
+        }
+
+        @Override
+        protected LongList compute() {
+            final Map<String, IntList> table = new HashMap<String, IntList>();
+            final LongList pairs = new LongList();
+            try {
+                read(buildFile, new RecordHandler() {
+                    @Override
+                    public void record(int row, String key) {
+                        IntList rows = table.get(key);
+                        if (null == rows) {
+                            rows = new IntList();
+                            table.put(key, rows);
+                        }
+                        rows.add(row);
+                    }
+                });
+                final boolean keepUnmatched = Type.LEFT == type && probe.isLeft;
+                read(probeFile, new RecordHandler() {
+                    @Override
+                    public void record(int row, String key) {
+                        IntList rows = table.get(key);
+                        if (null == rows) {
+                            if (keepUnmatched)
+                                pairs.add(probe.pair(row, NO_ROW));
+                            return;
+                        }
+                        for (int i = 0; i < rows.size; i++)
+                            pairs.add(probe.pair(row, rows.values[i]));
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return pairs;
+        }
+    }
+
+    private interface RecordHandler {
+        void record(int row, String key);
+    }
+
+    private static void read(File file, RecordHandler handler) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            byte[] bytes = new byte[64];
+            while (true) {
+                int row;
+                try {
+                    row = input.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                int length = input.readInt();
+                if (length > bytes.length)
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                input.readFully(bytes, 0, length);
+                handler.record(row, new String(bytes, 0, length, StandardCharsets.UTF_8));
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Adds the left rows which are in none of the pairs, for a left join
+     * built on the left side.
+     */
+    private void addUnmatched(LongList pairs) {
+        boolean[] matched = new boolean[left.getRowCount()];
+        for (int i = 0; i < pairs.size; i++)
+            matched[leftRow(pairs.values[i])] = true;
+        for (int row = 0; row < matched.length; row++) {
+            if (!matched[row])
+                pairs.add(pack(row, NO_ROW));
+        }
+    }
+
+    private QueryResult result(long[] pairs) {
+        List<String> headers = new ArrayList<String>();
+        List<String> types = new ArrayList<String>();
+        List<Object> columns = new ArrayList<Object>();
+        addColumns(left, true, pairs, headers, types, columns);
+        addColumns(right, false, pairs, headers, types, columns);
+        return new QueryResult(headers, types, columns.toArray(), pairs.length);
+    }
+
+    private void addColumns(SheetTable table, boolean isLeft, long[] pairs, List<String> headers,
+                            List<String> types, List<Object> columns) {
+        List<String> headerList = table.getHeaderList();
+        for (int column = 0; column < headerList.size(); column++) {
+            ColumnVector vector = table.vector(column);
+            String[] cells = new String[pairs.length];
+            for (int i = 0; i < pairs.length; i++) {
+                int row = isLeft ? leftRow(pairs[i]) : rightRow(pairs[i]);
+                cells[i] = row < 0 ? "" : vector.getCell(row);
+            }
+            String header = headerList.get(column);
+            if (!isLeft && left.getSheet().getColumnIndex(header, true) >= 0)
+                header = table.getSheet().getSheetName() + "." + header;
+            headers.add(header);
+            types.add(vector.getType());
+            columns.add(cells);
+        }
+    }
+
+    /**
+     * A growable int array.
+     */
+    private static class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * A growable long array of packed result rows.
+     */
+    private static class LongList {
+        long[] values = new long[64];
+        int size;
+
+        void add(long value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        void add(LongList other) {
+            if (size + other.size > values.length)
+                values = Arrays.copyOf(values, Math.max(size + other.size, values.length * 2));
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package org.xl.excel.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.xl.excel.components.Sheet;
+import org.xl.excel.parser.RowPredicate;
+
+/**
+ * Filters, projects, groups, aggregates and sorts the rows of a Sheet in
+ * memory.
+ * <p>
+ * The Columns the query uses are decoded once into typed arrays by the
+ * SheetTable. The rows are then split into ranges which run as fork/join
+ * tasks, each working through its range a vector of rows at a time: the
+ * filter fills a mask for the vector, the matching rows become a selection
+ * and every operator loops over the selection one Column at a time. Groups
+ * are kept in a hash table per task and merged as the tasks join, top-N
+ * keeps the best rows of each task in a bounded heap.
+ *
+ * <pre>
+ * Query query = new Query(sheet);
+ * query.setFilter(RowPredicate.equalTo("Status", "OPEN"));
+ * query.setGroupBy("Region");
+ * query.setAggregates(Aggregate.count(), Aggregate.sum("Amount"));
+ * query.setOrderBy("sum(Amount)", false);
+ * query.setLimit(10);
+ * QueryResult result = query.execute();
+ * </pre>
+ * <p>
+ * Without a group by or aggregates the result holds the selected Columns,
+ * all by default, of the matching rows in Sheet order or the order by
+ * Column. With them it holds one row per group: the group by Columns
+ * followed by the aggregates, and setOrderBy() names one of these. Number
+ * and Date Columns sort by value, other Columns by text, blank and
+ * non numeric cells last.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class Query {
+    private static final int SPLIT_ROWS = 32 * 1024;
+    private static final int VECTOR_ROWS = 1024;
+
+    private final SheetTable table;
+    private RowPredicate filter;
+    private List<String> select = Collections.emptyList();
+    private List<String> groupBy = Collections.emptyList();
+    private List<Aggregate> aggregates = Collections.emptyList();
+    private String orderBy;
+    private boolean ascending = true;
+    private int limit = -1;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    /**
+     * Queries a Sheet, decoding the Columns for this query only.
+     */
+    public Query(Sheet sheet) {
+        this(new SheetTable(sheet));
+    }
+
+    /**
+     * Queries a SheetTable, which keeps the decoded Columns for the next
+     * queries.
+     */
+    public Query(SheetTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Keeps the rows matching the predicate, null for all rows.
+     */
+    public void setFilter(RowPredicate filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Sets the Columns returned when the query neither groups nor
+     * aggregates, all Columns when none are set.
+     */
+    public void setSelect(String... columns) {
+        this.select = Arrays.asList(columns);
+    }
+
+    public void setGroupBy(String... columns) {
+        this.groupBy = Arrays.asList(columns);
+    }
+
+    public void setAggregates(Aggregate... aggregates) {
+        this.aggregates = Arrays.asList(aggregates);
+    }
+
+    /**
+     * Sorts the result by the Column, null to keep the Sheet order.
+     */
+    public void setOrderBy(String column, boolean ascending) {
+        this.orderBy = column;
+        this.ascending = ascending;
+    }
+
+    /**
+     * Returns at most the number of rows, -1 for all. With an order by
+     * these are the top rows.
+     */
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Sets the pool the query runs on, the common pool by default.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Runs the query.
+     *
+     * @return QueryResult
+     * @throws RuntimeException when a Column is not found
+     */
+    public QueryResult execute() {
+        Filter rowFilter = null == filter ? null : new Filter(filter, table, pool);
+        if (groupBy.isEmpty() && aggregates.isEmpty())
+            return select(rowFilter);
+        if (!select.isEmpty())
+            throw new IllegalStateException("Select is not used with group by or aggregates");
+        return group(rowFilter);
+    }
+
+    private QueryResult select(Filter rowFilter) {
+        List<String> headers = select.isEmpty() ? table.getHeaderList() : select;
+        int[] columns = new int[headers.size()];
+        for (int i = 0; i < columns.length; i++)
+            columns[i] = table.columnIndex(headers.get(i));
+        int[] rows;
+        int rowCount = table.getRowCount();
+        if (null == orderBy) {
+            IntList selected = pool.invoke(new SelectTask(rowFilter, 0, rowCount));
+            rows = Arrays.copyOf(selected.values, limit >= 0 ?
+                    Math.min(limit, selected.size) : selected.size);
+        } else {
+            RowOrder order = new RowOrder(table.vector(table.columnIndex(orderBy)), ascending, pool);
+            if (limit >= 0) {
+                PriorityQueue<Integer> top = pool.invoke(new TopTask(rowFilter, 0, rowCount, order));
+                rows = new int[top.size()];
+                for (int i = rows.length - 1; i >= 0; i--)
+                    rows[i] = top.poll();
+            } else {
+                IntList selected = pool.invoke(new SelectTask(rowFilter, 0, rowCount));
+                rows = order.sort(selected.values, selected.size);
+            }
+        }
+        Object[] values = new Object[columns.length];
+        List<String> types = new ArrayList<String>();
+        for (int c = 0; c < columns.length; c++) {
+            ColumnVector vector = table.vector(columns[c]);
+            String[] cells = new String[rows.length];
+            for (int i = 0; i < rows.length; i++)
+                cells[i] = vector.getCell(rows[i]);
+            values[c] = cells;
+            types.add(vector.getType());
+        }
+        List<String> resultHeaders = new ArrayList<String>();
+        for (int column : columns)
+            resultHeaders.add(table.getHeaderList().get(column));
+        return new QueryResult(resultHeaders, types, values, rows.length);
+    }
+
+    private QueryResult group(Filter rowFilter) {
+        int[][] keyCodes = new int[groupBy.size()][];
+        ColumnVector[] keys = new ColumnVector[groupBy.size()];
+        for (int k = 0; k < keys.length; k++) {
+            keys[k] = table.vector(table.columnIndex(groupBy.get(k)));
+            keyCodes[k] = keys[k].codes();
+        }
+        ColumnVector[] inputs = new ColumnVector[aggregates.size()];
+        double[][] numbers = new double[aggregates.size()][];
+        for (int a = 0; a < inputs.length; a++) {
+            String column = aggregates.get(a).getColumn();
+            if (null != column) {
+                inputs[a] = table.vector(table.columnIndex(column));
+                numbers[a] = inputs[a].numbers(pool);
+            }
+        }
+        GroupTable groups = pool.invoke(new GroupTask(rowFilter, 0, table.getRowCount(),
+                keyCodes, inputs, numbers));
+        //Aggregates over no groups still return one row
+        if (keys.length == 0 && groups.getGroupCount() == 0)
+            groups.group(keyCodes, 0);
+        int groupCount = groups.getGroupCount();
+        List<String> headers = new ArrayList<String>();
+        List<String> types = new ArrayList<String>();
+        Object[] values = new Object[keys.length + aggregates.size()];
+        for (int k = 0; k < keys.length; k++) {
+            String[] dictionary = keys[k].dictionary();
+            String[] cells = new String[groupCount];
+            for (int group = 0; group < groupCount; group++)
+                cells[group] = dictionary[groups.getKey(group, k)];
+            headers.add(table.getHeaderList().get(keys[k].getColumn()));
+            types.add(keys[k].getType());
+            values[k] = cells;
+        }
+        for (int a = 0; a < aggregates.size(); a++) {
+            Aggregate aggregate = aggregates.get(a);
+            double[] results = new double[groupCount];
+            for (int group = 0; group < groupCount; group++)
+                results[group] = groups.getValue(group, a, aggregate.getFunction(),
+                        null == inputs[a]);
+            headers.add(aggregate.getAlias());
+            types.add("Number");
+            values[keys.length + a] = results;
+        }
+        return sortGroups(headers, types, values, groupCount);
+    }
+
+    /**
+     * Applies the order by and limit to the grouped rows.
+     */
+    private QueryResult sortGroups(List<String> headers, List<String> types,
+                                   Object[] values, int groupCount) {
+        if (null == orderBy && (limit < 0 || limit >= groupCount))
+            return new QueryResult(headers, types, values, groupCount);
+        Integer[] order = new Integer[groupCount];
+        for (int i = 0; i < groupCount; i++)
+            order[i] = i;
+        if (null != orderBy) {
+            int column = -1;
+            for (int i = 0; i < headers.size() && column < 0; i++) {
+                if (headers.get(i).equalsIgnoreCase(orderBy))
+                    column = i;
+            }
+            if (column < 0)
+                throw new RuntimeException("Order by Column '" + orderBy +
+                        "' is not a group by Column or aggregate");
+            Arrays.sort(order, groupComparator(values[column], types.get(column)));
+        }
+        int rowCount = limit < 0 ? groupCount : Math.min(limit, groupCount);
+        Object[] sorted = new Object[values.length];
+        for (int c = 0; c < values.length; c++) {
+            if (values[c] instanceof double[]) {
+                double[] source = (double[]) values[c];
+                double[] target = new double[rowCount];
+                for (int i = 0; i < rowCount; i++)
+                    target[i] = source[order[i]];
+                sorted[c] = target;
+            } else {
+                String[] source = (String[]) values[c];
+                String[] target = new String[rowCount];
+                for (int i = 0; i < rowCount; i++)
+                    target[i] = source[order[i]];
+                sorted[c] = target;
+            }
+        }
+        return new QueryResult(headers, types, sorted, rowCount);
+    }
+
+    private Comparator<Integer> groupComparator(Object column, String type) {
+        final double[] numbers;
+        final String[] texts;
+        if (column instanceof double[]) {
+            numbers = (double[]) column;
+            texts = null;
+        } else if ("Number".equals(type) || "Date".equals(type)) {
+            texts = (String[]) column;
+            numbers = new double[texts.length];
+            for (int i = 0; i < numbers.length; i++)
+                numbers[i] = ColumnVector.parse(texts[i]);
+        } else {
+            numbers = null;
+            texts = (String[]) column;
+        }
+        return new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int result = null != numbers ?
+                        RowOrder.compareNumbers(numbers[a], numbers[b], ascending) :
+                        RowOrder.compareTexts(texts[a], texts[b], ascending);
+                return result != 0 ? result : Integer.compare(a, b);
+            }
+        };
+    }
+
+    /**
+     * Returns the rows of the vector the filter keeps, in order.
+     */
+    private static int select(Filter rowFilter, int from, int to, boolean[] mask, int[] selection) {
+        int count = 0;
+        if (null == rowFilter) {
+            for (int row = from; row < to; row++)
+                selection[count++] = row;
+            return count;
+        }
+        rowFilter.evaluate(from, to, mask);
+        for (int i = 0; i < to - from; i++) {
+            if (mask[i])
+                selection[count++] = from + i;
+        }
+        return count;
+    }
+
+    /**
+     * A range of rows worked through a vector at a time, split in halves
+     * until it is small enough. The partial results of the halves are
+     * merged.
+     */
+    private abstract class ScanTask<T> extends RecursiveTask<T> {
+        private static final long serialVersionUID = 1L;
+
+        final Filter rowFilter;
+        final int from;
+        final int to;
+
+        ScanTask(Filter rowFilter, int from, int to) {
+            this.rowFilter = rowFilter;
+            this.from = from;
+            this.to = to;
+        }
+
+        abstract T create();
+
+        abstract void consume(T partial, int[] selection, int count);
+
+        abstract T merge(T left, T right);
+
+        abstract ScanTask<T> split(int from, int to);
+
+        boolean isDone(T partial) {
+            return false;
+        }
+
+        @Override
+        protected T compute() {
+            if (to - from > SPLIT_ROWS) {
+                int middle = (from + to) >>> 1;
+                ScanTask<T> right = split(middle, to);
+                right.fork();
+                T left = split(from, middle).compute();
+                return merge(left, right.join());
+            }
+            T partial = create();
+            boolean[] mask = new boolean[VECTOR_ROWS];
+            int[] selection = new int[VECTOR_ROWS];
+            for (int start = from; start < to && !isDone(partial); start += VECTOR_ROWS) {
+                int end = Math.min(to, start + VECTOR_ROWS);
+                int count = select(rowFilter, start, end, mask, selection);
+                if (count > 0)
+                    consume(partial, selection, count);
+            }
+            return partial;
+        }
+    }
+
+    private class SelectTask extends ScanTask<IntList> {
+        private static final long serialVersionUID = 1L;
+
+        SelectTask(Filter rowFilter, int from, int to) {
+            super(rowFilter, from, to);
+        }
+
+        @Override
+        IntList create() {
+            return new IntList();
+        }
+
+        @Override
+        void consume(IntList partial, int[] selection, int count) {
+            partial.add(selection, count);
+        }
+
+        @Override
+        IntList merge(IntList left, IntList right) {
+            if (!isDone(left))
+                left.add(right.values, right.size);
+            return left;
+        }
+
+        @Override
+        boolean isDone(IntList partial) {
+            return null == orderBy && limit >= 0 && partial.size >= limit;
+        }
+
+        @Override
+        ScanTask<IntList> split(int from, int to) {
+            return new SelectTask(rowFilter, from, to);
+        }
+    }
+
+    /**
+     * Keeps the best rows in a heap with the worst of them on top.
+     */
+    private class TopTask extends ScanTask<PriorityQueue<Integer>> {
+        private static final long serialVersionUID = 1L;
+
+        private final RowOrder order;
+
+        TopTask(Filter rowFilter, int from, int to, RowOrder order) {
+            super(rowFilter, from, to);
+            this.order = order;
+        }
+
+        @Override
+        PriorityQueue<Integer> create() {
+            return new PriorityQueue<Integer>(Math.max(1, Math.min(limit, VECTOR_ROWS)) + 1,
+                    Collections.reverseOrder(order));
+        }
+
+        @Override
+        void consume(PriorityQueue<Integer> partial, int[] selection, int count) {
+            for (int i = 0; i < count; i++)
+                offer(partial, selection[i]);
+        }
+
+        private void offer(PriorityQueue<Integer> top, int row) {
+            if (top.size() < limit) {
+                top.add(row);
+            } else if (limit > 0 && order.compare(row, top.peek().intValue()) < 0) {
+                top.poll();
+                top.add(row);
+            }
+        }
+
+        @Override
+        PriorityQueue<Integer> merge(PriorityQueue<Integer> left, PriorityQueue<Integer> right) {
+            for (Integer row : right)
+                offer(left, row);
+            return left;
+        }
+
+        @Override
+        ScanTask<PriorityQueue<Integer>> split(int from, int to) {
+            return new TopTask(rowFilter, from, to, order);
+        }
+    }
+
+    private class GroupTask extends ScanTask<GroupTable> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[][] keyCodes;
+        private final ColumnVector[] inputs;
+        private final double[][] numbers;
+
+        GroupTask(Filter rowFilter, int from, int to, int[][] keyCodes,
+                  ColumnVector[] inputs, double[][] numbers) {
+            super(rowFilter, from, to);
+            this.keyCodes = keyCodes;
+            this.inputs = inputs;
+            this.numbers = numbers;
+        }
+
+        @Override
+        GroupTable create() {
+            return new GroupTable(keyCodes.length, inputs.length);
+        }
+
+        @Override
+        void consume(GroupTable partial, int[] selection, int count) {
+            int[] groups = new int[count];
+            for (int i = 0; i < count; i++) {
+                groups[i] = partial.group(keyCodes, selection[i]);
+                partial.addRow(groups[i]);
+            }
+            for (int a = 0; a < inputs.length; a++) {
+                if (null == inputs[a])
+                    continue;
+                double[] values = numbers[a];
+                boolean countsCells = Aggregate.Function.COUNT == aggregates.get(a).getFunction();
+                for (int i = 0; i < count; i++) {
+                    int row = selection[i];
+                    double value = values[row];
+                    if (!Double.isNaN(value))
+                        partial.addNumber(a, groups[i], value);
+                    else if (countsCells && inputs[a].isNonNumeric(row))
+                        partial.addCell(a, groups[i]);
+                }
+            }
+        }
+
+        @Override
+        GroupTable merge(GroupTable left, GroupTable right) {
+            left.merge(right);
+            return left;
+        }
+
+        @Override
+        ScanTask<GroupTable> split(int from, int to) {
+            return new GroupTask(rowFilter, from, to, keyCodes, inputs, numbers);
+        }
+    }
+
+    /**
+     * A growable int array.
+     */
+    private static class IntList {
+        int[] values = new int[64];
+        int size;
+
+        void add(int[] rows, int count) {
+            if (size + count > values.length)
+                values = Arrays.copyOf(values, Math.max(size + count, values.length * 2));
+            System.arraycopy(rows, 0, values, size, count);
+            size += count;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.xl.excel.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.xl.excel.components.Sheet;
+
+/**
+ * The rows a Query returned, held column major. Columns taken from the
+ * Sheet keep their cell text, aggregates are numbers.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class QueryResult {
+    private final List<String> headerList;
+    private final List<String> columnTypes;
+    //String[] or double[] per Column
+    private final Object[] columns;
+    private final int rowCount;
+
+    QueryResult(List<String> headerList, List<String> columnTypes, Object[] columns,
+                int rowCount) {
+        this.headerList = Collections.unmodifiableList(headerList);
+        this.columnTypes = Collections.unmodifiableList(columnTypes);
+        this.columns = columns;
+        this.rowCount = rowCount;
+    }
+
+    public List<String> getHeaderList() {
+        return headerList;
+    }
+
+    /**
+     * Returns the Column Types, those of the Sheet for its Columns and
+     * Number for aggregates.
+     */
+    public List<String> getColumnTypes() {
+        return columnTypes;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the index of the Column with the Header, ignoring case, -1
+     * when there is none.
+     *
+     * @param header
+     * @return columnIndex
+     */
+    public int getColumnIndex(String header) {
+        for (int i = 0; i < headerList.size(); i++) {
+            if (headerList.get(i).equalsIgnoreCase(header))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the cell as text, numbers without a fraction are written
+     * without decimals and NaN as an empty String.
+     */
+    public String getString(int row, int column) {
+        checkRow(row);
+        Object values = columns[column];
+        if (values instanceof double[])
+            return format(((double[]) values)[row]);
+        return ((String[]) values)[row];
+    }
+
+    /**
+     * Returns the cell as a number, NaN when it is blank or not a number.
+     */
+    public double getNumber(int row, int column) {
+        checkRow(row);
+        Object values = columns[column];
+        if (values instanceof double[])
+            return ((double[]) values)[row];
+        return ColumnVector.parse(((String[]) values)[row]);
+    }
+
+    /**
+     * Returns a Double for aggregates and a String for Sheet Columns.
+     */
+    public Object getValue(int row, int column) {
+        checkRow(row);
+        Object values = columns[column];
+        if (values instanceof double[])
+            return ((double[]) values)[row];
+        return ((String[]) values)[row];
+    }
+
+    /**
+     * Returns the rows as a Sheet, for example to write them with an
+     * ExcelWriter.
+     *
+     * @param sheetName
+     * @param sheetIndex
+     * @return Sheet
+     */
+    public Sheet toSheet(String sheetName, int sheetIndex) {
+        List<String> rowList = new ArrayList<String>(rowCount);
+        StringBuilder line = new StringBuilder();
+        for (int row = 0; row < rowCount; row++) {
+            line.setLength(0);
+            for (int column = 0; column < columns.length; column++) {
+                if (column > 0)
+                    line.append(',');
+                line.append('"').append(getString(row, column)).append('"');
+            }
+            rowList.add(line.toString());
+        }
+        return new Sheet(sheetName, sheetIndex, new ArrayList<String>(columnTypes),
+                new ArrayList<String>(headerList), rowList);
+    }
+
+    static String format(double value) {
+        if (Double.isNaN(value))
+            return "";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15)
+            return Long.toString((long) value);
+        return Double.toString(value);
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rowCount)
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+    }
+
+    @Override
+    public String toString() {
+        return rowCount + " rows of " + headerList;
+    }
+}
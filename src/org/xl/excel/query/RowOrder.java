@@ -0,0 +1,84 @@
+package org.xl.excel.query;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Orders rows by one Column, Number and Date Columns by their numeric
+ * view and other Columns by the rank of their dictionary code. Blank and
+ * non numeric cells sort last in both directions, equal cells keep the
+ * Sheet order.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+final class RowOrder implements Comparator<Integer> {
+    private final boolean ascending;
+    private final double[] numbers;
+    private final int[] codes;
+    private final int[] ranks;
+
+    RowOrder(ColumnVector vector, boolean ascending, ForkJoinPool pool) {
+        this.ascending = ascending;
+        if (vector.isNumeric()) {
+            this.numbers = vector.numbers(pool);
+            this.codes = null;
+            this.ranks = null;
+        } else {
+            this.numbers = null;
+            this.codes = vector.codes();
+            this.ranks = vector.ranks();
+        }
+    }
+
+    @Override
+    public int compare(Integer a, Integer b) {
+        return compare(a.intValue(), b.intValue());
+    }
+
+    int compare(int a, int b) {
+        int result;
+        if (null != numbers) {
+            result = compareNumbers(numbers[a], numbers[b], ascending);
+        } else {
+            //Rank 0 is the blank cell
+            int rankA = ranks[codes[a]];
+            int rankB = ranks[codes[b]];
+            if (rankA == 0 || rankB == 0)
+                result = Integer.compare(rankA == 0 ? 1 : 0, rankB == 0 ? 1 : 0);
+            else
+                result = ascending ? Integer.compare(rankA, rankB) : Integer.compare(rankB, rankA);
+        }
+        return result != 0 ? result : Integer.compare(a, b);
+    }
+
+    /**
+     * Returns the first rows sorted.
+     */
+    int[] sort(int[] rows, int count) {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++)
+            order[i] = rows[i];
+        Arrays.sort(order, this);
+        int[] sorted = new int[count];
+        for (int i = 0; i < count; i++)
+            sorted[i] = order[i];
+        return sorted;
+    }
+
+    static int compareNumbers(double a, double b, boolean ascending) {
+        boolean missingA = Double.isNaN(a);
+        boolean missingB = Double.isNaN(b);
+        if (missingA || missingB)
+            return Boolean.compare(missingA, missingB);
+        return ascending ? Double.compare(a, b) : Double.compare(b, a);
+    }
+
+    static int compareTexts(String a, String b, boolean ascending) {
+        boolean missingA = a.isEmpty();
+        boolean missingB = b.isEmpty();
+        if (missingA || missingB)
+            return Boolean.compare(missingA, missingB);
+        return ascending ? a.compareTo(b) : b.compareTo(a);
+    }
+}
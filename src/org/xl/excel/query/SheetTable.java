@@ -0,0 +1,61 @@
+package org.xl.excel.query;
+
+import java.util.List;
+
+import org.xl.excel.components.Sheet;
+
+/**
+ * A Sheet seen as typed Columns for queries. Every Column is decoded from
+ * the rows the first time a query uses it and kept, so queries run on the
+ * same SheetTable only decode each Column once.
+ * <p>
+ * Thread safe, queries may run on a SheetTable concurrently. The Sheet must
+ * not change while it is queried.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class SheetTable {
+    private final Sheet sheet;
+    private final ColumnVector[] vectors;
+
+    public SheetTable(Sheet sheet) {
+        this.sheet = sheet;
+        this.vectors = new ColumnVector[sheet.getHeaderList().size()];
+    }
+
+    public Sheet getSheet() {
+        return sheet;
+    }
+
+    public int getRowCount() {
+        return sheet.getRowCount();
+    }
+
+    public List<String> getHeaderList() {
+        return sheet.getHeaderList();
+    }
+
+    /**
+     * Returns the index of the Column, matched like
+     * Sheet.getColumnIndex().
+     *
+     * @throws RuntimeException when the Sheet has no such Column
+     */
+    int columnIndex(String header) {
+        return sheet.getColumnIndex(header, false);
+    }
+
+    /**
+     * Returns the decoded Column, null when the Sheet has no such Column.
+     */
+    ColumnVector vector(String header) {
+        int column = sheet.getColumnIndex(header, true);
+        return column < 0 ? null : vector(column);
+    }
+
+    synchronized ColumnVector vector(int column) {
+        if (null == vectors[column])
+            vectors[column] = new ColumnVector(sheet, column);
+        return vectors[column];
+    }
+}
@@ -0,0 +1,59 @@
+package org.xl.server;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.xl.excel.components.Sheet;
+
+/**
+ * Writes the parsed rows as CSV. The rows are written exactly as the parser
+ * produces them, preceded by a quoted header line.
+ * <p>
+ * When more than one Sheet is returned each Sheet starts with the same
+ * "name [index=n]:" line the XLSX to CSV converter prints.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+class CsvRowWriter extends RowWriter {
+    private final boolean sheetTitles;
+
+    CsvRowWriter(HttpExchange exchange, boolean sheetTitles) {
+        super(exchange, "text/csv; charset=UTF-8");
+        this.sheetTitles = sheetTitles;
+    }
+
+    @Override
+    public void startSheet(int sheetIndex, String sheetName) {
+        checkCancelled();
+        if (sheetTitles)
+            write("\n" + sheetName + " [index=" + sheetIndex + "]:\n");
+    }
+
+    @Override
+    public void headerRow(List<String> headers) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < headers.size(); i++) {
+            if (i > 0)
+                line.append(',');
+            line.append('"').append(headers.get(i)).append('"');
+        }
+        write(line.append('\n').toString());
+    }
+
+    @Override
+    public void row(String row) {
+        checkCancelled();
+        write(row);
+        write("\n");
+    }
+
+    @Override
+    public void endSheet(Sheet sheet) {
+    }
+
+    @Override
+    void finish() throws IOException {
+        out().flush();
+    }
+}
@@ -0,0 +1,22 @@
+package org.xl.server;
+
+/**
+ * How the ParseServer runs its requests.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public enum ExecutionMode {
+    /**
+     * Requests are handled on a fixed pool of platform threads and parsed on
+     * a bounded worker pool with a fixed size queue.
+     */
+    POOLED,
+    /**
+     * Every request is handled on its own virtual thread, so thousands of
+     * slow uploads do not need thousands of OS threads. Parsing itself runs
+     * on a pool with one platform thread per processor and admission is
+     * limited by the memory budget. Requires Java 21, older runtimes fall
+     * back to platform threads for the requests.
+     */
+    VIRTUAL
+}
@@ -0,0 +1,86 @@
+package org.xl.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.xl.excel.JsonLinesWriter;
+import org.xl.excel.components.ColumnBatch;
+import org.xl.excel.components.Sheet;
+import org.xl.excel.parser.BatchListener;
+
+/**
+ * Writes the parsed rows as JSON Lines of typed values with a
+ * JsonLinesWriter, one object per row keyed by the Headers. When more than
+ * one Sheet is returned every object starts with a "_sheet" member.
+ * <p>
+ * The writer is the BatchListener of the parse, the RowListener methods are
+ * not used. The JSON bytes go straight from the writer's buffer into the
+ * response body.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+class JsonLinesRowWriter extends RowWriter implements BatchListener {
+    static final String SHEET_KEY = "_sheet";
+
+    private final JsonLinesWriter json;
+
+    JsonLinesRowWriter(HttpExchange exchange, boolean sheetKeys) {
+        super(exchange, "application/x-ndjson; charset=UTF-8");
+        this.json = new JsonLinesWriter(new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer source) throws IOException {
+                int length = source.remaining();
+                body().write(source.array(), source.arrayOffset() + source.position(), length);
+                source.position(source.limit());
+                return length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        if (sheetKeys)
+            json.setSheetKey(SHEET_KEY);
+    }
+
+    @Override
+    public void batch(ColumnBatch batch) {
+        try {
+            checkCancelled();
+        } catch (RuntimeException e) {
+            batch.release();
+            throw e;
+        }
+        json.batch(batch);
+    }
+
+    @Override
+    public void startSheet(int sheetIndex, String sheetName) {
+    }
+
+    @Override
+    public void headerRow(List<String> headers) {
+    }
+
+    @Override
+    public void row(String row) {
+    }
+
+    @Override
+    public void endSheet(Sheet sheet) {
+    }
+
+    @Override
+    void finish() throws IOException {
+        json.flush();
+        body().flush();
+    }
+}
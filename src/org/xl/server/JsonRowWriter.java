@@ -0,0 +1,112 @@
+package org.xl.server;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.xl.excel.components.Sheet;
+
+/**
+ * Writes the parsed rows as a JSON document which is streamed as the Sheets
+ * are parsed:
+ * <pre>
+ * [{"sheet":"Sheet1","index":0,"headers":["A","B"],"rows":[["1","x"],...]},...]
+ * </pre>
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+class JsonRowWriter extends RowWriter {
+    private boolean firstSheet = true;
+    private boolean firstRow;
+    private boolean sheetOpen;
+
+    JsonRowWriter(HttpExchange exchange) {
+        super(exchange, "application/json; charset=UTF-8");
+    }
+
+    @Override
+    public void startSheet(int sheetIndex, String sheetName) {
+        checkCancelled();
+        StringBuilder json = new StringBuilder();
+        json.append(firstSheet ? "[" : ",");
+        json.append("{\"sheet\":");
+        appendString(json, sheetName);
+        json.append(",\"index\":").append(sheetIndex);
+        write(json.toString());
+        firstSheet = false;
+        firstRow = true;
+        sheetOpen = false;
+    }
+
+    @Override
+    public void headerRow(List<String> headers) {
+        StringBuilder json = new StringBuilder(",\"headers\":");
+        appendArray(json, headers.toArray(new String[headers.size()]));
+        json.append(",\"rows\":[");
+        write(json.toString());
+        sheetOpen = true;
+    }
+
+    @Override
+    public void row(String row) {
+        checkCancelled();
+        StringBuilder json = new StringBuilder(row.length() + 16);
+        if (!firstRow)
+            json.append(',');
+        appendArray(json, Sheet.splitRow(row, false));
+        write(json.toString());
+        firstRow = false;
+    }
+
+    @Override
+    public void endSheet(Sheet sheet) {
+        write(sheetOpen ? "]}" : ",\"headers\":[],\"rows\":[]}");
+    }
+
+    @Override
+    void finish() throws IOException {
+        write(firstSheet ? "[]" : "]");
+        out().flush();
+    }
+
+    private static void appendArray(StringBuilder json, String[] values) {
+        json.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                json.append(',');
+            appendString(json, values[i]);
+        }
+        json.append(']');
+    }
+
+    static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
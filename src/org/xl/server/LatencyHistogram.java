@@ -0,0 +1,88 @@
+package org.xl.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe histogram of durations with power of two microsecond
+ * buckets, bucket i counts durations from 2^i up to 2^(i+1) microseconds.
+ * Percentiles are reported as the upper bound of their bucket so they are
+ * accurate to within a factor of two, which is enough to tell queueing
+ * apart from execution.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        int bucket = micros == 0 ? 0 :
+                Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        long max;
+        while (micros > (max = maxMicros.get())) {
+            if (maxMicros.compareAndSet(max, micros))
+                break;
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the mean duration in milliseconds.
+     */
+    public double getMeanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : totalMicros.get() / 1000.0 / n;
+    }
+
+    /**
+     * Returns the longest duration in milliseconds.
+     */
+    public double getMaxMillis() {
+        return maxMicros.get() / 1000.0;
+    }
+
+    /**
+     * Returns the upper bound in milliseconds of the bucket holding the
+     * specified percentile, 0 when nothing was recorded.
+     *
+     * @param percentile between 0 and 100
+     */
+    public double getPercentileMillis(double percentile) {
+        long n = count.get();
+        if (n == 0)
+            return 0;
+        long rank = (long) Math.ceil(n * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank)
+                return Math.min((1L << (i + 1)) / 1000.0, getMaxMillis());
+        }
+        return getMaxMillis();
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ", mean=" + getMeanMillis() + "ms, p50=" +
+                getPercentileMillis(50) + "ms, p99=" + getPercentileMillis(99) +
+                "ms, max=" + getMaxMillis() + "ms";
+    }
+}
@@ -0,0 +1,79 @@
+package org.xl.server;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory aware admission control for parse requests.
+ * <p>
+ * The budget is a Semaphore with one permit per megabyte. Each parse
+ * acquires the memory it is estimated to need, the upload size multiplied
+ * by an expansion factor, and releases it when done. Small uploads therefore
+ * run with a high concurrency while a few large ones fill the budget. A
+ * single upload never needs more than the whole budget so it can always run
+ * once the server is otherwise idle.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+class ParseBudget {
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private final Semaphore permits;
+    private final int totalPermits;
+    private final int expansionFactor;
+
+    /**
+     * @param budgetBytes     Memory available to running parses
+     * @param expansionFactor Estimated bytes of memory per uploaded byte
+     */
+    ParseBudget(long budgetBytes, int expansionFactor) {
+        this.totalPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                budgetBytes / MEGABYTE));
+        this.permits = new Semaphore(totalPermits, true);
+        this.expansionFactor = expansionFactor;
+    }
+
+    /**
+     * Waits up to timeoutMillis for the memory an upload of the specified
+     * size needs.
+     *
+     * <p>
+     * A barging acquire takes free permits ahead of the uploads already
+     * waiting, so a small upload is not held up by a large one waiting for
+     * most of the budget.
+     *
+     * @param uploadBytes
+     * @param timeoutMillis
+     * @param barge         Take free permits ahead of waiting uploads
+     * @return Number of permits acquired, 0 if the budget was not available
+     * in time
+     */
+    int acquire(long uploadBytes, long timeoutMillis, boolean barge)
+            throws InterruptedException {
+        int needed = permitsFor(uploadBytes);
+        if (barge && permits.tryAcquire(needed))
+            return needed;
+        if (permits.tryAcquire(needed, timeoutMillis, TimeUnit.MILLISECONDS))
+            return needed;
+        return 0;
+    }
+
+    /**
+     * Returns permits acquired with acquire().
+     *
+     * @param acquired
+     */
+    void release(int acquired) {
+        if (acquired > 0)
+            permits.release(acquired);
+    }
+
+    int permitsFor(long uploadBytes) {
+        long estimate = (uploadBytes * expansionFactor + MEGABYTE - 1) / MEGABYTE;
+        return (int) Math.max(1, Math.min(totalPermits, estimate));
+    }
+
+    int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+}
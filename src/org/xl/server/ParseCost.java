@@ -0,0 +1,108 @@
+package org.xl.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Cheap estimate of how much work parsing a workbook is.
+ * <p>
+ * For XLSX files the ZIP central directory is read, which holds the
+ * uncompressed size of every part without inflating anything. The cost is
+ * the uncompressed size of the worksheet parts plus the shared strings
+ * table. XLS files are not compressed so their file size is used.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class ParseCost {
+    /**
+     * Fixed cost charged per Sheet for opening its part and reading its
+     * header row
+     */
+    static final long SHEET_OVERHEAD_BYTES = 64 * 1024;
+
+    private final long fileBytes;
+    private final int sheetCount;
+    private final long sheetBytes;
+
+    public ParseCost(long fileBytes, int sheetCount, long sheetBytes) {
+        this.fileBytes = fileBytes;
+        this.sheetCount = sheetCount;
+        this.sheetBytes = sheetBytes;
+    }
+
+    /**
+     * Estimates the cost of parsing the specified workbook.
+     *
+     * @param workbook
+     * @return ParseCost
+     */
+    public static ParseCost estimate(File workbook) {
+        long fileBytes = workbook.length();
+        ZipFile zip = null;
+        try {
+            zip = new ZipFile(workbook);
+            int sheets = 0;
+            long bytes = 0;
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                boolean sheet = name.startsWith("xl/worksheets/") &&
+                        name.endsWith(".xml");
+                if (sheet)
+                    sheets++;
+                if (sheet || "xl/sharedStrings.xml".equals(name)) {
+                    //Unknown sizes are rare, assume a 10x compression ratio
+                    bytes += entry.getSize() >= 0 ? entry.getSize() :
+                            entry.getCompressedSize() * 10;
+                }
+            }
+            return new ParseCost(fileBytes, sheets, bytes);
+        } catch (IOException e) {
+            //Not a ZIP archive, an XLS file is parsed from its records as is
+            return new ParseCost(fileBytes, 0, fileBytes);
+        } finally {
+            if (null != zip) {
+                try {
+                    zip.close();
+                } catch (IOException e) {
+                    //Only read from
+                }
+            }
+        }
+    }
+
+    public long getFileBytes() {
+        return fileBytes;
+    }
+
+    /**
+     * Returns the Number of Sheets, 0 when unknown.
+     */
+    public int getSheetCount() {
+        return sheetCount;
+    }
+
+    /**
+     * Returns the uncompressed bytes of the Sheet data the parser will read.
+     */
+    public long getSheetBytes() {
+        return sheetBytes;
+    }
+
+    /**
+     * Returns the estimated cost of the parse in bytes of Sheet data.
+     */
+    public long getCost() {
+        return sheetBytes + sheetCount * SHEET_OVERHEAD_BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return "ParseCost[file=" + fileBytes + ", sheets=" + sheetCount +
+                ", sheetBytes=" + sheetBytes + "]";
+    }
+}
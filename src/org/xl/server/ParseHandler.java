@@ -0,0 +1,280 @@
+package org.xl.server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xl.excel.components.ColumnBatch;
+import org.xl.excel.parser.BatchListener;
+import org.xl.excel.parser.ExcelParser;
+
+/**
+ * Handles a workbook upload: the request body is stored in a temporary
+ * file, its ParseCost is estimated and it is parsed by the ParseScheduler.
+ * The rows are streamed back as CSV, JSON or JSON Lines while the parse
+ * runs.
+ * <p>
+ * Query parameters:<br>
+ * - format: csv (default), json or jsonl (JSON Lines of typed values, the
+ * cell formatting does not apply)<br>
+ * - sheet: 0 indexed Sheet to return, all Sheets when omitted<br>
+ * - ignoreBlankRows: true (default) or false<br>
+ * - formatting: true (default) to apply the cell formatting, or false
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+class ParseHandler implements HttpHandler {
+    private static Logger LOGGER = LoggerFactory.getLogger(ParseHandler.class);
+
+    private final ParseScheduler scheduler;
+    private final long timeoutMillis;
+    private final long maxUploadBytes;
+    private final ParseBudget budget;
+
+    /**
+     * @param scheduler      Scheduler the parses run on
+     * @param timeoutMillis  Maximum time from upload to the end of the parse,
+     *                       the wait for the budget included
+     * @param maxUploadBytes Maximum size of an uploaded workbook
+     * @param budget         Memory budget limiting concurrent parses or null
+     */
+    ParseHandler(ParseScheduler scheduler, long timeoutMillis,
+                 long maxUploadBytes, ParseBudget budget) {
+        this.scheduler = scheduler;
+        this.timeoutMillis = timeoutMillis;
+        this.maxUploadBytes = maxUploadBytes;
+        this.budget = budget;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        File upload = null;
+        try {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Only POST is supported");
+                return;
+            }
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            upload = receive(exchange);
+            if (null == upload) {
+                sendError(exchange, 413, "Upload exceeds " + maxUploadBytes + " bytes");
+                return;
+            }
+            //One deadline for the budget wait and the parse
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            int sheet = params.containsKey("sheet") ?
+                    Integer.parseInt(params.get("sheet")) : ExcelParser.READ_ALL;
+            String format = params.get("format");
+            RowWriter writer;
+            if ("json".equalsIgnoreCase(format))
+                writer = new JsonRowWriter(exchange);
+            else if ("jsonl".equalsIgnoreCase(format))
+                writer = new JsonLinesRowWriter(exchange, ExcelParser.READ_ALL == sheet);
+            else
+                writer = new CsvRowWriter(exchange, ExcelParser.READ_ALL == sheet);
+            ExcelParser parser = createParser(upload);
+            ParseCost cost = ParseCost.estimate(upload);
+            int permits = 0;
+            if (null != budget) {
+                permits = budget.acquire(upload.length(), remainingMillis(deadline),
+                        scheduler.isSmall(cost));
+                if (permits == 0) {
+                    sendError(exchange, 503, "Parse memory budget is exhausted, retry later");
+                    return;
+                }
+            }
+            parse(exchange, cost, parser, writer, sheet,
+                    !"false".equalsIgnoreCase(params.get("ignoreBlankRows")),
+                    !"false".equalsIgnoreCase(params.get("formatting")),
+                    releaseOnce(permits), deadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (NumberFormatException e) {
+            sendError(exchange, 400, "Invalid sheet parameter: " + e.getLocalizedMessage());
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 415, e.getLocalizedMessage());
+        } finally {
+            exchange.close();
+            if (null != upload && !upload.delete())
+                LOGGER.warn("Failed to delete upload " + upload);
+        }
+    }
+
+    private void parse(HttpExchange exchange, ParseCost cost,
+                       final ExcelParser parser,
+                       final RowWriter writer, final int sheet,
+                       final boolean ignoreBlankRows,
+                       final boolean useCellFormatting,
+                       final Runnable release, long deadline) throws IOException {
+        Future<Void> job;
+        try {
+            job = scheduler.submit(cost, new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    try {
+                        if (writer instanceof BatchListener)
+                            parser.setBatchListener((BatchListener) writer,
+                                    ColumnBatch.DEFAULT_CAPACITY);
+                        else
+                            parser.setRowListener(writer);
+                        if (ExcelParser.READ_ALL == sheet)
+                            parser.process(ignoreBlankRows, useCellFormatting);
+                        else
+                            parser.process(ignoreBlankRows, useCellFormatting, sheet);
+                        writer.finish();
+                        return null;
+                    } finally {
+                        release.run();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release.run();
+            sendError(exchange, 503, "Parse queue is full, retry later");
+            return;
+        }
+        try {
+            job.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            writer.cancel();
+            //A job cancelled while still queued never runs and would keep its
+            //budget, releaseOnce makes sure a running job does not release twice
+            if (job.cancel(true))
+                release.run();
+            LOGGER.warn("Parse of " + exchange.getRequestURI() + " timed out after " +
+                    timeoutMillis + "ms");
+            if (!writer.isStarted())
+                sendError(exchange, 504, "Parse timed out after " + timeoutMillis + "ms");
+        } catch (ExecutionException e) {
+            LOGGER.warn("Failed to parse upload: " + e.getCause().getLocalizedMessage(), e.getCause());
+            if (!writer.isStarted())
+                sendError(exchange, 422, "Failed to parse workbook: " +
+                        e.getCause().getLocalizedMessage());
+        } catch (InterruptedException e) {
+            writer.cancel();
+            if (job.cancel(true))
+                release.run();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the milliseconds left until the System.nanoTime() deadline,
+     * 0 once it passed.
+     */
+    private static long remainingMillis(long deadline) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    /**
+     * Returns a Runnable which gives the permits back to the budget the
+     * first time it is run.
+     */
+    private Runnable releaseOnce(final int permits) {
+        final AtomicBoolean released = new AtomicBoolean();
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (null != budget && released.compareAndSet(false, true))
+                    budget.release(permits);
+            }
+        };
+    }
+
+    /**
+     * Creates the parser for the upload based on its signature, XLSX files
+     * are ZIP archives and XLS files OLE2 documents.
+     */
+    private ExcelParser createParser(File upload) throws IOException {
+        byte[] signature = new byte[4];
+        InputStream in = new FileInputStream(upload);
+        try {
+            int read = in.read(signature);
+            if (read == 4 && signature[0] == 'P' && signature[1] == 'K')
+                return ExcelParser.createXLSXtoRowArrayList(upload);
+            if (read == 4 && (signature[0] & 0xFF) == 0xD0 &&
+                    (signature[1] & 0xFF) == 0xCF)
+                return ExcelParser.createXLSParser(upload);
+        } finally {
+            in.close();
+        }
+        throw new IllegalArgumentException("Upload is not an XLSX or XLS workbook");
+    }
+
+    /**
+     * Stores the request body in a temporary file, returns null when the
+     * body is larger than the maximum upload size. The file is deleted
+     * unless it is returned.
+     */
+    private File receive(HttpExchange exchange) throws IOException {
+        File upload = File.createTempFile("xl-upload", ".tmp");
+        boolean received = false;
+        try {
+            InputStream in = exchange.getRequestBody();
+            OutputStream out = new FileOutputStream(upload);
+            try {
+                byte[] buffer = new byte[65536];
+                long total = 0;
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    total += read;
+                    if (total > maxUploadBytes)
+                        return null;
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+            received = true;
+            return upload;
+        } finally {
+            //Too large, or the client went away while uploading
+            if (!received && !upload.delete())
+                LOGGER.warn("Failed to delete upload " + upload);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<String, String>();
+        if (null == query)
+            return params;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                try {
+                    params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                            URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return params;
+    }
+
+    static void sendError(HttpExchange exchange, int status, String message)
+            throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+}
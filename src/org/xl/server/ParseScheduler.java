@@ -0,0 +1,282 @@
+package org.xl.server;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Size aware scheduler for parse jobs.
+ * <p>
+ * Jobs are split by their ParseCost into two FIFO lanes. Workers always
+ * take small jobs first, and when there is more than one worker at most
+ * workers - 1 of them run large jobs so one worker is always free for the
+ * small ones.
+ * <p>
+ * Large jobs are also preemptible: they invoke checkpoint() at every row
+ * boundary, and when small jobs are waiting the large job's thread runs
+ * them before continuing with its next row. A small upload therefore
+ * never waits for a large parse to finish, only for the row it is on.
+ * <p>
+ * The time jobs spend queued and running is recorded per lane.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class ParseScheduler {
+    private static Logger LOGGER = LoggerFactory.getLogger(ParseScheduler.class);
+
+    /**
+     * Scheduler of the large job running on the current thread, null on
+     * threads that are not running a preemptible job
+     */
+    private static final ThreadLocal<ParseScheduler> PREEMPTIBLE =
+            new ThreadLocal<ParseScheduler>();
+
+    private final int workers;
+    private final int queueCapacity;
+    private final long smallJobCost;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final ArrayDeque<Job<?>> fastLane = new ArrayDeque<Job<?>>();
+    private final ArrayDeque<Job<?>> slowLane = new ArrayDeque<Job<?>>();
+    private final Thread[] threads;
+    private volatile int waitingSmall;
+    private int runningLarge;
+    private boolean shutdown;
+
+    private final LatencyHistogram smallQueueWait = new LatencyHistogram();
+    private final LatencyHistogram smallExecution = new LatencyHistogram();
+    private final LatencyHistogram largeQueueWait = new LatencyHistogram();
+    private final LatencyHistogram largeExecution = new LatencyHistogram();
+
+    /**
+     * @param workers       Number of jobs run concurrently
+     * @param queueCapacity Number of jobs which may wait for a worker
+     * @param smallJobCost  Largest ParseCost.getCost() still run in the fast
+     *                      lane
+     * @param threadFactory Factory of the worker threads
+     */
+    public ParseScheduler(int workers, int queueCapacity, long smallJobCost,
+                          ThreadFactory threadFactory) {
+        this.workers = Math.max(1, workers);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.smallJobCost = smallJobCost;
+        this.threads = new Thread[this.workers];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            });
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Returns true if a job of the specified cost runs in the fast lane.
+     *
+     * @param cost
+     */
+    public boolean isSmall(ParseCost cost) {
+        return cost.getCost() <= smallJobCost;
+    }
+
+    /**
+     * Queues a job in the lane matching its cost.
+     *
+     * @param cost
+     * @param task
+     * @return Future of the job, cancelling it interrupts the worker
+     * @throws RejectedExecutionException when the queue is full or the
+     *                                    scheduler was shut down
+     */
+    public <V> Future<V> submit(ParseCost cost, Callable<V> task) {
+        Job<V> job = new Job<V>(task, isSmall(cost));
+        lock.lock();
+        try {
+            if (shutdown)
+                throw new RejectedExecutionException("Parse scheduler is shut down");
+            if (fastLane.size() + slowLane.size() >= queueCapacity)
+                throw new RejectedExecutionException("Parse queue is full");
+            if (job.small) {
+                fastLane.add(job);
+                waitingSmall++;
+            } else {
+                slowLane.add(job);
+            }
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+        return job;
+    }
+
+    /**
+     * Called by running parses at row boundaries. On the thread of a large
+     * job this runs any small jobs that are waiting, elsewhere it returns
+     * immediately.
+     */
+    public static void checkpoint() {
+        ParseScheduler scheduler = PREEMPTIBLE.get();
+        if (null != scheduler && scheduler.waitingSmall > 0)
+            scheduler.runWaitingSmallJobs();
+    }
+
+    private void runWaitingSmallJobs() {
+        PREEMPTIBLE.remove();
+        try {
+            Job<?> job;
+            while (null != (job = pollSmall()))
+                job.run();
+        } finally {
+            PREEMPTIBLE.set(this);
+        }
+    }
+
+    private Job<?> pollSmall() {
+        lock.lock();
+        try {
+            Job<?> job = fastLane.poll();
+            if (null != job)
+                waitingSmall--;
+            return job;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        Job<?> job;
+        try {
+            while (null != (job = take())) {
+                if (job.small) {
+                    job.run();
+                } else {
+                    PREEMPTIBLE.set(this);
+                    try {
+                        job.run();
+                    } finally {
+                        PREEMPTIBLE.remove();
+                        endLarge();
+                    }
+                }
+                //Don't let the interrupt of a cancelled job leak into the next
+                Thread.interrupted();
+            }
+        } catch (InterruptedException e) {
+            LOGGER.debug("Parse worker " + Thread.currentThread().getName() + " stopped");
+        }
+    }
+
+    /**
+     * Waits for the next job, small jobs first. Returns null on shutdown.
+     */
+    private Job<?> take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (!shutdown) {
+                Job<?> job = fastLane.poll();
+                if (null != job) {
+                    waitingSmall--;
+                    return job;
+                }
+                if (!slowLane.isEmpty() && (workers == 1 || runningLarge < workers - 1)) {
+                    runningLarge++;
+                    return slowLane.poll();
+                }
+                available.await();
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void endLarge() {
+        lock.lock();
+        try {
+            runningLarge--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the workers, queued jobs are cancelled and running ones
+     * interrupted.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            for (Job<?> job : fastLane)
+                job.cancel(false);
+            for (Job<?> job : slowLane)
+                job.cancel(false);
+            fastLane.clear();
+            slowLane.clear();
+            waitingSmall = 0;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Thread thread : threads)
+            thread.interrupt();
+    }
+
+    public LatencyHistogram getSmallQueueWait() {
+        return smallQueueWait;
+    }
+
+    public LatencyHistogram getSmallExecution() {
+        return smallExecution;
+    }
+
+    public LatencyHistogram getLargeQueueWait() {
+        return largeQueueWait;
+    }
+
+    public LatencyHistogram getLargeExecution() {
+        return largeExecution;
+    }
+
+    /**
+     * Returns the histograms as text, one line per lane and measurement.
+     */
+    public String getStats() {
+        return "small.queueWait: " + smallQueueWait + "\n" +
+                "small.execution: " + smallExecution + "\n" +
+                "large.queueWait: " + largeQueueWait + "\n" +
+                "large.execution: " + largeExecution + "\n";
+    }
+
+    private class Job<V> extends FutureTask<V> {
+        private final boolean small;
+        private final long queuedAt = System.nanoTime();
+
+        Job(Callable<V> task, boolean small) {
+            super(task);
+            this.small = small;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            (small ? smallQueueWait : largeQueueWait).record(start - queuedAt);
+            try {
+                super.run();
+            } finally {
+                (small ? smallExecution : largeExecution).record(System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package org.xl.server;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Embedded HTTP front end for the ExcelParser.
+ * <p>
+ * Workbooks are uploaded with a POST to /parse and the rows are streamed
+ * back as CSV or JSON using chunked transfer encoding while the workbook is
+ * being parsed, see ParseHandler for the supported parameters.
+ * <p>
+ * Parsing runs on a bounded ParseScheduler. When all workers are busy and
+ * the queue is full new uploads are rejected with 503, and a parse which
+ * does not finish within the request timeout is cancelled. Uploads up to
+ * the small job size never wait behind large ones, see setSmallJobBytes().
+ * The scheduler's queue wait and execution times are served as text from
+ * /stats.
+ * <p>
+ * With ExecutionMode.VIRTUAL every request runs on a virtual thread and the
+ * parses run on one platform thread per processor. Instead of a fixed queue
+ * the number of concurrent parses is limited by a memory budget, see
+ * setMemoryBudget().
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+public class ParseServer {
+    private static Logger LOGGER = LoggerFactory.getLogger(ParseServer.class);
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5 * 60 * 1000L;
+    public static final long DEFAULT_MAX_UPLOAD_BYTES = 512L * 1024 * 1024;
+    public static final int DEFAULT_EXPANSION_FACTOR = 8;
+    public static final long DEFAULT_SMALL_JOB_BYTES = 16L * 1024 * 1024;
+
+    private final InetSocketAddress address;
+    private final int workerThreads;
+    private final int queueCapacity;
+    private final long timeoutMillis;
+    private final long maxUploadBytes;
+    private ExecutionMode executionMode = ExecutionMode.POOLED;
+    private long memoryBudgetBytes = -1;
+    private int expansionFactor = DEFAULT_EXPANSION_FACTOR;
+    private long smallJobBytes = DEFAULT_SMALL_JOB_BYTES;
+    private HttpServer server;
+    private ExecutorService connectionPool;
+    private ParseScheduler scheduler;
+
+    /**
+     * Creates a server on the specified port with one worker per processor,
+     * a queue of the same size and the default timeout and upload limit.
+     *
+     * @param port
+     */
+    public ParseServer(int port) {
+        this(new InetSocketAddress(port),
+                Runtime.getRuntime().availableProcessors(),
+                Runtime.getRuntime().availableProcessors(),
+                DEFAULT_TIMEOUT_MILLIS, DEFAULT_MAX_UPLOAD_BYTES);
+    }
+
+    /**
+     * @param address        Address to listen on
+     * @param workerThreads  Number of workbooks parsed concurrently
+     * @param queueCapacity  Number of uploads which may wait for a worker
+     * @param timeoutMillis  Maximum time from upload to the end of the parse
+     * @param maxUploadBytes Maximum size of an uploaded workbook
+     */
+    public ParseServer(InetSocketAddress address, int workerThreads,
+                       int queueCapacity, long timeoutMillis,
+                       long maxUploadBytes) {
+        this.address = address;
+        this.workerThreads = workerThreads;
+        this.queueCapacity = queueCapacity;
+        this.timeoutMillis = timeoutMillis;
+        this.maxUploadBytes = maxUploadBytes;
+    }
+
+    /**
+     * Sets how requests are run, ExecutionMode.POOLED by default.
+     * <p>
+     * Must be set before invoking start()
+     *
+     * @param executionMode
+     */
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * Limits the memory of the parses running at the same time. Every parse
+     * reserves its upload size multiplied by the expansion factor and waits,
+     * up to the request timeout, until that much of the budget is free.
+     * <p>
+     * By default ExecutionMode.VIRTUAL uses a quarter of the maximum heap
+     * and ExecutionMode.POOLED has no budget.
+     * <p>
+     * Must be set before invoking start()
+     *
+     * @param budgetBytes
+     * @param expansionFactor Estimated bytes of memory per uploaded byte
+     */
+    public void setMemoryBudget(long budgetBytes, int expansionFactor) {
+        this.memoryBudgetBytes = budgetBytes;
+        this.expansionFactor = expansionFactor;
+    }
+
+    /**
+     * Sets the largest estimated Sheet data, uncompressed, of a workbook
+     * parsed in the fast lane. Larger workbooks are parsed by at most all but
+     * one worker and pause at row boundaries while small ones are waiting.
+     * <p>
+     * Must be set before invoking start()
+     *
+     * @param smallJobBytes
+     */
+    public void setSmallJobBytes(long smallJobBytes) {
+        this.smallJobBytes = smallJobBytes;
+    }
+
+    /**
+     * Returns the scheduler of the running server, null when stopped.
+     */
+    public synchronized ParseScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Starts listening for uploads.
+     */
+    public synchronized void start() throws IOException {
+        ParseBudget budget = null;
+        if (memoryBudgetBytes > 0)
+            budget = new ParseBudget(memoryBudgetBytes, expansionFactor);
+        if (ExecutionMode.VIRTUAL == executionMode) {
+            if (null == budget)
+                budget = new ParseBudget(Runtime.getRuntime().maxMemory() / 4,
+                        expansionFactor);
+            int cores = Runtime.getRuntime().availableProcessors();
+            scheduler = new ParseScheduler(cores, Integer.MAX_VALUE,
+                    smallJobBytes, new NamedThreadFactory("xl-parse"));
+            connectionPool = newVirtualThreadExecutor();
+        } else {
+            scheduler = new ParseScheduler(workerThreads, queueCapacity,
+                    smallJobBytes, new NamedThreadFactory("xl-parse"));
+            //Every admitted parse holds a connection thread while it streams,
+            //the extra threads answer rejected uploads without queueing them
+            connectionPool = Executors.newFixedThreadPool(
+                    workerThreads + queueCapacity + 2,
+                    new NamedThreadFactory("xl-http"));
+        }
+        server = HttpServer.create(address, 0);
+        server.createContext("/parse", new ParseHandler(scheduler,
+                timeoutMillis, maxUploadBytes, budget));
+        final ParseScheduler stats = scheduler;
+        server.createContext("/stats", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = stats.getStats().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                exchange.close();
+            }
+        });
+        server.setExecutor(connectionPool);
+        server.start();
+        LOGGER.info("XL Parse Server listening on " + server.getAddress() +
+                " in " + executionMode + " mode");
+    }
+
+    /**
+     * Stops the server, waiting up to delaySeconds for running requests.
+     *
+     * @param delaySeconds
+     */
+    public synchronized void stop(int delaySeconds) {
+        if (null != server) {
+            server.stop(delaySeconds);
+            scheduler.shutdown();
+            connectionPool.shutdownNow();
+            server = null;
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Returns the address the server is bound to, useful when started on
+     * port 0.
+     */
+    public synchronized InetSocketAddress getAddress() {
+        return null == server ? address : server.getAddress();
+    }
+
+    /**
+     * Returns an ExecutorService starting a virtual thread per task. Looked
+     * up reflectively so the server still runs on runtimes before Java 21,
+     * where a cached pool of platform threads is used instead.
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            LOGGER.warn("Virtual threads are not available on this runtime, using platform threads");
+            return Executors.newCachedThreadPool(new NamedThreadFactory("xl-http"));
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to create virtual thread executor", e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        final ParseServer parseServer = new ParseServer(port);
+        if (args.length > 1)
+            parseServer.setExecutionMode(ExecutionMode.valueOf(args[1].toUpperCase()));
+        parseServer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                parseServer.stop(5);
+            }
+        });
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.xl.server;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.xl.excel.parser.RowListener;
+
+/**
+ * Base class of the RowListeners which write the parsed rows straight into
+ * an HTTP response while the workbook is still being parsed.
+ * <p>
+ * The response headers are only sent when the first byte is written, so a
+ * parse that fails before producing any output can still be answered with an
+ * error status. The response uses chunked transfer encoding.
+ * <p>
+ * A writer can be cancelled from another thread, the next row then stops
+ * the parse. Every row is also a ParseScheduler checkpoint.
+ *
+ * @version $Revision:$, submitted by $Author:$
+ */
+abstract class RowWriter implements RowListener {
+    static final String CANCELLED = "Parse Cancelled";
+
+    private final HttpExchange exchange;
+    private final String contentType;
+    private Writer writer;
+    private boolean started;
+    private volatile boolean cancelled;
+
+    RowWriter(HttpExchange exchange, String contentType) {
+        this.exchange = exchange;
+        this.contentType = contentType;
+    }
+
+    /**
+     * Writes anything that has to follow the last Sheet and flushes the
+     * response.
+     */
+    abstract void finish() throws IOException;
+
+    /**
+     * Stops the parse at the next row.
+     */
+    void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Returns true once the response headers have been sent.
+     */
+    synchronized boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Returns the response Writer, sending the response headers the first
+     * time it is called.
+     */
+    synchronized Writer out() throws IOException {
+        if (null == writer) {
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    body(), StandardCharsets.UTF_8), 16384);
+        }
+        return writer;
+    }
+
+    /**
+     * Returns the response body, sending the response headers the first
+     * time it is called. For writers which write bytes instead of using
+     * out().
+     */
+    synchronized OutputStream body() throws IOException {
+        if (!started) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, 0);
+            started = true;
+        }
+        return exchange.getResponseBody();
+    }
+
+    /**
+     * Throws if the writer was cancelled, called for every row. Also the
+     * row boundary at which a large parse lets waiting small parses run.
+     */
+    void checkCancelled() {
+        if (cancelled)
+            throw new RuntimeException(CANCELLED);
+        ParseScheduler.checkpoint();
+    }
+
+    /**
+     * Writes text to the response, IOExceptions are rethrown unchecked so
+     * they stop the parse.
+     */
+    void write(String text) {
+        try {
+            out().write(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.xl.excel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xl.excel.components.Sheet;
+import org.xl.excel.parser.ExcelParser;
+import org.xl.excel.parser.XLSXParser;
+
+public class ExcelWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws Exception {
+        Sheet sheet = new Sheet("Orders", 0,
+                new ArrayList<String>(Arrays.asList("Number", "String", "Date", "Boolean")),
+                new ArrayList<String>(Arrays.asList("2024", "Name", "Due", "Paid")),
+                new ArrayList<String>(Arrays.asList("\"1\",\"Ann\",\"45296\",\"TRUE\"",
+                        "\"2.5\",\"Bob, Jr.\",\"\",\"FALSE\"", "\"n/a\",\"007\",\"soon\",\"maybe\"")));
+        File file = folder.newFile("orders.xlsx");
+        ExcelWriter writer = ExcelWriter.create(file);
+        try {
+            writer.writeSheet(sheet);
+        } finally {
+            writer.close();
+        }
+
+        XSSFWorkbook workbook = workbook(file);
+        org.apache.poi.ss.usermodel.Sheet written = workbook.getSheet("Orders");
+        assertEquals(3, written.getLastRowNum());
+        Row header = written.getRow(0);
+        assertEquals(Cell.CELL_TYPE_STRING, header.getCell(0).getCellType());
+        assertEquals("2024", header.getCell(0).getStringCellValue());
+        Row first = written.getRow(1);
+        assertEquals(1, first.getCell(0).getNumericCellValue(), 0);
+        assertEquals("Ann", first.getCell(1).getStringCellValue());
+        assertTrue(DateUtil.isCellDateFormatted(first.getCell(2)));
+        assertEquals(45296, first.getCell(2).getNumericCellValue(), 0);
+        assertEquals(true, first.getCell(3).getBooleanCellValue());
+        assertEquals(null, written.getRow(2).getCell(2));
+        Row last = written.getRow(3);
+        assertEquals("n/a", last.getCell(0).getStringCellValue());
+        assertEquals("007", last.getCell(1).getStringCellValue());
+        assertEquals("maybe", last.getCell(3).getStringCellValue());
+
+        XLSXParser parser = ExcelParser.createXLSXtoRowArrayList(file);
+        parser.process(true, false);
+        Sheet read = parser.getSheetList().get(0);
+        assertEquals(sheet.getHeaderList(), read.getHeaderList());
+        assertEquals(Arrays.asList("2.5", "Bob, Jr.", "", "FALSE"),
+                Arrays.asList(read.getCellValues(1, false)));
+        assertEquals(Arrays.asList("n/a", "007", "soon", "maybe"),
+                Arrays.asList(read.getCellValues(2, false)));
+    }
+
+    @Test
+    public void detectedNumbers() throws Exception {
+        File file = folder.newFile("detect.xlsx");
+        ExcelWriter writer = ExcelWriter.create(file);
+        try {
+            writer.startSheet("Codes", null);
+            writer.writeHeaderRow(new String[]{"1", "00", "Plain"});
+            writer.writeRow(new String[]{"00123", "123", "-007", "0.5", "-0.25", "0", "01.5", "1,234"});
+        } finally {
+            writer.close();
+        }
+        XSSFWorkbook workbook = workbook(file);
+        Row header = workbook.getSheetAt(0).getRow(0);
+        for (int c = 0; c < 3; c++)
+            assertEquals(Cell.CELL_TYPE_STRING, header.getCell(c).getCellType());
+        List<Integer> types = new ArrayList<Integer>();
+        for (Cell cell : workbook.getSheetAt(0).getRow(1))
+            types.add(cell.getCellType());
+        int text = Cell.CELL_TYPE_STRING;
+        int number = Cell.CELL_TYPE_NUMERIC;
+        assertEquals(Arrays.asList(text, number, text, number, number, number, text, text), types);
+        assertEquals("00123", workbook.getSheetAt(0).getRow(1).getCell(0).getStringCellValue());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rowsNeedASheet() throws Exception {
+        ExcelWriter writer = ExcelWriter.create(folder.newFile("none.xlsx"));
+        try {
+            writer.writeRow(new String[]{"1"});
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static XSSFWorkbook workbook(File file) throws Exception {
+        InputStream in = new FileInputStream(file);
+        try {
+            return new XSSFWorkbook(in);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.xl.excel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.xl.excel.components.ColumnBatch;
+import org.xl.excel.components.ColumnBatchPool;
+
+public class JsonLinesWriterTest {
+
+    @Test
+    public void datesOfTheExcel1900DateSystem() throws Exception {
+        double[] serials = {1, 59, 60, 61, 45296, 45296.75};
+        ColumnBatch batch = new ColumnBatchPool(serials.length, 1).acquire();
+        batch.start(0, "Data", Arrays.asList("Date"));
+        for (double serial : serials) {
+            batch.setNumber(0, serial, true);
+            batch.commitRow();
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonLinesWriter writer = new JsonLinesWriter(Channels.newChannel(output));
+        writer.batch(batch);
+        writer.close();
+
+        assertEquals("{\"Date\":\"1900-01-01\"}\n" +
+                        "{\"Date\":\"1900-02-28\"}\n" +
+                        "{\"Date\":\"1900-02-29\"}\n" +
+                        "{\"Date\":\"1900-03-01\"}\n" +
+                        "{\"Date\":\"2024-01-05\"}\n" +
+                        "{\"Date\":\"2024-01-05T18:00:00\"}\n",
+                new String(output.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
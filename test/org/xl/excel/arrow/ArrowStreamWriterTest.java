@@ -0,0 +1,161 @@
+package org.xl.excel.arrow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.xl.excel.components.ColumnBatch;
+import org.xl.excel.components.ColumnBatchPool;
+
+/**
+ * Reads the written stream back with a minimal FlatBuffers reader: the
+ * message framing, the header type and body length of every message and
+ * the float64 values of the record batches.
+ */
+public class ArrowStreamWriterTest {
+    private static final List<String> HEADERS = Arrays.asList("Amount", "Name");
+
+    private final ColumnBatchPool pool = new ColumnBatchPool(8, 2);
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final ArrowStreamWriter writer = new ArrowStreamWriter(Channels.newChannel(output));
+
+    @Test
+    public void streamHoldsSchemaBatchesAndEnd() throws Exception {
+        writer.batch(batch(new Object[]{1.5, "a"}, new Object[]{2.5, "b"}));
+        writer.batch(batch(new Object[]{-4d, null}));
+        writer.close();
+        assertEquals(3, writer.getRowCount());
+
+        List<Message> messages = read(output.toByteArray());
+        assertEquals(3, messages.size());
+        assertEquals(1, messages.get(0).headerType);
+        assertEquals(0, messages.get(0).body.remaining());
+        assertEquals(3, messages.get(1).headerType);
+        assertEquals(3, messages.get(2).headerType);
+        //Validity bitmap padded to 8 bytes, then the doubles
+        ByteBuffer first = messages.get(1).body;
+        assertEquals(0x03, first.get(0));
+        assertEquals(1.5, first.getDouble(8), 0);
+        assertEquals(2.5, first.getDouble(16), 0);
+        assertEquals(-4, messages.get(2).body.getDouble(8), 0);
+    }
+
+    @Test
+    public void cellNotFittingTheSchemaFails() throws Exception {
+        writer.batch(batch(new Object[]{1d, "a"}));
+        try {
+            writer.batch(batch(new Object[]{"n/a", "b"}));
+            fail("Text in a float64 Column was accepted");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("'n/a' of row 2, Column 1"));
+        }
+        writer.close();
+        assertEquals(1, writer.getRowCount());
+        assertEquals(2, read(output.toByteArray()).size());
+    }
+
+    @Test
+    public void cellsAreDroppedWhenAllowed() throws Exception {
+        writer.setDropMismatchedCells(true);
+        writer.batch(batch(new Object[]{1d, "a"}));
+        writer.batch(batch(new Object[]{"n/a", "b"}, new Object[]{3d, "c"}));
+        writer.close();
+        assertEquals(1, writer.getDroppedCells());
+        assertEquals(3, writer.getRowCount());
+        ByteBuffer second = read(output.toByteArray()).get(2).body;
+        assertEquals(0x02, second.get(0));
+        assertEquals(3, second.getDouble(16), 0);
+    }
+
+    @Test
+    public void columnTypesSetTheSchema() throws Exception {
+        writer.setColumnTypes(Arrays.asList("String", "String"));
+        writer.batch(batch(new Object[]{1d, "a"}));
+        writer.batch(batch(new Object[]{"n/a", "b"}));
+        writer.close();
+        assertEquals(0, writer.getDroppedCells());
+        assertEquals(3, read(output.toByteArray()).size());
+    }
+
+    @Test
+    public void timestampsOfTheExcel1900DateSystem() {
+        double[] serials = {1, 59, 60, 61, 45296.75};
+        ColumnBatch batch = new ColumnBatchPool(serials.length, 1).acquire();
+        batch.start(0, "Data", Arrays.asList("Date"));
+        for (double serial : serials) {
+            batch.setNumber(0, serial, true);
+            batch.commitRow();
+        }
+        ArrowVector vector = new ArrowVector(ArrowVector.getType(batch, 0), serials.length);
+        assertEquals(ArrowVector.TIMESTAMP, vector.getType());
+        vector.fill(batch, 0);
+        ByteBuffer values = vector.getValues();
+        //1900-02-29 does not exist, serial 60 is March 1 like POI's DateUtil
+        String[] expected = {"1900-01-01T00:00", "1900-02-28T00:00", "1900-03-01T00:00",
+                "1900-03-01T00:00", "2024-01-05T18:00"};
+        for (int r = 0; r < serials.length; r++)
+            assertEquals(expected[r], LocalDateTime.ofEpochSecond(
+                    values.getLong(8 * r) / 1000, 0, ZoneOffset.UTC).toString());
+    }
+
+    private ColumnBatch batch(Object[]... rows) {
+        ColumnBatch batch = pool.acquire();
+        batch.start(0, "Data", HEADERS);
+        for (Object[] row : rows) {
+            for (int c = 0; c < row.length; c++) {
+                if (row[c] instanceof Double)
+                    batch.setNumber(c, (Double) row[c], false);
+                else if (null != row[c])
+                    batch.setString(c, (String) row[c]);
+            }
+            batch.commitRow();
+        }
+        return batch;
+    }
+
+    private static List<Message> read(byte[] stream) {
+        ByteBuffer buffer = ByteBuffer.wrap(stream).order(ByteOrder.LITTLE_ENDIAN);
+        List<Message> messages = new ArrayList<Message>();
+        while (true) {
+            assertEquals(0xFFFFFFFF, buffer.getInt());
+            int length = buffer.getInt();
+            if (length == 0)
+                break;
+            assertEquals(0, length % 8);
+            ByteBuffer metadata = slice(buffer, length);
+            int table = metadata.getInt(0);
+            int vtable = table - metadata.getInt(table);
+            Message message = new Message();
+            message.headerType = metadata.get(table + metadata.getShort(vtable + 6));
+            int bodyField = metadata.getShort(vtable + 10);
+            long bodyLength = bodyField == 0 ? 0 : metadata.getLong(table + bodyField);
+            message.body = slice(buffer, (int) bodyLength);
+            messages.add(message);
+        }
+        assertEquals(0, buffer.remaining());
+        return messages;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    private static class Message {
+        byte headerType;
+        ByteBuffer body;
+    }
+}
@@ -0,0 +1,148 @@
+package org.xl.excel.batch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xl.excel.ExcelWriter;
+
+public class BatchConverterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File input;
+    private File output;
+
+    @Before
+    public void createWorkbooks() throws IOException {
+        input = folder.newFolder("in");
+        output = new File(folder.getRoot(), "out");
+        writeWorkbook(new File(input, "a.xlsx"), 5);
+        writeWorkbook(new File(input, "b.xlsx"), 3);
+        //A ZIP signature without a workbook behind it
+        FileOutputStream broken = new FileOutputStream(new File(input, "broken.xlsx"));
+        try {
+            broken.write("PK\u0003\u0004 not a workbook".getBytes(StandardCharsets.US_ASCII));
+        } finally {
+            broken.close();
+        }
+        new File(input, "~$a.xlsx").createNewFile();
+        new File(input, "notes.txt").createNewFile();
+    }
+
+    @Test
+    public void listsWorkbooks() {
+        List<File> workbooks = BatchConverter.listWorkbooks(input);
+        assertEquals(Arrays.asList(new File(input, "a.xlsx"), new File(input, "b.xlsx"),
+                new File(input, "broken.xlsx")), workbooks);
+    }
+
+    @Test
+    public void failedFileDoesNotStopTheBatch() throws Exception {
+        BatchConverter converter = new BatchConverter(output);
+        converter.setThreads(2);
+        BatchResult result = converter.convert(input);
+
+        List<ConversionResult> results = result.getResults();
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertEquals(5, results.get(0).getRows());
+        assertEquals(new File(output, "a.csv"), results.get(0).getOutput());
+        assertTrue(results.get(1).isSuccess());
+        assertEquals(3, results.get(1).getRows());
+        assertEquals(8, result.getRows());
+
+        ConversionResult broken = results.get(2);
+        assertFalse(broken.isSuccess());
+        assertNotNull(broken.getError());
+        assertFalse(broken.getOutput().exists());
+        assertEquals(Arrays.asList(broken), result.getFailures());
+
+        String csv = read(new File(output, "a.csv"));
+        assertTrue(csv, csv.contains("Data [index=0]:"));
+        assertTrue(csv, csv.contains("\"Id\",\"Name\""));
+        assertTrue(csv, csv.contains("Row 5"));
+
+        List<String> manifest = Files.readAllLines(result.getManifest().toPath(),
+                StandardCharsets.UTF_8);
+        assertEquals(4, manifest.size());
+        assertTrue(manifest.get(1), manifest.get(1).contains("\"a.csv\",OK,1,5,"));
+        assertTrue(manifest.get(3), manifest.get(3).contains("\"\",FAILED,"));
+    }
+
+    @Test
+    public void gzipHoldsTheSameCsv() throws Exception {
+        BatchConverter plain = new BatchConverter(new File(output, "plain"));
+        plain.setManifestName(null);
+        BatchResult result = plain.convert(Arrays.asList(new File(input, "a.xlsx")));
+        assertNull(result.getManifest());
+
+        BatchConverter gzip = new BatchConverter(new File(output, "gzip"));
+        gzip.setGzip(true);
+        gzip.convert(Arrays.asList(new File(input, "a.xlsx")));
+
+        File compressed = new File(output, "gzip/a.csv.gz");
+        InputStream in = new GZIPInputStream(new FileInputStream(compressed));
+        try {
+            assertArrayEquals(Files.readAllBytes(new File(output, "plain/a.csv").toPath()),
+                    readAll(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void sameNamesGetDistinctOutputs() throws Exception {
+        File other = folder.newFolder("other");
+        writeWorkbook(new File(other, "A.xlsx"), 1);
+        BatchResult result = new BatchConverter(output).convert(Arrays.asList(
+                new File(input, "a.xlsx"), new File(other, "A.xlsx")));
+        assertEquals(new File(output, "a.csv"), result.getResults().get(0).getOutput());
+        assertEquals(new File(output, "A-2.csv"), result.getResults().get(1).getOutput());
+        assertTrue(result.getFailures().isEmpty());
+    }
+
+    private static void writeWorkbook(File file, int rows) throws IOException {
+        ExcelWriter writer = ExcelWriter.create(file);
+        try {
+            writer.startSheet("Data", Arrays.asList("Number", "String"));
+            writer.writeRow(new String[]{"Id", "Name"});
+            for (int i = 1; i <= rows; i++)
+                writer.writeRow(new String[]{Integer.toString(i), "Row " + i});
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) >= 0)
+            bytes.write(buffer, 0, count);
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,125 @@
+package org.xl.excel.columnar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xl.excel.components.ColumnBatch;
+import org.xl.excel.components.ColumnBatchPool;
+
+/**
+ * Writes batches with ColumnarWriter and reads them back with
+ * ColumnarReader.
+ */
+public class ColumnarWriterTest {
+    private static final List<String> HEADERS = Arrays.asList("Amount", "Name", "Paid", "Code");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ColumnBatchPool pool = new ColumnBatchPool(16, 2);
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = folder.newFile("data.xlc");
+    }
+
+    @Test
+    public void cellsRoundTrip() throws Exception {
+        ColumnarWriter writer = ColumnarWriter.create(file);
+        writer.setRowGroupRows(4);
+        //Dictionary encoded names, unique codes, booleans and a blank cell
+        writer.batch(batch(0, "Data",
+                new Object[]{1.5, "north", true, "a1"},
+                new Object[]{-2d, "north", false, "b2"},
+                new Object[]{null, "south", true, "c3"},
+                new Object[]{4d, "north", null, "d4"}));
+        //Short rows, and numbers mixed with text in a new row group
+        writer.batch(batch(0, "Data",
+                new Object[]{5d, "south"},
+                new Object[]{"n/a", null}));
+        writer.batch(batch(1, "Empty"));
+        writer.batch(batch(2, "Other", new Object[]{"x"}));
+        writer.close();
+
+        ColumnarReader reader = ColumnarReader.open(file);
+        try {
+            assertEquals(2, reader.getSheetCount());
+            assertEquals("Data", reader.getSheetName(0));
+            assertEquals(HEADERS, reader.getHeaders(0));
+            assertEquals(6, reader.getRowCount(0));
+            assertArrayEquals(new Object[]{1.5, -2d, null, 4d, "5.0", "n/a"}, reader.readColumn(0, 0));
+            assertArrayEquals(new Object[]{"north", "north", "south", "north", "south", null},
+                    reader.readColumn(0, 1));
+            assertArrayEquals(new Object[]{true, false, true, null, null, null}, reader.readColumn(0, 2));
+            assertArrayEquals(new Object[]{"a1", "b2", "c3", "d4", null, null}, reader.readColumn(0, 3));
+
+            assertEquals("Other", reader.getSheetName(1));
+            assertEquals(2, reader.getSheetIndex(1));
+            assertArrayEquals(new Object[]{"x"}, reader.readColumn(1, 0));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void pagesOutsideTheRangeAreSkipped() throws Exception {
+        ColumnarWriter writer = ColumnarWriter.create(file);
+        writer.setRowGroupRows(8);
+        for (int b = 0; b < 4; b++) {
+            Object[][] rows = new Object[4][];
+            for (int r = 0; r < 4; r++)
+                rows[r] = new Object[]{(double) (100 * b + r), "Row " + (4 * b + r)};
+            writer.batch(batch(0, "Data", rows));
+        }
+        writer.close();
+
+        ColumnarReader reader = ColumnarReader.open(file);
+        try {
+            Object[] cells = reader.readColumn(0, 0, 201, 250);
+            assertEquals(1, reader.getPagesRead());
+            assertEquals(3, reader.getPagesSkipped());
+            assertEquals(16, cells.length);
+            for (int r = 0; r < 16; r++) {
+                if (r / 4 == 2)
+                    assertEquals(200d + r % 4, cells[r]);
+                else
+                    assertNull(cells[r]);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void notAColumnarFile() throws Exception {
+        ColumnarReader.open(file);
+    }
+
+    private ColumnBatch batch(int sheetIndex, String sheetName, Object[]... rows) {
+        ColumnBatch batch = pool.acquire();
+        batch.start(sheetIndex, sheetName, HEADERS);
+        for (Object[] row : rows) {
+            for (int c = 0; c < row.length; c++) {
+                if (row[c] instanceof Double)
+                    batch.setNumber(c, (Double) row[c], false);
+                else if (row[c] instanceof Boolean)
+                    batch.setBoolean(c, (Boolean) row[c]);
+                else if (null != row[c])
+                    batch.setString(c, (String) row[c]);
+            }
+            batch.commitRow();
+        }
+        return batch;
+    }
+}
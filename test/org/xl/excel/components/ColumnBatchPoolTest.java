@@ -0,0 +1,46 @@
+package org.xl.excel.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ColumnBatchPoolTest {
+
+    @Test
+    public void releasedBatchIsReused() {
+        ColumnBatchPool pool = new ColumnBatchPool(4, 2);
+        ColumnBatch batch = pool.acquire();
+        batch.start(0, "Data", Arrays.asList("Id"));
+        batch.setNumber(0, 1, false);
+        batch.commitRow();
+        batch.release();
+
+        ColumnBatch next = pool.acquire();
+        assertSame(batch, next);
+        assertEquals(0, next.getRowCount());
+        next.release();
+    }
+
+    @Test
+    public void doubleReleaseIsRejected() {
+        //Room for both batches in the free queue, so only the flag notices
+        ColumnBatchPool pool = new ColumnBatchPool(4, 2);
+        ColumnBatch batch = pool.acquire();
+        batch.release();
+        try {
+            batch.release();
+            fail("A free batch was released again");
+        } catch (IllegalStateException e) {
+            assertEquals("ColumnBatch released twice", e.getMessage());
+        }
+        ColumnBatch first = pool.acquire();
+        ColumnBatch second = pool.acquire();
+        assertSame(batch, first);
+        assertNotSame(first, second);
+    }
+}
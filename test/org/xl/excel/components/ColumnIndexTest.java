@@ -0,0 +1,71 @@
+package org.xl.excel.components;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ColumnIndexTest {
+
+    private static Sheet sheet(String... rows) {
+        return new Sheet("Data", 0, new ArrayList<String>(Arrays.asList("Number", "String")),
+                new ArrayList<String>(Arrays.asList("Id", "Name")),
+                new ArrayList<String>(Arrays.asList(rows)));
+    }
+
+    @Test
+    public void lookups() {
+        Sheet sheet = sheet("\"1\",\"b\"", "\"2\",\"a\"", "\"x\",\"b\"", "\"10\",\"\"", "\"2.0\",\"c\"");
+        assertTrue(sheet.containsValue(1, "b"));
+        assertFalse(sheet.containsValue(1, "B"));
+        assertArrayEquals(new int[]{0, 2}, sheet.findRows(1, "b"));
+        assertArrayEquals(new int[]{3}, sheet.findRows(1, ""));
+        assertArrayEquals(new int[]{1, 4}, sheet.findRowsBetween(0, 2, 2));
+        assertArrayEquals(new int[]{0, 1, 4}, sheet.findRowsBetween(0, 0, 5));
+        assertArrayEquals(new int[]{0, 1, 2}, sheet.findRowsBetween(1, null, "b"));
+        assertArrayEquals(new int[]{4}, sheet.findRowsBetween(1, "bb", null));
+    }
+
+    @Test
+    public void lookupsFollowTheRowList() {
+        Sheet sheet = sheet("\"1\",\"one\"", "\"2\",\"two\"");
+        assertArrayEquals(new int[]{1}, sheet.findRows(1, "two"));
+        assertArrayEquals(new int[]{0}, sheet.findRowsBetween(0, 1, 1));
+
+        sheet.getRowList().set(1, "\"2\",\"deux\"");
+        assertFalse(sheet.containsValue(1, "two"));
+        assertArrayEquals(new int[]{1}, sheet.findRows(1, "deux"));
+
+        sheet.getRowList().add("\"3\",\"two\"");
+        assertArrayEquals(new int[]{2}, sheet.findRows(1, "two"));
+        assertArrayEquals(new int[]{1, 2}, sheet.findRowsBetween(0, 2, 3));
+
+        sheet.getRowList().remove(0);
+        assertArrayEquals(new int[]{0}, sheet.findRows(1, "deux"));
+        assertArrayEquals(new int[]{}, sheet.findRowsBetween(0, 1, 1));
+
+        //A remove and an add keep the size
+        sheet.getRowList().remove(0);
+        sheet.getRowList().add("\"4\",\"four\"");
+        assertFalse(sheet.containsValue(1, "deux"));
+        assertArrayEquals(new int[]{1}, sheet.findRows(1, "four"));
+        assertArrayEquals(new int[]{0}, sheet.findRowsBetween(1, "t", "u"));
+
+        Collections.reverse(sheet.getRowList());
+        assertArrayEquals(new int[]{0}, sheet.findRows(1, "four"));
+
+        sheet.getRowList().clear();
+        assertFalse(sheet.containsValue(1, "four"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void columnPastTheHeaders() {
+        sheet("\"1\",\"one\"").containsValue(2, "one");
+    }
+}
@@ -0,0 +1,65 @@
+package org.xl.excel.components;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class HeaderIndexTest {
+
+    @Test
+    public void headersMatchIgnoringCase() {
+        HeaderIndex index = HeaderIndex.build(Arrays.asList("Id", "Customer Name", "t\u0131tle"));
+        assertEquals(0, index.indexOf("ID"));
+        assertEquals(1, index.indexOf("customer name"));
+        assertEquals(-1, index.indexOf("Customer"));
+        assertEquals(-1, index.indexOf(null));
+    }
+
+    @Test
+    public void foldingAgreesWithEqualsIgnoreCase() {
+        //A dotless i and a long s are equal to I and S ignoring case
+        List<String> headers = Arrays.asList("t\u0131tle", "\u017fum", "Stra\u00dfe");
+        HeaderIndex index = HeaderIndex.build(headers);
+        for (String lookup : Arrays.asList("TITLE", "title", "SUM", "sum", "STRASSE", "stra\u00dfe")) {
+            int expected = -1;
+            for (int i = headers.size() - 1; i >= 0; i--) {
+                if (headers.get(i).equalsIgnoreCase(lookup))
+                    expected = i;
+            }
+            assertEquals(lookup, expected, index.indexOf(lookup));
+        }
+    }
+
+    @Test
+    public void firstOfDuplicateHeadersWins() {
+        HeaderIndex index = HeaderIndex.build(Arrays.asList("Amount", null, "AMOUNT", "amount"));
+        assertEquals(0, index.indexOf("amount"));
+        assertEquals(-1, index.indexOf("null"));
+    }
+
+    @Test
+    public void nullHeaderListIsEmpty() {
+        assertEquals(-1, HeaderIndex.build(null).indexOf("Id"));
+        Sheet sheet = new Sheet("Data", 0, null, null, new ArrayList<String>());
+        assertEquals(-1, sheet.getColumnIndex("Id", true));
+    }
+
+    @Test
+    public void sheetFollowsItsHeaders() {
+        Sheet sheet = new Sheet("Data", 0, new ArrayList<String>(Arrays.asList("Number", "String")),
+                new ArrayList<String>(Arrays.asList("Id", "Name")), new ArrayList<String>());
+        assertEquals(1, sheet.getColumnIndex("NAME", false));
+        sheet.setHeaderList(new ArrayList<String>(Arrays.asList("Name", "Id")));
+        assertEquals(0, sheet.getColumnIndex("name", false));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void missingHeaderFails() {
+        Sheet sheet = new Sheet("Data", 0, null, Arrays.asList("Id"), new ArrayList<String>());
+        sheet.getColumnIndex("Name", false);
+    }
+}
@@ -0,0 +1,65 @@
+package org.xl.excel.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void estimatesWithinTheStandardError() {
+        for (int precision : new int[]{10, HyperLogLog.DEFAULT_PRECISION, 14}) {
+            //Three standard errors of 1.04 / sqrt(m)
+            double bound = 3 * 1.04 / Math.sqrt(1 << precision);
+            HyperLogLog sketch = new HyperLogLog(precision);
+            int offered = 0;
+            for (int distinct : new int[]{1000, 10000, 100000, 500000}) {
+                for (; offered < distinct; offered++)
+                    sketch.offer("value-" + offered);
+                double error = Math.abs(sketch.cardinality() - distinct) / (double) distinct;
+                assertTrue("precision " + precision + ", " + distinct + " values, error " + error,
+                        error <= bound);
+            }
+        }
+    }
+
+    @Test
+    public void smallCardinalitiesAreNearlyExact() {
+        HyperLogLog sketch = new HyperLogLog();
+        assertEquals(0, sketch.cardinality());
+        for (int i = 0; i < 100; i++) {
+            sketch.offer(Integer.toString(i));
+            //Repeats do not count
+            sketch.offer(Integer.toString(i / 2));
+        }
+        assertEquals(100, sketch.cardinality(), 2);
+    }
+
+    @Test
+    public void mergeEstimatesTheUnion() {
+        HyperLogLog left = new HyperLogLog();
+        HyperLogLog right = new HyperLogLog();
+        HyperLogLog both = new HyperLogLog();
+        for (int i = 0; i < 30000; i++) {
+            String value = Integer.toString(i);
+            if (i < 20000)
+                left.offer(value);
+            if (i >= 10000)
+                right.offer(value);
+            both.offer(value);
+        }
+        left.merge(right);
+        assertEquals(both.cardinality(), left.cardinality());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeNeedsTheSamePrecision() {
+        new HyperLogLog(10).merge(new HyperLogLog(12));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void precisionIsBounded() {
+        new HyperLogLog(19);
+    }
+}
@@ -0,0 +1,73 @@
+package org.xl.excel.components;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SheetTest {
+    private static final String SPLIT = ",(?=([^\"]*\"[^\"]*\")*[^\"]*$)";
+
+    private static Sheet sheet(List<String> rows) {
+        return new Sheet("Data", 0, new ArrayList<String>(Arrays.asList("Number", "String")),
+                new ArrayList<String>(Arrays.asList("Id", "Name")), rows);
+    }
+
+    @Test
+    public void cellsMatchTheRegexSplit() {
+        Random random = new Random(26);
+        String[] pieces = {"", "a", "\"b\"", "\"c,d\"", "e\"f", "\"\"", "12.5", "\"g\"\"h\""};
+        List<String> rows = new ArrayList<String>();
+        for (int r = 0; r < 2000; r++) {
+            StringBuilder row = new StringBuilder();
+            int cells = random.nextInt(6);
+            for (int c = 0; c < cells; c++) {
+                if (c > 0)
+                    row.append(',');
+                row.append(pieces[random.nextInt(pieces.length)]);
+            }
+            rows.add(row.toString());
+        }
+        Sheet sheet = sheet(rows);
+        for (int r = 0; r < rows.size(); r++) {
+            String[] expected = rows.get(r).split(SPLIT);
+            assertArrayEquals(rows.get(r), expected, sheet.getCellValues(r, true));
+            String[] unquoted = new String[expected.length];
+            for (int c = 0; c < expected.length; c++)
+                unquoted[c] = expected[c].replace("\"", "");
+            assertArrayEquals(rows.get(r), unquoted, sheet.getCellValues(r, false));
+            assertArrayEquals(rows.get(r), unquoted, Sheet.splitRow(rows.get(r), false));
+            for (int c = 0; c < unquoted.length + 2; c++)
+                assertEquals(c < unquoted.length ? unquoted[c] : "", sheet.getCell(r, c));
+        }
+    }
+
+    @Test
+    public void changesThroughTheRowListAreRead() {
+        Sheet sheet = sheet(new ArrayList<String>(Arrays.asList(
+                "\"1\",\"one\"", "\"2\",\"two\"")));
+        assertEquals("two", sheet.getCell(1, 1));
+
+        sheet.getRowList().set(1, "\"2\",\"deux\"");
+        assertEquals("deux", sheet.getCell(1, 1));
+
+        sheet.getRowList().add("\"3\",\"three\"");
+        assertEquals(3, sheet.getRowCount());
+        assertArrayEquals(new String[]{"3", "three"}, sheet.getCellValues(2, false));
+
+        sheet.getRowList().remove(0);
+        assertEquals(2, sheet.getRowCount());
+        assertEquals("deux", sheet.getCell(0, 1));
+        assertEquals("three", sheet.getCell(1, 1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rowPastTheEnd() {
+        sheet(new ArrayList<String>(Arrays.asList("\"1\",\"one\""))).getCell(1, 0);
+    }
+}
@@ -0,0 +1,81 @@
+package org.xl.excel.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class SpaceSavingTest {
+
+    @Test
+    public void countsAreBoundedByTheError() {
+        int capacity = 32;
+        int rows = 100000;
+        SpaceSaving sketch = new SpaceSaving(capacity);
+        Map<String, Long> exact = new HashMap<String, Long>();
+        Random random = new Random(29);
+        for (int i = 0; i < rows; i++) {
+            //Skewed values, a few are frequent and most are rare
+            String value = "v" + (int) Math.floor(Math.pow(random.nextDouble(), 4) * 5000);
+            sketch.offer(value);
+            Long count = exact.get(value);
+            exact.put(value, null == count ? 1 : count + 1);
+        }
+        List<SpaceSaving.Counter> top = sketch.getTop(capacity);
+        assertEquals(capacity, top.size());
+        Set<String> tracked = new HashSet<String>();
+        for (SpaceSaving.Counter counter : top) {
+            long count = exact.get(counter.getValue());
+            assertTrue(counter + " under counts " + count, counter.getCount() >= count);
+            assertTrue(counter + " over counts " + count, counter.getCount() - counter.getError() <= count);
+            assertTrue(counter.getError() <= rows / capacity);
+            tracked.add(counter.getValue());
+        }
+        //Every value above rows / capacity is tracked
+        for (Map.Entry<String, Long> entry : exact.entrySet()) {
+            if (entry.getValue() > rows / capacity)
+                assertTrue(entry.getKey(), tracked.contains(entry.getKey()));
+        }
+        for (int i = 1; i < top.size(); i++)
+            assertTrue(top.get(i - 1).getCount() >= top.get(i).getCount());
+    }
+
+    @Test
+    public void exactWhileTheCountersLast() {
+        SpaceSaving sketch = new SpaceSaving(4);
+        for (String value : "a b a c a b d".split(" "))
+            sketch.offer(value);
+        List<SpaceSaving.Counter> top = sketch.getTop(2);
+        assertEquals(2, top.size());
+        assertEquals("a", top.get(0).getValue());
+        assertEquals(3, top.get(0).getCount());
+        assertEquals(0, top.get(0).getError());
+        assertEquals("b", top.get(1).getValue());
+        assertEquals(2, top.get(1).getCount());
+    }
+
+    @Test
+    public void newValuesInheritTheSmallestCount() {
+        SpaceSaving sketch = new SpaceSaving(2);
+        for (String value : "a a a b c".split(" "))
+            sketch.offer(value);
+        List<SpaceSaving.Counter> top = sketch.getTop(5);
+        assertEquals(2, top.size());
+        assertEquals("a=3", top.get(0).toString());
+        assertEquals("c", top.get(1).getValue());
+        assertEquals(2, top.get(1).getCount());
+        assertEquals(1, top.get(1).getError());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePositive() {
+        new SpaceSaving(0);
+    }
+}
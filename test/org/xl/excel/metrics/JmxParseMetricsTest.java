@@ -0,0 +1,105 @@
+package org.xl.excel.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xl.excel.parser.ExcelParser;
+
+public class JmxParseMetricsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private JmxParseMetrics metrics;
+
+    @After
+    public void unregister() {
+        if (null != metrics)
+            metrics.unregister();
+    }
+
+    @Test
+    public void countsTheParsedRows() throws Exception {
+        metrics = JmxParseMetrics.register("counts");
+        ExcelParser parser = ExcelParser.createXLSXtoRowArrayList(workbook(new XSSFWorkbook(), "data.xlsx"));
+        parser.setMetrics(metrics);
+        parser.process(true, true);
+        assertEquals(3, metrics.getRows());
+        assertEquals(8, metrics.getCells());
+        assertEquals(1, metrics.getSheetsParsed());
+        assertTrue(metrics.getInflatedBytes() > 0);
+
+        parser = ExcelParser.createXLSParser(workbook(new HSSFWorkbook(), "data.xls"));
+        parser.setMetrics(metrics);
+        parser.process(true, true);
+        assertEquals(6, metrics.getRows());
+        assertEquals(16, metrics.getCells());
+        assertEquals(2, metrics.getSheetsParsed());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(JmxParseMetrics.DOMAIN + ":type=ParseMetrics,name=" +
+                ObjectName.quote("counts"));
+        assertEquals(6L, server.getAttribute(name, "Rows"));
+        server.invoke(name, "reset", null, null);
+        assertEquals(0, metrics.getRows());
+    }
+
+    @Test
+    public void nameIsRegisteredOnce() {
+        metrics = JmxParseMetrics.register("once");
+        try {
+            JmxParseMetrics.register("once");
+            fail("The registered MBean was replaced");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        metrics.unregister();
+        metrics = JmxParseMetrics.register("once");
+    }
+
+    @Test
+    public void noOpMetricsAreDisabled() {
+        assertFalse(NoOpParseMetrics.INSTANCE.isEnabled());
+    }
+
+    /**
+     * Writes a Sheet with a header row and three data rows.
+     */
+    private File workbook(Workbook workbook, String name) throws IOException {
+        Sheet sheet = workbook.createSheet("Data");
+        Row header = sheet.createRow(0);
+        header.createCell(0).setCellValue("Id");
+        header.createCell(1).setCellValue("Name");
+        for (int r = 1; r <= 3; r++) {
+            Row row = sheet.createRow(r);
+            row.createCell(0).setCellValue(r);
+            row.createCell(1).setCellValue("Row " + r);
+        }
+        File file = folder.newFile(name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,103 @@
+package org.xl.excel.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xl.excel.components.ColumnBatch;
+import org.xl.excel.components.ColumnBatchPool;
+
+/**
+ * Parses workbooks into ColumnBatches from a pool of two batches, which is
+ * exhausted as soon as a parse keeps a batch.
+ */
+public class BatchListenerTest {
+    private static final int ROWS = 25;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ColumnBatchPool pool = new ColumnBatchPool(10, 2);
+
+    @Test(timeout = 10000)
+    public void cancelledXLSXParsesReturnTheirBatches() throws Exception {
+        File file = workbook(new XSSFWorkbook(), "data.xlsx");
+        for (int i = 0; i < 3; i++)
+            cancelledParse(ExcelParser.createXLSXtoRowArrayList(file));
+        assertEquals(ROWS, parse(ExcelParser.createXLSXtoRowArrayList(file)));
+    }
+
+    @Test(timeout = 10000)
+    public void cancelledXLSParsesReturnTheirBatches() throws Exception {
+        File file = workbook(new HSSFWorkbook(), "data.xls");
+        for (int i = 0; i < 3; i++)
+            cancelledParse(ExcelParser.createXLSParser(file));
+        assertEquals(ROWS, parse(ExcelParser.createXLSParser(file)));
+    }
+
+    /**
+     * Cancels the parse half way through the second batch.
+     */
+    private void cancelledParse(ExcelParser parser) throws Exception {
+        parser.setProgress(new ParseProgress() {
+            @Override
+            void addRow() {
+                super.addRow();
+                if (getRowsEmitted() == 15)
+                    cancel();
+            }
+        });
+        try {
+            parse(parser);
+            fail("The cancelled parse completed");
+        } catch (RuntimeException e) {
+            //expected
+        }
+    }
+
+    private long parse(ExcelParser parser) throws Exception {
+        final AtomicLong rows = new AtomicLong();
+        parser.setBatchListener(new BatchListener() {
+            @Override
+            public void batch(ColumnBatch batch) {
+                rows.addAndGet(batch.getRowCount());
+                batch.release();
+            }
+        }, pool);
+        parser.process(true, false);
+        return rows.get();
+    }
+
+    private File workbook(Workbook workbook, String name) throws IOException {
+        Sheet sheet = workbook.createSheet("Data");
+        Row header = sheet.createRow(0);
+        header.createCell(0).setCellValue("Id");
+        header.createCell(1).setCellValue("Name");
+        for (int r = 1; r <= ROWS; r++) {
+            Row row = sheet.createRow(r);
+            row.createCell(0).setCellValue(r);
+            row.createCell(1).setCellValue("Row " + r);
+        }
+        File file = folder.newFile(name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,133 @@
+package org.xl.excel.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xl.excel.components.ColumnStats;
+import org.xl.excel.components.Sheet;
+
+public class ColumnTypeInferenceTest {
+    private static final List<String> HEADERS = Arrays.asList("A", "B", "C", "D", "E", "F");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void typesFromEveryDataRow() {
+        ColumnTypeInference inference = new ColumnTypeInference(ExcelParser.READ_ALL);
+        //The header row does not count
+        inference.cell(0, ColumnTypeInference.STRING, Double.NaN);
+        inference.discardRow();
+        row(inference, ColumnTypeInference.NUMBER, ColumnTypeInference.NUMBER,
+                ColumnTypeInference.BLANK, ColumnTypeInference.ERROR, ColumnTypeInference.ERROR);
+        row(inference, ColumnTypeInference.NUMBER, ColumnTypeInference.NUMBER,
+                ColumnTypeInference.BOOLEAN, ColumnTypeInference.ERROR, ColumnTypeInference.NUMBER);
+        row(inference, ColumnTypeInference.NUMBER, ColumnTypeInference.STRING,
+                ColumnTypeInference.BOOLEAN, ColumnTypeInference.BLANK, ColumnTypeInference.NUMBER);
+        //A skipped row does not count either
+        inference.cell(0, ColumnTypeInference.STRING, Double.NaN);
+        inference.discardRow();
+        assertTrue(inference.isSampling());
+        assertEquals(Arrays.asList("Number", "String", "Boolean", "Error", "Number", "String"),
+                inference.getColumnTypes(HEADERS));
+    }
+
+    @Test
+    public void sampleRowsLimitTheInference() {
+        ColumnTypeInference inference = new ColumnTypeInference(2);
+        row(inference, ColumnTypeInference.NUMBER);
+        row(inference, ColumnTypeInference.NUMBER);
+        assertFalse(inference.isSampling());
+        row(inference, ColumnTypeInference.STRING);
+        assertEquals("Number", inference.getColumnTypes(HEADERS).get(0));
+    }
+
+    @Test
+    public void sampledSheet() throws Exception {
+        File file = workbook();
+        XLSXParser parser = ExcelParser.createXLSXtoRowArrayList(file);
+        parser.process(true, false);
+        Sheet sheet = parser.getSheetList().get(0);
+        assertEquals(Arrays.asList("String", "Date"), sheet.getColumnTypes());
+        ColumnStats amount = sheet.getColumnStats().get(0);
+        assertEquals(4, amount.getRowCount());
+        assertEquals(3, amount.getNumberCount());
+        assertEquals(1, amount.getStringCount());
+        assertEquals(-2, amount.getMin(), 0);
+        assertEquals(10, amount.getMax(), 0);
+
+        parser = ExcelParser.createXLSXtoRowArrayList(file);
+        parser.setTypeSampleRows(3);
+        parser.process(true, false);
+        sheet = parser.getSheetList().get(0);
+        assertEquals(Arrays.asList("Number", "Date"), sheet.getColumnTypes());
+        assertEquals(3, sheet.getColumnStats().get(0).getRowCount());
+        assertEquals(4, sheet.getRowCount());
+    }
+
+    @Test
+    public void dates() {
+        assertTrue(ColumnTypeInference.isDate("2013-05-16"));
+        assertTrue(ColumnTypeInference.isDate("\"16/05/2013\""));
+        assertTrue(ColumnTypeInference.isDate("16.5.13"));
+        assertFalse(ColumnTypeInference.isDate("2013-05/16"));
+        assertFalse(ColumnTypeInference.isDate("2013-05"));
+        assertFalse(ColumnTypeInference.isDate("2013--16"));
+        assertFalse(ColumnTypeInference.isDate("1.2.3.4"));
+        assertFalse(ColumnTypeInference.isDate("1234567890-1-1"));
+        assertFalse(ColumnTypeInference.isDate(""));
+    }
+
+    private static void row(ColumnTypeInference inference, int... kinds) {
+        for (int column = 0; column < kinds.length; column++)
+            inference.cell(column, kinds[column],
+                    kinds[column] == ColumnTypeInference.NUMBER ? column : Double.NaN);
+        inference.commitRow();
+    }
+
+    /**
+     * Writes an Amount Column whose last row is text and a Due Column of
+     * formatted dates.
+     */
+    private File workbook() throws IOException {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        org.apache.poi.ss.usermodel.Sheet sheet = workbook.createSheet("Data");
+        short dateFormat = workbook.createDataFormat().getFormat("yyyy-mm-dd");
+        org.apache.poi.ss.usermodel.CellStyle dates = workbook.createCellStyle();
+        dates.setDataFormat(dateFormat);
+        Row header = sheet.createRow(0);
+        header.createCell(0).setCellValue("Amount");
+        header.createCell(1).setCellValue("Due");
+        double[] amounts = {10, -2, 3.5};
+        for (int r = 1; r <= 4; r++) {
+            Row row = sheet.createRow(r);
+            if (r <= amounts.length)
+                row.createCell(0).setCellValue(amounts[r - 1]);
+            else
+                row.createCell(0).setCellValue("n/a");
+            row.createCell(1).setCellValue(45000 + r);
+            row.getCell(1).setCellStyle(dates);
+        }
+        File file = folder.newFile("sampled.xlsx");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,104 @@
+package org.xl.excel.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xl.excel.components.Sheet;
+
+/**
+ * A dictionary encoded Sheet reads exactly like the Sheet of Comma
+ * Separated Strings parsed from the same file.
+ */
+public class DictionaryEncodingTest {
+    private static final Object[][] ROWS = {
+            {"A", "B", "C", "D"},
+            {"x", "", "y", ""},
+            {"p", "q"},
+            {null, null, "only c"},
+            {1.5, null, null, "d"},
+            {"a,b", "say \"hi\"", true, 3.0, "extra"},
+            {},
+            {"", ""},
+            {"x", "q", "y"}};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void blankRowsIgnored() throws Exception {
+        File file = workbook();
+        Sheet sheet = parse(file, false, true);
+        assertSheetsEqual(sheet, parse(file, true, true));
+        assertEquals(6, sheet.getRowCount());
+        assertEquals("\"x\",\"\",\"y\",\"\"", sheet.getRowList().get(0));
+        assertArrayEquals(new String[]{"p", "q", "", ""}, sheet.getCellValues(1, false));
+        assertEquals(",,\"only c\",\"\"", sheet.getRowList().get(2));
+    }
+
+    @Test
+    public void blankRowsKept() throws Exception {
+        File file = workbook();
+        Sheet sheet = parse(file, false, false);
+        assertSheetsEqual(sheet, parse(file, true, false));
+        assertEquals(8, sheet.getRowCount());
+        assertEquals("\"\",\"\",\"\",\"\"", sheet.getRowList().get(5));
+    }
+
+    private static void assertSheetsEqual(Sheet expected, Sheet actual) {
+        assertEquals(expected.getHeaderList(), actual.getHeaderList());
+        assertEquals(expected.getColumnTypes(), actual.getColumnTypes());
+        assertEquals(expected.getRowCount(), actual.getRowCount());
+        assertEquals(new ArrayList<String>(expected.getRowList()),
+                new ArrayList<String>(actual.getRowList()));
+        for (int r = 0; r < expected.getRowCount(); r++) {
+            assertArrayEquals(expected.getCellValues(r, true), actual.getCellValues(r, true));
+            assertArrayEquals(expected.getCellValues(r, false), actual.getCellValues(r, false));
+            for (int c = 0; c < 6; c++)
+                assertEquals(expected.getCell(r, c), actual.getCell(r, c));
+        }
+    }
+
+    private static Sheet parse(File file, boolean dictionaryEncoding,
+                               boolean ignoreBlankRows) throws Exception {
+        XLSXParser parser = ExcelParser.createXLSXtoRowArrayList(file);
+        parser.setDictionaryEncoding(dictionaryEncoding);
+        parser.process(ignoreBlankRows, true);
+        return parser.getSheetList().get(0);
+    }
+
+    private File workbook() throws IOException {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        org.apache.poi.ss.usermodel.Sheet sheet = workbook.createSheet("Data");
+        for (int r = 0; r < ROWS.length; r++) {
+            Row row = sheet.createRow(r);
+            for (int c = 0; c < ROWS[r].length; c++) {
+                Object value = ROWS[r][c];
+                if (value instanceof String)
+                    row.createCell(c).setCellValue((String) value);
+                else if (value instanceof Double)
+                    row.createCell(c).setCellValue((Double) value);
+                else if (value instanceof Boolean)
+                    row.createCell(c).setCellValue((Boolean) value);
+            }
+        }
+        File file = folder.newFile("mixed.xlsx");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
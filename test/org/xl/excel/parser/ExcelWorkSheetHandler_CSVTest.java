@@ -0,0 +1,143 @@
+package org.xl.excel.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xl.excel.ExcelWriter;
+import org.xl.excel.components.ColumnBatch;
+import org.xl.excel.components.Sheet;
+
+/**
+ * Number and boolean cells with an empty &lt;v&gt; element, as written by
+ * some tools, are blank cells on every path of the handler.
+ */
+public class ExcelWorkSheetHandler_CSVTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void createWorkbook() throws IOException {
+        File written = folder.newFile("written.xlsx");
+        ExcelWriter writer = ExcelWriter.create(written);
+        try {
+            writer.startSheet("Data", Arrays.asList("Number", "String", "Boolean"));
+            writer.writeRow(new String[]{"Id", "Name", "Flag"});
+            writer.writeRow(new String[]{"1", "one", "TRUE"});
+            writer.writeRow(new String[]{"2", "two", "FALSE"});
+        } finally {
+            writer.close();
+        }
+        file = folder.newFile("empty-values.xlsx");
+        emptyValues(written, file);
+    }
+
+    @Test
+    public void rowsWithCellFormatting() throws Exception {
+        XLSXParser parser = ExcelParser.createXLSXtoRowArrayList(file);
+        parser.process(true, true);
+        Sheet sheet = parser.getSheetList().get(0);
+        assertEquals(2, sheet.getRowCount());
+        assertArrayEquals(new String[]{"", "two", ""}, sheet.getCellValues(1, false));
+    }
+
+    @Test
+    public void batches() throws Exception {
+        final List<String> cells = new ArrayList<String>();
+        XLSXParser parser = ExcelParser.createXLSXtoRowArrayList(file);
+        parser.setBatchListener(new BatchListener() {
+            @Override
+            public void batch(ColumnBatch batch) {
+                try {
+                    for (int r = 0; r < batch.getRowCount(); r++) {
+                        for (int c = 0; c < 3; c++)
+                            cells.add(batch.isNull(c, r) ? null : batch.getValue(c, r));
+                    }
+                } finally {
+                    batch.release();
+                }
+            }
+        }, 16);
+        parser.process(true, false);
+        assertEquals(Arrays.asList("1.0", "one", "TRUE", null, "two", null), cells);
+    }
+
+    @Test
+    public void rowPredicate() throws Exception {
+        XLSXParser parser = ExcelParser.createXLSXtoRowArrayList(file);
+        parser.setRowPredicate(RowPredicate.and(RowPredicate.isBlank("id"),
+                RowPredicate.isBlank("flag")));
+        parser.process(true, false);
+        Sheet sheet = parser.getSheetList().get(0);
+        assertEquals(1, sheet.getRowCount());
+        assertEquals("two", sheet.getCell(0, 1));
+    }
+
+    @Test
+    public void convertedRowPredicate() throws Exception {
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(csv, true, "UTF-8");
+        XLSXParser parser = ExcelParser.createXLSXtoCSVConverter(file, output);
+        parser.setRowPredicate(RowPredicate.equalTo("NAME", "two"));
+        parser.process(true, false);
+        output.flush();
+        String[] lines = new String(csv.toByteArray(), StandardCharsets.UTF_8).split("\\r?\\n");
+        assertEquals(Arrays.asList("", "Data [index=0]:", "\"Id\",\"Name\",\"Flag\"",
+                "\"\",\"two\",\"\""), Arrays.asList(lines));
+    }
+
+    /**
+     * Copies the workbook, emptying the values of A3 and C3.
+     */
+    private static void emptyValues(File source, File target) throws IOException {
+        ZipInputStream in = new ZipInputStream(new FileInputStream(source));
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(target));
+        try {
+            ZipEntry entry;
+            while (null != (entry = in.getNextEntry())) {
+                byte[] bytes = read(in);
+                if ("xl/worksheets/sheet1.xml".equals(entry.getName())) {
+                    String xml = new String(bytes, StandardCharsets.UTF_8)
+                            .replace("<c r=\"A3\"><v>2.0</v>", "<c r=\"A3\"><v></v>")
+                            .replace("<c r=\"C3\" t=\"b\"><v>0</v>", "<c r=\"C3\" t=\"b\"><v/>");
+                    bytes = xml.getBytes(StandardCharsets.UTF_8);
+                }
+                out.putNextEntry(new ZipEntry(entry.getName()));
+                out.write(bytes);
+                out.closeEntry();
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) >= 0)
+            bytes.write(buffer, 0, count);
+        return bytes.toByteArray();
+    }
+}
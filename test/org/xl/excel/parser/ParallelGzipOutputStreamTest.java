@@ -0,0 +1,165 @@
+package org.xl.excel.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xl.excel.ExcelWriter;
+
+public class ParallelGzipOutputStreamTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void membersDecompressAsOneFile() throws Exception {
+        byte[] data = new byte[100000];
+        Random random = new Random(45);
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) ('a' + random.nextInt(4));
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(compressed, 4096,
+                Deflater.DEFAULT_COMPRESSION, executor, 3);
+        gzip.write(data, 0, 50000);
+        gzip.flush();
+        for (int i = 50000; i < data.length; i++)
+            gzip.write(data[i]);
+        gzip.close();
+        assertArrayEquals(data, gunzip(compressed.toByteArray()));
+    }
+
+    @Test
+    public void emptyStreamIsValidGzip() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new ParallelGzipOutputStream(compressed).close();
+        assertEquals(0, gunzip(compressed.toByteArray()).length);
+    }
+
+    @Test
+    public void failedBlockFailsEveryLaterCall() throws Exception {
+        FailingOutputStream sink = new FailingOutputStream(1);
+        ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(sink, 16,
+                Deflater.DEFAULT_COMPRESSION, executor, 1);
+        byte[] data = new byte[16];
+        IOException first = null;
+        try {
+            for (int i = 0; i < 10; i++)
+                gzip.write(data);
+            gzip.flush();
+            fail("The failed write went unnoticed");
+        } catch (IOException e) {
+            first = e;
+        }
+        try {
+            gzip.flush();
+            fail("Flush after a lost block succeeded");
+        } catch (IOException e) {
+            assertSame(sink.error, e.getCause());
+        }
+        try {
+            gzip.close();
+            fail("Close after a lost block succeeded");
+        } catch (IOException e) {
+            assertSame(sink.error, e.getCause());
+            assertEquals(1, e.getSuppressed().length);
+            assertSame(sink.closeError, e.getSuppressed()[0]);
+        }
+        assertSame(sink.error, first);
+    }
+
+    @Test
+    public void gzipConverterReportsAFailedWrite() throws Exception {
+        File file = folder.newFile("data.xlsx");
+        ExcelWriter writer = ExcelWriter.create(file);
+        try {
+            writer.startSheet("Data", Arrays.asList("Number", "String"));
+            writer.writeRow(new String[]{"Id", "Name"});
+            for (int i = 1; i <= 20000; i++)
+                writer.writeRow(new String[]{Integer.toString(i), "Row number " + i});
+        } finally {
+            writer.close();
+        }
+        //Fails on the second compressed block, written while the parse runs
+        FailingOutputStream sink = new FailingOutputStream(1);
+        XLSXParser parser = ExcelParser.createXLSXtoGzipCSVConverter(file, sink);
+        try {
+            parser.process(true, false);
+            fail("The conversion succeeded with a truncated output");
+        } catch (RuntimeException e) {
+            Throwable cause = e.getCause();
+            while (cause != sink.error && null != cause.getCause())
+                cause = cause.getCause();
+            assertSame(sink.error, cause);
+        }
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) >= 0)
+            out.write(buffer, 0, count);
+        return out.toByteArray();
+    }
+
+    /**
+     * Accepts a number of writes, fails the next one like a full disk and
+     * accepts the rest again.
+     */
+    private static class FailingOutputStream extends OutputStream {
+        final IOException error = new IOException("No space left on device");
+        final IOException closeError = new IOException("Close failed");
+        private int writes;
+
+        FailingOutputStream(int writes) {
+            this.writes = writes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (writes-- == 0)
+                throw error;
+        }
+
+        @Override
+        public void close() throws IOException {
+            throw closeError;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.xl.excel.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Records the Flight Recorder events of a parse and checks their fields.
+ */
+public class ParseEventsTest {
+    private static final String WORKBOOK = "org.xl.excel.WorkbookParse";
+    private static final String SHEET = "org.xl.excel.SheetParse";
+    private static final String SHARED_STRINGS = "org.xl.excel.SharedStringsLoad";
+    private static final String STYLES = "org.xl.excel.StylesLoad";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void xlsxEvents() throws Exception {
+        File file = workbook(new XSSFWorkbook(), "data.xlsx");
+        List<RecordedEvent> events = record(ExcelParser.createXLSXtoRowArrayList(file),
+                WORKBOOK, SHEET, SHARED_STRINGS, STYLES);
+
+        RecordedEvent workbook = only(events, WORKBOOK);
+        assertEquals("data.xlsx", workbook.getString("file"));
+        assertEquals("XLSX", workbook.getString("format"));
+        assertEquals(file.length(), workbook.getLong("fileSize"));
+        assertEquals(2, workbook.getInt("sheets"));
+        assertEquals(5, workbook.getLong("rows"));
+        List<RecordedEvent> sheets = all(events, SHEET);
+        assertEquals(2, sheets.size());
+        assertSheet(sheets.get(0), "Data", 0, 3);
+        assertSheet(sheets.get(1), "More", 1, 2);
+        long sheetBytes = 0;
+        for (RecordedEvent sheet : sheets) {
+            assertTrue(sheet.getLong("bytesRead") > 0);
+            sheetBytes += sheet.getLong("bytesRead");
+        }
+        assertEquals(sheetBytes, workbook.getLong("bytesRead"));
+        assertEquals("data.xlsx", only(events, SHARED_STRINGS).getString("file"));
+        assertEquals("data.xlsx", only(events, STYLES).getString("file"));
+    }
+
+    @Test
+    public void xlsEvents() throws Exception {
+        File file = workbook(new HSSFWorkbook(), "data.xls");
+        List<RecordedEvent> events = record(ExcelParser.createXLSParser(file), WORKBOOK, SHEET);
+
+        RecordedEvent workbook = only(events, WORKBOOK);
+        assertEquals("XLS", workbook.getString("format"));
+        assertEquals(file.length(), workbook.getLong("fileSize"));
+        assertEquals(5, workbook.getLong("rows"));
+        List<RecordedEvent> sheets = all(events, SHEET);
+        assertEquals(2, sheets.size());
+        assertSheet(sheets.get(0), "Data", 0, 3);
+        assertSheet(sheets.get(1), "More", 1, 2);
+    }
+
+    @Test
+    public void disabledEventsAreNotRecorded() throws Exception {
+        File file = workbook(new XSSFWorkbook(), "data.xlsx");
+        List<RecordedEvent> events = record(ExcelParser.createXLSXtoRowArrayList(file), WORKBOOK);
+        assertEquals(1, events.size());
+        assertEquals(WORKBOOK, events.get(0).getEventType().getName());
+    }
+
+    private static void assertSheet(RecordedEvent event, String name, int index, long rows) {
+        assertEquals(name, event.getString("sheetName"));
+        assertEquals(index, event.getInt("sheetIndex"));
+        assertEquals(rows, event.getLong("rows"));
+        //The header cells included
+        assertEquals(2 * (rows + 1), event.getLong("cells"));
+    }
+
+    /**
+     * Parses with only the specified events enabled and returns the events
+     * recorded, in the order they were committed.
+     */
+    private List<RecordedEvent> record(ExcelParser parser, String... enabled) throws Exception {
+        Recording recording = new Recording();
+        try {
+            for (String name : new String[]{WORKBOOK, SHEET, SHARED_STRINGS, STYLES})
+                recording.disable(name);
+            for (String name : enabled)
+                recording.enable(name);
+            recording.start();
+            parser.process(true, false);
+            recording.stop();
+            Path dump = folder.newFile("parse.jfr").toPath();
+            recording.dump(dump);
+            List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+                if (event.getEventType().getName().startsWith("org.xl.excel."))
+                    events.add(event);
+            }
+            return events;
+        } finally {
+            recording.close();
+        }
+    }
+
+    private static List<RecordedEvent> all(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> found = new ArrayList<RecordedEvent>();
+        for (RecordedEvent event : events) {
+            if (name.equals(event.getEventType().getName()))
+                found.add(event);
+        }
+        return found;
+    }
+
+    private static RecordedEvent only(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> found = all(events, name);
+        assertEquals(name, 1, found.size());
+        return found.get(0);
+    }
+
+    /**
+     * Writes a Sheet of three data rows and one of two.
+     */
+    private File workbook(Workbook workbook, String name) throws IOException {
+        sheet(workbook.createSheet("Data"), 3);
+        sheet(workbook.createSheet("More"), 2);
+        File file = folder.newFile(name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static void sheet(Sheet sheet, int rows) {
+        Row header = sheet.createRow(0);
+        header.createCell(0).setCellValue("Id");
+        header.createCell(1).setCellValue("Name");
+        for (int r = 1; r <= rows; r++) {
+            Row row = sheet.createRow(r);
+            row.createCell(0).setCellValue(r);
+            row.createCell(1).setCellValue("Row " + r);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.xl.excel.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParseJobTest {
+    private static final int ROWS = 50;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = 10000)
+    public void xlsxJobReportsProgress() throws Exception {
+        ParseJob job = ExcelParser.createXLSXtoRowArrayList(workbook(new XSSFWorkbook(), "data.xlsx"))
+                .processAsync(true, false, executor);
+        assertCompleted(job);
+        assertEquals(job.getProgress().getTotalBytes(), job.getProgress().getBytesRead());
+        assertEquals(1.0, job.getProgress().getFraction(), 0);
+    }
+
+    @Test(timeout = 10000)
+    public void xlsJobReportsProgress() throws Exception {
+        assertCompleted(ExcelParser.createXLSParser(workbook(new HSSFWorkbook(), "data.xls"))
+                .processAsync(true, false, executor));
+    }
+
+    @Test(timeout = 10000)
+    public void xlsxJobStopsWithinOneRow() throws Exception {
+        cancelAtRow(ExcelParser.createXLSXtoRowArrayList(workbook(new XSSFWorkbook(), "data.xlsx")));
+    }
+
+    @Test(timeout = 10000)
+    public void xlsJobStopsWithinOneRow() throws Exception {
+        cancelAtRow(ExcelParser.createXLSParser(workbook(new HSSFWorkbook(), "data.xls")));
+    }
+
+    @Test(timeout = 10000)
+    public void failedParseCompletesExceptionally() throws Exception {
+        File file = folder.newFile("broken.xlsx");
+        ParseJob job = ExcelParser.createXLSXtoRowArrayList(file).processAsync(true, false, executor);
+        try {
+            job.get(5, TimeUnit.SECONDS);
+            fail("The broken workbook was parsed");
+        } catch (ExecutionException e) {
+            //expected
+        }
+        assertTrue(job.isCompletedExceptionally());
+        assertFalse(job.isCancelled());
+    }
+
+    private static void assertCompleted(ParseJob job) throws Exception {
+        ParseResult result = job.get(5, TimeUnit.SECONDS);
+        assertEquals(ROWS, result.getRowCount());
+        assertEquals(1, result.getSheetList().size());
+        assertEquals(ROWS, result.getSheetList().get(0).getRowCount());
+        assertEquals(ROWS, job.getProgress().getRowsEmitted());
+        assertEquals(1, job.getProgress().getSheetsCompleted());
+        assertTrue(job.getProgress().getBytesRead() > 0);
+    }
+
+    /**
+     * Cancels the job while its parse is held at the tenth row, the parse
+     * must not deliver another row once released.
+     */
+    private void cancelAtRow(ExcelParser parser) throws Exception {
+        final CountDownLatch atRow = new CountDownLatch(1);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final AtomicInteger rows = new AtomicInteger();
+        parser.setRowListener(new RowListener() {
+            @Override
+            public void startSheet(int sheetIndex, String sheetName) {
+            }
+
+            @Override
+            public void headerRow(List<String> headers) {
+            }
+
+            @Override
+            public void row(String row) {
+                if (rows.incrementAndGet() == 10) {
+                    atRow.countDown();
+                    try {
+                        cancelled.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+
+            @Override
+            public void endSheet(org.xl.excel.components.Sheet sheet) {
+            }
+        });
+        ParseJob job = parser.processAsync(true, false, executor);
+        atRow.await();
+        assertTrue(job.cancel(false));
+        cancelled.countDown();
+        try {
+            job.get();
+            fail("The cancelled job completed");
+        } catch (CancellationException e) {
+            //expected
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(10, rows.get());
+        assertTrue(job.getProgress().isCancelled());
+        assertEquals(0, job.getProgress().getSheetsCompleted());
+    }
+
+    private File workbook(Workbook workbook, String name) throws IOException {
+        Sheet sheet = workbook.createSheet("Data");
+        Row header = sheet.createRow(0);
+        header.createCell(0).setCellValue("Id");
+        header.createCell(1).setCellValue("Name");
+        for (int r = 1; r <= ROWS; r++) {
+            Row row = sheet.createRow(r);
+            row.createCell(0).setCellValue(r);
+            row.createCell(1).setCellValue("Row " + r);
+        }
+        File file = folder.newFile(name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
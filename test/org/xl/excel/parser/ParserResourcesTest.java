@@ -0,0 +1,111 @@
+package org.xl.excel.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.SAXParser;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xl.excel.ExcelWriter;
+import org.xl.excel.components.Sheet;
+
+/**
+ * Parses nested in a row callback of another parse on the same thread,
+ * as ParseScheduler.checkpoint() does when it runs waiting jobs.
+ */
+public class ParserResourcesTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void busyParserIsNotHandedOut() throws Exception {
+        ParserResources resources = ParserResources.get();
+        SAXParser outer = resources.acquireSheetParser();
+        SAXParser inner = resources.acquireSheetParser();
+        assertNotSame(outer, inner);
+        resources.releaseSheetParser(inner);
+        resources.releaseSheetParser(outer);
+        SAXParser next = resources.acquireSheetParser();
+        assertSame(outer, next);
+        resources.releaseSheetParser(next);
+    }
+
+    @Test
+    public void nestedParseOnTheSameThread() throws Exception {
+        final File outerFile = workbook("outer.xlsx", 200);
+        final File innerFile = workbook("inner.xlsx", 3);
+        final List<String> outerRows = new ArrayList<String>();
+        final List<Sheet> innerSheets = new ArrayList<Sheet>();
+        XLSXParser outer = ExcelParser.createXLSXtoRowArrayList(outerFile);
+        outer.setRowListener(new RowCollector(outerRows) {
+            @Override
+            public void row(String row) {
+                super.row(row);
+                if (outerRows.size() == 5) {
+                    XLSXParser inner = ExcelParser.createXLSXtoRowArrayList(innerFile);
+                    try {
+                        inner.process(true, false);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                    innerSheets.addAll(inner.getSheetList());
+                }
+            }
+        });
+        outer.process(true, false);
+
+        assertEquals(1, innerSheets.size());
+        assertEquals(3, innerSheets.get(0).getRowCount());
+        assertEquals("Row 3", innerSheets.get(0).getCell(2, 1));
+        assertEquals(200, outerRows.size());
+        assertEquals("Row 200", Sheet.splitRow(outerRows.get(199), false)[1]);
+    }
+
+    private File workbook(String name, int rows) throws IOException {
+        File file = folder.newFile(name);
+        ExcelWriter writer = ExcelWriter.create(file);
+        try {
+            writer.startSheet("Data", Arrays.asList("Number", "String"));
+            writer.writeRow(new String[]{"Id", "Name"});
+            for (int i = 1; i <= rows; i++)
+                writer.writeRow(new String[]{Integer.toString(i), "Row " + i});
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private static class RowCollector implements RowListener {
+        private final List<String> rows;
+
+        RowCollector(List<String> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public void startSheet(int sheetIndex, String sheetName) {
+        }
+
+        @Override
+        public void headerRow(List<String> headers) {
+        }
+
+        @Override
+        public void row(String row) {
+            rows.add(row);
+        }
+
+        @Override
+        public void endSheet(Sheet sheet) {
+        }
+    }
+}
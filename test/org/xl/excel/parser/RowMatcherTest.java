@@ -0,0 +1,37 @@
+package org.xl.excel.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class RowMatcherTest {
+
+    @Test
+    public void columnsIgnoreCaseLikeTheSheet() {
+        RowMatcher matcher = new RowMatcher(RowPredicate.and(
+                RowPredicate.equalTo("status", "OPEN"),
+                RowPredicate.greaterThan("AMOUNT", 1000)),
+                Arrays.asList("Id", "Status", "Amount", "STATUS"));
+        //The first of the duplicate Headers wins, as in Sheet.getColumnIndex()
+        assertArrayEquals(new int[]{1, 2}, matcher.getColumns());
+
+        assertFalse(matcher.text(1, "OPEN"));
+        assertFalse(matcher.number(2, 2500, false));
+        assertTrue(matcher.endRow());
+
+        assertTrue(matcher.text(1, "CLOSED"));
+        matcher.discardRow();
+    }
+
+    @Test
+    public void missingHeaderIsTestedAsBlank() {
+        RowMatcher matcher = new RowMatcher(RowPredicate.isBlank("Comment"),
+                Arrays.asList("Id", "Status"));
+        assertArrayEquals(new int[0], matcher.getColumns());
+        assertTrue(matcher.endRow());
+    }
+}
@@ -0,0 +1,178 @@
+package org.xl.excel.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RowPublisherTest {
+    private static final int ROWS = 25;
+    private static final int BATCH_SIZE = 10;
+    private static final Object COMPLETE = "complete";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = 10000)
+    public void xlsxParsePausesWithoutDemand() throws Exception {
+        pausesWithoutDemand(ExcelParser.createXLSXtoRowArrayList(workbook(new XSSFWorkbook(), "data.xlsx")));
+    }
+
+    @Test(timeout = 10000)
+    public void xlsParsePausesWithoutDemand() throws Exception {
+        pausesWithoutDemand(ExcelParser.createXLSParser(workbook(new HSSFWorkbook(), "data.xls")));
+    }
+
+    @Test(timeout = 10000)
+    public void cancelStopsTheParse() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher(ExcelParser.createXLSXtoRowArrayList(workbook(new XSSFWorkbook(), "data.xlsx")))
+                .subscribe(subscriber);
+        subscriber.subscription.request(1);
+        assertEquals(BATCH_SIZE, ((RowBatch) subscriber.next()).getRowCount());
+        subscriber.subscription.cancel();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        //Neither another batch nor a completion signal
+        assertNull(subscriber.events.poll());
+    }
+
+    @Test(timeout = 10000)
+    public void nonPositiveRequestIsAnError() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher(ExcelParser.createXLSXtoRowArrayList(workbook(new XSSFWorkbook(), "data.xlsx")))
+                .subscribe(subscriber);
+        subscriber.subscription.request(0);
+        assertTrue(subscriber.next() instanceof IllegalArgumentException);
+    }
+
+    @Test(timeout = 10000)
+    public void oneSubscriberOnly() throws Exception {
+        RowPublisher publisher = publisher(ExcelParser.createXLSXtoRowArrayList(
+                workbook(new XSSFWorkbook(), "data.xlsx")));
+        RecordingSubscriber first = new RecordingSubscriber();
+        publisher.subscribe(first);
+        RecordingSubscriber second = new RecordingSubscriber();
+        publisher.subscribe(second);
+        assertTrue(second.next() instanceof IllegalStateException);
+        first.subscription.cancel();
+    }
+
+    /**
+     * Requests one batch, checks nothing more is published, then requests
+     * the rest. Batches do not span Sheets.
+     */
+    private void pausesWithoutDemand(ExcelParser parser) throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher(parser).subscribe(subscriber);
+        subscriber.subscription.request(1);
+        RowBatch first = (RowBatch) subscriber.next();
+        assertEquals("Data", first.getSheetName());
+        assertEquals(Arrays.asList("Id", "Name"), first.getHeaders());
+        assertEquals("Row 1", first.getCells(0)[1]);
+        assertNull(subscriber.events.poll(200, TimeUnit.MILLISECONDS));
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        int[] sizes = new int[4];
+        sizes[0] = first.getRowCount();
+        for (int i = 1; i < sizes.length; i++) {
+            RowBatch batch = (RowBatch) subscriber.next();
+            sizes[i] = batch.getRowCount();
+            assertEquals(i < 3 ? 0 : 1, batch.getSheetIndex());
+        }
+        assertArrayEquals(new int[]{BATCH_SIZE, BATCH_SIZE, ROWS - 2 * BATCH_SIZE, 3}, sizes);
+        assertEquals(COMPLETE, subscriber.next());
+    }
+
+    private RowPublisher publisher(ExcelParser parser) {
+        return new RowPublisher(parser, true, false, ExcelParser.READ_ALL, BATCH_SIZE, executor);
+    }
+
+    /**
+     * Writes a Sheet of ROWS data rows followed by one of three rows.
+     */
+    private File workbook(Workbook workbook, String name) throws IOException {
+        sheet(workbook.createSheet("Data"), ROWS);
+        sheet(workbook.createSheet("More"), 3);
+        File file = folder.newFile(name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static void sheet(Sheet sheet, int rows) {
+        Row header = sheet.createRow(0);
+        header.createCell(0).setCellValue("Id");
+        header.createCell(1).setCellValue("Name");
+        for (int r = 1; r <= rows; r++) {
+            Row row = sheet.createRow(r);
+            row.createCell(0).setCellValue(r);
+            row.createCell(1).setCellValue("Row " + r);
+        }
+    }
+
+    /**
+     * Queues the batches, the error or COMPLETE in the order received.
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<RowBatch> {
+        private final BlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+        private volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(RowBatch batch) {
+            events.add(batch);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            events.add(error);
+        }
+
+        @Override
+        public void onComplete() {
+            events.add(COMPLETE);
+        }
+
+        Object next() throws InterruptedException {
+            return events.poll(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.xl.excel.query;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Test;
+import org.xl.excel.components.Sheet;
+
+public class ColumnVectorTest {
+    private final ForkJoinPool pool = new ForkJoinPool(2);
+
+    private final Sheet sheet = new Sheet("Mixed", 0,
+            new ArrayList<String>(Arrays.asList("String")),
+            new ArrayList<String>(Arrays.asList("Value")),
+            new ArrayList<String>(Arrays.asList("\"50\"", "\"n/a\"", "\"\"", "\"1,000\"",
+                    "\"-2.5\"", "\"n/a\"")));
+
+    @After
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void numericViewFlagsText() {
+        ColumnVector vector = new ColumnVector(sheet, 0);
+        assertFalse(vector.isNumeric());
+        double[] numbers = vector.numbers(pool);
+        assertArrayEquals(new double[]{50, Double.NaN, Double.NaN, 1000, -2.5, Double.NaN},
+                numbers, 0);
+        assertFalse(vector.isNonNumeric(0));
+        assertTrue(vector.isNonNumeric(1));
+        assertFalse(vector.isNonNumeric(2));
+        assertTrue(vector.isNonNumeric(5));
+    }
+
+    @Test
+    public void textViewSharesCodes() {
+        ColumnVector vector = new ColumnVector(sheet, 0);
+        assertArrayEquals(new int[]{1, 2, 0, 3, 4, 2}, vector.codes());
+        assertArrayEquals(new String[]{"", "50", "n/a", "1,000", "-2.5"}, vector.dictionary());
+        //Blank first, then by text
+        assertArrayEquals(new int[]{0, 3, 4, 2, 1}, vector.ranks());
+    }
+
+    @Test
+    public void parse() {
+        assertEquals(50, ColumnVector.parse("50.0"), 0);
+        assertEquals(1000, ColumnVector.parse("1,000"), 0);
+        assertEquals(0.5, ColumnVector.parse(".5"), 0);
+        assertTrue(Double.isNaN(ColumnVector.parse("")));
+        assertTrue(Double.isNaN(ColumnVector.parse("n/a")));
+        assertTrue(Double.isNaN(ColumnVector.parse("1-2")));
+    }
+}
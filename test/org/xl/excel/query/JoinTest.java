@@ -0,0 +1,153 @@
+package org.xl.excel.query;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xl.excel.components.Sheet;
+import org.xl.excel.parser.RowPredicate;
+
+public class JoinTest {
+    private static final List<String> INNER = Arrays.asList(
+            "1|7|10|7.0|Ann", "2|8|20|8|Bob", "3|7|30|7.0|Ann");
+    private static final List<String> LEFT = Arrays.asList(
+            "1|7|10|7.0|Ann", "2|8|20|8|Bob", "3|7|30|7.0|Ann", "4||40||", "5|9|50||");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ForkJoinPool pool = new ForkJoinPool(2);
+    private Sheet orders;
+    private Sheet customers;
+    private File spillDirectory;
+
+    @Before
+    public void createSheets() throws IOException {
+        orders = sheet("Orders", Arrays.asList("Id", "CustomerId", "Amount"),
+                Arrays.asList("Number", "Number", "Number"),
+                "\"1\",\"7\",\"10\"", "\"2\",\"8\",\"20\"", "\"3\",\"7\",\"30\"",
+                "\"4\",\"\",\"40\"", "\"5\",\"9\",\"50\"");
+        customers = sheet("Customers", Arrays.asList("Id", "Name"),
+                Arrays.asList("Number", "String"),
+                "\"7.0\",\"Ann\"", "\"8\",\"Bob\"", "\"10\",\"Cid\"", "\"\",\"Nobody\"");
+        spillDirectory = folder.newFolder("spill");
+    }
+
+    @After
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void innerJoin() {
+        QueryResult result = join(orders, customers, Join.Type.INNER, "CustomerId", "Id", false);
+        assertEquals(Arrays.asList("Id", "CustomerId", "Amount", "Customers.Id", "Name"),
+                result.getHeaderList());
+        assertEquals(INNER, rows(result));
+    }
+
+    @Test
+    public void leftJoin() {
+        assertEquals(LEFT, rows(join(orders, customers, Join.Type.LEFT, "CustomerId", "Id", false)));
+    }
+
+    @Test
+    public void leftJoinBuiltOnTheLeftSide() {
+        //Fewer customers than orders, the left side is hashed
+        customers = sheet("Customers", Arrays.asList("Id", "Name"),
+                Arrays.asList("Number", "String"),
+                "\"7.0\",\"Ann\"", "\"8\",\"Bob\"", "\"10\",\"Cid\"");
+        QueryResult result = join(customers, orders, Join.Type.LEFT, "Id", "CustomerId", false);
+        assertEquals(Arrays.asList("Id", "Name", "Orders.Id", "CustomerId", "Amount"),
+                result.getHeaderList());
+        assertEquals(Arrays.asList("7.0|Ann|1|7|10", "7.0|Ann|3|7|30", "8|Bob|2|8|20", "10|Cid|||"),
+                rows(result));
+    }
+
+    @Test
+    public void textKeysAreNotComparedByValue() {
+        customers = sheet("Customers", Arrays.asList("Id", "Name"),
+                Arrays.asList("String", "String"),
+                "\"7.0\",\"Ann\"", "\"8\",\"Bob\"", "\"10\",\"Cid\"", "\"\",\"Nobody\"");
+        assertEquals(Arrays.asList("2|8|20|8|Bob"),
+                rows(join(orders, customers, Join.Type.INNER, "CustomerId", "Id", false)));
+    }
+
+    @Test
+    public void mixedKeysMatchByValueOrText() {
+        //Number key Columns holding text cells, and a String Column holding numbers
+        orders = sheet("Orders", Arrays.asList("Id", "CustomerId", "Amount"),
+                Arrays.asList("Number", "Number", "String"),
+                "\"1\",\"7\",\"10\"", "\"2\",\"n/a\",\"n/a\"", "\"3\",\"8.0\",\"30\"");
+        customers = sheet("Customers", Arrays.asList("Id", "Name"),
+                Arrays.asList("Number", "String"),
+                "\"7.0\",\"Ann\"", "\"n/a\",\"Unknown\"", "\"8\",\"Bob\"");
+        QueryResult result = join(orders, customers, Join.Type.INNER, "CustomerId", "Id", false);
+        assertEquals(Arrays.asList("1|7|10|7.0|Ann", "2|n/a|n/a|n/a|Unknown", "3|8.0|30|8|Bob"),
+                rows(result));
+        assertEquals(Arrays.asList("1|7|10|7.0|Ann", "2|n/a|n/a|n/a|Unknown", "3|8.0|30|8|Bob"),
+                rows(join(orders, customers, Join.Type.INNER, "CustomerId", "Id", true)));
+
+        Query query = new Query(result.toSheet("Joined", 0));
+        query.setFilter(RowPredicate.greaterThan("Amount", 20));
+        query.setSelect("Name");
+        query.setPool(pool);
+        QueryResult filtered = query.execute();
+        assertEquals(1, filtered.getRowCount());
+        assertEquals("Bob", filtered.getString(0, 0));
+    }
+
+    @Test
+    public void spilledJoinMatchesTheHashJoin() {
+        assertEquals(INNER, rows(join(orders, customers, Join.Type.INNER, "CustomerId", "Id", true)));
+        assertEquals(LEFT, rows(join(orders, customers, Join.Type.LEFT, "CustomerId", "Id", true)));
+        assertEquals(0, spillDirectory.listFiles().length);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void keysMustBeSet() {
+        new Join(orders, customers).execute();
+    }
+
+    private QueryResult join(Sheet left, Sheet right, Join.Type type, String leftKey,
+                             String rightKey, boolean spill) {
+        Join join = new Join(left, right);
+        join.setKeys(leftKey, rightKey);
+        join.setType(type);
+        join.setPool(pool);
+        join.setSpillDirectory(spillDirectory);
+        if (spill)
+            join.setMemoryBudget(100);
+        return join.execute();
+    }
+
+    private static Sheet sheet(String name, List<String> headers, List<String> types,
+                               String... rows) {
+        return new Sheet(name, 0, new ArrayList<String>(types), new ArrayList<String>(headers),
+                new ArrayList<String>(Arrays.asList(rows)));
+    }
+
+    private static List<String> rows(QueryResult result) {
+        List<String> rows = new ArrayList<String>();
+        for (int row = 0; row < result.getRowCount(); row++) {
+            StringBuilder line = new StringBuilder();
+            for (int column = 0; column < result.getHeaderList().size(); column++) {
+                if (column > 0)
+                    line.append('|');
+                line.append(result.getString(row, column));
+            }
+            rows.add(line.toString());
+        }
+        return rows;
+    }
+}
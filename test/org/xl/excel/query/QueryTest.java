@@ -0,0 +1,84 @@
+package org.xl.excel.query;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Test;
+import org.xl.excel.components.Sheet;
+import org.xl.excel.parser.RowPredicate;
+
+public class QueryTest {
+    private final ForkJoinPool pool = new ForkJoinPool(2);
+
+    //Amount holds numbers and text but is typed String, Quantity is a
+    //Number Column with a text cell
+    private final Sheet sheet = new Sheet("Orders", 0,
+            new ArrayList<String>(Arrays.asList("Number", "String", "Number")),
+            new ArrayList<String>(Arrays.asList("Id", "Amount", "Quantity")),
+            new ArrayList<String>(Arrays.asList("\"1\",\"5\",\"2\"", "\"2\",\"50\",\"n/a\"",
+                    "\"3\",\"n/a\",\"4\"", "\"4\",\"\",\"\"", "\"5\",\"1,000\",\"8\"")));
+
+    @After
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void mixedColumnMatchesNumbers() {
+        assertEquals(Arrays.asList("2", "5"), ids(RowPredicate.greaterThan("Amount", 10)));
+        assertEquals(Arrays.asList("2"), ids(RowPredicate.equalTo("Amount", "50.0")));
+        assertEquals(Arrays.asList("5"), ids(RowPredicate.equalTo("Amount", 1000)));
+        assertEquals(Arrays.asList("1", "2", "5"), ids(RowPredicate.between("Amount", 0, 1000)));
+    }
+
+    @Test
+    public void mixedColumnMatchesText() {
+        assertEquals(Arrays.asList("3"), ids(RowPredicate.equalTo("Amount", "n/a")));
+        assertEquals(Arrays.asList("5"), ids(RowPredicate.equalTo("Amount", "1,000")));
+        assertEquals(Arrays.asList("4"), ids(RowPredicate.isBlank("Amount")));
+        assertEquals(Arrays.asList("3", "4"),
+                ids(RowPredicate.not(RowPredicate.greaterThan("Amount", 0))));
+    }
+
+    @Test
+    public void numberColumnMatchesItsText() {
+        assertEquals(Arrays.asList("2"), ids(RowPredicate.equalTo("Quantity", "n/a")));
+        assertEquals(Arrays.asList("3", "5"), ids(RowPredicate.greaterThan("Quantity", 2)));
+        assertEquals(Arrays.asList("4"), ids(RowPredicate.isBlank("Quantity")));
+    }
+
+    @Test
+    public void mixedColumnGroups() {
+        Query query = query(RowPredicate.greaterThan("Amount", 1));
+        query.setGroupBy("Amount");
+        query.setAggregates(Aggregate.count());
+        query.setOrderBy("Amount", true);
+        QueryResult result = query.execute();
+        assertEquals(3, result.getRowCount());
+        assertEquals("1,000", result.getString(0, 0));
+        assertEquals("5", result.getString(1, 0));
+        assertEquals("50", result.getString(2, 0));
+    }
+
+    private Query query(RowPredicate filter) {
+        Query query = new Query(sheet);
+        query.setFilter(filter);
+        query.setPool(pool);
+        return query;
+    }
+
+    private List<String> ids(RowPredicate filter) {
+        Query query = query(filter);
+        query.setSelect("Id");
+        QueryResult result = query.execute();
+        List<String> ids = new ArrayList<String>();
+        for (int row = 0; row < result.getRowCount(); row++)
+            ids.add(result.getString(row, 0));
+        return ids;
+    }
+}
@@ -0,0 +1,85 @@
+package org.xl.server;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ParseBudgetTest {
+    private static final long MEGABYTE = 1024 * 1024;
+
+    @Test
+    public void permitsAreMegabytesOfEstimatedMemory() {
+        ParseBudget budget = new ParseBudget(16 * MEGABYTE, 4);
+        assertEquals(1, budget.permitsFor(0));
+        assertEquals(1, budget.permitsFor(1));
+        assertEquals(4, budget.permitsFor(MEGABYTE));
+        assertEquals(5, budget.permitsFor(MEGABYTE + 1));
+        //A single upload never needs more than the whole budget
+        assertEquals(16, budget.permitsFor(1024 * MEGABYTE));
+        assertEquals(1, new ParseBudget(1, 4).permitsFor(MEGABYTE));
+    }
+
+    @Test(timeout = 5000)
+    public void acquireWaitsForReleasedPermits() throws Exception {
+        final ParseBudget budget = new ParseBudget(4 * MEGABYTE, 1);
+        final int all = budget.acquire(4 * MEGABYTE, 0, false);
+        assertEquals(4, all);
+        assertEquals(0, budget.getAvailablePermits());
+        assertEquals(0, budget.acquire(MEGABYTE, 50, false));
+
+        Thread releaser = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                budget.release(all);
+            }
+        };
+        releaser.start();
+        assertEquals(2, budget.acquire(2 * MEGABYTE, 4000, false));
+        assertEquals(2, budget.getAvailablePermits());
+        releaser.join();
+        budget.release(0);
+        assertEquals(2, budget.getAvailablePermits());
+    }
+
+    @Test(timeout = 5000)
+    public void waitingUploadsAreServedInOrder() throws Exception {
+        final ParseBudget budget = new ParseBudget(4 * MEGABYTE, 1);
+        int held = budget.acquire(3 * MEGABYTE, 0, false);
+        final CountDownLatch waiting = new CountDownLatch(1);
+        final AtomicInteger large = new AtomicInteger();
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                waiting.countDown();
+                try {
+                    large.set(budget.acquire(4 * MEGABYTE, 4000, false));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        waiter.start();
+        waiting.await();
+        //Waits until the large upload is queued on the budget
+        while (Thread.State.TIMED_WAITING != waiter.getState())
+            Thread.sleep(5);
+
+        //A free permit is not taken ahead of the waiting upload, unless barging
+        assertEquals(0, budget.acquire(MEGABYTE, 50, false));
+        int small = budget.acquire(MEGABYTE, 50, true);
+        assertEquals(1, small);
+        budget.release(small);
+        budget.release(held);
+        waiter.join();
+        assertEquals(4, large.get());
+        assertEquals(0, budget.getAvailablePermits());
+    }
+}
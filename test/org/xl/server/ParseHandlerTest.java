@@ -0,0 +1,177 @@
+package org.xl.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParseHandlerTest {
+    private static final long TIMEOUT_MILLIS = 2000;
+    private static final long MAX_UPLOAD_BYTES = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private ParseScheduler scheduler;
+    private ParseBudget budget;
+    private HttpServer server;
+    private File workbook;
+
+    @Before
+    public void startServer() throws IOException {
+        scheduler = new ParseScheduler(1, 4, Long.MAX_VALUE, Executors.defaultThreadFactory());
+        budget = new ParseBudget(1024 * 1024, 1);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/parse", new ParseHandler(scheduler, TIMEOUT_MILLIS,
+                MAX_UPLOAD_BYTES, budget));
+        server.start();
+        workbook = folder.newFile("data.xlsx");
+        XSSFWorkbook xlsx = new XSSFWorkbook();
+        Sheet sheet = xlsx.createSheet("Data");
+        sheet.createRow(0).createCell(0).setCellValue("Id");
+        sheet.createRow(1).createCell(0).setCellValue(1);
+        OutputStream out = new FileOutputStream(workbook);
+        try {
+            xlsx.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void stopServer() {
+        unblock.countDown();
+        server.stop(0);
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void parses() throws Exception {
+        assertEquals(200, post());
+    }
+
+    @Test
+    public void budgetWaitCountsTowardsTheTimeout() throws Exception {
+        //The only worker is busy, and the budget frees up after half the timeout
+        scheduler.submit(new ParseCost(1, 1, 1), new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                unblock.await();
+                return null;
+            }
+        });
+        final int permits = budget.acquire(1, 0, true);
+        Thread releaser = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(TIMEOUT_MILLIS / 2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                budget.release(permits);
+            }
+        };
+        releaser.setDaemon(true);
+        releaser.start();
+
+        long start = System.nanoTime();
+        assertEquals(504, post());
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Took " + elapsed + "ms", elapsed < TIMEOUT_MILLIS + TIMEOUT_MILLIS / 4);
+    }
+
+    @Test
+    public void abortedUploadIsDeleted() throws Exception {
+        List<String> before = uploads();
+        Socket socket = new Socket("127.0.0.1", server.getAddress().getPort());
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write(("POST /parse HTTP/1.1\r\nHost: localhost\r\nContent-Length: " +
+                    MAX_UPLOAD_BYTES + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(new byte[1024]);
+            out.flush();
+            //Disconnect once the upload is being stored
+            waitFor(before, false);
+        } finally {
+            socket.close();
+        }
+        waitFor(before, true);
+    }
+
+    /**
+     * Waits until the uploads in the temporary directory are, or are no
+     * longer, the ones listed.
+     */
+    private static void waitFor(List<String> uploads, boolean same) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (uploads().equals(uploads) != same) {
+            if (System.currentTimeMillis() > deadline)
+                fail(same ? "The upload was not deleted" : "The upload was not stored");
+            Thread.sleep(10);
+        }
+    }
+
+    private static List<String> uploads() {
+        List<String> uploads = new ArrayList<String>();
+        File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles();
+        if (null != files) {
+            for (File file : files) {
+                if (file.getName().startsWith("xl-upload"))
+                    uploads.add(file.getName());
+            }
+        }
+        Collections.sort(uploads);
+        return uploads;
+    }
+
+    private int post() throws IOException {
+        URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/parse");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        OutputStream out = connection.getOutputStream();
+        try {
+            Files.copy(workbook.toPath(), out);
+        } finally {
+            out.close();
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (null != in) {
+            while (in.read() != -1)
+                ;
+            in.close();
+        }
+        connection.disconnect();
+        return status;
+    }
+}
@@ -0,0 +1,158 @@
+package org.xl.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ParseSchedulerTest {
+    private static final long SMALL_JOB_COST = 1024 * 1024;
+    private static final ParseCost SMALL = new ParseCost(1024, 1, 1024);
+    private static final ParseCost LARGE = new ParseCost(1024, 1, 16 * SMALL_JOB_COST);
+
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+    private ParseScheduler scheduler;
+
+    @After
+    public void shutdown() {
+        unblock.countDown();
+        if (null != scheduler)
+            scheduler.shutdown();
+    }
+
+    @Test
+    public void smallJobsRunBeforeLargeOnes() throws Exception {
+        scheduler = create(1, 4);
+        scheduler.submit(SMALL, blocker());
+        Future<?> large = scheduler.submit(LARGE, record("large"));
+        Future<?> small = scheduler.submit(SMALL, record("small"));
+        unblock.countDown();
+        large.get(5, TimeUnit.SECONDS);
+        small.get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("small", "large"), order);
+    }
+
+    @Test
+    public void oneWorkerIsKeptForSmallJobs() throws Exception {
+        scheduler = create(2, 4);
+        scheduler.submit(LARGE, blocker());
+        Future<?> large = scheduler.submit(LARGE, record("large"));
+        Future<?> small = scheduler.submit(SMALL, record("small"));
+        small.get(5, TimeUnit.SECONDS);
+        assertFalse(large.isDone());
+        unblock.countDown();
+        large.get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("small", "large"), order);
+    }
+
+    @Test
+    public void fullQueueIsRejected() throws Exception {
+        scheduler = create(1, 1);
+        final CountDownLatch running = new CountDownLatch(1);
+        scheduler.submit(SMALL, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                running.countDown();
+                unblock.await();
+                return null;
+            }
+        });
+        running.await();
+        scheduler.submit(SMALL, record("queued"));
+        try {
+            scheduler.submit(SMALL, record("rejected"));
+            fail("A job was queued beyond the capacity");
+        } catch (RejectedExecutionException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void checkpointRunsWaitingSmallJobs() throws Exception {
+        scheduler = create(1, 4);
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch submitted = new CountDownLatch(1);
+        Future<String> large = scheduler.submit(LARGE, new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                running.countDown();
+                submitted.await();
+                ParseScheduler.checkpoint();
+                order.add("large");
+                return Thread.currentThread().getName();
+            }
+        });
+        running.await();
+        Future<String> small = scheduler.submit(SMALL, new Callable<String>() {
+            @Override
+            public String call() {
+                order.add("small");
+                return Thread.currentThread().getName();
+            }
+        });
+        submitted.countDown();
+        assertEquals(large.get(5, TimeUnit.SECONDS), small.get(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("small", "large"), order);
+    }
+
+    @Test
+    public void checkpointOutsideALargeJobReturns() {
+        ParseScheduler.checkpoint();
+    }
+
+    @Test
+    public void shutdownCancelsQueuedJobs() throws Exception {
+        scheduler = create(1, 4);
+        scheduler.submit(SMALL, blocker());
+        Future<?> queued = scheduler.submit(LARGE, record("queued"));
+        scheduler.shutdown();
+        assertTrue(queued.isCancelled());
+        try {
+            scheduler.submit(SMALL, record("rejected"));
+            fail("A job was accepted after the shutdown");
+        } catch (RejectedExecutionException e) {
+            //expected
+        }
+        assertTrue(order.isEmpty());
+    }
+
+    private static ParseScheduler create(int workers, int queueCapacity) {
+        return new ParseScheduler(workers, queueCapacity, SMALL_JOB_COST,
+                Executors.defaultThreadFactory());
+    }
+
+    private Callable<Void> blocker() {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                unblock.await();
+                return null;
+            }
+        };
+    }
+
+    private Callable<Void> record(final String name) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                order.add(name);
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,118 @@
+package org.xl.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParseServerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ParseServer server;
+
+    @After
+    public void stopServer() {
+        if (null != server)
+            server.stop(0);
+    }
+
+    @Test(timeout = 20000)
+    public void pooledMode() throws Exception {
+        server = new ParseServer(new InetSocketAddress("127.0.0.1", 0), 1, 1, 10000, 1024 * 1024);
+        server.start();
+        assertTrue(post(workbook()).contains("\"Row 3\""));
+    }
+
+    @Test(timeout = 20000)
+    public void virtualMode() throws Exception {
+        server = new ParseServer(new InetSocketAddress("127.0.0.1", 0), 1, 1, 10000, 1024 * 1024);
+        server.setExecutionMode(ExecutionMode.VIRTUAL);
+        //Smaller than the estimate of one upload, which still runs on its own
+        server.setMemoryBudget(1024, 1000);
+        server.start();
+        File workbook = workbook();
+        for (int i = 0; i < 3; i++)
+            assertTrue(post(workbook).contains("\"Row 3\""));
+    }
+
+    @Test(timeout = 10000)
+    public void virtualThreadExecutorRunsTasks() throws Exception {
+        ExecutorService executor = ParseServer.newVirtualThreadExecutor();
+        try {
+            assertEquals("done", executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return "done";
+                }
+            }).get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private File workbook() throws IOException {
+        XSSFWorkbook xlsx = new XSSFWorkbook();
+        Sheet sheet = xlsx.createSheet("Data");
+        sheet.createRow(0).createCell(0).setCellValue("Name");
+        for (int r = 1; r <= 3; r++) {
+            Row row = sheet.createRow(r);
+            row.createCell(0).setCellValue("Row " + r);
+        }
+        File file = folder.newFile();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            xlsx.write(out);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private String post(File workbook) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/parse");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        OutputStream out = connection.getOutputStream();
+        try {
+            Files.copy(workbook.toPath(), out);
+        } finally {
+            out.close();
+        }
+        assertEquals(200, connection.getResponseCode());
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        InputStream in = connection.getInputStream();
+        try {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                body.write(buffer, 0, read);
+        } finally {
+            in.close();
+        }
+        connection.disconnect();
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+}